@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.benchmarks;
+
+import io.fabric8.acme.client.internal.JSONParserUtils;
+import io.fabric8.acme.client.internal.StreamingModelDecoder;
+import io.fabric8.acme.client.model.Authorization;
+import net.minidev.json.JSONObject;
+import net.minidev.json.parser.JSONParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authorization response binding: the original single shared parser, the per-thread parser in
+ * {@link JSONParserUtils} and the streaming decoder. Run with {@code -t 4} (or more) and
+ * {@code -prof gc} to compare contention and allocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JSONParsingBenchmark {
+
+  // The original path shared one parser between threads, which is only correct when serialised.
+  private static final JSONParser SHARED_PARSER = new JSONParser(JSONParser.MODE_JSON_SIMPLE);
+
+  @Param({"3", "30"})
+  public int challenges;
+
+  private byte[] body;
+
+  @Setup
+  public void setup() {
+    StringBuilder json = new StringBuilder("{\"identifier\":{\"type\":\"dns\",\"value\":\"www.example.com\"},")
+      .append("\"status\":\"pending\",\"expires\":\"2017-03-23T21:06:45.899078471Z\",\"challenges\":[");
+    StringBuilder combinations = new StringBuilder("[");
+    for (int i = 0; i < challenges; i++) {
+      if (i > 0) {
+        json.append(',');
+        combinations.append(',');
+      }
+      String type = i % 3 == 0 ? "dns-01" : i % 3 == 1 ? "http-01" : "tls-sni-01";
+      json.append("{\"type\":\"").append(type).append("\",\"status\":\"pending\",")
+        .append("\"uri\":\"https://acme-v01.api.letsencrypt.org/acme/challenge/KUwS9HA6Ywq2iyG8KrnoKTuqgVqhGtbVG6Gq2j6MDdE/").append(i).append("\",")
+        .append("\"token\":\"DGyRejmCefe7v4NfDGDKfA-").append(i).append("\"}");
+      combinations.append('[').append(i).append(']');
+    }
+    json.append("],\"combinations\":").append(combinations).append("]}");
+    body = json.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public Authorization sharedParser() throws Exception {
+    JSONObject jsonObject;
+    synchronized (SHARED_PARSER) {
+      jsonObject = (JSONObject) SHARED_PARSER.parse(new ByteArrayInputStream(body));
+    }
+    return Authorization.fromJSONObject(jsonObject);
+  }
+
+  @Benchmark
+  public Authorization threadLocalParser() throws Exception {
+    return Authorization.fromJSONObject(JSONParserUtils.parse(new ByteArrayInputStream(body)));
+  }
+
+  @Benchmark
+  public Authorization streamingDecoder() throws Exception {
+    return StreamingModelDecoder.decodeAuthorization(new ByteArrayInputStream(body), "https://acme-v01.api.letsencrypt.org/acme/authz/1");
+  }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.benchmarks;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.util.Base64URL;
+import io.fabric8.acme.client.internal.AccountKey;
+import io.fabric8.acme.client.internal.JWKUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JWK conversion and the thumbprint used in every key authorization, recomputed each time or
+ * cached in an {@link AccountKey}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JWKBenchmark {
+
+  private static final String TOKEN = "evaGxfADs6pSRb2LAv9IZf17Dt3juxGJ-PCt92wr-oA";
+
+  @Param({"RS256", "ES256"})
+  public String algorithm;
+
+  private KeyPair keyPair;
+
+  private JWK jwk;
+
+  private AccountKey accountKey;
+
+  @Setup
+  public void setup() throws Exception {
+    keyPair = SignerBenchmark.Keys.generate(algorithm);
+    jwk = JWKUtils.jwkFromPublicKey(keyPair.getPublic());
+    accountKey = AccountKey.fromPublicKey(keyPair.getPublic());
+  }
+
+  @Benchmark
+  public JWK jwkFromPublicKey() throws Exception {
+    return JWKUtils.jwkFromPublicKey(keyPair.getPublic());
+  }
+
+  @Benchmark
+  public Base64URL computeThumbprint() throws Exception {
+    return jwk.computeThumbprint();
+  }
+
+  @Benchmark
+  public String keyAuthorizationFromThumbprint() throws Exception {
+    return TOKEN + "." + jwk.computeThumbprint().toString();
+  }
+
+  @Benchmark
+  public String keyAuthorizationFromAccountKey() {
+    return accountKey.keyAuthorization(TOKEN);
+  }
+}
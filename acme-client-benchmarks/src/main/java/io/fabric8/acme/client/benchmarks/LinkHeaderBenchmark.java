@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.benchmarks;
+
+import io.fabric8.acme.client.internal.LinkHeaderFieldParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Link header parsing as done for every registration response.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LinkHeaderBenchmark {
+
+  static final List<String> REGISTRATION_LINKS = Arrays.asList(
+    "<https://acme-v01.api.letsencrypt.org/acme/new-authz>;rel=\"next\"",
+    "<https://letsencrypt.org/documents/LE-SA-v1.1.1-August-1-2016.pdf>;rel=\"terms-of-service\"",
+    "<https://acme-v01.api.letsencrypt.org/acme/recover-reg>;rel=\"recover\""
+  );
+
+  static final List<String> COMBINED_LINKS = Arrays.asList(
+    "<https://acme-v01.api.letsencrypt.org/acme/new-authz>;rel=\"next\", " +
+      "<https://letsencrypt.org/documents/LE-SA-v1.1.1-August-1-2016.pdf>;rel=\"terms-of-service\";title=\"Subscriber Agreement\", " +
+      "<https://acme-v01.api.letsencrypt.org/acme/issuer-cert>;rel=\"up\""
+  );
+
+  // One header listing many links, e.g. every alternate issuer chain - the last one is looked up.
+  static final List<String> MANY_LINKS = Collections.singletonList(
+    IntStream.range(0, 100)
+      .mapToObj(i -> "<https://acme-v01.api.letsencrypt.org/acme/issuer-cert/" + i + ">;rel=\"alternate\";title=\"chain " + i + "\"")
+      .collect(Collectors.joining(", ")) + ", <https://acme-v01.api.letsencrypt.org/acme/issuer-cert>;rel=\"up\""
+  );
+
+  @Benchmark
+  public void registrationLinks(Blackhole blackhole) {
+    LinkHeaderFieldParser parser = new LinkHeaderFieldParser(REGISTRATION_LINKS);
+    blackhole.consume(parser.getFirstTargetForRelation("terms-of-service"));
+    blackhole.consume(parser.getFirstTargetForRelation("next"));
+    blackhole.consume(parser.getFirstTargetForRelation("recover"));
+  }
+
+  @Benchmark
+  public void combinedLinks(Blackhole blackhole) {
+    LinkHeaderFieldParser parser = new LinkHeaderFieldParser(COMBINED_LINKS);
+    blackhole.consume(parser.getFirstTargetForRelation("up"));
+    blackhole.consume(parser.getFirstTargetForRelation("terms-of-service"));
+  }
+
+  @Benchmark
+  public void manyLinks(Blackhole blackhole) {
+    blackhole.consume(new LinkHeaderFieldParser(MANY_LINKS).getFirstTargetForRelation("up"));
+  }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.benchmarks;
+
+import io.fabric8.acme.client.ACMEClient;
+import io.fabric8.acme.client.ConfigBuilder;
+import io.fabric8.acme.client.DefaultACMEClient;
+import io.fabric8.acme.client.model.Authorization;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end new-authz round trip against an in-process server: nonce handling, signing, HTTP
+ * and response binding together.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NewAuthorizationBenchmark {
+
+  private MockWebServer server;
+
+  private ACMEClient client;
+
+  @Setup
+  public void setup() throws Exception {
+    server = new MockWebServer();
+    server.setDispatcher(new AuthorizationDispatcher());
+    server.start();
+
+    client = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(server.url("/directory").url())
+        .withKeyPair(SignerBenchmark.Keys.generate("RS256"))
+        .build());
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    client.close();
+    server.shutdown();
+  }
+
+  @Benchmark
+  public Authorization createNew() {
+    return client.authorization().createNew().withNewIdentifier("dns", "www.example.com").send();
+  }
+
+  private class AuthorizationDispatcher extends Dispatcher {
+
+    private final AtomicLong nonces = new AtomicLong();
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+      MockResponse response = new MockResponse().addHeader("Replay-Nonce", nextNonce());
+      switch (request.getPath()) {
+        case "/directory":
+          if ("HEAD".equals(request.getMethod())) {
+            return response;
+          }
+          return response.setBody("{" +
+            "\"new-reg\":\"" + server.url("/acme/new-reg") + "\"," +
+            "\"recover-reg\":\"" + server.url("/acme/recover-reg") + "\"," +
+            "\"new-authz\":\"" + server.url("/acme/new-authz") + "\"," +
+            "\"new-cert\":\"" + server.url("/acme/new-cert") + "\"," +
+            "\"revoke-cert\":\"" + server.url("/acme/revoke-cert") + "\"" +
+            "}");
+        case "/acme/new-authz":
+          return response
+            .setResponseCode(HttpURLConnection.HTTP_CREATED)
+            .addHeader("Location", server.url("/acme/authz/1"))
+            .setBody("{\"identifier\":{\"type\":\"dns\",\"value\":\"www.example.com\"},\"status\":\"pending\"," +
+              "\"expires\":\"2017-03-23T21:06:45.899078471Z\",\"challenges\":[" +
+              "{\"type\":\"dns-01\",\"status\":\"pending\",\"uri\":\"" + server.url("/acme/challenge/1/1") + "\",\"token\":\"qwerty\"}," +
+              "{\"type\":\"tls-sni-01\",\"status\":\"pending\",\"uri\":\"" + server.url("/acme/challenge/1/2") + "\",\"token\":\"asdfg\"}," +
+              "{\"type\":\"http-01\",\"status\":\"pending\",\"uri\":\"" + server.url("/acme/challenge/1/3") + "\",\"token\":\"mnbvc\"}]," +
+              "\"combinations\":[[0],[1,2]]}");
+        default:
+          return response.setResponseCode(HttpURLConnection.HTTP_NOT_FOUND);
+      }
+    }
+
+    private String nextNonce() {
+      byte[] bytes = ByteBuffer.allocate(Long.BYTES).putLong(nonces.incrementAndGet()).array();
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.benchmarks;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.Payload;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWK;
+import io.fabric8.acme.client.internal.JWKUtils;
+import io.fabric8.acme.client.internal.Signer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signing a typical new-authz request, as done for every ACME POST, in signatures per second -
+ * on a single core, and with a thread per core sharing one signer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SignerBenchmark {
+
+  @Param({"RS256", "ES256"})
+  public String algorithm;
+
+  private Signer signer;
+
+  private JWSSigner nimbusSigner;
+
+  private JWSHeader header;
+
+  private Payload payload;
+
+  @Setup
+  public void setup() throws Exception {
+    KeyPair keyPair = Keys.generate(algorithm);
+    JWK jwk = JWKUtils.jwkFromPublicKey(keyPair.getPublic());
+    signer = new Signer(keyPair.getPrivate());
+    nimbusSigner = algorithm.startsWith("ES")
+      ? new ECDSASigner((ECPrivateKey) keyPair.getPrivate())
+      : new RSASSASigner((RSAPrivateKey) keyPair.getPrivate());
+    header = new JWSHeader.Builder(JWSAlgorithm.parse(algorithm))
+      .customParam("nonce", "Fs3QZZ1E2nBvSfh0k1tqVjdWr3PRgOFbbBXoG8XzIVk")
+      .jwk(jwk)
+      .build();
+    payload = new Payload("{\"resource\":\"new-authz\",\"identifier\":{\"type\":\"dns\",\"value\":\"www.example.com\"}}");
+  }
+
+  @Benchmark
+  public String sign() {
+    JWSObject jwsObject = new JWSObject(header, payload);
+    signer.sign(jwsObject);
+    return jwsObject.serialize();
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public String signOnAllCores() {
+    return sign();
+  }
+
+  // Nimbus' own signer, which looks up and initialises a JCA Signature for every request.
+  @Benchmark
+  public String nimbusSign() throws JOSEException {
+    JWSObject jwsObject = new JWSObject(header, payload);
+    jwsObject.sign(nimbusSigner);
+    return jwsObject.serialize();
+  }
+
+  static final class Keys {
+
+    private Keys() {
+    }
+
+    static KeyPair generate(String algorithm) throws Exception {
+      if (algorithm.startsWith("ES")) {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC");
+        kpg.initialize(new ECGenParameterSpec("secp256r1"));
+        return kpg.generateKeyPair();
+      }
+      KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+      kpg.initialize(2048);
+      return kpg.generateKeyPair();
+    }
+  }
+}
@@ -0,0 +1,482 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.fakeserver;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.RSAKey;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Routes requests to the fake ACME resources. Every POST is checked the way a real server checks
+ * it: the JWS signature must verify against the embedded JWK and the nonce must be one this server
+ * issued and nobody has used yet. Faults are injected before any of that happens.
+ */
+class FakeACMEDispatcher extends Dispatcher {
+
+  private static final Logger logger = LoggerFactory.getLogger(FakeACMEDispatcher.class);
+
+  private static final String ERROR_PREFIX = "urn:acme:error:";
+
+  private static final int TOO_MANY_REQUESTS = 429;
+
+  private static final byte[] CERTIFICATE = loadCertificate();
+
+  private final MockWebServer server;
+
+  private final FakeServerConfig config;
+
+  private final RequestRateLimiter rateLimiter;
+
+  private final NonceRegistry nonces = new NonceRegistry();
+
+  // Accounts are keyed by JWK thumbprint, just as a real server identifies them by key.
+  private final Map<String, FakeRegistration> registrationsByKey = new ConcurrentHashMap<>();
+
+  private final Map<String, FakeRegistration> registrations = new ConcurrentHashMap<>();
+
+  private final Map<String, FakeAuthorization> authorizations = new ConcurrentHashMap<>();
+
+  private final Map<String, String> certificates = new ConcurrentHashMap<>();
+
+  private final AtomicInteger ids = new AtomicInteger();
+
+  final AtomicLong requestCount = new AtomicLong();
+
+  final AtomicLong injectedErrors = new AtomicLong();
+
+  final AtomicLong badNonces = new AtomicLong();
+
+  final AtomicLong rateLimited = new AtomicLong();
+
+  FakeACMEDispatcher(MockWebServer server, FakeServerConfig config) {
+    this.server = server;
+    this.config = config;
+    this.rateLimiter = config.getRateLimit() > 0 ? new RequestRateLimiter(config.getRateLimit()) : null;
+  }
+
+  @Override
+  public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+    Random random = random(requestCount.incrementAndGet());
+    delay(random);
+
+    if (rateLimiter != null && !rateLimiter.tryAcquire()) {
+      rateLimited.incrementAndGet();
+      return problem(TOO_MANY_REQUESTS, "rateLimited", "Too many requests").addHeader("Retry-After", "1");
+    }
+    if (chance(random, config.getErrorRate())) {
+      injectedErrors.incrementAndGet();
+      return problem(HttpURLConnection.HTTP_INTERNAL_ERROR, "serverInternal", "Injected server error");
+    }
+
+    String path = request.getPath();
+    try {
+      switch (request.getMethod()) {
+        case "HEAD":
+          return "/directory".equals(path) ? nonced(new MockResponse()) : notFound(path);
+        case "GET":
+          return get(path);
+        case "POST":
+          return post(path, request.getBody().readUtf8(), random);
+        default:
+          return problem(HttpURLConnection.HTTP_BAD_METHOD, "malformed", "Method not allowed");
+      }
+    } catch (RuntimeException e) {
+      logger.warn("Failed to handle {} {}", request.getMethod(), path, e);
+      return problem(HttpURLConnection.HTTP_INTERNAL_ERROR, "serverInternal", String.valueOf(e.getMessage()));
+    }
+  }
+
+  private MockResponse get(String path) {
+    if ("/directory".equals(path)) {
+      return json(HttpURLConnection.HTTP_OK, directory());
+    }
+    if (path.startsWith("/acme/authz/")) {
+      FakeAuthorization authz = authorizations.get(path.substring("/acme/authz/".length()));
+      return authz == null ? notFound(path) : json(HttpURLConnection.HTTP_OK, authz.poll());
+    }
+    if (path.startsWith("/acme/cert/") && certificates.containsKey(path.substring("/acme/cert/".length()))) {
+      return certificate(HttpURLConnection.HTTP_OK);
+    }
+    if ("/acme/issuer-cert".equals(path)) {
+      return nonced(new MockResponse())
+        .addHeader("Content-Type", "application/pkix-cert")
+        .setBody(new Buffer().write(CERTIFICATE));
+    }
+    return notFound(path);
+  }
+
+  private MockResponse post(String path, String body, Random random) {
+    JWSObject jws;
+    try {
+      jws = JWSObject.parse(body);
+    } catch (ParseException e) {
+      return problem(HttpURLConnection.HTTP_BAD_REQUEST, "malformed", "Request body is not a JWS");
+    }
+
+    Object nonce = jws.getHeader().getCustomParam("nonce");
+    if (!nonces.consume(nonce instanceof String ? (String) nonce : null) || chance(random, config.getBadNonceRate())) {
+      badNonces.incrementAndGet();
+      return problem(HttpURLConnection.HTTP_BAD_REQUEST, "badNonce", "JWS has an invalid anti-replay nonce");
+    }
+
+    JWK jwk = jws.getHeader().getJWK();
+    String thumbprint;
+    try {
+      if (jwk == null || !jws.verify(verifier(jwk))) {
+        return problem(HttpURLConnection.HTTP_UNAUTHORIZED, "unauthorized", "JWS verification error");
+      }
+      thumbprint = jwk.computeThumbprint().toString();
+    } catch (JOSEException e) {
+      return problem(HttpURLConnection.HTTP_UNAUTHORIZED, "unauthorized", "JWS verification error: " + e.getMessage());
+    }
+
+    JSONObject payload = jws.getPayload().toJSONObject();
+    if (payload == null) {
+      return problem(HttpURLConnection.HTTP_BAD_REQUEST, "malformed", "JWS payload is not a JSON object");
+    }
+
+    if ("/acme/new-reg".equals(path)) {
+      return newRegistration(jwk, thumbprint, payload);
+    }
+
+    FakeRegistration account = registrationsByKey.get(thumbprint);
+    if (account == null) {
+      return problem(HttpURLConnection.HTTP_FORBIDDEN, "unauthorized", "No registration exists matching provided key");
+    }
+
+    if (path.startsWith("/acme/reg/")) {
+      if (!account.id.equals(path.substring("/acme/reg/".length()))) {
+        return problem(HttpURLConnection.HTTP_FORBIDDEN, "unauthorized", "Request signing key did not match registration key");
+      }
+      account.update(payload);
+      return registration(HttpURLConnection.HTTP_ACCEPTED, account);
+    }
+    if ("/acme/new-authz".equals(path)) {
+      return newAuthorization(account, payload, random);
+    }
+    if (path.startsWith("/acme/challenge/")) {
+      return challenge(account, path.substring("/acme/challenge/".length()), payload);
+    }
+    if ("/acme/new-cert".equals(path)) {
+      if (!(payload.get("csr") instanceof String)) {
+        return problem(HttpURLConnection.HTTP_BAD_REQUEST, "malformed", "Request is missing a CSR");
+      }
+      String id = String.valueOf(ids.incrementAndGet());
+      certificates.put(id, account.id);
+      return certificate(HttpURLConnection.HTTP_CREATED).addHeader("Location", server.url("/acme/cert/" + id));
+    }
+    if ("/acme/revoke-cert".equals(path)) {
+      return nonced(new MockResponse());
+    }
+    return notFound(path);
+  }
+
+  private MockResponse newRegistration(JWK jwk, String thumbprint, JSONObject payload) {
+    FakeRegistration existing = registrationsByKey.get(thumbprint);
+    if (existing != null) {
+      return problem(HttpURLConnection.HTTP_CONFLICT, "malformed", "Registration key is already in use")
+        .addHeader("Location", server.url("/acme/reg/" + existing.id));
+    }
+
+    FakeRegistration created = new FakeRegistration(String.valueOf(ids.incrementAndGet()), jwk.toJSONObject());
+    created.update(payload);
+    existing = registrationsByKey.putIfAbsent(thumbprint, created);
+    if (existing != null) {
+      return problem(HttpURLConnection.HTTP_CONFLICT, "malformed", "Registration key is already in use")
+        .addHeader("Location", server.url("/acme/reg/" + existing.id));
+    }
+    registrations.put(created.id, created);
+    return registration(HttpURLConnection.HTTP_CREATED, created);
+  }
+
+  private MockResponse newAuthorization(FakeRegistration account, JSONObject payload, Random random) {
+    Object identifier = payload.get("identifier");
+    if (!(identifier instanceof Map)) {
+      return problem(HttpURLConnection.HTTP_BAD_REQUEST, "malformed", "Request is missing an identifier");
+    }
+
+    String id = String.valueOf(ids.incrementAndGet());
+    FakeAuthorization authz = new FakeAuthorization(id, account.id, new JSONObject((Map<String, ?>) identifier), random);
+    authorizations.put(id, authz);
+    return json(HttpURLConnection.HTTP_CREATED, authz.toJSONObject())
+      .addHeader("Location", server.url("/acme/authz/" + id));
+  }
+
+  private MockResponse challenge(FakeRegistration account, String challengePath, JSONObject payload) {
+    int slash = challengePath.indexOf('/');
+    FakeAuthorization authz = slash < 0 ? null : authorizations.get(challengePath.substring(0, slash));
+    if (authz == null || !authz.account.equals(account.id)) {
+      return notFound("/acme/challenge/" + challengePath);
+    }
+    JSONObject challenge;
+    try {
+      challenge = authz.ready(Integer.parseInt(challengePath.substring(slash + 1)), payload);
+    } catch (NumberFormatException | IndexOutOfBoundsException e) {
+      return notFound("/acme/challenge/" + challengePath);
+    }
+    return json(HttpURLConnection.HTTP_ACCEPTED, challenge);
+  }
+
+  private JSONObject directory() {
+    JSONObject directory = new JSONObject();
+    for (String resource : new String[]{"new-reg", "new-authz", "new-cert", "revoke-cert"}) {
+      directory.put(resource, server.url("/acme/" + resource).toString());
+    }
+    return directory;
+  }
+
+  private MockResponse registration(int code, FakeRegistration registration) {
+    return json(code, registration.toJSONObject())
+      .addHeader("Location", server.url("/acme/reg/" + registration.id))
+      .addHeader("Link", "<" + server.url("/acme/new-authz") + ">;rel=\"next\"")
+      .addHeader("Link", "<" + server.url("/terms") + ">;rel=\"terms-of-service\"");
+  }
+
+  private MockResponse certificate(int code) {
+    return nonced(new MockResponse())
+      .setResponseCode(code)
+      .addHeader("Content-Type", "application/pkix-cert")
+      .addHeader("Link", "<" + server.url("/acme/issuer-cert") + ">;rel=\"up\"")
+      .setBody(new Buffer().write(CERTIFICATE));
+  }
+
+  private MockResponse json(int code, JSONObject body) {
+    return nonced(new MockResponse())
+      .setResponseCode(code)
+      .addHeader("Content-Type", "application/json")
+      .setBody(body.toJSONString());
+  }
+
+  private MockResponse notFound(String path) {
+    return problem(HttpURLConnection.HTTP_NOT_FOUND, "malformed", "No resource at " + path);
+  }
+
+  private MockResponse problem(int code, String type, String detail) {
+    JSONObject problem = new JSONObject();
+    problem.put("type", ERROR_PREFIX + type);
+    problem.put("detail", detail);
+    problem.put("status", code);
+    return nonced(new MockResponse())
+      .setResponseCode(code)
+      .addHeader("Content-Type", "application/problem+json")
+      .setBody(problem.toJSONString());
+  }
+
+  private MockResponse nonced(MockResponse response) {
+    return response.addHeader("Replay-Nonce", nonces.issue());
+  }
+
+  private void delay(Random random) throws InterruptedException {
+    long delay = config.getLatency();
+    if (config.getLatencyJitter() > 0) {
+      delay += (long) (random.nextDouble() * config.getLatencyJitter());
+    }
+    if (delay > 0) {
+      Thread.sleep(delay);
+    }
+  }
+
+  private static boolean chance(Random random, double rate) {
+    return rate > 0 && random.nextDouble() < rate;
+  }
+
+  // Each request draws from its own source, derived from the seed and the request's number, so
+  // the dispatcher threads never contend on one. The number is mixed first, as java.util.Random
+  // seeded with consecutive values starts out with closely related outputs.
+  private Random random(long request) {
+    long z = config.getSeed() + request * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return new Random(z ^ (z >>> 31));
+  }
+
+  private static JWSVerifier verifier(JWK jwk) throws JOSEException {
+    if (jwk instanceof RSAKey) {
+      return new RSASSAVerifier((RSAKey) jwk);
+    }
+    if (jwk instanceof ECKey) {
+      return new ECDSAVerifier((ECKey) jwk);
+    }
+    throw new JOSEException("Unsupported key type " + jwk.getKeyType());
+  }
+
+  private static byte[] loadCertificate() {
+    try (InputStream in = FakeACMEDispatcher.class.getResourceAsStream("certificate.pem")) {
+      String pem = new Scanner(in, StandardCharsets.US_ASCII.name()).useDelimiter("\\A").next();
+      return Base64.getMimeDecoder().decode(pem
+        .replace("-----BEGIN CERTIFICATE-----", "")
+        .replace("-----END CERTIFICATE-----", "")
+        .trim());
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot load fake certificate", e);
+    }
+  }
+
+  private final class FakeRegistration {
+
+    private final String id;
+
+    private final JSONObject key;
+
+    private final String createdAt = Instant.now().toString();
+
+    private volatile Object contact;
+
+    private volatile Object agreement;
+
+    private FakeRegistration(String id, JSONObject key) {
+      this.id = id;
+      this.key = key;
+    }
+
+    private void update(JSONObject payload) {
+      if (payload.containsKey("contact")) {
+        contact = payload.get("contact");
+      }
+      if (payload.containsKey("agreement")) {
+        agreement = payload.get("agreement");
+      }
+    }
+
+    private JSONObject toJSONObject() {
+      JSONObject json = new JSONObject();
+      json.put("id", Integer.valueOf(id));
+      json.put("key", key);
+      if (contact != null) {
+        json.put("contact", contact);
+      }
+      if (agreement != null) {
+        json.put("agreement", agreement);
+      }
+      json.put("initialIp", "127.0.0.1");
+      json.put("createdAt", createdAt);
+      return json;
+    }
+  }
+
+  private final class FakeAuthorization {
+
+    private final String id;
+
+    private final String account;
+
+    private final JSONObject identifier;
+
+    private final String expires = Instant.now().plus(7, ChronoUnit.DAYS).toString();
+
+    private final JSONObject[] challenges;
+
+    private String status = "pending";
+
+    private int processingPolls;
+
+    private FakeAuthorization(String id, String account, JSONObject identifier, Random random) {
+      this.id = id;
+      this.account = account;
+      this.identifier = identifier;
+      String[] types = {"dns-01", "http-01", "tls-sni-01"};
+      this.challenges = new JSONObject[types.length];
+      for (int i = 0; i < types.length; i++) {
+        byte[] token = new byte[32];
+        random.nextBytes(token);
+        JSONObject challenge = new JSONObject();
+        challenge.put("type", types[i]);
+        challenge.put("status", "pending");
+        challenge.put("uri", server.url("/acme/challenge/" + id + "/" + i).toString());
+        challenge.put("token", Base64.getUrlEncoder().withoutPadding().encodeToString(token));
+        challenges[i] = challenge;
+      }
+    }
+
+    private synchronized JSONObject ready(int index, JSONObject payload) {
+      JSONObject challenge = challenges[index];
+      if (payload.get("keyAuthorization") != null) {
+        challenge.put("keyAuthorization", payload.get("keyAuthorization"));
+      }
+      if ("pending".equals(status)) {
+        status = "processing";
+        processingPolls = config.getProcessingPolls();
+        challenge.put("status", "processing");
+      }
+      return new JSONObject(challenge);
+    }
+
+    /**
+     * Answers an authorization poll, moving a processing authorization on to valid once it has
+     * been seen as processing the configured number of times.
+     */
+    private synchronized JSONObject poll() {
+      if ("processing".equals(status) && processingPolls-- <= 0) {
+        status = "valid";
+        for (JSONObject challenge : challenges) {
+          if ("processing".equals(challenge.get("status"))) {
+            challenge.put("status", "valid");
+          }
+        }
+      }
+      return toJSONObject();
+    }
+
+    private synchronized JSONObject toJSONObject() {
+      JSONObject json = new JSONObject();
+      json.put("identifier", identifier);
+      json.put("status", status);
+      json.put("expires", expires);
+      JSONArray jsonChallenges = new JSONArray();
+      for (JSONObject challenge : challenges) {
+        jsonChallenges.add(new JSONObject(challenge));
+      }
+      json.put("challenges", jsonChallenges);
+      JSONArray combinations = new JSONArray();
+      for (int i = 0; i < challenges.length; i++) {
+        JSONArray combination = new JSONArray();
+        combination.add(i);
+        combinations.add(combination);
+      }
+      json.put("combinations", combinations);
+      return json;
+    }
+  }
+}
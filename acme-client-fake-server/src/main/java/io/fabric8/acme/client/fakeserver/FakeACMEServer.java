@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.fakeserver;
+
+import okhttp3.mockwebserver.MockWebServer;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * An in-process ACME server speaking just enough of the protocol to take a client through
+ * registration, authorization, challenge validation and issuance, with configurable latency,
+ * server errors, rejected nonces and rate limiting.
+ * <p>
+ * <pre>{@code
+ * try (FakeACMEServer server = new FakeACMEServer(new FakeServerConfigBuilder().withBadNonceRate(0.1).build()).start()) {
+ *   ACMEClient client = new DefaultACMEClient(new ConfigBuilder().withServer(server.getDirectoryUrl())...build());
+ * }
+ * }</pre>
+ */
+public class FakeACMEServer implements AutoCloseable {
+
+  private final MockWebServer server = new MockWebServer();
+
+  private final FakeACMEDispatcher dispatcher;
+
+  public FakeACMEServer() {
+    this(new FakeServerConfigBuilder().build());
+  }
+
+  public FakeACMEServer(FakeServerConfig config) {
+    this.dispatcher = new FakeACMEDispatcher(server, config);
+    server.setDispatcher(dispatcher);
+  }
+
+  public FakeACMEServer start() throws IOException {
+    server.start();
+    return this;
+  }
+
+  public URL getDirectoryUrl() {
+    return server.url("/directory").url();
+  }
+
+  /**
+   * Total requests received, including those answered with an injected fault.
+   */
+  public long getRequestCount() {
+    return dispatcher.requestCount.get();
+  }
+
+  public long getInjectedErrorCount() {
+    return dispatcher.injectedErrors.get();
+  }
+
+  /**
+   * Requests rejected with badNonce, whether the nonce was really invalid or the rejection was injected.
+   */
+  public long getBadNonceCount() {
+    return dispatcher.badNonces.get();
+  }
+
+  public long getRateLimitedCount() {
+    return dispatcher.rateLimited.get();
+  }
+
+  @Override
+  public void close() throws IOException {
+    server.shutdown();
+  }
+}
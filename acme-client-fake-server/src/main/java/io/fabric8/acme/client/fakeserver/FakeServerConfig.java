@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.fakeserver;
+
+import io.sundr.builder.annotations.Buildable;
+
+/**
+ * Fault injection and behaviour settings for {@link FakeACMEServer}. Rates are probabilities
+ * between 0 and 1, applied independently to every request using a random source derived from
+ * {@link #getSeed()} and the request's number, so a single-threaded run replays the same faults
+ * every time.
+ */
+@Buildable(
+  generateBuilderPackage = true,
+  builderPackage = "io.fabric8.acme.client.fakeserver.builder"
+)
+public class FakeServerConfig {
+
+  private long latency;
+
+  private long latencyJitter;
+
+  private double errorRate;
+
+  private double badNonceRate;
+
+  private int rateLimit;
+
+  private int processingPolls;
+
+  private long seed;
+
+  public FakeServerConfig(long latency, long latencyJitter, double errorRate, double badNonceRate, int rateLimit, int processingPolls, long seed) {
+    if (latency < 0 || latencyJitter < 0) {
+      throw new IllegalArgumentException("Latency cannot be negative");
+    }
+    if (errorRate < 0 || errorRate > 1 || badNonceRate < 0 || badNonceRate > 1) {
+      throw new IllegalArgumentException("Error and badNonce rates must be between 0 and 1");
+    }
+    if (rateLimit < 0 || processingPolls < 0) {
+      throw new IllegalArgumentException("Rate limit and processing polls cannot be negative");
+    }
+    this.latency = latency;
+    this.latencyJitter = latencyJitter;
+    this.errorRate = errorRate;
+    this.badNonceRate = badNonceRate;
+    this.rateLimit = rateLimit;
+    this.processingPolls = processingPolls;
+    this.seed = seed;
+  }
+
+  public FakeServerConfig() {
+    this(0, 0, 0, 0, 0, 0, 0);
+  }
+
+  /**
+   * Fixed delay in milliseconds added before every response.
+   */
+  public long getLatency() {
+    return latency;
+  }
+
+  /**
+   * Maximum random delay in milliseconds added on top of {@link #getLatency()}.
+   */
+  public long getLatencyJitter() {
+    return latencyJitter;
+  }
+
+  /**
+   * Share of requests answered with a serverInternal error.
+   */
+  public double getErrorRate() {
+    return errorRate;
+  }
+
+  /**
+   * Share of signed requests rejected with badNonce even though their nonce was valid.
+   */
+  public double getBadNonceRate() {
+    return badNonceRate;
+  }
+
+  /**
+   * Maximum requests per second before rateLimited errors are returned, or 0 for no limit.
+   */
+  public int getRateLimit() {
+    return rateLimit;
+  }
+
+  /**
+   * Number of authorization polls answered with processing after a challenge is ready.
+   */
+  public int getProcessingPolls() {
+    return processingPolls;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.fakeserver;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Issues single-use anti-replay nonces and remembers the outstanding ones, forgetting the oldest
+ * once too many are unused - just as a real server eventually expires them.
+ */
+class NonceRegistry {
+
+  static final int MAX_OUTSTANDING = 100000;
+
+  private final Set<String> outstanding = ConcurrentHashMap.newKeySet();
+
+  private final Queue<String> issueOrder = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger size = new AtomicInteger();
+
+  private final AtomicLong counter = new AtomicLong();
+
+  String issue() {
+    byte[] bytes = ByteBuffer.allocate(16)
+      .putLong(counter.incrementAndGet())
+      .putLong(ThreadLocalRandom.current().nextLong())
+      .array();
+    String nonce = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+    outstanding.add(nonce);
+    issueOrder.add(nonce);
+    if (size.incrementAndGet() > MAX_OUTSTANDING) {
+      String oldest = issueOrder.poll();
+      if (oldest != null) {
+        size.decrementAndGet();
+        outstanding.remove(oldest);
+      }
+    }
+    return nonce;
+  }
+
+  /**
+   * Returns true exactly once for each nonce that was issued and hasn't been forgotten.
+   */
+  boolean consume(String nonce) {
+    // The issue order queue keeps its entry until it ages out, which keeps this lock-free.
+    return nonce != null && outstanding.remove(nonce);
+  }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.fakeserver;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket allowing bursts of up to one second's worth of requests.
+ */
+class RequestRateLimiter {
+
+  private final int permitsPerSecond;
+
+  private double tokens;
+
+  private long lastRefill = System.nanoTime();
+
+  RequestRateLimiter(int permitsPerSecond) {
+    this.permitsPerSecond = permitsPerSecond;
+    this.tokens = permitsPerSecond;
+  }
+
+  synchronized boolean tryAcquire() {
+    long now = System.nanoTime();
+    tokens = Math.min(permitsPerSecond, tokens + (now - lastRefill) * permitsPerSecond / (double) TimeUnit.SECONDS.toNanos(1));
+    lastRefill = now;
+    if (tokens < 1) {
+      return false;
+    }
+    tokens--;
+    return true;
+  }
+}
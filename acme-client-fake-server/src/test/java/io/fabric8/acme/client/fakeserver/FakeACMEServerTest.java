@@ -0,0 +1,276 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.fakeserver;
+
+import io.fabric8.acme.client.ACMEClient;
+import io.fabric8.acme.client.ACMEClientException;
+import io.fabric8.acme.client.ConfigBuilder;
+import io.fabric8.acme.client.DefaultACMEClient;
+import io.fabric8.acme.client.model.Authorization;
+import io.fabric8.acme.client.model.Certificate;
+import io.fabric8.acme.client.model.Challenge;
+import io.fabric8.acme.client.model.ChallengeWithToken;
+import io.fabric8.acme.client.model.NewCertificate;
+import io.fabric8.acme.client.model.PemCertificateSink;
+import io.fabric8.acme.client.model.Registration;
+import io.fabric8.acme.client.model.Status;
+import io.fabric8.acme.client.renewal.ACMERenewer;
+import io.fabric8.acme.client.renewal.ChallengeResponder;
+import io.fabric8.acme.client.renewal.IssuanceListener;
+import io.fabric8.acme.client.renewal.IssuancePipeline;
+import io.fabric8.acme.client.renewal.IssuancePipelineConfigBuilder;
+import io.fabric8.acme.client.renewal.RenewalScheduler;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FakeACMEServerTest {
+
+  @Test
+  public void testAuthorizationFlow() throws Exception {
+    try (FakeACMEServer server = new FakeACMEServer(new FakeServerConfigBuilder().withProcessingPolls(1).build()).start()) {
+      DefaultACMEClient client = newClient(server, 3);
+
+      Registration reg = client.registration().createNew().addToContact("mailto", "noone@nowhere.com").withAgreeToTerms(true).send();
+      assertNotNull(reg.getLocation());
+      assertNotNull(reg.getAgreementLocation());
+      assertEquals(reg.getLocation(), client.registration().get().getLocation());
+
+      Authorization authz = client.authorization().createNew().withNewIdentifier("dns", "fabric8.io").send();
+      assertEquals(Status.PENDING, authz.getStatus());
+      assertEquals(3, authz.getChallenges().size());
+
+      Challenge challenge = client.challenges().use(authz.getChallenges().get(0)).ready();
+      assertNotNull(challenge);
+
+      authz = client.async().authorizationPoller().poll(authz.getLocation()).get(30, TimeUnit.SECONDS);
+      assertEquals(Status.VALID, authz.getStatus());
+
+      Certificate certificate = client.certificates().createNew().withCsr(NewCertificate.encodeCsr(new byte[]{1, 2, 3})).send();
+      ByteArrayOutputStream pem = new ByteArrayOutputStream();
+      client.certificates().at(certificate.getLocation()).download(new PemCertificateSink(pem));
+      assertEquals(2, pem.toString("US-ASCII").split("-----BEGIN CERTIFICATE-----").length - 1);
+    }
+  }
+
+  @Test
+  public void testInjectedBadNoncesAreRetried() throws Exception {
+    try (FakeACMEServer server = new FakeACMEServer(new FakeServerConfigBuilder().withBadNonceRate(0.3).withSeed(42).build()).start()) {
+      ACMEClient client = newClient(server, 10);
+      client.registration().createNew().send();
+
+      for (int i = 0; i < 10; i++) {
+        assertNotNull(client.authorization().createNew().withNewIdentifier("dns", "fabric8.io").send());
+      }
+
+      assertTrue(server.getBadNonceCount() > 0);
+    }
+  }
+
+  @Test
+  public void testBadNonceWithoutRetries() throws Exception {
+    try (FakeACMEServer server = new FakeACMEServer(new FakeServerConfigBuilder().withBadNonceRate(1).build()).start()) {
+      try {
+        newClient(server, 0).registration().createNew().send();
+        fail("Expected badNonce error");
+      } catch (ACMEClientException e) {
+        assertEquals("urn:acme:error:badNonce", e.getType());
+      }
+      assertEquals(1, server.getBadNonceCount());
+    }
+  }
+
+  @Test
+  public void testUnknownAccountIsRejected() throws Exception {
+    try (FakeACMEServer server = new FakeACMEServer().start()) {
+      newClient(server, 0).registration().createNew().send();
+
+      // Accounts are identified by the signing key, so a client with a fresh key has no registration.
+      try {
+        newClient(server, 0).authorization().createNew().withNewIdentifier("dns", "fabric8.io").send();
+        fail("Expected unknown account to be rejected");
+      } catch (ACMEClientException e) {
+        assertEquals("urn:acme:error:unauthorized", e.getType());
+      }
+    }
+  }
+
+  @Test
+  public void testRenewal() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try (FakeACMEServer server = new FakeACMEServer().start()) {
+      DefaultACMEClient client = newClient(server, 3);
+      client.registration().createNew().withAgreeToTerms(true).send();
+
+      List<Challenge> responded = new CopyOnWriteArrayList<>();
+      List<Challenge> cleanedUp = new CopyOnWriteArrayList<>();
+      List<X509Certificate> installed = new CopyOnWriteArrayList<>();
+      ACMERenewer renewer = new ACMERenewer(
+        client,
+        "http-01",
+        new ChallengeResponder() {
+          @Override
+          public CompletableFuture<Void> respond(String domain, Challenge challenge) {
+            responded.add(challenge);
+            return CompletableFuture.completedFuture(null);
+          }
+
+          @Override
+          public CompletableFuture<Void> cleanup(String domain, Challenge challenge) {
+            cleanedUp.add(challenge);
+            return CompletableFuture.completedFuture(null);
+          }
+        },
+        (tracked, certificate, chain) -> installed.addAll(chain),
+        executor
+      );
+
+      try (RenewalScheduler scheduler = new RenewalScheduler(renewer).start()) {
+        scheduler.track("fabric8", Arrays.asList("fabric8.io", "www.fabric8.io"), Instant.now());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (scheduler.getRenewedCount() == 0 && scheduler.getFailedCount() == 0 && System.nanoTime() < deadline) {
+          Thread.sleep(50);
+        }
+        assertEquals(1, scheduler.getRenewedCount());
+        assertEquals(2, responded.size());
+        assertEquals(new HashSet<>(responded), new HashSet<>(cleanedUp));
+        assertNotNull(((ChallengeWithToken) responded.get(0)).getKeyAuthorization());
+        assertEquals(2, installed.size());
+        assertEquals(installed.get(0).getNotAfter().toInstant(), scheduler.get("fabric8").getNotAfter());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testIssuancePipeline() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try (FakeACMEServer server = new FakeACMEServer(new FakeServerConfigBuilder().withProcessingPolls(1).build()).start()) {
+      DefaultACMEClient client = newClient(server, 3);
+      client.registration().createNew().withAgreeToTerms(true).send();
+
+      // Challenge responses are held back at first, so everything queues up behind them.
+      CompletableFuture<Void> published = new CompletableFuture<>();
+      AtomicInteger cleanedUp = new AtomicInteger();
+      IssuancePipeline pipeline = new IssuancePipeline(
+        client,
+        "http-01",
+        new ChallengeResponder() {
+          @Override
+          public CompletableFuture<Void> respond(String domain, Challenge challenge) {
+            return published;
+          }
+
+          @Override
+          public CompletableFuture<Void> cleanup(String domain, Challenge challenge) {
+            cleanedUp.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+          }
+        },
+        new IssuancePipelineConfigBuilder().withAuthorizeWorkers(1).withProvisionWorkers(1).withQueueCapacity(1).build()
+      ).start();
+
+      AtomicInteger pulled = new AtomicInteger();
+      Iterator<List<String>> domainSets = new Iterator<List<String>>() {
+        @Override
+        public boolean hasNext() {
+          return pulled.get() < 10;
+        }
+
+        @Override
+        public List<String> next() {
+          int i = pulled.getAndIncrement();
+          return Arrays.asList("site" + i + ".fabric8.io", "www.site" + i + ".fabric8.io");
+        }
+      };
+
+      List<Certificate> issued = new CopyOnWriteArrayList<>();
+      List<Throwable> failed = new CopyOnWriteArrayList<>();
+      IssuanceListener listener = new IssuanceListener() {
+        @Override
+        public void issued(List<String> domains, Certificate certificate) {
+          issued.add(certificate);
+        }
+
+        @Override
+        public void failed(List<String> domains, Throwable cause) {
+          failed.add(cause);
+        }
+      };
+
+      try {
+        CompletableFuture<CompletableFuture<Void>> feeding = CompletableFuture.supplyAsync(() -> pipeline.issueAll(domainSets, listener), executor);
+
+        // One being provisioned and one queued for it, one authorized and waiting to hand over,
+        // one queued for authorization and one waiting to get in - and no more.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (pulled.get() < 5 && System.nanoTime() < deadline) {
+          Thread.sleep(50);
+        }
+        Thread.sleep(500);
+        assertEquals(5, pulled.get());
+        assertEquals(1, pipeline.getStats().get(1).getActive());
+
+        published.complete(null);
+        feeding.get(30, TimeUnit.SECONDS).get(60, TimeUnit.SECONDS);
+
+        assertTrue(failed.toString(), failed.isEmpty());
+        assertEquals(10, issued.size());
+        assertEquals(20, cleanedUp.get());
+        assertNotNull(issued.get(0).getKeyPair());
+        assertEquals(5, pipeline.getStats().size());
+        for (IssuancePipeline.StageStats stage : pipeline.getStats()) {
+          assertEquals(stage.toString(), 10, stage.getCompleted());
+          assertEquals(0, stage.getFailed());
+          assertTrue(stage.getThroughput() > 0);
+        }
+      } finally {
+        pipeline.close();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static DefaultACMEClient newClient(FakeACMEServer server, int maxBadNonceRetries) throws Exception {
+    return new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(server.getDirectoryUrl())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .withMaxBadNonceRetries(maxBadNonceRetries)
+        .build());
+  }
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.transport.jdk;
+
+import io.fabric8.acme.client.ACMEClientException;
+import io.fabric8.acme.client.Config;
+import io.fabric8.acme.client.transport.HttpRequest;
+import io.fabric8.acme.client.transport.HttpResponse;
+import io.fabric8.acme.client.transport.HttpTransport;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A transport on the JDK's own {@link HttpClient}, which negotiates HTTP/2 with the server where
+ * it can and does all its I/O without the threads OkHttp's dispatcher needs.
+ * <p>
+ * Use it with {@code new ConfigBuilder().withTransportFactory(JdkHttpTransport::new)}. Of the
+ * transport settings in the config it applies HTTP/2, the connect and read timeouts, the TLS
+ * session cache size and certificate pins. The JDK client sizes its connection pool itself and
+ * has no write timeout or per-host request limit, so those settings are ignored.
+ */
+public class JdkHttpTransport implements HttpTransport {
+
+  private static final AtomicInteger THREADS = new AtomicInteger();
+
+  private final HttpClient httpClient;
+
+  private final ExecutorService executor;
+
+  private final PinningTrustManager trustManager;
+
+  private final Duration readTimeout;
+
+  public JdkHttpTransport(Config config) {
+    trustManager = new PinningTrustManager();
+    trustManager.pin(config);
+
+    executor = Executors.newCachedThreadPool(r -> {
+      Thread thread = new Thread(r, "acme-http-" + THREADS.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    HttpClient.Builder builder = HttpClient.newBuilder()
+      .followRedirects(HttpClient.Redirect.NEVER)
+      .version(config.getHttpSettings().getHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+      .sslContext(sslContext(config))
+      .executor(executor);
+    if (config.getHttpSettings().getConnectTimeout() > 0) {
+      builder.connectTimeout(Duration.ofSeconds(config.getHttpSettings().getConnectTimeout()));
+    }
+    httpClient = builder.build();
+
+    readTimeout = config.getHttpSettings().getReadTimeout() > 0 ? Duration.ofSeconds(config.getHttpSettings().getReadTimeout()) : null;
+  }
+
+  public HttpClient getHttpClient() {
+    return httpClient;
+  }
+
+  @Override
+  public HttpResponse execute(HttpRequest request) throws IOException {
+    try {
+      return new JdkHttpResponse(httpClient.send(toRequest(request), java.net.http.HttpResponse.BodyHandlers.ofInputStream()));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    }
+  }
+
+  @Override
+  public CompletableFuture<HttpResponse> executeAsync(HttpRequest request) {
+    CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+    httpClient.sendAsync(toRequest(request), java.net.http.HttpResponse.BodyHandlers.ofInputStream()).whenComplete((response, e) -> {
+      if (e != null) {
+        future.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+      } else {
+        future.complete(new JdkHttpResponse(response));
+      }
+    });
+    return future;
+  }
+
+  /**
+   * The JDK client can't share its connections with another client, so every server is talked
+   * to through this one - only its certificate pins are added.
+   */
+  @Override
+  public HttpTransport forServer(Config config) {
+    trustManager.pin(config);
+    return new HttpTransport() {
+      @Override
+      public HttpResponse execute(HttpRequest request) throws IOException {
+        return JdkHttpTransport.this.execute(request);
+      }
+
+      @Override
+      public CompletableFuture<HttpResponse> executeAsync(HttpRequest request) {
+        return JdkHttpTransport.this.executeAsync(request);
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  @Override
+  public void close() {
+    executor.shutdown();
+  }
+
+  private java.net.http.HttpRequest toRequest(HttpRequest request) {
+    java.net.http.HttpRequest.Builder builder = java.net.http.HttpRequest.newBuilder(URI.create(request.getUrl()));
+    for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+      builder.header(header.getKey(), header.getValue());
+    }
+    switch (request.getMethod()) {
+      case "HEAD":
+        builder.method("HEAD", java.net.http.HttpRequest.BodyPublishers.noBody());
+        break;
+      case "POST":
+        builder.header("Content-Type", request.getContentType())
+          .POST(java.net.http.HttpRequest.BodyPublishers.ofByteArray(request.getBody()));
+        break;
+      default:
+        builder.GET();
+    }
+    if (readTimeout != null) {
+      builder.timeout(readTimeout);
+    }
+    return builder.build();
+  }
+
+  private SSLContext sslContext(Config config) {
+    try {
+      SSLContext sslContext = SSLContext.getInstance("TLS");
+      sslContext.init(null, new TrustManager[]{trustManager}, null);
+      if (config.getHttpSettings().getTlsSessionCacheSize() != null) {
+        sslContext.getClientSessionContext().setSessionCacheSize(config.getHttpSettings().getTlsSessionCacheSize());
+      }
+      return sslContext;
+    } catch (GeneralSecurityException e) {
+      throw ACMEClientException.launderThrowable(e);
+    }
+  }
+
+  private static final class JdkHttpResponse implements HttpResponse {
+
+    private final java.net.http.HttpResponse<InputStream> response;
+
+    private JdkHttpResponse(java.net.http.HttpResponse<InputStream> response) {
+      this.response = response;
+    }
+
+    @Override
+    public int code() {
+      return response.statusCode();
+    }
+
+    @Override
+    public String message() {
+      return "";
+    }
+
+    @Override
+    public String header(String name) {
+      return response.headers().firstValue(name).orElse(null);
+    }
+
+    @Override
+    public List<String> headers(String name) {
+      return response.headers().allValues(name);
+    }
+
+    @Override
+    public String url() {
+      return response.request().uri().toString();
+    }
+
+    @Override
+    public InputStream byteStream() {
+      return response.body();
+    }
+
+    @Override
+    public String string() throws IOException {
+      try (InputStream body = response.body()) {
+        return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+      }
+    }
+
+    @Override
+    public void close() {
+      try {
+        response.body().close();
+      } catch (IOException e) {
+        // Nothing left to read, and nothing to be done about it.
+      }
+    }
+  }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.transport.jdk;
+
+import io.fabric8.acme.client.ACMEClientException;
+import io.fabric8.acme.client.Config;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The platform's default trust checks, followed by the same certificate pinning as OkHttp: at
+ * least one certificate the server presents has to have a public key matching one of the
+ * {@code sha256/} or {@code sha1/} pins for its host.
+ */
+class PinningTrustManager extends X509ExtendedTrustManager {
+
+  private final X509ExtendedTrustManager delegate;
+
+  private final ConcurrentMap<String, Set<String>> pins = new ConcurrentHashMap<>();
+
+  PinningTrustManager() {
+    this(defaultTrustManager());
+  }
+
+  PinningTrustManager(X509ExtendedTrustManager delegate) {
+    this.delegate = delegate;
+  }
+
+  private static X509ExtendedTrustManager defaultTrustManager() {
+    try {
+      TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+      factory.init((KeyStore) null);
+      X509ExtendedTrustManager trustManager = null;
+      for (TrustManager candidate : factory.getTrustManagers()) {
+        if (candidate instanceof X509ExtendedTrustManager) {
+          trustManager = (X509ExtendedTrustManager) candidate;
+        }
+      }
+      if (trustManager == null) {
+        throw new ACMEClientException("No X509 trust manager available");
+      }
+      return trustManager;
+    } catch (GeneralSecurityException e) {
+      throw ACMEClientException.launderThrowable(e);
+    }
+  }
+
+  void pin(Config config) {
+    if (config.getPins() != null && 0 < config.getPins().length) {
+      for (String pin : config.getPins()) {
+        if (!pin.startsWith("sha256/") && !pin.startsWith("sha1/")) {
+          throw new ACMEClientException("configError", "Pins must start with 'sha256/' or 'sha1/': " + pin);
+        }
+      }
+      pins.computeIfAbsent(config.getServer().getHost().toLowerCase(Locale.ROOT), host -> ConcurrentHashMap.newKeySet())
+        .addAll(Arrays.asList(config.getPins()));
+    }
+  }
+
+  @Override
+  public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+    delegate.checkServerTrusted(chain, authType, engine);
+    checkPins(chain, engine != null ? engine.getPeerHost() : null);
+  }
+
+  @Override
+  public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+    delegate.checkServerTrusted(chain, authType, socket);
+    checkPins(chain, peerHost(socket));
+  }
+
+  /**
+   * Without the connection there is no telling which host's pins apply, so once anything is
+   * pinned this fails rather than skipping the pin check.
+   */
+  @Override
+  public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+    delegate.checkServerTrusted(chain, authType);
+    checkPins(chain, null);
+  }
+
+  @Override
+  public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+    delegate.checkClientTrusted(chain, authType, engine);
+  }
+
+  @Override
+  public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+    delegate.checkClientTrusted(chain, authType, socket);
+  }
+
+  @Override
+  public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+    delegate.checkClientTrusted(chain, authType);
+  }
+
+  @Override
+  public X509Certificate[] getAcceptedIssuers() {
+    return delegate.getAcceptedIssuers();
+  }
+
+  // The host the client asked to connect to, as the SSLEngine reports it - not a reverse lookup of
+  // the address, which may name some other host.
+  private static String peerHost(Socket socket) {
+    if (!(socket instanceof SSLSocket)) {
+      return null;
+    }
+    SSLSession session = ((SSLSocket) socket).getHandshakeSession();
+    return session != null ? session.getPeerHost() : null;
+  }
+
+  private void checkPins(X509Certificate[] chain, String host) throws CertificateException {
+    if (host == null) {
+      if (!pins.isEmpty()) {
+        throw new CertificateException("Certificate pinning failure: cannot tell which host's pins apply");
+      }
+      return;
+    }
+    Set<String> hostPins = pins.get(host.toLowerCase(Locale.ROOT));
+    if (hostPins == null || hostPins.isEmpty()) {
+      return;
+    }
+
+    Set<String> presented = new HashSet<>();
+    for (X509Certificate certificate : chain) {
+      byte[] publicKey = certificate.getPublicKey().getEncoded();
+      presented.add("sha256/" + hash("SHA-256", publicKey));
+      presented.add("sha1/" + hash("SHA-1", publicKey));
+    }
+    for (String pin : hostPins) {
+      if (presented.contains(pin)) {
+        return;
+      }
+    }
+    throw new CertificateException("Certificate pinning failure for " + host + ": none of " + presented + " is pinned");
+  }
+
+  private static String hash(String algorithm, byte[] data) throws CertificateException {
+    try {
+      return Base64.getEncoder().encodeToString(MessageDigest.getInstance(algorithm).digest(data));
+    } catch (GeneralSecurityException e) {
+      throw new CertificateException(e);
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.transport.jdk;
+
+import io.fabric8.acme.client.ConfigBuilder;
+import io.fabric8.acme.client.DefaultACMEClient;
+import io.fabric8.acme.client.fakeserver.FakeACMEServer;
+import io.fabric8.acme.client.fakeserver.FakeServerConfigBuilder;
+import io.fabric8.acme.client.model.Authorization;
+import io.fabric8.acme.client.model.Certificate;
+import io.fabric8.acme.client.model.NewAuthorizationBuilder;
+import io.fabric8.acme.client.model.NewCertificate;
+import io.fabric8.acme.client.model.PemCertificateSink;
+import io.fabric8.acme.client.model.Registration;
+import io.fabric8.acme.client.model.Status;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.security.KeyPairGenerator;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class JdkHttpTransportTest {
+
+  @Test
+  public void testAuthorizationFlow() throws Exception {
+    try (FakeACMEServer server = new FakeACMEServer(new FakeServerConfigBuilder().withProcessingPolls(1).build()).start();
+         DefaultACMEClient client = newClient(server)) {
+      Registration reg = client.registration().createNew().addToContact("mailto", "noone@nowhere.com").withAgreeToTerms(true).send();
+      assertNotNull(reg.getLocation());
+      assertEquals(reg.getLocation(), client.registration().get().getLocation());
+
+      Authorization authz = client.async().authorization().create(new NewAuthorizationBuilder().withNewIdentifier("dns", "fabric8.io").build()).get(30, TimeUnit.SECONDS);
+      assertEquals(Status.PENDING, authz.getStatus());
+
+      client.challenges().use(authz.getChallenges().get(0)).ready();
+      authz = client.async().authorizationPoller().poll(authz.getLocation()).get(30, TimeUnit.SECONDS);
+      assertEquals(Status.VALID, authz.getStatus());
+
+      Certificate certificate = client.certificates().createNew().withCsr(NewCertificate.encodeCsr(new byte[]{1, 2, 3})).send();
+      ByteArrayOutputStream pem = new ByteArrayOutputStream();
+      client.certificates().at(certificate.getLocation()).download(new PemCertificateSink(pem));
+      assertEquals(2, pem.toString("US-ASCII").split("-----BEGIN CERTIFICATE-----").length - 1);
+    }
+  }
+
+  private static DefaultACMEClient newClient(FakeACMEServer server) throws Exception {
+    return new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(server.getDirectoryUrl())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .withTransportFactory(JdkHttpTransport::new)
+        .build());
+  }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.transport.jdk;
+
+import io.fabric8.acme.client.Config;
+import io.fabric8.acme.client.ConfigBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+
+public class PinningTrustManagerTest {
+
+  private static final char[] PASSWORD = "changeit".toCharArray();
+
+  private KeyStore keyStore;
+
+  private X509Certificate certificate;
+
+  private SSLServerSocket serverSocket;
+
+  @Before
+  public void setUp() throws Exception {
+    keyStore = KeyStore.getInstance("PKCS12");
+    try (InputStream in = getClass().getResourceAsStream("/localhost.p12")) {
+      keyStore.load(in, PASSWORD);
+    }
+    certificate = (X509Certificate) keyStore.getCertificate("localhost");
+
+    KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    keyManagers.init(keyStore, PASSWORD);
+    SSLContext serverContext = SSLContext.getInstance("TLS");
+    serverContext.init(keyManagers.getKeyManagers(), null, null);
+    serverSocket = (SSLServerSocket) serverContext.getServerSocketFactory().createServerSocket(0);
+
+    Thread acceptor = new Thread(() -> {
+      while (!serverSocket.isClosed()) {
+        try (SSLSocket socket = (SSLSocket) serverSocket.accept()) {
+          socket.startHandshake();
+        } catch (Exception e) {
+          // The client rejecting the certificate fails the handshake here too.
+        }
+      }
+    }, "pinning-test-server");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    serverSocket.close();
+  }
+
+  @Test
+  public void testMatchingPinPasses() throws Exception {
+    PinningTrustManager trustManager = newTrustManager();
+    trustManager.pin(config("localhost", "sha256/" + pin("SHA-256")));
+    handshake(trustManager);
+
+    trustManager = newTrustManager();
+    trustManager.pin(config("localhost", "sha1/" + pin("SHA-1")));
+    handshake(trustManager);
+  }
+
+  @Test(expected = SSLHandshakeException.class)
+  public void testWrongPinFailsHandshake() throws Exception {
+    PinningTrustManager trustManager = newTrustManager();
+    trustManager.pin(config("localhost", "sha256/AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA="));
+    handshake(trustManager);
+  }
+
+  @Test
+  public void testPinsForAnotherHostAreIgnored() throws Exception {
+    PinningTrustManager trustManager = newTrustManager();
+    trustManager.pin(config("acme.example.com", "sha256/AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA="));
+    handshake(trustManager);
+  }
+
+  @Test
+  public void testCheckWithoutConnectionFailsOnceAnythingIsPinned() throws Exception {
+    X509Certificate[] chain = new X509Certificate[]{certificate};
+    PinningTrustManager trustManager = newTrustManager();
+    trustManager.checkServerTrusted(chain, "RSA");
+
+    trustManager.pin(config("localhost", "sha256/" + pin("SHA-256")));
+    try {
+      trustManager.checkServerTrusted(chain, "RSA");
+      throw new AssertionError("Expected the pin check to fail without a connection");
+    } catch (CertificateException expected) {
+      // There is no host to look pins up for, so a pinned trust manager has to refuse.
+    }
+  }
+
+  private PinningTrustManager newTrustManager() throws Exception {
+    TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+    factory.init(keyStore);
+    for (TrustManager candidate : factory.getTrustManagers()) {
+      if (candidate instanceof X509ExtendedTrustManager) {
+        return new PinningTrustManager((X509ExtendedTrustManager) candidate);
+      }
+    }
+    throw new AssertionError("No X509 trust manager available");
+  }
+
+  private Config config(String host, String... pins) throws Exception {
+    return new ConfigBuilder()
+      .withServer(new URL("https://" + host + "/directory"))
+      .withKeyPair(KeyPairGenerator.getInstance("EC").generateKeyPair())
+      .withPins(pins)
+      .build();
+  }
+
+  private String pin(String algorithm) throws Exception {
+    return Base64.getEncoder().encodeToString(MessageDigest.getInstance(algorithm).digest(certificate.getPublicKey().getEncoded()));
+  }
+
+  private void handshake(PinningTrustManager trustManager) throws Exception {
+    SSLContext context = SSLContext.getInstance("TLS");
+    context.init(null, new TrustManager[]{trustManager}, null);
+    try (SSLSocket socket = (SSLSocket) context.getSocketFactory().createSocket("localhost", serverSocket.getLocalPort())) {
+      socket.startHandshake();
+    }
+  }
+}
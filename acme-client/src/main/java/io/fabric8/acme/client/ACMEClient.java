@@ -16,17 +16,22 @@
 package io.fabric8.acme.client;
 
 import io.fabric8.acme.client.dsl.CreateLocatable;
+import io.fabric8.acme.client.dsl.Downloadable;
 import io.fabric8.acme.client.dsl.GetCreateUpdateEditKeyUpdateRecoverable;
 import io.fabric8.acme.client.dsl.Gettable;
+import io.fabric8.acme.client.dsl.IssueCreateLocatable;
 import io.fabric8.acme.client.dsl.PrepareReadyable;
 import io.fabric8.acme.client.dsl.UseLocatable;
 import io.fabric8.acme.client.model.Authorization;
+import io.fabric8.acme.client.model.Certificate;
 import io.fabric8.acme.client.model.Challenge;
 import io.fabric8.acme.client.model.Directory;
 import io.fabric8.acme.client.model.NewAuthorization;
+import io.fabric8.acme.client.model.NewCertificate;
 import io.fabric8.acme.client.model.NewRegistration;
 import io.fabric8.acme.client.model.Registration;
 import io.fabric8.acme.client.model.SendableNewAuthorization;
+import io.fabric8.acme.client.model.SendableNewCertificate;
 import io.fabric8.acme.client.model.SendableNewRegistration;
 import io.fabric8.acme.client.model.SendableRecoveryRegistration;
 import io.fabric8.acme.client.model.SendableRegistration;
@@ -41,6 +46,8 @@ public interface ACMEClient extends AutoCloseable{
 
   UseLocatable<Challenge, PrepareReadyable<Challenge>> challenges();
 
+  IssueCreateLocatable<Certificate, NewCertificate, SendableNewCertificate, Downloadable<Certificate>> certificates();
+
   void close();
 
 }
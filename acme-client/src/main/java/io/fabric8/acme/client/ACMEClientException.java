@@ -30,6 +30,7 @@ public class ACMEClientException extends RuntimeException {
   private String type;
   private String title;
   private String instance;
+  private String retryAfter;
 
   public ACMEClientException(String message, Throwable t) {
     super(message, t);
@@ -53,6 +54,13 @@ public class ACMEClientException extends RuntimeException {
   }
 
   public ACMEClientException(int code, String status, JSONObject jsonObject) {
+    this(code, status, jsonObject, null);
+  }
+
+  /**
+   * @param retryAfter the Retry-After header sent with the error, or null.
+   */
+  public ACMEClientException(int code, String status, JSONObject jsonObject, String retryAfter) {
     this(
       code,
       status,
@@ -61,9 +69,14 @@ public class ACMEClientException extends RuntimeException {
       (String) jsonObject.get("detail"),
       (String) jsonObject.get("instance")
     );
+    this.retryAfter = retryAfter;
   }
 
   public ACMEClientException(int code, String status, String err) {
+    this(code, status, err, null);
+  }
+
+  public ACMEClientException(int code, String status, String err, String retryAfter) {
     this(
       code,
       status,
@@ -72,6 +85,7 @@ public class ACMEClientException extends RuntimeException {
       err,
       null
     );
+    this.retryAfter = retryAfter;
   }
 
   private static Map<String, String> errorCodeMap() {
@@ -122,4 +136,11 @@ public class ACMEClientException extends RuntimeException {
   public int getCode() {
     return code;
   }
+
+  /**
+   * The Retry-After header the server sent with the error, if any.
+   */
+  public String getRetryAfter() {
+    return retryAfter;
+  }
 }
@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import io.fabric8.acme.client.internal.AccountCredentials;
+import io.fabric8.acme.client.internal.AuthorizationPoller;
+import io.fabric8.acme.client.internal.DirectoryProvider;
+import io.fabric8.acme.client.internal.KeyPairPool;
+import io.fabric8.acme.client.internal.Nonce;
+import io.fabric8.acme.client.internal.RateLimiter;
+import io.fabric8.acme.client.transport.HttpTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hands out lightweight clients for many accounts that share a single transport.
+ * <p>
+ * All clients from the pool share one HTTP transport, and so its connections and threads.
+ * Clients for the same server additionally share a nonce pool, the directory, a rate limiter, the
+ * authorization poller (and so its poll rate cap) and pre-generated certificate key pairs, so only
+ * the account key and its signer are per client. HTTP settings (including the transport factory)
+ * are taken from the first config the pool sees, and nonce, directory, rate limit, poll rate and
+ * pinning settings from the first config for each server. A later config that differs in those
+ * settings is logged and its settings ignored.
+ * <p>
+ * Once the pool is closed it hands out no more clients.
+ */
+public class ACMEClientPool implements AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(ACMEClientPool.class);
+
+  private final ConcurrentMap<String, Shared> servers = new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<String, KeyPairPool> keyPairPools = new ConcurrentHashMap<>();
+
+  private HttpTransport base;
+
+  private String baseSettings;
+
+  private final AtomicBoolean warnedBaseSettings = new AtomicBoolean();
+
+  private volatile boolean closed;
+
+  /**
+   * Returns a client for the account in the config. Clients are cheap to create, and closing
+   * one leaves the shared transport alone.
+   *
+   * @throws ACMEClientException if the pool has been closed.
+   */
+  public DefaultACMEClient client(Config config) {
+    if (closed) {
+      throw closedException();
+    }
+    return new DefaultACMEClient(config, this);
+  }
+
+  /**
+   * Number of servers the pool has set up a transport for.
+   */
+  public int getServerCount() {
+    return servers.size();
+  }
+
+  Shared shared(Config config) {
+    String settings = serverSettings(config);
+    Shared shared = servers.computeIfAbsent(config.getServer().toString(), (server) -> {
+      HttpTransport transport = base(config).forServer(config);
+      Nonce nonce = DefaultACMEClient.newNonce(transport, config);
+      DirectoryProvider directory = new DirectoryProvider(
+        transport,
+        nonce,
+        config.getServer(),
+        config.getDirectoryMaxAge(),
+        config.getDirectoryCacheFile()
+      );
+      RateLimiter rateLimiter = new RateLimiter(config.getRateLimits());
+      // Polls are unsigned, so the first account's credentials serve every account.
+      AuthorizationPoller authorizationPoller = new AuthorizationPoller(
+        directory,
+        transport,
+        nonce,
+        new AccountCredentials(config.getKeyPair(), config.getJwsAlgorithm(), config.getSignatureProvider()),
+        config.getMaxAuthorizationPollRate()
+      );
+      return new Shared(transport, nonce, directory, rateLimiter, authorizationPoller, settings);
+    });
+    if (!shared.settings.equals(settings) && shared.warned.compareAndSet(false, true)) {
+      logger.warn("Ignoring differing settings for {} ({}), the pool is already using {}",
+        config.getServer(), settings, shared.settings);
+    }
+    return shared;
+  }
+
+  KeyPairPool keyPairPool(Config config) {
+    String key = config.getCertificateKeyAlgorithm() + "/" + config.getCertificateKeySize() + "/"
+      + config.getKeyPairPoolSize();
+    return keyPairPools.computeIfAbsent(key, (k) -> new KeyPairPool(
+      config.getCertificateKeyAlgorithm(),
+      config.getCertificateKeySize(),
+      config.getKeyPairPoolSize()
+    ).prefill());
+  }
+
+  private synchronized HttpTransport base(Config config) {
+    if (closed) {
+      throw closedException();
+    }
+    String settings = httpSettings(config);
+    if (base == null) {
+      base = config.getTransportFactory().create(config);
+      baseSettings = settings;
+    } else if (!baseSettings.equals(settings) && warnedBaseSettings.compareAndSet(false, true)) {
+      logger.warn("Ignoring differing HTTP settings ({}), the pool is already using {}",
+        settings, baseSettings);
+    }
+    return base;
+  }
+
+  // The settings every client from the pool shares - the transport factory is compared by type,
+  // as a method reference is a new object each time.
+  private static String httpSettings(Config config) {
+    return "transportFactory=" + config.getTransportFactory().getClass().getName()
+      + ", " + config.getHttpSettings();
+  }
+
+  // The settings every client for one server shares.
+  private static String serverSettings(Config config) {
+    return "pins=" + Arrays.toString(config.getPins())
+      + ", noncePoolSize=" + config.getNoncePoolSize()
+      + ", nonceLowWaterMark=" + config.getNonceLowWaterMark()
+      + ", nonceMaxAge=" + config.getNonceMaxAge()
+      + ", maxBadNonceRetries=" + config.getMaxBadNonceRetries()
+      + ", directoryMaxAge=" + config.getDirectoryMaxAge()
+      + ", directoryCacheFile=" + config.getDirectoryCacheFile()
+      + ", rateLimits=" + config.getRateLimits()
+      + ", maxAuthorizationPollRate=" + config.getMaxAuthorizationPollRate();
+  }
+
+  private static ACMEClientException closedException() {
+    return new ACMEClientException("poolError", "Client pool is closed");
+  }
+
+  /**
+   * Releases the shared transport. Clients already handed out can no longer reach the server,
+   * and asking the pool for another client fails.
+   */
+  @Override
+  public synchronized void close() {
+    closed = true;
+    if (base != null) {
+      base.close();
+      base = null;
+    }
+    servers.clear();
+    keyPairPools.clear();
+  }
+
+  static final class Shared {
+
+    final HttpTransport transport;
+
+    final Nonce nonce;
+
+    final DirectoryProvider directory;
+
+    final RateLimiter rateLimiter;
+
+    final AuthorizationPoller authorizationPoller;
+
+    private final String settings;
+
+    private final AtomicBoolean warned = new AtomicBoolean();
+
+    private Shared(
+      HttpTransport transport,
+      Nonce nonce,
+      DirectoryProvider directory,
+      RateLimiter rateLimiter,
+      AuthorizationPoller authorizationPoller,
+      String settings
+    ) {
+      this.transport = transport;
+      this.nonce = nonce;
+      this.directory = directory;
+      this.rateLimiter = rateLimiter;
+      this.authorizationPoller = authorizationPoller;
+      this.settings = settings;
+    }
+  }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import io.fabric8.acme.client.dsl.AsyncCreateLocatable;
+import io.fabric8.acme.client.dsl.AsyncGetCreateUpdateRecoverable;
+import io.fabric8.acme.client.dsl.AsyncPrepareReadyable;
+import io.fabric8.acme.client.dsl.AsyncUseLocatable;
+import io.fabric8.acme.client.dsl.Pollable;
+import io.fabric8.acme.client.model.Authorization;
+import io.fabric8.acme.client.model.Challenge;
+import io.fabric8.acme.client.model.Directory;
+import io.fabric8.acme.client.model.NewAuthorization;
+import io.fabric8.acme.client.model.NewRegistration;
+import io.fabric8.acme.client.model.RecoveryRegistration;
+import io.fabric8.acme.client.model.Registration;
+
+/**
+ * Non-blocking counterpart of {@link ACMEClient}. Requests are queued on the HTTP client's
+ * dispatcher rather than executed on the calling thread, and failures complete the returned
+ * futures exceptionally with an {@link ACMEClientException} as the cause.
+ */
+public interface AsyncACMEClient extends AutoCloseable {
+
+  Directory directory();
+
+  AsyncGetCreateUpdateRecoverable<Registration, NewRegistration, RecoveryRegistration> registration();
+
+  AsyncCreateLocatable<Authorization, NewAuthorization> authorization();
+
+  AsyncUseLocatable<Challenge, AsyncPrepareReadyable<Challenge>> challenges();
+
+  /**
+   * Shared poller that completes once an authorization is valid or invalid.
+   */
+  Pollable<Authorization> authorizationPoller();
+
+  void close();
+
+}
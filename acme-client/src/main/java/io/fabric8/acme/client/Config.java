@@ -16,18 +16,44 @@
 package io.fabric8.acme.client;
 
 import com.nimbusds.jose.JWSAlgorithm;
+import io.fabric8.acme.client.store.AccountStore;
+import io.fabric8.acme.client.transport.HttpTransportFactory;
+import io.fabric8.acme.client.transport.OkHttpTransport;
 import io.sundr.builder.annotations.Buildable;
 
 import java.net.URL;
+import java.nio.file.Path;
 import java.security.KeyPair;
+import java.security.Provider;
 import java.security.interfaces.RSAPrivateKey;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Client settings. The server and account key pair are required; every other setting left null
+ * takes its default.
+ */
 @Buildable(
   generateBuilderPackage = true,
   builderPackage = "io.fabric8.acme.client.builder"
 )
 public class Config {
 
+  public static final String KEY_ALGORITHM_RSA = "RSA";
+
+  public static final String KEY_ALGORITHM_EC = "EC";
+
+  public static final int DEFAULT_NONCE_POOL_SIZE = 10;
+
+  public static final int DEFAULT_MAX_BAD_NONCE_RETRIES = 3;
+
+  public static final int DEFAULT_MAX_AUTHORIZATION_POLL_RATE = 20;
+
+  public static final int DEFAULT_KEY_PAIR_POOL_SIZE = 8;
+
+  public static final long DEFAULT_AUTHORIZATION_CACHE_MARGIN = TimeUnit.HOURS.toSeconds(1);
+
+  public static final int DEFAULT_AUTHORIZATION_CACHE_SIZE = 10000;
+
   private URL server;
 
   private KeyPair keyPair;
@@ -36,7 +62,41 @@ public class Config {
 
   private JWSAlgorithm jwsAlgorithm;
 
-  public Config(URL server, KeyPair keyPair, JWSAlgorithm jwsAlgorithm, String... pins) {
+  private Integer noncePoolSize;
+
+  private Integer nonceLowWaterMark;
+
+  private Long nonceMaxAge;
+
+  private Integer maxBadNonceRetries;
+
+  private Integer maxAuthorizationPollRate;
+
+  private String certificateKeyAlgorithm;
+
+  private Integer certificateKeySize;
+
+  private Integer keyPairPoolSize;
+
+  private Long authorizationCacheMargin;
+
+  private Integer authorizationCacheSize;
+
+  private AccountStore accountStore;
+
+  private Long directoryMaxAge;
+
+  private Path directoryCacheFile;
+
+  private HttpSettings httpSettings;
+
+  private HttpTransportFactory transportFactory;
+
+  private Provider signatureProvider;
+
+  private RateLimits rateLimits;
+
+  public Config(URL server, KeyPair keyPair, JWSAlgorithm jwsAlgorithm, Integer noncePoolSize, Integer nonceLowWaterMark, Long nonceMaxAge, Integer maxBadNonceRetries, Integer maxAuthorizationPollRate, String certificateKeyAlgorithm, Integer certificateKeySize, Integer keyPairPoolSize, Long authorizationCacheMargin, Integer authorizationCacheSize, AccountStore accountStore, Long directoryMaxAge, Path directoryCacheFile, HttpSettings httpSettings, HttpTransportFactory transportFactory, Provider signatureProvider, RateLimits rateLimits, String... pins) {
     if (server == null) {
       throw new ACMEClientException("configError", "Server is required");
     }
@@ -58,6 +118,89 @@ public class Config {
     }
 
     this.pins = pins;
+
+    // Nonce pool sizing - a low-water mark of 0 (the default) disables background refilling
+    // and a max age of 0 (the default) keeps nonces until they are used.
+    if (noncePoolSize != null && noncePoolSize < 1) {
+      throw new ACMEClientException("configError", "Nonce pool size must be at least 1");
+    }
+    this.noncePoolSize = noncePoolSize != null ? noncePoolSize : DEFAULT_NONCE_POOL_SIZE;
+    if (nonceLowWaterMark != null && (nonceLowWaterMark < 0 || nonceLowWaterMark > this.noncePoolSize)) {
+      throw new ACMEClientException("configError", "Nonce low-water mark must be between 0 and the nonce pool size");
+    }
+    this.nonceLowWaterMark = nonceLowWaterMark != null ? nonceLowWaterMark : 0;
+    if (nonceMaxAge != null && nonceMaxAge < 0) {
+      throw new ACMEClientException("configError", "Nonce maximum age cannot be negative");
+    }
+    this.nonceMaxAge = nonceMaxAge != null ? nonceMaxAge : 0L;
+
+    // Requests rejected with badNonce are re-signed and resent up to this many times.
+    if (maxBadNonceRetries != null && maxBadNonceRetries < 0) {
+      throw new ACMEClientException("configError", "Maximum badNonce retries cannot be negative");
+    }
+    this.maxBadNonceRetries = maxBadNonceRetries != null ? maxBadNonceRetries : DEFAULT_MAX_BAD_NONCE_RETRIES;
+
+    // Upper bound on authorization status polls per second across everything the poller watches.
+    if (maxAuthorizationPollRate != null && maxAuthorizationPollRate < 1) {
+      throw new ACMEClientException("configError", "Maximum authorization poll rate must be at least 1");
+    }
+    this.maxAuthorizationPollRate = maxAuthorizationPollRate != null ? maxAuthorizationPollRate : DEFAULT_MAX_AUTHORIZATION_POLL_RATE;
+
+    // Keys for issued certificates, pre-generated into a pool of this size.
+    if (certificateKeyAlgorithm == null || certificateKeyAlgorithm.isEmpty()) {
+      this.certificateKeyAlgorithm = KEY_ALGORITHM_RSA;
+    } else if (KEY_ALGORITHM_RSA.equals(certificateKeyAlgorithm) || KEY_ALGORITHM_EC.equals(certificateKeyAlgorithm)) {
+      this.certificateKeyAlgorithm = certificateKeyAlgorithm;
+    } else {
+      throw new ACMEClientException("configError", "Certificate key algorithm must be RSA or EC");
+    }
+    if ((certificateKeySize != null && certificateKeySize < 1) || (keyPairPoolSize != null && keyPairPoolSize < 1)) {
+      throw new ACMEClientException("configError", "Certificate key size and key pair pool size must be at least 1");
+    }
+    this.certificateKeySize = certificateKeySize != null ? certificateKeySize : defaultCertificateKeySize(this.certificateKeyAlgorithm);
+    this.keyPairPoolSize = keyPairPoolSize != null ? keyPairPoolSize : DEFAULT_KEY_PAIR_POOL_SIZE;
+
+    // Valid authorizations are reused until this many seconds before they expire - a cache
+    // size of 0 disables reuse.
+    if ((authorizationCacheMargin != null && authorizationCacheMargin < 0) || (authorizationCacheSize != null && authorizationCacheSize < 0)) {
+      throw new ACMEClientException("configError", "Authorization cache margin and size cannot be negative");
+    }
+    this.authorizationCacheMargin = authorizationCacheMargin != null ? authorizationCacheMargin : DEFAULT_AUTHORIZATION_CACHE_MARGIN;
+    this.authorizationCacheSize = authorizationCacheSize != null ? authorizationCacheSize : DEFAULT_AUTHORIZATION_CACHE_SIZE;
+
+    // Optional - without a store the registration is looked up on the server every time.
+    this.accountStore = accountStore;
+
+    // The directory is discovered on first use. Sharing is opt-in: with a maximum age it is
+    // shared by all clients for the same server and refreshed in the background once older than
+    // that, while the default of 0 fetches it once per client. Persisting it lets a restart skip
+    // waiting on the server.
+    if (directoryMaxAge != null && directoryMaxAge < 0) {
+      throw new ACMEClientException("configError", "Directory maximum age cannot be negative");
+    }
+    this.directoryMaxAge = directoryMaxAge != null ? directoryMaxAge : 0L;
+    this.directoryCacheFile = directoryCacheFile;
+
+    // HTTP transport tuning - connection reuse, HTTP/2, timeouts, concurrency and TLS session
+    // caching - all defaulted when left out.
+    this.httpSettings = httpSettings != null ? httpSettings : new HttpSettings();
+
+    // The HTTP client the settings above are applied to - OkHttp unless another is plugged in.
+    this.transportFactory = transportFactory != null ? transportFactory : OkHttpTransport::new;
+
+    // The JCA provider requests are signed with, or null for the platform's preferred one.
+    this.signatureProvider = signatureProvider;
+
+    // Optional - without limits requests only hold back after the server answers rateLimited.
+    this.rateLimits = rateLimits;
+  }
+
+  public Config(URL server, KeyPair keyPair, JWSAlgorithm jwsAlgorithm, String... pins) {
+    this(server, keyPair, jwsAlgorithm, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, pins);
+  }
+
+  public static int defaultCertificateKeySize(String algorithm) {
+    return KEY_ALGORITHM_EC.equals(algorithm) ? 256 : 2048;
   }
 
   public URL getServer() {
@@ -75,4 +218,76 @@ public class Config {
   public JWSAlgorithm getJwsAlgorithm() {
     return jwsAlgorithm;
   }
+
+  public Integer getNoncePoolSize() {
+    return noncePoolSize;
+  }
+
+  public Integer getNonceLowWaterMark() {
+    return nonceLowWaterMark;
+  }
+
+  public Long getNonceMaxAge() {
+    return nonceMaxAge;
+  }
+
+  public Integer getMaxBadNonceRetries() {
+    return maxBadNonceRetries;
+  }
+
+  public Integer getMaxAuthorizationPollRate() {
+    return maxAuthorizationPollRate;
+  }
+
+  public String getCertificateKeyAlgorithm() {
+    return certificateKeyAlgorithm;
+  }
+
+  public Integer getCertificateKeySize() {
+    return certificateKeySize;
+  }
+
+  public Integer getKeyPairPoolSize() {
+    return keyPairPoolSize;
+  }
+
+  public Long getAuthorizationCacheMargin() {
+    return authorizationCacheMargin;
+  }
+
+  public Integer getAuthorizationCacheSize() {
+    return authorizationCacheSize;
+  }
+
+  public AccountStore getAccountStore() {
+    return accountStore;
+  }
+
+  /**
+   * Seconds the directory is shared between clients for the same server before being
+   * refreshed, or 0 (the default) for each client to fetch its own once.
+   */
+  public Long getDirectoryMaxAge() {
+    return directoryMaxAge;
+  }
+
+  public Path getDirectoryCacheFile() {
+    return directoryCacheFile;
+  }
+
+  public HttpSettings getHttpSettings() {
+    return httpSettings;
+  }
+
+  public HttpTransportFactory getTransportFactory() {
+    return transportFactory;
+  }
+
+  public Provider getSignatureProvider() {
+    return signatureProvider;
+  }
+
+  public RateLimits getRateLimits() {
+    return rateLimits;
+  }
 }
@@ -15,133 +15,253 @@
  */
 package io.fabric8.acme.client;
 
-import com.nimbusds.jose.JOSEException;
-import com.nimbusds.jose.jwk.JWK;
 import io.fabric8.acme.client.dsl.CreateLocatable;
+import io.fabric8.acme.client.dsl.Downloadable;
 import io.fabric8.acme.client.dsl.GetCreateUpdateEditKeyUpdateRecoverable;
 import io.fabric8.acme.client.dsl.Gettable;
+import io.fabric8.acme.client.dsl.IssueCreateLocatable;
+import io.fabric8.acme.client.dsl.Pollable;
 import io.fabric8.acme.client.dsl.PrepareReadyable;
 import io.fabric8.acme.client.dsl.UseLocatable;
+import io.fabric8.acme.client.internal.AccountCredentials;
+import io.fabric8.acme.client.internal.AuthorizationCache;
 import io.fabric8.acme.client.internal.AuthorizationOperations;
+import io.fabric8.acme.client.internal.AuthorizationPoller;
+import io.fabric8.acme.client.internal.CertificateOperations;
 import io.fabric8.acme.client.internal.ChallengeOperations;
-import io.fabric8.acme.client.internal.HttpClientUtils;
-import io.fabric8.acme.client.internal.JWKUtils;
+import io.fabric8.acme.client.internal.DirectoryProvider;
+import io.fabric8.acme.client.internal.KeyPairPool;
 import io.fabric8.acme.client.internal.Nonce;
+import io.fabric8.acme.client.internal.RateLimiter;
 import io.fabric8.acme.client.internal.RegistrationOperations;
-import io.fabric8.acme.client.internal.Signer;
+import io.fabric8.acme.client.internal.SingleFlight;
 import io.fabric8.acme.client.model.Authorization;
+import io.fabric8.acme.client.model.Certificate;
 import io.fabric8.acme.client.model.Challenge;
 import io.fabric8.acme.client.model.Directory;
+import io.fabric8.acme.client.model.Identifier;
 import io.fabric8.acme.client.model.NewAuthorization;
+import io.fabric8.acme.client.model.NewCertificate;
 import io.fabric8.acme.client.model.NewRegistration;
 import io.fabric8.acme.client.model.Registration;
 import io.fabric8.acme.client.model.SendableNewAuthorization;
+import io.fabric8.acme.client.model.SendableNewCertificate;
 import io.fabric8.acme.client.model.SendableNewRegistration;
 import io.fabric8.acme.client.model.SendableRecoveryRegistration;
 import io.fabric8.acme.client.model.SendableRegistration;
-import net.minidev.json.parser.JSONParser;
-import net.minidev.json.parser.ParseException;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
-
-import java.io.IOException;
-import java.io.InputStream;
+import io.fabric8.acme.client.transport.HttpTransport;
+
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.KeyPair;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class DefaultACMEClient implements ACMEClient {
 
-  private JSONParser jsonParser = new JSONParser(JSONParser.MODE_JSON_SIMPLE);
-
-  private OkHttpClient okHttpClient;
+  private HttpTransport transport;
 
   private Config config;
 
-  private Directory directory;
-
-  private Signer signer;
+  private DirectoryProvider directory;
 
-  private JWK jwk;
+  private AccountCredentials credentials;
 
   private Nonce nonce;
 
+  private RateLimiter rateLimiter;
+
+  private AuthorizationPoller authorizationPoller;
+
+  private KeyPairPool keyPairPool;
+
+  private final ACMEClientPool pool;
+
+  private final SingleFlight<Identifier, Authorization> pendingAuthorizations = new SingleFlight<>();
+
+  private final AuthorizationCache validAuthorizations;
+
   public DefaultACMEClient(String server, KeyPair keyPair) throws MalformedURLException {
     this(new ConfigBuilder().withServer(new URL(server)).withKeyPair(keyPair).build());
   }
 
   public DefaultACMEClient(Config config) {
+    this(config, null);
+  }
+
+  /**
+   * @param pool if not null, the HTTP transport, nonce pool, directory, rate limiter,
+   *             authorization poller and certificate key pairs are shared with every other client
+   *             from the pool for the same server, and only the account key is this client's own.
+   */
+  DefaultACMEClient(Config config, ACMEClientPool pool) {
     this.config = config;
+    this.pool = pool;
+    this.validAuthorizations = new AuthorizationCache(config.getAuthorizationCacheMargin(), config.getAuthorizationCacheSize());
 
-    // Configure the HTTP client.
-    okHttpClient = HttpClientUtils.newClient(config);
+    // Configure the signer, the JWK and its thumbprint - replaced as one on key rollover.
+    credentials = new AccountCredentials(config.getKeyPair(), config.getJwsAlgorithm(), config.getSignatureProvider());
 
-    try {
-      // Configure the signer.
-      signer = new Signer(config.getKeyPair().getPrivate());
+    if (pool != null) {
+      ACMEClientPool.Shared shared = pool.shared(config);
+      transport = shared.transport;
+      nonce = shared.nonce;
+      directory = shared.directory;
+      rateLimiter = shared.rateLimiter;
+      authorizationPoller = shared.authorizationPoller;
+      return;
+    }
 
-      // Get the JWK.
-      jwk = JWKUtils.jwkFromPublicKey(config.getKeyPair().getPublic());
+    // Configure the HTTP transport.
+    transport = config.getTransportFactory().create(config);
 
-      // Set up the nonce holder/extractor
-      nonce = new Nonce(okHttpClient, config.getServer());
+    // Set up the nonce holder/extractor
+    nonce = newNonce(transport, config);
 
-      // Validate this is an ACME server by retrieving the directory -
-      // see https://ietf-wg-acme.github.io/acme/#rfc.section.6.2.
-      Request request = new Request.Builder()
-        .url(config.getServer())
-        .build();
+    // The directory is only retrieved - validating this is an ACME server - once it is first
+    // needed, so creating a client never waits on the server.
+    directory = new DirectoryProvider(transport, nonce, config.getServer(), config.getDirectoryMaxAge(), config.getDirectoryCacheFile());
 
-      Response response = okHttpClient.newCall(request).execute();
+    rateLimiter = new RateLimiter(config.getRateLimits());
+  }
 
-      if (!response.isSuccessful()) {
-        throw new ACMEClientException(response.code(), response.message(), response.body().string());
-      }
+  static Nonce newNonce(HttpTransport transport, Config config) {
+    return new Nonce(
+      transport,
+      config.getServer(),
+      config.getNoncePoolSize(),
+      config.getNonceLowWaterMark(),
+      config.getNonceMaxAge(),
+      TimeUnit.SECONDS,
+      config.getMaxBadNonceRetries()
+    );
+  }
 
-      try (InputStream body = response.body().byteStream()) {
-        Map<String, String> directoryResponse = (Map<String, String>) jsonParser.parse(body);
-        this.directory = new Directory(directoryResponse);
-      }
+  @Override
+  public Directory directory() {
+    return directory.get();
+  }
 
-      nonce.extractNonce(response);
+  public Nonce getNonce() {
+    return nonce;
+  }
+
+  /**
+   * Non-blocking view of this client, sharing its HTTP transport, nonce pool and account key.
+   */
+  public AsyncACMEClient async() {
+    return new DefaultAsyncACMEClient(this);
+  }
 
-    } catch (IOException | ParseException | JOSEException e) {
-      throw ACMEClientException.launderThrowable(e);
+  synchronized AuthorizationPoller getAuthorizationPoller() {
+    if (authorizationPoller == null) {
+      authorizationPoller = new AuthorizationPoller(directory, transport, nonce, credentials, config.getMaxAuthorizationPollRate());
     }
+    return authorizationPoller;
   }
 
-  @Override
-  public Directory directory() {
+  /**
+   * Polls on the (possibly shared) authorization poller, remembering the authorizations that
+   * become valid for this account. Cancelling a returned future cancels the poll behind it.
+   */
+  Pollable<Authorization> authorizationPoller() {
+    AuthorizationPoller poller = getAuthorizationPoller();
+    return (location) -> {
+      CompletableFuture<Authorization> polled = poller.poll(location);
+      CompletableFuture<Authorization> result = polled.thenApply((authorization) -> {
+        validAuthorizations.put(credentials.get().getAccountKey(), authorization);
+        return authorization;
+      });
+      result.whenComplete((authorization, throwable) -> {
+        if (result.isCancelled()) {
+          polled.cancel(false);
+        }
+      });
+      return result;
+    };
+  }
+
+  /**
+   * Pre-generated certificate key pairs, created and started filling the first time a
+   * certificate is issued.
+   */
+  public synchronized KeyPairPool getKeyPairPool() {
+    if (keyPairPool == null && pool != null) {
+      keyPairPool = pool.keyPairPool(config);
+    } else if (keyPairPool == null) {
+      keyPairPool = new KeyPairPool(config.getCertificateKeyAlgorithm(), config.getCertificateKeySize(), config.getKeyPairPoolSize()).prefill();
+    }
+    return keyPairPool;
+  }
+
+  /**
+   * New authorizations currently being requested, shared by the blocking and non-blocking
+   * clients so that concurrent requests for the same identifier are sent only once.
+   */
+  public SingleFlight<Identifier, Authorization> getPendingAuthorizations() {
+    return pendingAuthorizations;
+  }
+
+  /**
+   * Valid authorizations this client has seen, reused by {@code authorization().createNew()}
+   * until shortly before they expire.
+   */
+  public AuthorizationCache getValidAuthorizations() {
+    return validAuthorizations;
+  }
+
+  /**
+   * Paces new registrations, authorizations and certificates, shared by the blocking and
+   * non-blocking clients.
+   */
+  public RateLimiter getRateLimiter() {
+    return rateLimiter;
+  }
+
+  DirectoryProvider getDirectoryProvider() {
     return directory;
   }
 
+  HttpTransport getTransport() {
+    return transport;
+  }
+
+  Config getConfig() {
+    return config;
+  }
+
+  AccountCredentials getCredentials() {
+    return credentials;
+  }
+
   @Override
   public GetCreateUpdateEditKeyUpdateRecoverable<Registration, NewRegistration, SendableNewRegistration, SendableRegistration, SendableRecoveryRegistration> registration() {
-    return new RegistrationOperations(directory, okHttpClient, nonce, config.getJwsAlgorithm(), signer, jwk);
+    return new RegistrationOperations(directory, transport, nonce, credentials, config.getAccountStore(), rateLimiter);
   }
 
   @Override
   public CreateLocatable<Authorization, NewAuthorization, SendableNewAuthorization, Gettable<Authorization>> authorization() {
-    return new AuthorizationOperations(directory, okHttpClient, nonce, config.getJwsAlgorithm(), signer, jwk);
+    return new AuthorizationOperations(directory, transport, nonce, credentials, pendingAuthorizations, validAuthorizations, rateLimiter);
   }
 
   @Override
   public UseLocatable<Challenge, PrepareReadyable<Challenge>> challenges() {
-    return new ChallengeOperations(directory, okHttpClient, nonce, config.getJwsAlgorithm(), signer, jwk);
+    return new ChallengeOperations(directory, transport, nonce, credentials);
   }
 
+  @Override
+  public IssueCreateLocatable<Certificate, NewCertificate, SendableNewCertificate, Downloadable<Certificate>> certificates() {
+    return new CertificateOperations(directory, transport, nonce, credentials, this::getKeyPairPool, rateLimiter);
+  }
+
+  /**
+   * Releases the HTTP transport's connections and threads - unless the client came from an
+   * {@link ACMEClientPool}, whose transport is only released when the pool is closed.
+   */
   @Override
   public void close() {
-    if (okHttpClient.connectionPool() != null) {
-      okHttpClient.connectionPool().evictAll();
-    }
-    if (okHttpClient.dispatcher() != null &&
-      okHttpClient.dispatcher().executorService() != null &&
-      !okHttpClient.dispatcher().executorService().isShutdown()
-      ) {
-      okHttpClient.dispatcher().executorService().shutdown();
+    if (pool == null) {
+      transport.close();
     }
   }
 
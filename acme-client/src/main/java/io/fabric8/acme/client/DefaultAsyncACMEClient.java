@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import io.fabric8.acme.client.dsl.AsyncCreateLocatable;
+import io.fabric8.acme.client.dsl.AsyncGetCreateUpdateRecoverable;
+import io.fabric8.acme.client.dsl.AsyncPrepareReadyable;
+import io.fabric8.acme.client.dsl.AsyncUseLocatable;
+import io.fabric8.acme.client.dsl.Pollable;
+import io.fabric8.acme.client.internal.AsyncAuthorizationOperations;
+import io.fabric8.acme.client.internal.AsyncChallengeOperations;
+import io.fabric8.acme.client.internal.AsyncRegistrationOperations;
+import io.fabric8.acme.client.internal.Nonce;
+import io.fabric8.acme.client.model.Authorization;
+import io.fabric8.acme.client.model.Challenge;
+import io.fabric8.acme.client.model.Directory;
+import io.fabric8.acme.client.model.NewAuthorization;
+import io.fabric8.acme.client.model.NewRegistration;
+import io.fabric8.acme.client.model.RecoveryRegistration;
+import io.fabric8.acme.client.model.Registration;
+
+public class DefaultAsyncACMEClient implements AsyncACMEClient {
+
+  private final DefaultACMEClient client;
+
+  public DefaultAsyncACMEClient(Config config) {
+    this(new DefaultACMEClient(config));
+  }
+
+  DefaultAsyncACMEClient(DefaultACMEClient client) {
+    this.client = client;
+  }
+
+  @Override
+  public Directory directory() {
+    return client.directory();
+  }
+
+  public Nonce getNonce() {
+    return client.getNonce();
+  }
+
+  @Override
+  public AsyncGetCreateUpdateRecoverable<Registration, NewRegistration, RecoveryRegistration> registration() {
+    return new AsyncRegistrationOperations(client.getDirectoryProvider(), client.getTransport(), client.getNonce(), client.getCredentials(), client.getConfig().getAccountStore(), client.getRateLimiter());
+  }
+
+  @Override
+  public AsyncCreateLocatable<Authorization, NewAuthorization> authorization() {
+    return new AsyncAuthorizationOperations(client.getDirectoryProvider(), client.getTransport(), client.getNonce(), client.getCredentials(), client.getPendingAuthorizations(), client.getValidAuthorizations(), client.getRateLimiter());
+  }
+
+  @Override
+  public AsyncUseLocatable<Challenge, AsyncPrepareReadyable<Challenge>> challenges() {
+    return new AsyncChallengeOperations(client.getDirectoryProvider(), client.getTransport(), client.getNonce(), client.getCredentials());
+  }
+
+  @Override
+  public Pollable<Authorization> authorizationPoller() {
+    return client.authorizationPoller();
+  }
+
+  @Override
+  public void close() {
+    client.close();
+  }
+
+}
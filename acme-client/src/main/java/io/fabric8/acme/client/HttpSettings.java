@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import io.sundr.builder.annotations.Buildable;
+
+/**
+ * Tuning for the HTTP transport. Every setting left null takes its default.
+ */
+@Buildable(
+  generateBuilderPackage = true,
+  builderPackage = "io.fabric8.acme.client.builder"
+)
+public class HttpSettings {
+
+  public static final int DEFAULT_CONNECTION_POOL_SIZE = 5;
+
+  public static final long DEFAULT_CONNECTION_KEEP_ALIVE = 300;
+
+  public static final long DEFAULT_TIMEOUT = 10;
+
+  public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 5;
+
+  private Integer connectionPoolSize;
+
+  private Long connectionKeepAlive;
+
+  private Boolean http2;
+
+  private Long connectTimeout;
+
+  private Long readTimeout;
+
+  private Long writeTimeout;
+
+  private Integer maxRequestsPerHost;
+
+  private Integer tlsSessionCacheSize;
+
+  /**
+   * @param connectionPoolSize  idle connections kept for reuse.
+   * @param connectionKeepAlive seconds an idle connection is kept for.
+   * @param http2               whether HTTP/2 is offered to the server, true by default.
+   * @param connectTimeout      seconds, 0 for none.
+   * @param readTimeout         seconds, 0 for none.
+   * @param writeTimeout        seconds, 0 for none.
+   * @param maxRequestsPerHost  concurrent requests to the server.
+   * @param tlsSessionCacheSize TLS sessions cached for resumption, 0 for no limit - null leaves
+   *                            the JVM default.
+   */
+  public HttpSettings(Integer connectionPoolSize, Long connectionKeepAlive, Boolean http2, Long connectTimeout, Long readTimeout, Long writeTimeout, Integer maxRequestsPerHost, Integer tlsSessionCacheSize) {
+    if ((connectionPoolSize != null && connectionPoolSize < 0) || (connectionKeepAlive != null && connectionKeepAlive < 0)) {
+      throw new ACMEClientException("configError", "Connection pool size and keep-alive cannot be negative");
+    }
+    this.connectionPoolSize = connectionPoolSize != null ? connectionPoolSize : DEFAULT_CONNECTION_POOL_SIZE;
+    this.connectionKeepAlive = connectionKeepAlive != null ? connectionKeepAlive : DEFAULT_CONNECTION_KEEP_ALIVE;
+    this.http2 = http2 != null ? http2 : Boolean.TRUE;
+    if ((connectTimeout != null && connectTimeout < 0) || (readTimeout != null && readTimeout < 0) || (writeTimeout != null && writeTimeout < 0)) {
+      throw new ACMEClientException("configError", "Timeouts cannot be negative");
+    }
+    this.connectTimeout = connectTimeout != null ? connectTimeout : DEFAULT_TIMEOUT;
+    this.readTimeout = readTimeout != null ? readTimeout : DEFAULT_TIMEOUT;
+    this.writeTimeout = writeTimeout != null ? writeTimeout : DEFAULT_TIMEOUT;
+    if (maxRequestsPerHost != null && maxRequestsPerHost < 1) {
+      throw new ACMEClientException("configError", "Maximum requests per host must be at least 1");
+    }
+    this.maxRequestsPerHost = maxRequestsPerHost != null ? maxRequestsPerHost : DEFAULT_MAX_REQUESTS_PER_HOST;
+    if (tlsSessionCacheSize != null && tlsSessionCacheSize < 0) {
+      throw new ACMEClientException("configError", "TLS session cache size cannot be negative");
+    }
+    this.tlsSessionCacheSize = tlsSessionCacheSize;
+  }
+
+  /**
+   * All defaults.
+   */
+  public HttpSettings() {
+    this(null, null, null, null, null, null, null, null);
+  }
+
+  public Integer getConnectionPoolSize() {
+    return connectionPoolSize;
+  }
+
+  public Long getConnectionKeepAlive() {
+    return connectionKeepAlive;
+  }
+
+  public Boolean getHttp2() {
+    return http2;
+  }
+
+  public Long getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  public Long getReadTimeout() {
+    return readTimeout;
+  }
+
+  public Long getWriteTimeout() {
+    return writeTimeout;
+  }
+
+  public Integer getMaxRequestsPerHost() {
+    return maxRequestsPerHost;
+  }
+
+  public Integer getTlsSessionCacheSize() {
+    return tlsSessionCacheSize;
+  }
+
+  @Override
+  public String toString() {
+    return "connectionPoolSize=" + connectionPoolSize
+      + ", connectionKeepAlive=" + connectionKeepAlive
+      + ", http2=" + http2
+      + ", connectTimeout=" + connectTimeout
+      + ", readTimeout=" + readTimeout
+      + ", writeTimeout=" + writeTimeout
+      + ", maxRequestsPerHost=" + maxRequestsPerHost
+      + ", tlsSessionCacheSize=" + tlsSessionCacheSize;
+  }
+}
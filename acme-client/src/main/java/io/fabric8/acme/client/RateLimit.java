@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import io.sundr.builder.annotations.Buildable;
+
+/**
+ * A number of requests allowed per period, enforced as a token bucket: up to {@code permits}
+ * requests can go out at once, after which they are spaced out evenly over the period.
+ */
+@Buildable(
+  generateBuilderPackage = true,
+  builderPackage = "io.fabric8.acme.client.builder"
+)
+public class RateLimit {
+
+  private int permits;
+
+  private long period;
+
+  /**
+   * @param period seconds over which the permits are replenished.
+   */
+  public RateLimit(int permits, long period) {
+    if (permits < 1 || period < 1) {
+      throw new ACMEClientException("configError", "Rate limit permits and period must be at least 1");
+    }
+    this.permits = permits;
+    this.period = period;
+  }
+
+  public int getPermits() {
+    return permits;
+  }
+
+  public long getPeriod() {
+    return period;
+  }
+
+  @Override
+  public String toString() {
+    return permits + "/" + period + "s";
+  }
+}
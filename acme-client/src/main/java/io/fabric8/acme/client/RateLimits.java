@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import io.sundr.builder.annotations.Buildable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client-side limits on the requests a CA rate limits, so that bulk jobs run at a rate the CA
+ * sustains rather than bursting into a lockout. Limits left null are not enforced, though a
+ * {@code rateLimited} answer from the server still pauses whatever the request counted against.
+ */
+@Buildable(
+  generateBuilderPackage = true,
+  builderPackage = "io.fabric8.acme.client.builder"
+)
+public class RateLimits {
+
+  public static final long DEFAULT_MAX_WAIT = 300;
+
+  private RateLimit account;
+
+  private RateLimit registeredDomain;
+
+  private RateLimit newRegistration;
+
+  private RateLimit newAuthorization;
+
+  private RateLimit newCertificate;
+
+  private Long maxWait;
+
+  /**
+   * @param account          new authorizations and certificates per account.
+   * @param registeredDomain new certificates per registered domain, e.g. {@code example.com} for
+   *                         {@code www.example.com}.
+   * @param newRegistration  new registrations, across every account using the client.
+   * @param newAuthorization new authorizations, across every account using the client.
+   * @param newCertificate   new certificates, across every account using the client.
+   * @param maxWait          seconds a request waits for capacity before failing as rate limited
+   *                         without being sent, 0 to never wait.
+   */
+  public RateLimits(RateLimit account, RateLimit registeredDomain, RateLimit newRegistration, RateLimit newAuthorization, RateLimit newCertificate, Long maxWait) {
+    if (maxWait != null && maxWait < 0) {
+      throw new ACMEClientException("configError", "Maximum rate limit wait cannot be negative");
+    }
+    this.account = account;
+    this.registeredDomain = registeredDomain;
+    this.newRegistration = newRegistration;
+    this.newAuthorization = newAuthorization;
+    this.newCertificate = newCertificate;
+    this.maxWait = maxWait != null ? maxWait : DEFAULT_MAX_WAIT;
+  }
+
+  /**
+   * Let's Encrypt's published limits: 20 certificates per registered domain a week and 10
+   * registrations every 3 hours. Its cap of 300 pending authorizations per account is
+   * approximated as 300 new authorizations and certificates every 3 hours.
+   */
+  public static RateLimits letsEncrypt() {
+    return new RateLimits(
+      new RateLimit(300, TimeUnit.HOURS.toSeconds(3)),
+      new RateLimit(20, TimeUnit.DAYS.toSeconds(7)),
+      new RateLimit(10, TimeUnit.HOURS.toSeconds(3)),
+      null,
+      null,
+      null
+    );
+  }
+
+  public RateLimit getAccount() {
+    return account;
+  }
+
+  public RateLimit getRegisteredDomain() {
+    return registeredDomain;
+  }
+
+  public RateLimit getNewRegistration() {
+    return newRegistration;
+  }
+
+  public RateLimit getNewAuthorization() {
+    return newAuthorization;
+  }
+
+  public RateLimit getNewCertificate() {
+    return newCertificate;
+  }
+
+  public Long getMaxWait() {
+    return maxWait;
+  }
+
+  @Override
+  public String toString() {
+    return "account=" + account
+      + ", registeredDomain=" + registeredDomain
+      + ", newRegistration=" + newRegistration
+      + ", newAuthorization=" + newAuthorization
+      + ", newCertificate=" + newCertificate
+      + ", maxWait=" + maxWait + "s";
+  }
+}
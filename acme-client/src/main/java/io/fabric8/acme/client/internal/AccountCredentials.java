@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.internal;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import io.fabric8.acme.client.ACMEClientException;
+
+import java.security.KeyPair;
+import java.security.Provider;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Holds the account key a client signs with. Operations read the current {@link Credential}
+ * for every request rather than capturing it, and a key rollover publishes a whole new one in
+ * a single write, so requests never see a signer from one key paired with the JWK of another.
+ * <p>
+ * A rollover is announced before the key-change request is sent: a request the server rejects
+ * while it is in flight waits for its outcome, and is re-signed with the new key if it
+ * succeeded.
+ */
+public class AccountCredentials {
+
+  private volatile Credential current;
+
+  // Guarded by this.
+  private CompletableFuture<Credential> rollover;
+
+  public AccountCredentials(KeyPair keyPair, JWSAlgorithm jwsAlgorithm, Provider signatureProvider) {
+    this(Credential.of(keyPair, jwsAlgorithm, signatureProvider));
+  }
+
+  public AccountCredentials(Credential credential) {
+    this.current = credential;
+  }
+
+  public Credential get() {
+    return current;
+  }
+
+  /**
+   * Announces a rollover away from {@code from}, which must then be either
+   * {@link #publish(Credential) published} or {@link #abort() aborted}.
+   */
+  public synchronized void beginRollover(Credential from) {
+    if (rollover != null || current != from) {
+      throw new ACMEClientException("Account key was rolled over concurrently");
+    }
+    rollover = new CompletableFuture<>();
+  }
+
+  /**
+   * Makes the credential the one every request from now on is signed with.
+   */
+  public void publish(Credential credential) {
+    CompletableFuture<Credential> completed;
+    synchronized (this) {
+      current = credential;
+      completed = rollover;
+      rollover = null;
+    }
+    if (completed != null) {
+      completed.complete(credential);
+    }
+  }
+
+  public void abort() {
+    CompletableFuture<Credential> completed;
+    synchronized (this) {
+      completed = rollover;
+      rollover = null;
+    }
+    if (completed != null) {
+      completed.complete(current);
+    }
+  }
+
+  /**
+   * The credential to re-sign a rejected request with that was signed with {@code used}: the
+   * current one if it has been rolled over since, or the outcome of a rollover in progress.
+   * Completes with null when there is nothing newer to retry with.
+   */
+  public CompletableFuture<Credential> replacement(Credential used) {
+    synchronized (this) {
+      if (current != used) {
+        return CompletableFuture.completedFuture(current);
+      }
+      if (rollover != null) {
+        return rollover.thenApply(next -> next != used ? next : null);
+      }
+    }
+    return CompletableFuture.completedFuture(null);
+  }
+
+  /**
+   * A signer and the matching JWK, along with the algorithm they sign with.
+   */
+  public static final class Credential {
+
+    private final Signer signer;
+
+    private final AccountKey accountKey;
+
+    private final JWSAlgorithm jwsAlgorithm;
+
+    public Credential(Signer signer, AccountKey accountKey, JWSAlgorithm jwsAlgorithm) {
+      this.signer = signer;
+      this.accountKey = accountKey;
+      this.jwsAlgorithm = jwsAlgorithm;
+    }
+
+    /**
+     * @param signatureProvider the JCA provider to sign with, or null for the platform's
+     *                          preferred one.
+     */
+    public static Credential of(KeyPair keyPair, JWSAlgorithm jwsAlgorithm, Provider signatureProvider) {
+      try {
+        return new Credential(new Signer(keyPair.getPrivate(), signatureProvider), AccountKey.fromPublicKey(keyPair.getPublic()), jwsAlgorithm);
+      } catch (JOSEException e) {
+        throw ACMEClientException.launderThrowable(e);
+      }
+    }
+
+    /**
+     * The credential for a new key pair, signing with the same provider and keeping this one's
+     * algorithm if the key type allows it.
+     */
+    public Credential rollover(KeyPair keyPair) {
+      Signer next = new Signer(keyPair.getPrivate(), signer.getJCAContext().getProvider());
+      Set<JWSAlgorithm> supported = next.supportedJWSAlgorithms();
+      JWSAlgorithm algorithm = jwsAlgorithm;
+      if (!supported.contains(algorithm) && !supported.isEmpty()) {
+        // RSA keys default to RS256, while an EC key only signs with the algorithm for its curve.
+        algorithm = supported.contains(JWSAlgorithm.RS256) ? JWSAlgorithm.RS256 : supported.iterator().next();
+      }
+      try {
+        return new Credential(next, AccountKey.fromPublicKey(keyPair.getPublic()), algorithm);
+      } catch (JOSEException e) {
+        throw ACMEClientException.launderThrowable(e);
+      }
+    }
+
+    public Signer getSigner() {
+      return signer;
+    }
+
+    public AccountKey getAccountKey() {
+      return accountKey;
+    }
+
+    public JWSAlgorithm getJwsAlgorithm() {
+      return jwsAlgorithm;
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.internal;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.util.Base64URL;
+
+import java.security.PublicKey;
+
+/**
+ * The account's public JWK together with its SHA-256 thumbprint, which is computed once up
+ * front rather than every time a key authorization is needed - see
+ * https://ietf-wg-acme.github.io/acme/#rfc.section.8.1.
+ */
+public final class AccountKey {
+
+  private final JWK jwk;
+
+  private final Base64URL thumbprint;
+
+  private final String encodedThumbprint;
+
+  public AccountKey(JWK jwk) throws JOSEException {
+    this(jwk, jwk.computeThumbprint());
+  }
+
+  private AccountKey(JWK jwk, Base64URL thumbprint) {
+    this.jwk = jwk;
+    this.thumbprint = thumbprint;
+    this.encodedThumbprint = thumbprint.toString();
+  }
+
+  public static AccountKey fromPublicKey(PublicKey publicKey) throws JOSEException {
+    JWK jwk = JWKUtils.jwkFromPublicKey(publicKey);
+    // JWKUtils uses the thumbprint as the key ID, so there's no need to hash the key again.
+    return new AccountKey(jwk, new Base64URL(jwk.getKeyID()));
+  }
+
+  public JWK getJwk() {
+    return jwk;
+  }
+
+  public Base64URL getThumbprint() {
+    return thumbprint;
+  }
+
+  /**
+   * Returns {@code token || '.' || base64url(thumbprint)}.
+   */
+  public String keyAuthorization(String token) {
+    // Sized up front, so the builder never grows.
+    return new StringBuilder(token.length() + 1 + encodedThumbprint.length())
+      .append(token)
+      .append('.')
+      .append(encodedThumbprint)
+      .toString();
+  }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.internal;
+
+import io.fabric8.acme.client.dsl.AsyncCreateLocatable;
+import io.fabric8.acme.client.dsl.AsyncGettable;
+import io.fabric8.acme.client.model.Authorization;
+import io.fabric8.acme.client.model.Identifier;
+import io.fabric8.acme.client.model.NewAuthorization;
+import io.fabric8.acme.client.model.Resource;
+import io.fabric8.acme.client.transport.HttpTransport;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.CompletableFuture;
+
+public class AsyncAuthorizationOperations extends BaseOperations<Authorization>
+  implements AsyncCreateLocatable<Authorization, NewAuthorization> {
+
+  private final SingleFlight<Identifier, Authorization> pendingAuthorizations;
+
+  private final AuthorizationCache validAuthorizations;
+
+  public AsyncAuthorizationOperations(DirectoryProvider directory, HttpTransport transport, Nonce nonce, AccountCredentials credentials) {
+    this(directory, transport, nonce, credentials, new SingleFlight<>(), new AuthorizationCache());
+  }
+
+  public AsyncAuthorizationOperations(DirectoryProvider directory, HttpTransport transport, Nonce nonce, AccountCredentials credentials, SingleFlight<Identifier, Authorization> pendingAuthorizations, AuthorizationCache validAuthorizations) {
+    this(directory, transport, nonce, credentials, pendingAuthorizations, validAuthorizations, new RateLimiter(null));
+  }
+
+  public AsyncAuthorizationOperations(DirectoryProvider directory, HttpTransport transport, Nonce nonce, AccountCredentials credentials, SingleFlight<Identifier, Authorization> pendingAuthorizations, AuthorizationCache validAuthorizations, RateLimiter rateLimiter) {
+    super(directory, transport, nonce, credentials, rateLimiter);
+    this.pendingAuthorizations = pendingAuthorizations;
+    this.validAuthorizations = validAuthorizations;
+  }
+
+  @Override
+  public CompletableFuture<Authorization> create(NewAuthorization item) {
+    if (item.getIdentifier() == null) {
+      return send(item);
+    }
+    Authorization cached = validAuthorizations.get(getAccountKey(), item.getIdentifier());
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
+    return pendingAuthorizations.executeAsync(item.getIdentifier(), () -> send(item));
+  }
+
+  private CompletableFuture<Authorization> send(NewAuthorization item) {
+    return jwsHeaderAsync().thenCompose(jwsHeader -> sendRequestAsync(
+      Resource.ResourceType.NEW_AUTHORIZATION,
+      item,
+      jwsHeader.build(),
+      AuthorizationOperations::handleAuthorizationResponse,
+      HttpURLConnection.HTTP_CREATED
+    )).thenApply(this::remember);
+  }
+
+  @Override
+  public AsyncGettable<Authorization> at(String location) {
+    return () -> sendRequestAsync(location, AuthorizationOperations::handleAuthorizationResponse, HttpURLConnection.HTTP_OK).thenApply(this::remember);
+  }
+
+  private Authorization remember(Authorization authorization) {
+    validAuthorizations.put(getAccountKey(), authorization);
+    return authorization;
+  }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.internal;
+
+import io.fabric8.acme.client.dsl.AsyncPrepareReadyable;
+import io.fabric8.acme.client.dsl.AsyncUseLocatable;
+import io.fabric8.acme.client.model.Challenge;
+import io.fabric8.acme.client.transport.HttpTransport;
+import net.minidev.json.JSONObject;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.CompletableFuture;
+
+public class AsyncChallengeOperations extends BaseOperations<Challenge>
+  implements AsyncUseLocatable<Challenge, AsyncPrepareReadyable<Challenge>>, AsyncPrepareReadyable<Challenge> {
+
+  private Challenge challenge;
+
+  public AsyncChallengeOperations(DirectoryProvider directory, HttpTransport transport, Nonce nonce, AccountCredentials credentials) {
+    super(directory, transport, nonce, credentials);
+  }
+
+  private AsyncChallengeOperations(Challenge challenge, AsyncChallengeOperations orig) {
+    super(orig);
+    this.challenge = challenge;
+  }
+
+  @Override
+  public CompletableFuture<AsyncPrepareReadyable<Challenge>> at(String location) {
+    return sendRequestAsync(location, ChallengeOperations::handleChallengeResponse, HttpURLConnection.HTTP_OK)
+      .thenApply(this::use);
+  }
+
+  @Override
+  public AsyncPrepareReadyable<Challenge> use(Challenge obj) {
+    return new AsyncChallengeOperations(obj, this);
+  }
+
+  @Override
+  public Challenge prepare() {
+    return ChallengeOperations.prepare(challenge, getAccountKey());
+  }
+
+  @Override
+  public CompletableFuture<Challenge> ready() {
+    JSONObject readyChallenge = ChallengeOperations.readyChallenge(challenge, getAccountKey());
+
+    return jwsHeaderAsync().thenCompose(jwsHeader -> sendRequestAsync(
+      challenge.getUri(),
+      readyChallenge,
+      jwsHeader.build(),
+      ChallengeOperations::handleChallengeResponse,
+      HttpURLConnection.HTTP_ACCEPTED
+    ));
+  }
+}
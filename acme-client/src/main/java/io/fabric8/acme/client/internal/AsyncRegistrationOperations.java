@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.internal;
+
+import io.fabric8.acme.client.ACMEClientException;
+import io.fabric8.acme.client.dsl.AsyncGetCreateUpdateRecoverable;
+import io.fabric8.acme.client.model.NewRegistration;
+import io.fabric8.acme.client.model.RecoveryRegistration;
+import io.fabric8.acme.client.model.Registration;
+import io.fabric8.acme.client.model.RegistrationBuilder;
+import io.fabric8.acme.client.model.Resource;
+import io.fabric8.acme.client.store.AccountStore;
+import io.fabric8.acme.client.transport.HttpTransport;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+public class AsyncRegistrationOperations extends BaseOperations<Registration> implements AsyncGetCreateUpdateRecoverable<Registration, NewRegistration, RecoveryRegistration> {
+
+  private final AccountStore accountStore;
+
+  public AsyncRegistrationOperations(DirectoryProvider directory, HttpTransport transport, Nonce nonce, AccountCredentials credentials) {
+    this(directory, transport, nonce, credentials, null);
+  }
+
+  public AsyncRegistrationOperations(DirectoryProvider directory, HttpTransport transport, Nonce nonce, AccountCredentials credentials, AccountStore accountStore) {
+    this(directory, transport, nonce, credentials, accountStore, new RateLimiter(null));
+  }
+
+  public AsyncRegistrationOperations(DirectoryProvider directory, HttpTransport transport, Nonce nonce, AccountCredentials credentials, AccountStore accountStore, RateLimiter rateLimiter) {
+    super(directory, transport, nonce, credentials, rateLimiter);
+    this.accountStore = accountStore;
+  }
+
+  @Override
+  public CompletableFuture<Registration> create(NewRegistration item) {
+    return jwsHeaderAsync().thenCompose(jwsHeader -> sendRequestAsync(
+      Resource.ResourceType.NEW_REGISTRATION,
+      item,
+      jwsHeader.build(),
+      (response) -> agreeIfChanged(RegistrationOperations.parseRegistrationResponse(response, null), item.isAgreeToTerms()),
+      HttpURLConnection.HTTP_CREATED
+    )).thenCompose(Function.identity()).thenApply(this::remember);
+  }
+
+  @Override
+  public CompletableFuture<Registration> update(Registration item) {
+    return send(item).handle((registration, throwable) -> {
+      if (throwable == null) {
+        return CompletableFuture.completedFuture(remember(registration));
+      }
+      Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+      // The stored location is only revalidated once the server stops recognising it.
+      if (cause instanceof ACMEClientException && RegistrationOperations.isStale((ACMEClientException) cause, accountStore, getAccountKey(), item)) {
+        RegistrationOperations.forget(accountStore, getAccountKey());
+        return fetch().thenCompose(current -> send(new RegistrationBuilder(item).withLocation(current.getLocation()).build())).thenApply(this::remember);
+      }
+      CompletableFuture<Registration> failed = new CompletableFuture<>();
+      failed.completeExceptionally(cause);
+      return failed;
+    }).thenCompose(Function.identity());
+  }
+
+  private CompletableFuture<Registration> send(Registration item) {
+    return jwsHeaderAsync().thenCompose(jwsHeader -> sendRequestAsync(
+      item.getLocation(),
+      item,
+      jwsHeader.build(),
+      (response) -> agreeIfChanged(RegistrationOperations.parseRegistrationResponse(response, item.getCertificatesLocation()), item.isAgreeToTerms()),
+      HttpURLConnection.HTTP_ACCEPTED
+    )).thenCompose(Function.identity());
+  }
+
+  /**
+   * Answers from the account store when it knows the registration, otherwise asks the server.
+   */
+  @Override
+  public CompletableFuture<Registration> get() {
+    Registration stored = RegistrationOperations.stored(accountStore, getAccountKey());
+    if (stored != null) {
+      return CompletableFuture.completedFuture(stored);
+    }
+    return fetch().thenApply(this::remember);
+  }
+
+  private CompletableFuture<Registration> fetch() {
+    return jwsHeaderAsync().thenCompose(jwsHeader -> sendRequestAsync(
+      Resource.ResourceType.NEW_REGISTRATION,
+      new NewRegistration(null, false),
+      jwsHeader.build(),
+      (response) -> {
+        Registration existing = RegistrationOperations.existingRegistration(response);
+        if (existing != null) {
+          return send(existing);
+        }
+        return CompletableFuture.completedFuture(RegistrationOperations.parseRegistrationResponse(response, null).registration);
+      },
+      HttpURLConnection.HTTP_CONFLICT, HttpURLConnection.HTTP_CREATED
+    )).thenCompose(Function.identity());
+  }
+
+  @Override
+  public CompletableFuture<Registration> recover(RecoveryRegistration item) {
+    return jwsHeaderAsync().thenCompose(jwsHeader -> sendRequestAsync(
+      Resource.ResourceType.RECOVER_REGISTRATION,
+      item,
+      jwsHeader.build(),
+      (response) -> RegistrationOperations.parseRegistrationResponse(response, null).registration,
+      HttpURLConnection.HTTP_CREATED
+    )).thenCompose(stubRegistration -> requestWithRetryAfterAsync(
+      stubRegistration.getLocation(),
+      new RegistrationBuilder().build(),
+      (response) -> RegistrationOperations.parseRegistrationResponse(response, null).registration,
+      HttpURLConnection.HTTP_OK,
+      HttpURLConnection.HTTP_ACCEPTED
+    )).thenApply(this::remember);
+  }
+
+  // The follow-up update is only started here, the response handler itself never waits on it.
+  private CompletableFuture<Registration> agreeIfChanged(RegistrationOperations.RegistrationResponse registrationResponse, boolean agreeToTerms) {
+    if (agreeToTerms && registrationResponse.agreementChanged) {
+      return send(registrationResponse.registration);
+    }
+    return CompletableFuture.completedFuture(registrationResponse.registration);
+  }
+
+  private Registration remember(Registration registration) {
+    if (accountStore != null && registration.getLocation() != null) {
+      accountStore.save(getAccountKey().getThumbprint().toString(), registration);
+    }
+    return registration;
+  }
+
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.internal;
+
+import io.fabric8.acme.client.ACMEClientException;
+import io.fabric8.acme.client.Config;
+import io.fabric8.acme.client.model.Authorization;
+import io.fabric8.acme.client.model.Identifier;
+import io.fabric8.acme.client.model.Status;
+
+import java.time.Instant;
+import java.time.temporal.TemporalAccessor;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers valid authorizations per account and identifier so that a new-authz request for an
+ * identifier the account is already authorized for can be answered without another
+ * challenge/validation cycle.
+ * <p>
+ * Entries are dropped a safety margin before the server would expire them, so a cached
+ * authorization is always still usable for issuing a certificate. Evictions are driven by an index
+ * ordered on that deadline: expired entries are purged from its head on every access, and when
+ * the cache is full the entry closest to expiring makes room for the new one. Replacing or
+ * dropping an entry is logarithmic in the cache size.
+ */
+public class AuthorizationCache {
+
+
+  private final long marginMillis;
+
+  private final int maxSize;
+
+  private final Map<Key, Entry> entries = new HashMap<>();
+
+  private final NavigableSet<Entry> evictions = new TreeSet<>(
+    Comparator.<Entry>comparingLong(entry -> entry.evictAt).thenComparingLong(entry -> entry.sequence));
+
+  private long sequence;
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  public AuthorizationCache() {
+    this(Config.DEFAULT_AUTHORIZATION_CACHE_MARGIN, Config.DEFAULT_AUTHORIZATION_CACHE_SIZE);
+  }
+
+  /**
+   * @param margin  seconds before an authorization expires at which it stops being handed out.
+   * @param maxSize maximum number of authorizations remembered, 0 disables caching.
+   */
+  public AuthorizationCache(long margin, int maxSize) {
+    if (margin < 0 || maxSize < 0) {
+      throw new ACMEClientException("configError", "Authorization cache margin and size cannot be negative");
+    }
+    this.marginMillis = TimeUnit.SECONDS.toMillis(margin);
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Returns the cached valid authorization for the identifier, or null if there isn't one that
+   * is still outside the safety margin.
+   */
+  public Authorization get(AccountKey accountKey, Identifier identifier) {
+    if (maxSize == 0 || identifier == null) {
+      return null;
+    }
+
+    Entry entry;
+    synchronized (this) {
+      purge(System.currentTimeMillis());
+      entry = entries.get(new Key(accountKey, identifier));
+    }
+    if (entry == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return entry.authorization;
+  }
+
+  /**
+   * Remembers the authorization if it is valid and won't expire within the safety margin;
+   * anything else replaces (and so forgets) a previously cached one for the same identifier.
+   */
+  public void put(AccountKey accountKey, Authorization authorization) {
+    if (maxSize == 0 || authorization == null || authorization.getIdentifier() == null) {
+      return;
+    }
+
+    Key key = new Key(accountKey, authorization.getIdentifier());
+    long now = System.currentTimeMillis();
+    long evictAt = evictAt(authorization);
+    synchronized (this) {
+      purge(now);
+      if (evictAt <= now) {
+        remove(key);
+        return;
+      }
+
+      Entry entry = new Entry(key, authorization, evictAt, sequence++);
+      Entry previous = entries.put(key, entry);
+      if (previous != null) {
+        evictions.remove(previous);
+      } else if (entries.size() > maxSize) {
+        // Make room by dropping whatever is closest to expiring.
+        remove(evictions.first().key);
+      }
+      evictions.add(entry);
+    }
+  }
+
+  /**
+   * Forgets the cached authorization for the identifier, e.g. after the server refused it.
+   */
+  public synchronized void invalidate(AccountKey accountKey, Identifier identifier) {
+    if (identifier != null) {
+      remove(new Key(accountKey, identifier));
+    }
+  }
+
+  public synchronized int size() {
+    purge(System.currentTimeMillis());
+    return entries.size();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  private void remove(Key key) {
+    Entry entry = entries.remove(key);
+    if (entry != null) {
+      evictions.remove(entry);
+    }
+  }
+
+  private void purge(long now) {
+    Entry head;
+    while (!evictions.isEmpty() && (head = evictions.first()).evictAt <= now) {
+      evictions.pollFirst();
+      entries.remove(head.key, head);
+    }
+  }
+
+  private long evictAt(Authorization authorization) {
+    TemporalAccessor expires = authorization.getExpires();
+    if (authorization.getStatus() != Status.VALID || expires == null) {
+      return Long.MIN_VALUE;
+    }
+    return Instant.from(expires).toEpochMilli() - marginMillis;
+  }
+
+  private static final class Key {
+
+    private final String thumbprint;
+
+    private final Identifier identifier;
+
+    private Key(AccountKey accountKey, Identifier identifier) {
+      this.thumbprint = accountKey.getThumbprint().toString();
+      this.identifier = identifier;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key key = (Key) o;
+      return thumbprint.equals(key.thumbprint) && identifier.equals(key.identifier);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(thumbprint, identifier);
+    }
+  }
+
+  private static final class Entry {
+
+    private final Key key;
+
+    private final Authorization authorization;
+
+    private final long evictAt;
+
+    // Breaks ties between entries evicted at the same instant.
+    private final long sequence;
+
+    private Entry(Key key, Authorization authorization, long evictAt, long sequence) {
+      this.key = key;
+      this.authorization = authorization;
+      this.evictAt = evictAt;
+      this.sequence = sequence;
+    }
+  }
+}
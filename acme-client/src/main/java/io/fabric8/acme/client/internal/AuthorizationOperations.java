@@ -15,29 +15,45 @@
  */
 package io.fabric8.acme.client.internal;
 
-import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.JWSHeader;
-import com.nimbusds.jose.jwk.JWK;
 import io.fabric8.acme.client.ACMEClientException;
 import io.fabric8.acme.client.dsl.CreateLocatable;
 import io.fabric8.acme.client.dsl.Gettable;
 import io.fabric8.acme.client.model.Authorization;
-import io.fabric8.acme.client.model.AuthorizationBuilder;
-import io.fabric8.acme.client.model.Directory;
+import io.fabric8.acme.client.model.Identifier;
 import io.fabric8.acme.client.model.NewAuthorization;
 import io.fabric8.acme.client.model.Resource;
 import io.fabric8.acme.client.model.SendableNewAuthorization;
-import net.minidev.json.JSONObject;
-import okhttp3.OkHttpClient;
-import okhttp3.Response;
+import io.fabric8.acme.client.transport.HttpResponse;
+import io.fabric8.acme.client.transport.HttpTransport;
 
 import java.net.HttpURLConnection;
 
 public class AuthorizationOperations extends BaseOperations<Authorization>
   implements CreateLocatable<Authorization, NewAuthorization, SendableNewAuthorization, Gettable<Authorization>> {
 
-  public AuthorizationOperations(Directory directory, OkHttpClient okHttpClient, Nonce nonce, JWSAlgorithm jwsAlgorithm, Signer signer, JWK jwk) {
-    super(directory, okHttpClient, nonce, jwsAlgorithm, signer, jwk);
+  private final SingleFlight<Identifier, Authorization> pendingAuthorizations;
+
+  private final AuthorizationCache validAuthorizations;
+
+  public AuthorizationOperations(DirectoryProvider directory, HttpTransport transport, Nonce nonce, AccountCredentials credentials) {
+    this(directory, transport, nonce, credentials, new SingleFlight<>(), new AuthorizationCache());
+  }
+
+  /**
+   * @param pendingAuthorizations new-authz requests in flight, shared with every other operation
+   *                              for the same account so concurrent requests for the same
+   *                              identifier result in a single authorization.
+   * @param validAuthorizations   valid authorizations handed back instead of requesting a new one.
+   */
+  public AuthorizationOperations(DirectoryProvider directory, HttpTransport transport, Nonce nonce, AccountCredentials credentials, SingleFlight<Identifier, Authorization> pendingAuthorizations, AuthorizationCache validAuthorizations) {
+    this(directory, transport, nonce, credentials, pendingAuthorizations, validAuthorizations, new RateLimiter(null));
+  }
+
+  public AuthorizationOperations(DirectoryProvider directory, HttpTransport transport, Nonce nonce, AccountCredentials credentials, SingleFlight<Identifier, Authorization> pendingAuthorizations, AuthorizationCache validAuthorizations, RateLimiter rateLimiter) {
+    super(directory, transport, nonce, credentials, rateLimiter);
+    this.pendingAuthorizations = pendingAuthorizations;
+    this.validAuthorizations = validAuthorizations;
   }
 
   @Override
@@ -47,27 +63,37 @@ public class AuthorizationOperations extends BaseOperations<Authorization>
 
   @Override
   public Authorization create(NewAuthorization item) {
+    if (item.getIdentifier() == null) {
+      return send(item);
+    }
+    Authorization cached = validAuthorizations.get(getAccountKey(), item.getIdentifier());
+    if (cached != null) {
+      return cached;
+    }
+    return pendingAuthorizations.execute(item.getIdentifier(), () -> send(item));
+  }
+
+  private Authorization send(NewAuthorization item) {
     JWSHeader jwsHeader = jwsHeader().build();
 
-    return sendRequest(
+    Authorization authorization = sendRequest(
       Resource.ResourceType.NEW_AUTHORIZATION,
       item,
       jwsHeader,
-      this::handleAuthorizationResponse,
+      AuthorizationOperations::handleAuthorizationResponse,
       HttpURLConnection.HTTP_CREATED
     );
+    validAuthorizations.put(getAccountKey(), authorization);
+    return authorization;
   }
 
-  private Authorization handleAuthorizationResponse(Response response) {
+  static Authorization handleAuthorizationResponse(HttpResponse response) {
     try {
-      JSONObject jsonObject = JSONParserUtils.parse(response.body().byteStream());
-      AuthorizationBuilder builder = new AuthorizationBuilder(Authorization.fromJSONObject(jsonObject));
       String location = response.header("Location");
       if (location == null || location.isEmpty()) {
-        location = response.request().url().toString();
+        location = response.url();
       }
-      builder.withLocation(location);
-      return builder.build();
+      return StreamingModelDecoder.decodeAuthorization(response.byteStream(), location);
     } catch (Exception e) {
       throw ACMEClientException.launderThrowable(e);
     }
@@ -75,6 +101,10 @@ public class AuthorizationOperations extends BaseOperations<Authorization>
 
   @Override
   public Gettable<Authorization> at(String location) {
-    return () -> sendRequest(location, this::handleAuthorizationResponse, HttpURLConnection.HTTP_OK);
+    return () -> {
+      Authorization authorization = sendRequest(location, AuthorizationOperations::handleAuthorizationResponse, HttpURLConnection.HTTP_OK);
+      validAuthorizations.put(getAccountKey(), authorization);
+      return authorization;
+    };
   }
 }
@@ -0,0 +1,251 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.internal;
+
+import io.fabric8.acme.client.dsl.Pollable;
+import io.fabric8.acme.client.model.Authorization;
+import io.fabric8.acme.client.model.Status;
+import io.fabric8.acme.client.transport.HttpTransport;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Watches pending authorizations until the server settles on a final status.
+ * <p>
+ * Each location backs off independently: the delay starts short for the status last seen and
+ * grows with every unchanged answer, resetting when the status moves on. A Retry-After header
+ * stretches the next delay, never shortens it. All waits are parked on the shared
+ * {@link RetryScheduler}. The maximum rate is enforced as each poll is about to be sent, by a
+ * token bucket holding up to a second's worth of polls: a poll that finds the bucket empty waits
+ * only until the next token, so one location deep in backoff never holds up the others.
+ * <p>
+ * Polling the same location twice shares a single watch, but every caller gets its own future.
+ * Cancelling one caller's future leaves the others polling; the watch stops once every caller
+ * has cancelled.
+ * <p>
+ * Polls are unsigned, so one poller can serve every account on a server - clients from an
+ * {@code ACMEClientPool} share it, and with it the rate cap. Remembering the authorizations that
+ * became valid is left to each account's caller.
+ */
+public class AuthorizationPoller extends BaseOperations<Authorization> implements Pollable<Authorization> {
+
+  private static final double BACKOFF_MULTIPLIER = 2.0;
+
+  private final long pollIntervalNanos;
+
+  private final long burstNanos;
+
+  private final ConcurrentMap<String, Watch> watches = new ConcurrentHashMap<>();
+
+  // Theoretical time the bucket is empty again; a poll may go out while it is no more than a
+  // burst ahead of now.
+  private final AtomicLong bucketEmptyAt = new AtomicLong(System.nanoTime());
+
+  private final AtomicLong polls = new AtomicLong();
+
+  public AuthorizationPoller(DirectoryProvider directory, HttpTransport transport, Nonce nonce, AccountCredentials credentials, int maxPollRate) {
+    super(directory, transport, nonce, credentials);
+    this.pollIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, maxPollRate);
+    this.burstNanos = TimeUnit.SECONDS.toNanos(1) - pollIntervalNanos;
+  }
+
+  /**
+   * Returns a future that completes once the authorization is no longer pending or processing.
+   * Cancelling the future stops polling unless other callers are still watching the location.
+   */
+  @Override
+  public CompletableFuture<Authorization> poll(String location) {
+    while (true) {
+      Watch watch = watches.get(location);
+      if (watch == null) {
+        Watch created = new Watch(location);
+        watch = watches.putIfAbsent(location, created);
+        if (watch == null) {
+          created.future.whenComplete((authorization, throwable) -> watches.remove(location, created));
+          schedulePoll(created, 0);
+          watch = created;
+        }
+      }
+      CompletableFuture<Authorization> dependent = watch.join();
+      if (dependent != null) {
+        return dependent;
+      }
+      // Every caller of that watch cancelled just now; it is on its way out of the map.
+      watches.remove(location, watch);
+    }
+  }
+
+  /**
+   * Number of authorizations currently being watched.
+   */
+  public int getWatchCount() {
+    return watches.size();
+  }
+
+  /**
+   * Total number of status requests sent.
+   */
+  public long getPollCount() {
+    return polls.get();
+  }
+
+  private void schedulePoll(Watch watch, long delayMillis) {
+    if (delayMillis <= 0) {
+      sendPoll(watch);
+    } else {
+      getRetryScheduler().schedule(() -> sendPoll(watch), delayMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Takes a token if one is available.
+   *
+   * @return 0 if the poll may go out now, otherwise how long in nanoseconds until a token is.
+   */
+  private long tryAcquire() {
+    while (true) {
+      long now = System.nanoTime();
+      long emptyAt = bucketEmptyAt.get();
+      long waitNanos = emptyAt - burstNanos - now;
+      if (waitNanos > 0) {
+        return waitNanos;
+      }
+      if (bucketEmptyAt.compareAndSet(emptyAt, Math.max(emptyAt, now) + pollIntervalNanos)) {
+        return 0;
+      }
+    }
+  }
+
+  private void sendPoll(Watch watch) {
+    if (watch.future.isDone()) {
+      return;
+    }
+
+    long waitNanos = tryAcquire();
+    if (waitNanos > 0) {
+      getRetryScheduler().schedule(() -> sendPoll(watch), waitNanos, TimeUnit.NANOSECONDS);
+      return;
+    }
+
+    polls.incrementAndGet();
+    sendRequestAsync(
+      watch.location,
+      (response) -> {
+        watch.retryAfter = response.header("Retry-After");
+        return AuthorizationOperations.handleAuthorizationResponse(response);
+      },
+      HttpURLConnection.HTTP_OK
+    ).whenComplete((authorization, throwable) -> {
+      if (throwable != null) {
+        watch.future.completeExceptionally(throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable);
+      } else if (isFinal(authorization.getStatus())) {
+        watch.future.complete(authorization);
+      } else {
+        long delayMillis = watch.nextDelayMillis(authorization.getStatus());
+        logger.debug("Authorization {} is {}, polling again in {}ms", watch.location, authorization.getStatus(), delayMillis);
+        schedulePoll(watch, delayMillis);
+      }
+    });
+  }
+
+  private static boolean isFinal(Status status) {
+    return status == Status.VALID || status == Status.INVALID || status == Status.REVOKED;
+  }
+
+  // Validation is underway while processing, so the answer usually comes back sooner than for
+  // an authorization whose challenges the server hasn't picked up yet.
+  private static long initialDelayMillis(Status status) {
+    return status == Status.PROCESSING ? 500 : 1000;
+  }
+
+  private static long maxDelayMillis(Status status) {
+    return status == Status.PROCESSING ? 10000 : 30000;
+  }
+
+  private static final class Watch {
+
+    private final String location;
+
+    private final CompletableFuture<Authorization> future = new CompletableFuture<>();
+
+    // Callers still waiting on the watch, or -1 once the last of them has cancelled.
+    private final AtomicInteger callers = new AtomicInteger();
+
+    private Status lastStatus;
+
+    private long delayMillis;
+
+    private volatile String retryAfter;
+
+    private Watch(String location) {
+      this.location = location;
+    }
+
+    /**
+     * Adds a caller, returning its own stage of the watch, or null if the watch was abandoned.
+     */
+    private CompletableFuture<Authorization> join() {
+      int current;
+      do {
+        current = callers.get();
+        if (current < 0) {
+          return null;
+        }
+      } while (!callers.compareAndSet(current, current + 1));
+
+      CompletableFuture<Authorization> dependent = future.thenApply(Function.identity());
+      dependent.whenComplete((authorization, throwable) -> {
+        if (dependent.isCancelled()) {
+          leave();
+        }
+      });
+      return dependent;
+    }
+
+    private void leave() {
+      int current;
+      do {
+        current = callers.get();
+      } while (!callers.compareAndSet(current, current == 1 ? -1 : current - 1));
+
+      if (current == 1) {
+        future.cancel(false);
+      }
+    }
+
+    private long nextDelayMillis(Status status) {
+      if (status != lastStatus) {
+        lastStatus = status;
+        delayMillis = initialDelayMillis(status);
+      } else {
+        delayMillis = Math.min((long) (delayMillis * BACKOFF_MULTIPLIER), maxDelayMillis(status));
+      }
+
+      if (retryAfter != null) {
+        return Math.max(delayMillis, TimeUnit.SECONDS.toMillis(RetryAfterUtils.delaySeconds(retryAfter, 0)));
+      }
+      return delayMillis;
+    }
+  }
+}
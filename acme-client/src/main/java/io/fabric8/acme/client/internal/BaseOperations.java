@@ -22,64 +22,104 @@ import com.nimbusds.jose.JWSObject;
 import com.nimbusds.jose.Payload;
 import com.nimbusds.jose.jwk.JWK;
 import io.fabric8.acme.client.ACMEClientException;
-import io.fabric8.acme.client.model.Directory;
 import io.fabric8.acme.client.model.Resource;
+import io.fabric8.acme.client.transport.HttpRequest;
+import io.fabric8.acme.client.transport.HttpResponse;
+import io.fabric8.acme.client.transport.HttpTransport;
 import net.minidev.json.JSONObject;
 import net.minidev.json.parser.ParseException;
-import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.time.Instant;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-import java.time.temporal.ChronoUnit;
-import java.time.temporal.TemporalAccessor;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 public abstract class BaseOperations<T> {
 
   protected final Logger logger = LoggerFactory.getLogger(getClass());
 
-  private static final MediaType REQUEST_MEDIA_TYPE = MediaType.parse(JOSEObject.MIME_TYPE_COMPACT);
+  private static final String BAD_NONCE = "urn:acme:error:badNonce";
 
-  private Directory directory;
+  private static final String UNAUTHORIZED = "urn:acme:error:unauthorized";
 
-  private OkHttpClient okHttpClient;
+  private DirectoryProvider directory;
+
+  private HttpTransport transport;
 
   private Nonce nonce;
 
-  private JWSAlgorithm jwsAlgorithm;
+  private AccountCredentials credentials;
+
+  private RateLimiter rateLimiter;
 
-  private Signer signer;
+  private RetryScheduler retryScheduler = RetryScheduler.getDefault();
 
-  private JWK jwk;
+  public BaseOperations(DirectoryProvider directory, HttpTransport transport, Nonce nonce, AccountCredentials credentials) {
+    this(directory, transport, nonce, credentials, new RateLimiter(null));
+  }
 
-  public BaseOperations(Directory directory, OkHttpClient okHttpClient, Nonce nonce, JWSAlgorithm jwsAlgorithm, Signer signer, JWK jwk) {
+  /**
+   * @param rateLimiter paces requests to the directory's resources.
+   */
+  public BaseOperations(DirectoryProvider directory, HttpTransport transport, Nonce nonce, AccountCredentials credentials, RateLimiter rateLimiter) {
     this.directory = directory;
-    this.okHttpClient = okHttpClient;
+    this.transport = transport;
     this.nonce = nonce;
-    this.jwsAlgorithm = jwsAlgorithm;
-    this.signer = signer;
-    this.jwk = jwk;
+    this.credentials = credentials;
+    this.rateLimiter = rateLimiter;
   }
 
   public BaseOperations(BaseOperations<T> orig) {
     this.directory = orig.directory;
-    this.okHttpClient = orig.okHttpClient;
+    this.transport = orig.transport;
     this.nonce = orig.nonce;
-    this.jwsAlgorithm = orig.jwsAlgorithm;
-    this.signer = orig.signer;
-    this.jwk = orig.jwk;
+    this.credentials = orig.credentials;
+    this.rateLimiter = orig.rateLimiter;
+    this.retryScheduler = orig.retryScheduler;
   }
 
   protected T sendRequest(Resource.ResourceType resourceType, Resource item, JWSHeader jwsHeader, ResponseHandler<T> responseHandler, int... successCodes) {
-    return sendRequest(directory.get(resourceType), item, jwsHeader, responseHandler, successCodes);
+    return sendRequest(resourceType, item, Collections.emptyList(), jwsHeader, responseHandler, successCodes);
+  }
+
+  /**
+   * Sends to one of the directory's resources once the rate limiter has capacity for it. If the
+   * server still answers {@code rateLimited}, the request waits out the pause that sets off and
+   * is sent once more.
+   *
+   * @param domains the domains a new certificate is for, counted against their registered
+   *                domains' limits.
+   */
+  protected T sendRequest(Resource.ResourceType resourceType, Resource item, Collection<String> domains, JWSHeader jwsHeader, ResponseHandler<T> responseHandler, int... successCodes) {
+    String url = directory.get().get(resourceType);
+    List<RateLimiter.Key> keys = rateLimiter.keys(resourceType, getAccountKey().getThumbprint().toString(), domains);
+    JWSHeader header = jwsHeader;
+    for (boolean retried = false; ; retried = true) {
+      try {
+        rateLimiter.acquire(keys).join();
+      } catch (CompletionException e) {
+        throw ACMEClientException.launderThrowable(e.getCause());
+      }
+      try {
+        return sendRequest(url, item, header, responseHandler, successCodes);
+      } catch (ACMEClientException e) {
+        if (retried || !RateLimiter.isRateLimited(e)) {
+          throw e;
+        }
+        logger.debug("Rate limited sending to {}, retrying once there is capacity", url);
+        rateLimiter.limited(keys, e.getRetryAfter());
+      }
+      header = withNonce(jwsHeader, nonce.get());
+    }
   }
 
   protected T sendRequest(String url, Resource item, JWSHeader jwsHeader, ResponseHandler<T> responseHandler, int... successCodes) {
@@ -87,129 +127,326 @@ public abstract class BaseOperations<T> {
   }
 
   protected T sendRequest(String url, JSONObject jsonObject, JWSHeader jwsHeader, ResponseHandler<T> responseHandler, int... successCodes) {
+    return sendRequest(url, jsonObject, jwsHeader, true, responseHandler, successCodes);
+  }
+
+  /**
+   * Sends a key-change request, which has to be signed with the key being replaced and so is
+   * never re-signed after a rollover.
+   */
+  protected T sendRolloverRequest(String url, JSONObject jsonObject, JWSHeader jwsHeader, ResponseHandler<T> responseHandler, int... successCodes) {
+    return sendRequest(url, jsonObject, jwsHeader, false, responseHandler, successCodes);
+  }
+
+  private T sendRequest(String url, JSONObject jsonObject, JWSHeader jwsHeader, boolean followRollover, ResponseHandler<T> responseHandler, int... successCodes) {
+    JWSHeader header = jwsHeader;
+    boolean resigned = false;
+    for (int attempt = 0; ; ) {
+      AccountCredentials.Credential credential = credentials.get();
+      HttpResponse response = execute(signedRequest(url, jsonObject, header, credential));
+      ACMEClientException error;
+      try {
+        error = responseError(response, successCodes);
+        if (error == null) {
+          nonce.extractNonce(response);
+          return responseHandler.handle(response);
+        }
+
+        // Error responses carry a fresh nonce too, which is what a retry is signed with.
+        nonce.extractNonceIfPresent(response);
+      } finally {
+        response.close();
+      }
+
+      if (BAD_NONCE.equals(error.getType()) && attempt < nonce.getMaxBadNonceRetries()) {
+        // See https://ietf-wg-acme.github.io/acme/#rfc.section.5.5.1.
+        attempt++;
+        logger.debug("Server rejected nonce for {}, retrying ({}/{})", url, attempt, nonce.getMaxBadNonceRetries());
+        nonce.badNonceRetried();
+      } else if (followRollover && !resigned && isUnauthorized(error) && credentials.replacement(credential).join() != null) {
+        resigned = true;
+        logger.debug("Account key was rolled over while sending to {}, retrying with the new key", url);
+      } else {
+        throw error;
+      }
+      header = withNonce(jwsHeader, nonce.get());
+    }
+  }
+
+  protected <R> CompletableFuture<R> sendRequestAsync(Resource.ResourceType resourceType, Resource item, JWSHeader jwsHeader, ResponseHandler<R> responseHandler, int... successCodes) {
+    List<RateLimiter.Key> keys = rateLimiter.keys(resourceType, getAccountKey().getThumbprint().toString(), Collections.emptyList());
+    return directory.getAsync().thenCompose(dir -> sendRateLimitedAsync(dir.get(resourceType), item, keys, jwsHeader, jwsHeader, false, responseHandler, successCodes));
+  }
+
+  private <R> CompletableFuture<R> sendRateLimitedAsync(String url, Resource item, List<RateLimiter.Key> keys, JWSHeader jwsHeader, JWSHeader header, boolean retried, ResponseHandler<R> responseHandler, int... successCodes) {
+    return rateLimiter.acquire(keys)
+      .thenCompose(ignored -> this.<R>sendRequestAsync(url, item, header, responseHandler, successCodes))
+      .handle((result, throwable) -> {
+        if (throwable == null) {
+          return CompletableFuture.completedFuture(result);
+        }
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        if (retried || !(cause instanceof ACMEClientException) || !RateLimiter.isRateLimited((ACMEClientException) cause)) {
+          CompletableFuture<R> failed = new CompletableFuture<>();
+          failed.completeExceptionally(cause);
+          return failed;
+        }
+        logger.debug("Rate limited sending to {}, retrying once there is capacity", url);
+        rateLimiter.limited(keys, ((ACMEClientException) cause).getRetryAfter());
+        return nonce.getAsync().thenCompose(freshNonce ->
+          this.<R>sendRateLimitedAsync(url, item, keys, jwsHeader, withNonce(jwsHeader, freshNonce), true, responseHandler, successCodes)
+        );
+      })
+      .thenCompose(Function.identity());
+  }
+
+  protected <R> CompletableFuture<R> sendRequestAsync(String url, Resource item, JWSHeader jwsHeader, ResponseHandler<R> responseHandler, int... successCodes) {
+    return sendRequestAsync(url, item.toJSONObject(), jwsHeader, responseHandler, successCodes);
+  }
+
+  protected <R> CompletableFuture<R> sendRequestAsync(String url, JSONObject jsonObject, JWSHeader jwsHeader, ResponseHandler<R> responseHandler, int... successCodes) {
+    return sendRequestAsync(url, jsonObject, jwsHeader, jwsHeader, 0, false, responseHandler, successCodes);
+  }
+
+  private <R> CompletableFuture<R> sendRequestAsync(String url, JSONObject jsonObject, JWSHeader jwsHeader, JWSHeader header, int attempt, boolean resigned, ResponseHandler<R> responseHandler, int... successCodes) {
+    AccountCredentials.Credential credential = credentials.get();
+    return executeAsync(signedRequest(url, jsonObject, header, credential)).thenCompose(response -> {
+      ACMEClientException error;
+      try {
+        error = responseError(response, successCodes);
+        if (error == null) {
+          nonce.extractNonce(response);
+          return CompletableFuture.completedFuture(responseHandler.handle(response));
+        }
+
+        nonce.extractNonceIfPresent(response);
+      } finally {
+        response.close();
+      }
+
+      if (BAD_NONCE.equals(error.getType()) && attempt < nonce.getMaxBadNonceRetries()) {
+        logger.debug("Server rejected nonce for {}, retrying ({}/{})", url, attempt + 1, nonce.getMaxBadNonceRetries());
+        nonce.badNonceRetried();
+        return nonce.getAsync().thenCompose(freshNonce ->
+          sendRequestAsync(url, jsonObject, jwsHeader, withNonce(jwsHeader, freshNonce), attempt + 1, resigned, responseHandler, successCodes)
+        );
+      }
+      if (resigned || !isUnauthorized(error)) {
+        throw error;
+      }
+      return credentials.replacement(credential).thenCompose(next -> {
+        if (next == null) {
+          throw error;
+        }
+        logger.debug("Account key was rolled over while sending to {}, retrying with the new key", url);
+        return nonce.getAsync().thenCompose(freshNonce ->
+          sendRequestAsync(url, jsonObject, jwsHeader, withNonce(jwsHeader, freshNonce), attempt, true, responseHandler, successCodes)
+        );
+      });
+    });
+  }
+
+  // A request the server turned away because it no longer recognises the key it was signed with.
+  // Only the problem type says so - a bare 401 or 403 is just as likely an ordinary refusal, which
+  // shouldn't wait on a rollover in progress and then be sent a second time.
+  private static boolean isUnauthorized(ACMEClientException error) {
+    return UNAUTHORIZED.equals(error.getType());
+  }
+
+  private static JWSHeader withNonce(JWSHeader jwsHeader, String freshNonce) {
+    Map<String, Object> customParams = new HashMap<>(jwsHeader.getCustomParams());
+    customParams.put("nonce", freshNonce);
+    return new JWSHeader.Builder(jwsHeader)
+      .customParams(customParams)
+      .parsedBase64URL(null)
+      .build();
+  }
+
+  private HttpRequest signedRequest(String url, JSONObject jsonObject, JWSHeader jwsHeader, AccountCredentials.Credential credential) {
+    JWSHeader header = jwsHeader;
+    // A header taken before the key was rolled over still carries the old one.
+    if (header.getJWK() != credential.getAccountKey().getJwk()) {
+      header = new JWSHeader.Builder(credential.getJwsAlgorithm())
+        .jwk(credential.getAccountKey().getJwk())
+        .customParams(header.getCustomParams())
+        .build();
+    }
+
     // Construct the JWS to send on.
-    JWSObject jwsObject = new JWSObject(jwsHeader, new Payload(jsonObject));
+    JWSObject jwsObject = new JWSObject(header, new Payload(jsonObject));
 
-    signer.sign(jwsObject);
+    credential.getSigner().sign(jwsObject);
 
     String compact = jwsObject.serialize();
-    RequestBody body = RequestBody.create(REQUEST_MEDIA_TYPE, compact);
 
-    Request request = new Request.Builder()
-      .url(url)
-      .post(body)
-      .build();
-    return sendRequest(request, responseHandler, successCodes);
+    return HttpRequest.post(url, JOSEObject.MIME_TYPE_COMPACT, compact.getBytes(StandardCharsets.UTF_8));
   }
 
   protected T sendRequest(String url, ResponseHandler<T> responseHandler, int... successCodes) {
-    Request request = new Request.Builder()
-      .url(url)
-      .get()
-      .build();
+    directory.get();
+    HttpRequest request = HttpRequest.get(url);
     return sendRequest(request, responseHandler, successCodes);
   }
 
-  protected T sendRequest(Request request, ResponseHandler<T> responseHandler, int... successCodes) {
+  protected T sendRequest(HttpRequest request, ResponseHandler<T> responseHandler, int... successCodes) {
+    return handleResponse(execute(request), responseHandler, successCodes);
+  }
+
+  protected <R> CompletableFuture<R> sendRequestAsync(String url, ResponseHandler<R> responseHandler, int... successCodes) {
+    HttpRequest request = HttpRequest.get(url);
+    return directory.getAsync().thenCompose(dir -> sendRequestAsync(request, responseHandler, successCodes));
+  }
+
+  protected <R> CompletableFuture<R> sendRequestAsync(HttpRequest request, ResponseHandler<R> responseHandler, int... successCodes) {
+    return executeAsync(request).thenApply(response -> handleResponse(response, responseHandler, successCodes));
+  }
+
+  /**
+   * GETs a resource that may be served from outside the ACME server, such as an issuer
+   * certificate, so a response without a nonce isn't treated as an error.
+   */
+  protected <R> R fetch(String url, ResponseHandler<R> responseHandler, int... successCodes) {
+    directory.get();
+    HttpRequest request = HttpRequest.get(url);
+    HttpResponse response = execute(request);
     try {
-      Response response = okHttpClient.newCall(request).execute();
-      try {
-        assertSuccessfulResponse(response, successCodes);
-        nonce.extractNonce(response);
-        return responseHandler.handle(response);
-      } finally {
-        response.body().close();
+      nonce.extractNonceIfPresent(response);
+      ACMEClientException error = responseError(response, successCodes);
+      if (error != null) {
+        throw error;
+      }
+      return responseHandler.handle(response);
+    } finally {
+      response.close();
+    }
+  }
+
+  private <R> R handleResponse(HttpResponse response, ResponseHandler<R> responseHandler, int... successCodes) {
+    try {
+      ACMEClientException error = responseError(response, successCodes);
+      if (error != null) {
+        nonce.extractNonceIfPresent(response);
+        throw error;
       }
+      nonce.extractNonce(response);
+      return responseHandler.handle(response);
+    } finally {
+      response.close();
+    }
+  }
+
+  private HttpResponse execute(HttpRequest request) {
+    try {
+      return transport.execute(request);
     } catch (IOException e) {
       throw ACMEClientException.launderThrowable(e);
     }
   }
 
+  private CompletableFuture<HttpResponse> executeAsync(HttpRequest request) {
+    CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+    transport.executeAsync(request).whenComplete((response, e) -> {
+      if (e != null) {
+        future.completeExceptionally(new ACMEClientException("An error has occurred.", e));
+      } else {
+        future.complete(response);
+      }
+    });
+    return future;
+  }
+
+  // Talking to the server for the first time discovers its directory, which also seeds the
+  // nonce pool - so that always happens before a nonce is taken.
   protected JWSHeader.Builder jwsHeader() {
-    return new JWSHeader.Builder(jwsAlgorithm)
-      .customParam("nonce", nonce.get())
-      .jwk(jwk);
+    directory.get();
+    return jwsHeader(nonce.get());
+  }
+
+  protected CompletableFuture<JWSHeader.Builder> jwsHeaderAsync() {
+    return directory.getAsync().thenCompose(dir -> nonce.getAsync()).thenApply(this::jwsHeader);
   }
 
-  private void assertSuccessfulResponse(Response response, int... expectedStatusCode) {
+  private JWSHeader.Builder jwsHeader(String nonce) {
+    AccountCredentials.Credential credential = credentials.get();
+    return new JWSHeader.Builder(credential.getJwsAlgorithm())
+      .customParam("nonce", nonce)
+      .jwk(credential.getAccountKey().getJwk());
+  }
+
+  private ACMEClientException responseError(HttpResponse response, int... expectedStatusCode) {
     for (int code : expectedStatusCode) {
       if (response.code() == code) {
-        return;
+        return null;
       }
     }
     String detail = response.message();
     try {
-      detail = response.body().string();
+      detail = response.string();
       JSONObject parsedResponse = JSONParserUtils.parse(detail);
-      throw new ACMEClientException(response.code(), response.message(), parsedResponse);
+      return new ACMEClientException(response.code(), response.message(), parsedResponse, response.header("Retry-After"));
     } catch (ParseException | IOException e) {
-      throw new ACMEClientException(response.code(), response.message(), detail);
+      return new ACMEClientException(response.code(), response.message(), detail, response.header("Retry-After"));
     }
   }
 
-  protected T requestWithRetryAfter(String url, Resource item, JWSHeader jwsHeader, ResponseHandler<T> responseHandler, int successCode, int... retryCodes) {
+  protected T requestWithRetryAfter(String url, Resource item, ResponseHandler<T> responseHandler, int successCode, int... retryCodes) {
     try {
-      T obj = null;
-      int[] allCodes = new int[retryCodes.length + 1];
-      System.arraycopy(retryCodes, 0, allCodes, 0, retryCodes.length);
-      allCodes[retryCodes.length] = successCode;
-      while (obj == null) {
-        try {
-          obj = sendRequest(
-            url,
-            item,
-            jwsHeader,
-            (response) -> {
-              String retryAfterHeader = response.header("Retry-After");
-              for (int retryCode : retryCodes) {
-                if (retryCode == response.code()) {
-                  throw new RetryAfterException(retryAfterHeader);
-                }
-              }
-              return responseHandler.handle(response);
-            },
-            allCodes
-          );
-        } catch (RetryAfterException e) {
-          try {
-            TimeUnit.SECONDS.sleep(e.retryAfter);
-          } catch (InterruptedException einter) {
-            logger.warn("Interrupted sleep during retry", einter);
+      return requestWithRetryAfterAsync(url, item, responseHandler, successCode, retryCodes).join();
+    } catch (CompletionException e) {
+      throw ACMEClientException.launderThrowable(e.getCause());
+    }
+  }
+
+  /**
+   * Resends the request, signed with a fresh nonce each time, for as long as the server answers
+   * with one of the retry codes. Waits are parked on the shared {@link RetryScheduler} rather
+   * than on a thread.
+   */
+  protected CompletableFuture<T> requestWithRetryAfterAsync(String url, Resource item, ResponseHandler<T> responseHandler, int successCode, int... retryCodes) {
+    int[] allCodes = new int[retryCodes.length + 1];
+    System.arraycopy(retryCodes, 0, allCodes, 0, retryCodes.length);
+    allCodes[retryCodes.length] = successCode;
+
+    return jwsHeaderAsync().thenCompose(jwsHeader -> sendRequestAsync(
+      url,
+      item,
+      jwsHeader.build(),
+      (response) -> {
+        for (int retryCode : retryCodes) {
+          if (retryCode == response.code()) {
+            long retryAfter = RetryAfterUtils.delaySeconds(response.header("Retry-After"));
+            logger.debug("Retrying {} in {}s", url, retryAfter);
+            return retryScheduler.schedule(retryAfter, TimeUnit.SECONDS)
+              .thenCompose(ignored -> requestWithRetryAfterAsync(url, item, responseHandler, successCode, retryCodes));
           }
         }
-      }
-      return obj;
-    } catch (Exception e) {
-      throw ACMEClientException.launderThrowable(e);
-    }
+        return CompletableFuture.completedFuture(responseHandler.handle(response));
+      },
+      allCodes
+    )).thenCompose(Function.identity());
   }
 
   protected JWK getJwk() {
-    return jwk;
+    return credentials.get().getAccountKey().getJwk();
+  }
+
+  protected AccountKey getAccountKey() {
+    return credentials.get().getAccountKey();
   }
 
   protected JWSAlgorithm getJwsAlgorithm() {
-    return jwsAlgorithm;
+    return credentials.get().getJwsAlgorithm();
   }
 
-  private static class RetryAfterException extends RuntimeException {
+  protected AccountCredentials getCredentials() {
+    return credentials;
+  }
 
-    private final long retryAfter;
+  protected RateLimiter getRateLimiter() {
+    return rateLimiter;
+  }
 
-    private RetryAfterException(String retryAfterDate) {
-      // Retry-After  = "Retry-After" ":" ( HTTP-date | delta-seconds )
-      long retryAfterTemp = 0;
-      try {
-        TemporalAccessor temp = DateTimeFormatter.RFC_1123_DATE_TIME.parse(retryAfterDate);
-        Instant retryAfterInstant = Instant.from(temp);
-        retryAfterTemp = Instant.now().until(retryAfterInstant, ChronoUnit.SECONDS);
-      } catch (DateTimeParseException e) {
-        retryAfterTemp = Long.parseLong(retryAfterDate);
-      }
-      if (retryAfterTemp < 0) {
-        retryAfterTemp = 0;
-      }
-      retryAfter = retryAfterTemp;
-    }
+  protected RetryScheduler getRetryScheduler() {
+    return retryScheduler;
   }
 }
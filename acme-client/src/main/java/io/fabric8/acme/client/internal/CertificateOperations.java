@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.internal;
+
+import io.fabric8.acme.client.ACMEClientException;
+import io.fabric8.acme.client.dsl.Downloadable;
+import io.fabric8.acme.client.dsl.IssueCreateLocatable;
+import io.fabric8.acme.client.model.Certificate;
+import io.fabric8.acme.client.model.CertificateRequest;
+import io.fabric8.acme.client.model.CertificateSink;
+import io.fabric8.acme.client.model.NewCertificate;
+import io.fabric8.acme.client.model.Resource;
+import io.fabric8.acme.client.model.SendableNewCertificate;
+import io.fabric8.acme.client.transport.HttpResponse;
+import io.fabric8.acme.client.transport.HttpTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Certificate issuance and download - see https://ietf-wg-acme.github.io/acme/#rfc.section.6.5.
+ * <p>
+ * Downloads stream each certificate straight from the response body to the caller's
+ * {@link CertificateSink} and then follow the {@code Link rel="up"} headers up the issuer chain,
+ * so no more than one certificate is ever in flight.
+ */
+public class CertificateOperations extends BaseOperations<Certificate>
+  implements IssueCreateLocatable<Certificate, NewCertificate, SendableNewCertificate, Downloadable<Certificate>> {
+
+  // Guards against issuer links that loop back on themselves or never end.
+  static final int MAX_CHAIN_LENGTH = 10;
+
+  static final int MAX_ISSUANCE_WAITS = 30;
+
+  private static final Logger logger = LoggerFactory.getLogger(CertificateOperations.class);
+
+  private final Supplier<KeyPairPool> keyPairPool;
+
+  public CertificateOperations(DirectoryProvider directory, HttpTransport transport, Nonce nonce, AccountCredentials credentials, Supplier<KeyPairPool> keyPairPool) {
+    this(directory, transport, nonce, credentials, keyPairPool, new RateLimiter(null));
+  }
+
+  public CertificateOperations(DirectoryProvider directory, HttpTransport transport, Nonce nonce, AccountCredentials credentials, Supplier<KeyPairPool> keyPairPool, RateLimiter rateLimiter) {
+    super(directory, transport, nonce, credentials, rateLimiter);
+    this.keyPairPool = keyPairPool;
+  }
+
+  @Override
+  public SendableNewCertificate createNew() {
+    return new SendableNewCertificate(this::create);
+  }
+
+  /**
+   * Sends the request as given. The names it covers are read back out of the CSR so that the
+   * per-domain rate limits apply just as they do to {@link #issue}.
+   */
+  @Override
+  public Certificate create(NewCertificate item) {
+    return create(item, CsrBuilder.readDomains(item.getCsr()));
+  }
+
+  private Certificate create(NewCertificate item, List<String> domains) {
+    return sendRequest(
+      Resource.ResourceType.NEW_CERTIFICATE,
+      item,
+      domains,
+      jwsHeader().build(),
+      CertificateOperations::handleCertificateResponse,
+      HttpURLConnection.HTTP_CREATED,
+      HttpURLConnection.HTTP_ACCEPTED
+    );
+  }
+
+  /**
+   * Requests a certificate for the domains using a key pair from the pool.
+   */
+  @Override
+  public Certificate issue(String... domains) {
+    CertificateRequest request = keyPairPool.get().request(Arrays.asList(domains));
+    Certificate certificate = create(request.toNewCertificate(), request.getDomains());
+    return new Certificate(certificate.getLocation(), certificate.getIssuerLocation(), request.getKeyPair());
+  }
+
+  @Override
+  public Downloadable<Certificate> at(String location) {
+    return sink -> download(location, sink);
+  }
+
+  static Certificate handleCertificateResponse(HttpResponse response) {
+    String location = response.header("Location");
+    if (location == null || location.isEmpty()) {
+      location = response.url();
+    }
+    return new Certificate(location, issuerLocation(response));
+  }
+
+  private Certificate download(String location, CertificateSink sink) {
+    Downloaded certificate = awaitCertificate(location, sink);
+
+    Set<String> visited = new HashSet<>();
+    visited.add(location);
+    int index = certificate.count;
+    String issuer = certificate.issuerLocation;
+    while (issuer != null && index < MAX_CHAIN_LENGTH && visited.add(issuer)) {
+      int firstIndex = index;
+      Downloaded downloaded = fetch(issuer, response -> write(response, firstIndex, sink), HttpURLConnection.HTTP_OK);
+      index += downloaded.count;
+      issuer = downloaded.issuerLocation;
+    }
+
+    return new Certificate(location, certificate.issuerLocation);
+  }
+
+  /**
+   * Waits as long as the server asks for while the certificate is still being issued.
+   */
+  private Downloaded awaitCertificate(String location, CertificateSink sink) {
+    for (int attempt = 0; ; attempt++) {
+      Downloaded downloaded = fetch(
+        location,
+        response -> response.code() == HttpURLConnection.HTTP_ACCEPTED ? Downloaded.pending(response) : write(response, 0, sink),
+        HttpURLConnection.HTTP_OK,
+        HttpURLConnection.HTTP_ACCEPTED
+      );
+      if (downloaded.retryAfter < 0) {
+        return downloaded;
+      }
+      if (attempt >= MAX_ISSUANCE_WAITS) {
+        throw new ACMEClientException("Certificate at " + location + " has still not been issued");
+      }
+
+      logger.debug("Certificate at {} not issued yet, retrying in {}s", location, downloaded.retryAfter);
+      getRetryScheduler().schedule(downloaded.retryAfter, TimeUnit.SECONDS).join();
+    }
+  }
+
+  private static Downloaded write(HttpResponse response, int index, CertificateSink sink) {
+    try (InputStream body = response.byteStream()) {
+      int count;
+      if (PemUtils.isPem(response.header("Content-Type"))) {
+        count = PemUtils.readCertificates(body, index, sink);
+      } else {
+        sink.accept(index, body);
+        count = 1;
+      }
+      return new Downloaded(count, issuerLocation(response), -1);
+    } catch (IOException e) {
+      throw ACMEClientException.launderThrowable(e);
+    }
+  }
+
+  private static String issuerLocation(HttpResponse response) {
+    String up = new LinkHeaderFieldParser(response.headers("Link")).getFirstTargetForRelation("up");
+    if (up == null) {
+      return null;
+    }
+    // Link targets may be relative to the resource they were served with.
+    try {
+      return URI.create(response.url()).resolve(up).toString();
+    } catch (IllegalArgumentException e) {
+      return up;
+    }
+  }
+
+  private static final class Downloaded {
+
+    private final int count;
+
+    private final String issuerLocation;
+
+    // How long to wait before asking again if the certificate isn't ready, otherwise -1.
+    private final long retryAfter;
+
+    private Downloaded(int count, String issuerLocation, long retryAfter) {
+      this.count = count;
+      this.issuerLocation = issuerLocation;
+      this.retryAfter = retryAfter;
+    }
+
+    private static Downloaded pending(HttpResponse response) {
+      return new Downloaded(0, null, RetryAfterUtils.delaySeconds(response.header("Retry-After")));
+    }
+  }
+}
@@ -15,21 +15,17 @@
  */
 package io.fabric8.acme.client.internal;
 
-import com.nimbusds.jose.JOSEException;
-import com.nimbusds.jose.JWSAlgorithm;
-import com.nimbusds.jose.jwk.JWK;
 import io.fabric8.acme.client.ACMEClientException;
 import io.fabric8.acme.client.dsl.PrepareReadyable;
 import io.fabric8.acme.client.dsl.UseLocatable;
 import io.fabric8.acme.client.model.Challenge;
 import io.fabric8.acme.client.model.ChallengeWithToken;
-import io.fabric8.acme.client.model.Directory;
 import io.fabric8.acme.client.model.Dns01Challenge;
 import io.fabric8.acme.client.model.Http01Challenge;
 import io.fabric8.acme.client.model.TlsSni01Challenge;
+import io.fabric8.acme.client.transport.HttpResponse;
+import io.fabric8.acme.client.transport.HttpTransport;
 import net.minidev.json.JSONObject;
-import okhttp3.OkHttpClient;
-import okhttp3.Response;
 
 import java.net.HttpURLConnection;
 
@@ -38,8 +34,8 @@ public class ChallengeOperations extends BaseOperations<Challenge>
 
   private Challenge challenge;
 
-  public ChallengeOperations(Directory directory, OkHttpClient okHttpClient, Nonce nonce, JWSAlgorithm jwsAlgorithm, Signer signer, JWK jwk) {
-    super(directory, okHttpClient, nonce, jwsAlgorithm, signer, jwk);
+  public ChallengeOperations(DirectoryProvider directory, HttpTransport transport, Nonce nonce, AccountCredentials credentials) {
+    super(directory, transport, nonce, credentials);
   }
 
   private ChallengeOperations(Challenge challenge, ChallengeOperations orig) {
@@ -49,7 +45,7 @@ public class ChallengeOperations extends BaseOperations<Challenge>
 
   @Override
   public PrepareReadyable<Challenge> at(String location) {
-    return use(sendRequest(location, this::handleChallengeResponse, HttpURLConnection.HTTP_OK));
+    return use(sendRequest(location, ChallengeOperations::handleChallengeResponse, HttpURLConnection.HTTP_OK));
   }
 
   @Override
@@ -58,37 +54,37 @@ public class ChallengeOperations extends BaseOperations<Challenge>
   }
 
   public Challenge prepare() {
-    try {
-      switch (challenge.getType()) {
-        case "dns-01":
-          Dns01Challenge dns01Challenge = (Dns01Challenge) challenge;
-          return new Dns01Challenge(
-            dns01Challenge.getToken(),
-            dns01Challenge.getStatus(),
-            dns01Challenge.getUri(),
-            dns01Challenge.getToken() + "." + getJwk().computeThumbprint().toString()
-          );
-        case "http-01":
-          Http01Challenge http01Challenge = (Http01Challenge) challenge;
-          return new Http01Challenge(
-            http01Challenge.getToken(),
-            http01Challenge.getStatus(),
-            http01Challenge.getUri(),
-            http01Challenge.getToken() + "." + getJwk().computeThumbprint().toString()
-          );
-        case "tls-sni-01":
-          TlsSni01Challenge tlsSni01Challenge = (TlsSni01Challenge) challenge;
-          return new Http01Challenge(
-            tlsSni01Challenge.getToken(),
-            tlsSni01Challenge.getStatus(),
-            tlsSni01Challenge.getUri(),
-            tlsSni01Challenge.getToken() + "." + getJwk().computeThumbprint().toString()
-          );
-        default:
-          return challenge;
-      }
-    } catch (JOSEException e) {
-      throw ACMEClientException.launderThrowable(e);
+    return prepare(challenge, getAccountKey());
+  }
+
+  static Challenge prepare(Challenge challenge, AccountKey accountKey) {
+    switch (challenge.getType()) {
+      case "dns-01":
+        Dns01Challenge dns01Challenge = (Dns01Challenge) challenge;
+        return new Dns01Challenge(
+          dns01Challenge.getToken(),
+          dns01Challenge.getStatus(),
+          dns01Challenge.getUri(),
+          accountKey.keyAuthorization(dns01Challenge.getToken())
+        );
+      case "http-01":
+        Http01Challenge http01Challenge = (Http01Challenge) challenge;
+        return new Http01Challenge(
+          http01Challenge.getToken(),
+          http01Challenge.getStatus(),
+          http01Challenge.getUri(),
+          accountKey.keyAuthorization(http01Challenge.getToken())
+        );
+      case "tls-sni-01":
+        TlsSni01Challenge tlsSni01Challenge = (TlsSni01Challenge) challenge;
+        return new TlsSni01Challenge(
+          tlsSni01Challenge.getToken(),
+          tlsSni01Challenge.getStatus(),
+          tlsSni01Challenge.getUri(),
+          accountKey.keyAuthorization(tlsSni01Challenge.getToken())
+        );
+      default:
+        return challenge;
     }
   }
 
@@ -96,9 +92,9 @@ public class ChallengeOperations extends BaseOperations<Challenge>
     try {
       return sendRequest(
         challenge.getUri(),
-        readyChallenge(challenge),
+        readyChallenge(challenge, getAccountKey()),
         jwsHeader().build(),
-        this::handleChallengeResponse,
+        ChallengeOperations::handleChallengeResponse,
         HttpURLConnection.HTTP_ACCEPTED
       );
     } catch (Exception e) {
@@ -106,16 +102,15 @@ public class ChallengeOperations extends BaseOperations<Challenge>
     }
   }
 
-  private Challenge handleChallengeResponse(Response response) {
+  static Challenge handleChallengeResponse(HttpResponse response) {
     try {
-      JSONObject jsonObject = JSONParserUtils.parse(response.body().byteStream());
-      return Challenge.fromJSONObject(jsonObject);
+      return StreamingModelDecoder.decodeChallenge(response.byteStream());
     } catch (Exception e) {
       throw ACMEClientException.launderThrowable(e);
     }
   }
 
-  private JSONObject readyChallenge(Challenge challenge) throws JOSEException {
+  static JSONObject readyChallenge(Challenge challenge, AccountKey accountKey) {
     JSONObject jsonObject = new JSONObject();
     jsonObject.put("resource", "challenge");
 
@@ -123,7 +118,7 @@ public class ChallengeOperations extends BaseOperations<Challenge>
       ChallengeWithToken challengeWithToken = (ChallengeWithToken) challenge;
       String keyAuthorization = challengeWithToken.getKeyAuthorization();
       if (keyAuthorization == null || keyAuthorization.isEmpty()) {
-        keyAuthorization = challengeWithToken.getToken() + "." + getJwk().computeThumbprint().toString();
+        keyAuthorization = accountKey.keyAuthorization(challengeWithToken.getToken());
       }
       jsonObject.put("keyAuthorization", keyAuthorization);
     }
@@ -0,0 +1,295 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.internal;
+
+import io.fabric8.acme.client.ACMEClientException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Builds DER encoded PKCS #10 certificate signing requests (RFC 2986) for a set of DNS names,
+ * which go into a subjectAltName extension request. The first name is also used as the subject
+ * common name when it fits. {@link #readDomains} goes the other way for requests built elsewhere.
+ */
+public class CsrBuilder {
+
+  private static final String OID_COMMON_NAME = "2.5.4.3";
+
+  private static final String OID_EXTENSION_REQUEST = "1.2.840.113549.1.9.14";
+
+  private static final String OID_SUBJECT_ALT_NAME = "2.5.29.17";
+
+  private static final String OID_SHA256_WITH_RSA = "1.2.840.113549.1.1.11";
+
+  private static final String OID_SHA256_WITH_ECDSA = "1.2.840.10045.4.3.2";
+
+  private static final String OID_SHA384_WITH_ECDSA = "1.2.840.10045.4.3.3";
+
+  private static final int MAX_COMMON_NAME_LENGTH = 64;
+
+  private CsrBuilder() {
+  }
+
+  public static byte[] build(KeyPair keyPair, List<String> domains) {
+    if (domains == null || domains.isEmpty()) {
+      throw new ACMEClientException("configError", "At least one domain is required for a certificate request");
+    }
+
+    String signatureAlgorithm;
+    String signatureOid;
+    boolean nullParameters;
+    if (keyPair.getPublic() instanceof RSAPublicKey) {
+      signatureAlgorithm = "SHA256withRSA";
+      signatureOid = OID_SHA256_WITH_RSA;
+      nullParameters = true;
+    } else if (keyPair.getPublic() instanceof ECPublicKey && ((ECPublicKey) keyPair.getPublic()).getParams().getCurve().getField().getFieldSize() > 256) {
+      signatureAlgorithm = "SHA384withECDSA";
+      signatureOid = OID_SHA384_WITH_ECDSA;
+      nullParameters = false;
+    } else {
+      signatureAlgorithm = "SHA256withECDSA";
+      signatureOid = OID_SHA256_WITH_ECDSA;
+      nullParameters = false;
+    }
+
+    byte[] subject;
+    if (domains.get(0).length() <= MAX_COMMON_NAME_LENGTH) {
+      subject = sequence(set(sequence(oid(OID_COMMON_NAME), tlv(0x0c, domains.get(0).getBytes(StandardCharsets.UTF_8)))));
+    } else {
+      subject = sequence();
+    }
+
+    byte[][] names = new byte[domains.size()][];
+    for (int i = 0; i < names.length; i++) {
+      // dNSName [2] IMPLICIT IA5String
+      names[i] = tlv(0x82, domains.get(i).getBytes(StandardCharsets.US_ASCII));
+    }
+    byte[] extensionRequest = sequence(
+      oid(OID_EXTENSION_REQUEST),
+      set(sequence(sequence(oid(OID_SUBJECT_ALT_NAME), tlv(0x04, sequence(names)))))
+    );
+
+    byte[] requestInfo = sequence(
+      tlv(0x02, new byte[]{0}),
+      subject,
+      keyPair.getPublic().getEncoded(),
+      tlv(0xa0, extensionRequest)
+    );
+
+    try {
+      Signature signature = Signature.getInstance(signatureAlgorithm);
+      signature.initSign(keyPair.getPrivate());
+      signature.update(requestInfo);
+      byte[] signed = signature.sign();
+
+      byte[] algorithm = nullParameters ? sequence(oid(signatureOid), new byte[]{0x05, 0x00}) : sequence(oid(signatureOid));
+      return sequence(requestInfo, algorithm, bitString(signed));
+    } catch (GeneralSecurityException e) {
+      throw ACMEClientException.launderThrowable(e);
+    }
+  }
+
+  /**
+   * The subject common name and subjectAltName DNS names of a base64url encoded request, in that
+   * order and without duplicates. Anything that doesn't parse yields no names - it's for the
+   * server to reject a malformed request, not the client.
+   */
+  public static List<String> readDomains(String csr) {
+    Set<String> domains = new LinkedHashSet<>();
+    if (csr == null) {
+      return new ArrayList<>(domains);
+    }
+    try {
+      byte[] der = Base64.getUrlDecoder().decode(csr);
+      int[] request = child(der, header(der, 0, 0x30), 0x30);
+      int offset = skip(der, request[1], 0x02);
+      int[] subject = header(der, offset, 0x30);
+      readCommonName(der, subject, domains);
+      offset = skip(der, subject[2], 0x30);
+      if (offset < request[2] && (der[offset] & 0xff) == 0xa0) {
+        readSubjectAltNames(der, header(der, offset, 0xa0), domains);
+      }
+    } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+      // Not a request we understand; let the server say what's wrong with it.
+    }
+    return new ArrayList<>(domains);
+  }
+
+  private static void readCommonName(byte[] der, int[] subject, Set<String> domains) {
+    byte[] commonName = oid(OID_COMMON_NAME);
+    for (int rdn = subject[1]; rdn < subject[2]; rdn = header(der, rdn, 0x31)[2]) {
+      int[] set = header(der, rdn, 0x31);
+      for (int atv = set[1]; atv < set[2]; atv = header(der, atv, 0x30)[2]) {
+        int[] attribute = header(der, atv, 0x30);
+        int[] type = header(der, attribute[1], 0x06);
+        if (matches(der, type, commonName)) {
+          int[] value = header(der, type[2], -1);
+          int tag = der[type[2]] & 0xff;
+          // UTF8String, PrintableString, T61String or IA5String
+          if (tag == 0x0c || tag == 0x13 || tag == 0x14 || tag == 0x16) {
+            domains.add(new String(der, value[1], value[2] - value[1], StandardCharsets.UTF_8).toLowerCase(Locale.ROOT));
+          }
+        }
+      }
+    }
+  }
+
+  private static void readSubjectAltNames(byte[] der, int[] attributes, Set<String> domains) {
+    byte[] extensionRequest = oid(OID_EXTENSION_REQUEST);
+    byte[] subjectAltName = oid(OID_SUBJECT_ALT_NAME);
+    for (int a = attributes[1]; a < attributes[2]; a = header(der, a, 0x30)[2]) {
+      int[] attribute = header(der, a, 0x30);
+      int[] type = header(der, attribute[1], 0x06);
+      if (!matches(der, type, extensionRequest)) {
+        continue;
+      }
+      int[] extensions = child(der, header(der, type[2], 0x31), 0x30);
+      for (int e = extensions[1]; e < extensions[2]; e = header(der, e, 0x30)[2]) {
+        int[] extension = header(der, e, 0x30);
+        int[] id = header(der, extension[1], 0x06);
+        if (!matches(der, id, subjectAltName)) {
+          continue;
+        }
+        int offset = id[2];
+        if ((der[offset] & 0xff) == 0x01) {
+          offset = header(der, offset, 0x01)[2];
+        }
+        int[] names = child(der, header(der, offset, 0x04), 0x30);
+        for (int n = names[1]; n < names[2]; n = header(der, n, -1)[2]) {
+          // dNSName [2] IMPLICIT IA5String
+          if ((der[n] & 0xff) == 0x82) {
+            int[] name = header(der, n, 0x82);
+            domains.add(new String(der, name[1], name[2] - name[1], StandardCharsets.US_ASCII).toLowerCase(Locale.ROOT));
+          }
+        }
+      }
+    }
+  }
+
+  // The element wrapped directly inside a constructed one.
+  private static int[] child(byte[] der, int[] parent, int tag) {
+    return header(der, parent[1], tag);
+  }
+
+  private static int skip(byte[] der, int offset, int tag) {
+    return header(der, offset, tag)[2];
+  }
+
+  private static boolean matches(byte[] der, int[] element, byte[] encoded) {
+    int length = element[2] - element[0];
+    if (length != encoded.length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (der[element[0] + i] != encoded[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reads the tag and length at the offset, checking the tag unless it's -1.
+   *
+   * @return the offsets of the element, its contents and the end of the element.
+   */
+  private static int[] header(byte[] der, int offset, int tag) {
+    if (tag != -1 && (der[offset] & 0xff) != tag) {
+      throw new IllegalArgumentException("Expected tag " + tag + " at " + offset);
+    }
+    int position = offset + 1;
+    int length = der[position++] & 0xff;
+    if (length >= 0x80) {
+      int lengthBytes = length & 0x7f;
+      if (lengthBytes == 0 || lengthBytes > 3) {
+        throw new IllegalArgumentException("Unsupported length at " + offset);
+      }
+      length = 0;
+      for (int i = 0; i < lengthBytes; i++) {
+        length = (length << 8) | (der[position++] & 0xff);
+      }
+    }
+    if (position + length > der.length) {
+      throw new IllegalArgumentException("Truncated element at " + offset);
+    }
+    return new int[]{offset, position, position + length};
+  }
+
+  private static byte[] sequence(byte[]... contents) {
+    return tlv(0x30, contents);
+  }
+
+  private static byte[] set(byte[]... contents) {
+    return tlv(0x31, contents);
+  }
+
+  private static byte[] bitString(byte[] bits) {
+    byte[] contents = new byte[bits.length + 1];
+    System.arraycopy(bits, 0, contents, 1, bits.length);
+    return tlv(0x03, contents);
+  }
+
+  private static byte[] oid(String oid) {
+    String[] arcs = oid.split("\\.");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(Integer.parseInt(arcs[0]) * 40 + Integer.parseInt(arcs[1]));
+    for (int i = 2; i < arcs.length; i++) {
+      long arc = Long.parseLong(arcs[i]);
+      int shift = 63 - Long.numberOfLeadingZeros(arc | 1);
+      shift -= shift % 7;
+      for (; shift > 0; shift -= 7) {
+        out.write((int) ((arc >>> shift) & 0x7f) | 0x80);
+      }
+      out.write((int) (arc & 0x7f));
+    }
+    return tlv(0x06, out.toByteArray());
+  }
+
+  private static byte[] tlv(int tag, byte[]... contents) {
+    int length = 0;
+    for (byte[] content : contents) {
+      length += content.length;
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream(length + 6);
+    out.write(tag);
+    if (length < 0x80) {
+      out.write(length);
+    } else {
+      int lengthBytes = (32 - Integer.numberOfLeadingZeros(length) + 7) / 8;
+      out.write(0x80 | lengthBytes);
+      for (int i = lengthBytes - 1; i >= 0; i--) {
+        out.write(length >>> (8 * i));
+      }
+    }
+    for (byte[] content : contents) {
+      out.write(content, 0, content.length);
+    }
+    return out.toByteArray();
+  }
+}
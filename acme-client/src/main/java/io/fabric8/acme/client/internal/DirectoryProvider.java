@@ -0,0 +1,413 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.internal;
+
+import io.fabric8.acme.client.ACMEClientException;
+import io.fabric8.acme.client.model.Directory;
+import io.fabric8.acme.client.transport.HttpRequest;
+import io.fabric8.acme.client.transport.HttpResponse;
+import io.fabric8.acme.client.transport.HttpTransport;
+import net.minidev.json.JSONObject;
+import net.minidev.json.parser.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Discovers the server's directory - see https://ietf-wg-acme.github.io/acme/#rfc.section.6.2 -
+ * the first time it is needed rather than when the client is created.
+ * <p>
+ * Sharing is opt-in: with a maximum age the directory is shared by every client for the same
+ * server URL, and once it is older than that it keeps being served while a conditional request
+ * (ETag / Last-Modified) refreshes it in the background. Without one - the default - each client
+ * fetches the directory once and keeps it. A shared directory is only held on to while some
+ * client for its server is still around. Either way it can be persisted to a file, in which case
+ * a later run starts from the persisted copy and revalidates it in the background instead of
+ * waiting on the server.
+ */
+public class DirectoryProvider {
+
+  private static final Logger logger = LoggerFactory.getLogger(DirectoryProvider.class);
+
+  private static final long RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  private static final ConcurrentMap<String, WeakReference<State>> SHARED =
+    new ConcurrentHashMap<>();
+
+  private final HttpTransport transport;
+
+  private final Nonce nonce;
+
+  private final URL server;
+
+  private final long maxAgeMillis;
+
+  private final State state;
+
+  private final Clock clock;
+
+  /**
+   * @param maxAge    seconds a fetched directory is served before being refreshed, 0 to fetch it
+   *                  once and keep it for the lifetime of this provider without sharing it.
+   * @param cacheFile where the directory is persisted between runs, or null.
+   */
+  public DirectoryProvider(
+    HttpTransport transport,
+    Nonce nonce,
+    URL server,
+    long maxAge,
+    Path cacheFile
+  ) {
+    this(transport, nonce, server, maxAge, cacheFile, Clock.systemUTC());
+  }
+
+  /**
+   * @param clock what the directory's age is measured against.
+   */
+  public DirectoryProvider(
+    HttpTransport transport,
+    Nonce nonce,
+    URL server,
+    long maxAge,
+    Path cacheFile,
+    Clock clock
+  ) {
+    if (maxAge < 0) {
+      throw new ACMEClientException("configError", "Directory maximum age cannot be negative");
+    }
+    this.transport = transport;
+    this.nonce = nonce;
+    this.server = server;
+    this.maxAgeMillis = TimeUnit.SECONDS.toMillis(maxAge);
+    this.clock = clock;
+    this.state = maxAge > 0 ? shared(server.toString()) : new State();
+    // Whoever refreshes a shared directory persists it, whether or not they asked for a file.
+    synchronized (state) {
+      if (state.cacheFile == null) {
+        state.cacheFile = cacheFile;
+      }
+    }
+  }
+
+  // Providers hold their state strongly and the map only weakly, so a server's entry goes once
+  // the last client using it does.
+  private static State shared(String server) {
+    SHARED.values().removeIf(ref -> ref.get() == null);
+    State[] state = new State[1];
+    SHARED.compute(server, (url, ref) -> {
+      state[0] = ref != null ? ref.get() : null;
+      if (state[0] != null) {
+        return ref;
+      }
+      state[0] = new State();
+      return new WeakReference<>(state[0]);
+    });
+    return state[0];
+  }
+
+  /**
+   * Returns the directory, fetching it on the calling thread if it hasn't been discovered yet.
+   */
+  public Directory get() {
+    CompletableFuture<Directory> loading;
+    boolean fetch = false;
+    synchronized (state) {
+      Directory directory = current();
+      if (directory != null) {
+        return directory;
+      }
+      if (state.loading == null) {
+        state.loading = newLoading();
+        fetch = true;
+      }
+      loading = state.loading;
+    }
+
+    // Anyone else asking in the meantime waits on this fetch rather than starting their own.
+    if (fetch) {
+      try {
+        complete(loading, transport.execute(request()));
+      } catch (IOException e) {
+        loading.completeExceptionally(e);
+      }
+    }
+
+    try {
+      return loading.join();
+    } catch (CompletionException e) {
+      throw ACMEClientException.launderThrowable(e.getCause());
+    }
+  }
+
+  /**
+   * Like {@link #get()}, but a directory that hasn't been discovered yet is fetched without
+   * blocking the calling thread.
+   */
+  public CompletableFuture<Directory> getAsync() {
+    synchronized (state) {
+      Directory directory = current();
+      if (directory != null) {
+        return CompletableFuture.completedFuture(directory);
+      }
+      if (state.loading == null) {
+        state.loading = fetchAsync();
+      }
+      return state.loading;
+    }
+  }
+
+  /**
+   * Whether the directory is being fetched or refreshed right now.
+   */
+  public boolean isLoading() {
+    synchronized (state) {
+      return state.loading != null;
+    }
+  }
+
+  // Called with the state locked - the directory as it stands, kicking off a background refresh
+  // if it is due.
+  private Directory current() {
+    if (state.directory == null && state.cacheFile != null && !state.restored) {
+      state.restored = true;
+      restore();
+    }
+    if (state.directory != null && state.loading == null && clock.millis() >= state.refreshAt) {
+      CompletableFuture<Directory> refresh = state.loading = fetchAsync();
+      refresh.whenComplete((directory, throwable) -> {
+        if (throwable != null) {
+          logger.debug("Failed to refresh directory from {}", server, throwable);
+          synchronized (state) {
+            state.refreshAt = clock.millis() + RETRY_DELAY_MILLIS;
+          }
+        }
+      });
+    }
+    return state.directory;
+  }
+
+  private CompletableFuture<Directory> fetchAsync() {
+    CompletableFuture<Directory> future = newLoading();
+    transport.executeAsync(request()).whenComplete((response, e) -> {
+      if (e != null) {
+        future.completeExceptionally(new ACMEClientException("An error has occurred.", e));
+      } else {
+        complete(future, response);
+      }
+    });
+    return future;
+  }
+
+  private CompletableFuture<Directory> newLoading() {
+    CompletableFuture<Directory> future = new CompletableFuture<>();
+    future.whenComplete((directory, throwable) -> {
+      synchronized (state) {
+        if (state.loading == future) {
+          state.loading = null;
+        }
+      }
+    });
+    return future;
+  }
+
+  private HttpRequest request() {
+    HttpRequest request = HttpRequest.get(server.toString());
+    synchronized (state) {
+      if (state.directory != null) {
+        if (state.etag != null) {
+          request = request.withHeader("If-None-Match", state.etag);
+        }
+        if (state.lastModified != null) {
+          request = request.withHeader("If-Modified-Since", state.lastModified);
+        }
+      }
+    }
+    return request;
+  }
+
+  private void complete(CompletableFuture<Directory> future, HttpResponse response) {
+    try {
+      future.complete(handleResponse(response));
+    } catch (Exception e) {
+      future.completeExceptionally(ACMEClientException.launderThrowable(e));
+    } finally {
+      response.close();
+    }
+  }
+
+  private Directory handleResponse(HttpResponse response) throws IOException, ParseException {
+    long now = clock.millis();
+
+    if (response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+      nonce.extractNonceIfPresent(response);
+      Directory directory = null;
+      Snapshot snapshot = null;
+      synchronized (state) {
+        if (state.directory != null) {
+          state.fetchedAt = now;
+          state.refreshAt = refreshAt(now);
+          directory = state.directory;
+          snapshot = snapshot();
+        }
+      }
+      if (directory != null) {
+        persist(snapshot);
+        return directory;
+      }
+    }
+
+    if (!response.isSuccessful()) {
+      throw new ACMEClientException(response.code(), response.message(), response.string());
+    }
+
+    Map<String, String> directoryResponse;
+    try (InputStream body = response.byteStream()) {
+      directoryResponse = (Map) JSONParserUtils.parse(body);
+    }
+    Directory directory = new Directory(directoryResponse);
+
+    nonce.extractNonce(response);
+
+    Snapshot snapshot;
+    synchronized (state) {
+      state.directoryResponse = directoryResponse;
+      state.directory = directory;
+      state.etag = response.header("ETag");
+      state.lastModified = response.header("Last-Modified");
+      state.fetchedAt = now;
+      state.refreshAt = refreshAt(now);
+      snapshot = snapshot();
+    }
+    persist(snapshot);
+    return directory;
+  }
+
+  private long refreshAt(long fetchedAt) {
+    return maxAgeMillis > 0 ? fetchedAt + maxAgeMillis : Long.MAX_VALUE;
+  }
+
+  private void restore() {
+    try (InputStream in = Files.newInputStream(state.cacheFile)) {
+      JSONObject json = JSONParserUtils.parse(in);
+      Map<String, String> directoryResponse = (Map) json.get("directory");
+      if (!server.toString().equals(json.get("server")) || directoryResponse == null) {
+        return;
+      }
+      state.directoryResponse = directoryResponse;
+      state.directory = new Directory(directoryResponse);
+      state.etag = (String) json.get("etag");
+      state.lastModified = (String) json.get("lastModified");
+      state.fetchedAt = ((Number) json.get("fetchedAt")).longValue();
+      // Without a maximum age a persisted copy is still revalidated once, just not waited on.
+      state.refreshAt = maxAgeMillis > 0 ? state.fetchedAt + maxAgeMillis : 0;
+    } catch (NoSuchFileException e) {
+      // Nothing persisted yet.
+    } catch (Exception e) {
+      logger.warn("Ignoring unreadable directory cache {}", state.cacheFile, e);
+    }
+  }
+
+  // Called with the state locked - what persist() writes, or null if there is no file.
+  private Snapshot snapshot() {
+    if (state.cacheFile == null) {
+      return null;
+    }
+    JSONObject json = new JSONObject();
+    json.put("server", server.toString());
+    json.put("fetchedAt", state.fetchedAt);
+    json.put("etag", state.etag);
+    json.put("lastModified", state.lastModified);
+    json.put("directory", state.directoryResponse);
+    return new Snapshot(state.cacheFile, state.fetchedAt, json);
+  }
+
+  // Writes outside the state lock, so readers never wait on the disk. Writes are ordered among
+  // themselves, and a snapshot older than the one already on disk is dropped.
+  private void persist(Snapshot snapshot) {
+    if (snapshot == null) {
+      return;
+    }
+    synchronized (state.writeLock) {
+      if (snapshot.fetchedAt < state.persistedAt) {
+        return;
+      }
+      try {
+        byte[] bytes = snapshot.json.toJSONString().getBytes(StandardCharsets.UTF_8);
+        FileUtils.writeAtomically(snapshot.cacheFile, bytes);
+        state.persistedAt = snapshot.fetchedAt;
+      } catch (IOException e) {
+        logger.warn("Cannot persist directory to {}", snapshot.cacheFile, e);
+      }
+    }
+  }
+
+  private static final class State {
+
+    private Path cacheFile;
+
+    private Map<String, String> directoryResponse;
+
+    private Directory directory;
+
+    private String etag;
+
+    private String lastModified;
+
+    private long fetchedAt;
+
+    private long refreshAt;
+
+    private boolean restored;
+
+    private CompletableFuture<Directory> loading;
+
+    private final Object writeLock = new Object();
+
+    // Guarded by writeLock.
+    private long persistedAt;
+  }
+
+  private static final class Snapshot {
+
+    private final Path cacheFile;
+
+    private final long fetchedAt;
+
+    private final JSONObject json;
+
+    private Snapshot(Path cacheFile, long fetchedAt, JSONObject json) {
+      this.cacheFile = cacheFile;
+      this.fetchedAt = fetchedAt;
+      this.json = json;
+    }
+  }
+}
@@ -15,13 +15,24 @@
  */
 package io.fabric8.acme.client.internal;
 
+import io.fabric8.acme.client.ACMEClientException;
 import io.fabric8.acme.client.Config;
+import io.fabric8.acme.client.HttpSettings;
 import okhttp3.CertificatePinner;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.logging.HttpLoggingInterceptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.net.ssl.SSLContext;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
 public class HttpClientUtils {
 
   private HttpClientUtils() {
@@ -42,15 +53,74 @@ public class HttpClientUtils {
     }
 
     // Certificate pinning for communicating with the ACME server.
-    if (config.getPins() != null && 0 < config.getPins().length) {
-      CertificatePinner certificatePinner = new CertificatePinner.Builder()
-        .add(config.getServer().getHost(), config.getPins())
-        .build();
+    builder.certificatePinner(certificatePinner(config));
+
+    // Keep connections to the server warm, and multiplexed where it speaks HTTP/2 - which is
+    // negotiated with ALPN, so needs a JVM that supports it.
+    HttpSettings settings = config.getHttpSettings();
+    builder.connectionPool(new ConnectionPool(settings.getConnectionPoolSize(), settings.getConnectionKeepAlive(), TimeUnit.SECONDS));
+    if (settings.getHttp2()) {
+      builder.protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+    } else {
+      builder.protocols(Collections.singletonList(Protocol.HTTP_1_1));
+    }
+
+    builder.connectTimeout(settings.getConnectTimeout(), TimeUnit.SECONDS)
+      .readTimeout(settings.getReadTimeout(), TimeUnit.SECONDS)
+      .writeTimeout(settings.getWriteTimeout(), TimeUnit.SECONDS);
+
+    Dispatcher dispatcher = new Dispatcher();
+    dispatcher.setMaxRequestsPerHost(settings.getMaxRequestsPerHost());
+    dispatcher.setMaxRequests(Math.max(dispatcher.getMaxRequests(), settings.getMaxRequestsPerHost()));
+    builder.dispatcher(dispatcher);
 
-      builder.certificatePinner(certificatePinner);
+    // Resumed TLS sessions skip the full handshake when connections are re-established.
+    if (settings.getTlsSessionCacheSize() != null) {
+      try {
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, null, null);
+        sslContext.getClientSessionContext().setSessionCacheSize(settings.getTlsSessionCacheSize());
+        builder.sslSocketFactory(sslContext.getSocketFactory());
+      } catch (GeneralSecurityException e) {
+        throw ACMEClientException.launderThrowable(e);
+      }
     }
 
     return builder.build();
   }
 
+  /**
+   * A client for another server that shares the base client's connection pool, dispatcher and
+   * settings - only the certificate pins are the server's own.
+   */
+  public static OkHttpClient newClient(Config config, OkHttpClient base) {
+    return base.newBuilder()
+      .certificatePinner(certificatePinner(config))
+      .build();
+  }
+
+  /**
+   * Drops pooled connections and stops the dispatcher threads.
+   */
+  public static void close(OkHttpClient okHttpClient) {
+    if (okHttpClient.connectionPool() != null) {
+      okHttpClient.connectionPool().evictAll();
+    }
+    if (okHttpClient.dispatcher() != null &&
+      okHttpClient.dispatcher().executorService() != null &&
+      !okHttpClient.dispatcher().executorService().isShutdown()
+      ) {
+      okHttpClient.dispatcher().executorService().shutdown();
+    }
+  }
+
+  private static CertificatePinner certificatePinner(Config config) {
+    if (config.getPins() != null && 0 < config.getPins().length) {
+      return new CertificatePinner.Builder()
+        .add(config.getServer().getHost(), config.getPins())
+        .build();
+    }
+    return CertificatePinner.DEFAULT;
+  }
+
 }
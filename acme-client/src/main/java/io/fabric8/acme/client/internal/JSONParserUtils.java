@@ -26,7 +26,9 @@ import java.io.InputStream;
 
 public class JSONParserUtils {
 
-  private static final JSONParser JSON_PARSER = new JSONParser(JSONParser.MODE_JSON_SIMPLE);
+  // json-smart parsers keep per-parse state, so they can't be shared between threads - but each
+  // one caches its input readers, so it pays to reuse one per thread.
+  private static final ThreadLocal<JSONParser> JSON_PARSER = ThreadLocal.withInitial(() -> new JSONParser(JSONParser.MODE_JSON_SIMPLE));
 
   private static final Logger logger = LoggerFactory.getLogger(JSONParserUtils.class);
 
@@ -34,11 +36,11 @@ public class JSONParserUtils {
   }
 
   public static JSONObject parse(String json) throws ParseException, IOException {
-    return (JSONObject) JSON_PARSER.parse(json);
+    return (JSONObject) JSON_PARSER.get().parse(json);
   }
 
   public static JSONObject parse(InputStream json) throws ParseException, IOException {
-    JSONObject jsonObject = (JSONObject) JSON_PARSER.parse(json);
+    JSONObject jsonObject = (JSONObject) JSON_PARSER.get().parse(json);
     try {
       json.close();
     } catch (IOException e) {
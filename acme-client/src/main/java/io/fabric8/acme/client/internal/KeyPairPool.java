@@ -0,0 +1,174 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.internal;
+
+import io.fabric8.acme.client.ACMEClientException;
+import io.fabric8.acme.client.model.CertificateRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of ready-made certificate key pairs, so issuing a certificate doesn't have to wait
+ * for key generation - by far the most CPU hungry part of issuance.
+ * <p>
+ * Taking a key pair tops the pool back up in the background on a shared fork-join pool of
+ * low-priority daemon threads, one per core, which does nothing but refill. Certificate requests
+ * are signed on the caller's thread (or the common pool for {@link #requestAsync}), so they never
+ * queue behind background generation. When the pool has run dry the caller generates its own key
+ * pair, and that is counted so the pool can be sized to the issuance rate.
+ */
+public class KeyPairPool {
+
+  private static final Logger logger = LoggerFactory.getLogger(KeyPairPool.class);
+
+  private static final ForkJoinPool GENERATORS = new ForkJoinPool(
+    Runtime.getRuntime().availableProcessors(),
+    pool -> {
+      ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+      thread.setName("acme-keypair-" + thread.getPoolIndex());
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MIN_PRIORITY);
+      return thread;
+    },
+    null,
+    true
+  );
+
+  private final String algorithm;
+
+  private final int keySize;
+
+  private final int capacity;
+
+  private final BlockingQueue<KeyPair> keyPairs;
+
+  private final AtomicInteger generating = new AtomicInteger();
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  public KeyPairPool(String algorithm, int keySize, int capacity) {
+    if (capacity < 1) {
+      throw new ACMEClientException("configError", "Key pair pool size must be at least 1");
+    }
+    this.algorithm = algorithm;
+    this.keySize = keySize;
+    this.capacity = capacity;
+    this.keyPairs = new ArrayBlockingQueue<>(capacity);
+    // Fail fast on an unusable algorithm or key size rather than in the background.
+    newGenerator();
+  }
+
+  /**
+   * Starts filling the pool without waiting for it to fill.
+   */
+  public KeyPairPool prefill() {
+    refill();
+    return this;
+  }
+
+  public KeyPair take() {
+    KeyPair keyPair = keyPairs.poll();
+    if (keyPair != null) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+      keyPair = generate();
+    }
+    refill();
+    return keyPair;
+  }
+
+  /**
+   * Takes a key pair and signs a request for a certificate covering the domains with it on the
+   * calling thread.
+   */
+  public CertificateRequest request(List<String> domains) {
+    List<String> copy = new ArrayList<>(domains);
+    KeyPair keyPair = take();
+    return new CertificateRequest(keyPair, copy, CsrBuilder.build(keyPair, copy));
+  }
+
+  /**
+   * Like {@link #request} but on the common pool, away from the background generators.
+   */
+  public CompletableFuture<CertificateRequest> requestAsync(List<String> domains) {
+    List<String> copy = new ArrayList<>(domains);
+    return CompletableFuture.supplyAsync(() -> request(copy));
+  }
+
+  public int getSize() {
+    return keyPairs.size();
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * How many times a key pair was wanted but the pool had run dry.
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  private void refill() {
+    while (keyPairs.size() + generating.get() < capacity) {
+      generating.incrementAndGet();
+      GENERATORS.execute(() -> {
+        try {
+          keyPairs.offer(generate());
+        } catch (ACMEClientException e) {
+          logger.warn("Failed to generate key pair", e);
+        } finally {
+          generating.decrementAndGet();
+        }
+      });
+    }
+  }
+
+  private KeyPair generate() {
+    return newGenerator().generateKeyPair();
+  }
+
+  private KeyPairGenerator newGenerator() {
+    try {
+      KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+      generator.initialize(keySize);
+      return generator;
+    } catch (GeneralSecurityException | IllegalArgumentException e) {
+      throw new ACMEClientException("configError", "Cannot generate " + keySize + " bit " + algorithm + " key pairs: " + e.getMessage());
+    }
+  }
+}
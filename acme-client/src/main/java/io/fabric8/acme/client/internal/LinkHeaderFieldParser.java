@@ -15,405 +15,343 @@
  */
 package io.fabric8.acme.client.internal;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-/*
- * Borrowed from https://svn.apache.org/repos/asf/jackrabbit/trunk/jackrabbit-webdav/src/main/java/org/apache/jackrabbit/webdav/util/LinkHeaderFieldParser.java - thanks!
- */
 
 /**
  * Simple parser for HTTP Link header fields, as defined in RFC 5988.
+ * <p>
+ * The header values are only scanned on the first lookup, in a single pass that records where
+ * each link's target and {@code rel} parameter are rather than copying them out. Results are the
+ * same as the Jackrabbit parser this replaced: link-values that aren't {@code <target>} followed by
+ * parameters, or that repeat a parameter, are ignored, and parameter names are case insensitive.
+ * Instances are not thread safe.
  */
 public class LinkHeaderFieldParser {
 
-  /**
-   * the default logger
-   */
-  private static Logger log = LoggerFactory.getLogger(LinkHeaderFieldParser.class);
+  // Each link with a rel parameter takes up this many ints: the field value it is in, then the
+  // start and end of its target and of its rel value.
+  private static final int STRIDE = 5;
+
+  private final List<String> fieldValues;
+
+  private int[] links;
 
-  private final List<LinkRelation> relations;
+  private int linkCount;
+
+  // Name start, name end, value start and value end (-1 if there's no value) of each parameter of
+  // the link-value being scanned.
+  private int[] params;
 
   public LinkHeaderFieldParser(List<String> fieldValues) {
-    List<LinkRelation> tmp = new ArrayList<LinkRelation>();
-    if (fieldValues != null) {
-      for (String value : fieldValues) {
-        addFields(tmp, value);
-      }
-    }
-    relations = Collections.unmodifiableList(tmp);
+    this.fieldValues = fieldValues != null ? fieldValues : Collections.emptyList();
   }
 
   public LinkHeaderFieldParser(Enumeration<?> en) {
     if (en != null && en.hasMoreElements()) {
-      List<LinkRelation> tmp = new ArrayList<LinkRelation>();
-
+      List<String> tmp = new ArrayList<>();
       while (en.hasMoreElements()) {
-        addFields(tmp, en.nextElement().toString());
+        tmp.add(en.nextElement().toString());
       }
-      relations = Collections.unmodifiableList(tmp);
+      fieldValues = tmp;
     } else {
-      // optimize case of no Link headers
-      relations = Collections.emptyList();
+      fieldValues = Collections.emptyList();
     }
   }
 
   public String getFirstTargetForRelation(String relationType) {
+    if (links == null) {
+      parse();
+    }
 
-    for (LinkRelation lr : relations) {
-
-      String relationNames = lr.getParameters().get("rel");
-      if (relationNames != null) {
-
-        // split rel value on whitespace
-        for (String rn : relationNames.toLowerCase(Locale.ENGLISH)
-          .split("\\s")) {
-          if (relationType.equals(rn)) {
-            return lr.getTarget();
-          }
-        }
+    for (int i = 0; i < linkCount * STRIDE; i += STRIDE) {
+      String fieldValue = fieldValues.get(links[i]);
+      if (hasRelation(fieldValue, links[i + 3], links[i + 4], relationType)) {
+        return fieldValue.substring(links[i + 1], links[i + 2]);
       }
     }
 
     return null;
   }
 
-  // A single header field instance can contain multiple, comma-separated
-  // fields.
-  private void addFields(List<LinkRelation> l, String fieldValue) {
-
-    boolean insideAngleBrackets = false;
-    boolean insideDoubleQuotes = false;
-
-    for (int i = 0; i < fieldValue.length(); i++) {
-
-      char c = fieldValue.charAt(i);
+  private void parse() {
+    links = new int[4 * STRIDE];
+    params = new int[4 * 4];
+
+    for (int field = 0; field < fieldValues.size(); field++) {
+      String fieldValue = fieldValues.get(field);
+
+      // A single header field instance can contain multiple, comma-separated link-values.
+      boolean insideAngleBrackets = false;
+      boolean insideDoubleQuotes = false;
+      int start = 0;
+      for (int i = 0; i < fieldValue.length(); i++) {
+        char c = fieldValue.charAt(i);
+
+        if (insideAngleBrackets) {
+          insideAngleBrackets = c != '>';
+        } else if (insideDoubleQuotes) {
+          insideDoubleQuotes = c != '"';
+          if (c == '\\' && i < fieldValue.length() - 1) {
+            // skip over next character
+            i++;
+          }
+        } else {
+          insideAngleBrackets = c == '<';
+          insideDoubleQuotes = c == '"';
 
-      if (insideAngleBrackets) {
-        insideAngleBrackets = c != '>';
-      } else if (insideDoubleQuotes) {
-        insideDoubleQuotes = c != '"';
-        if (c == '\\' && i < fieldValue.length() - 1) {
-          // skip over next character
-          c = fieldValue.charAt(++i);
-        }
-      } else {
-        insideAngleBrackets = c == '<';
-        insideDoubleQuotes = c == '"';
-
-        if (c == ',') {
-          String v = fieldValue.substring(0, i);
-          if (v.length() > 0) {
-            try {
-              l.add(new LinkRelation(v));
-            } catch (Exception ex) {
-              log.warn("parse error in Link Header field value",
-                ex);
-            }
+          if (c == ',') {
+            addLink(field, fieldValue, start, i);
+            start = i + 1;
           }
-          addFields(l, fieldValue.substring(i + 1));
-          return;
         }
       }
+      addLink(field, fieldValue, start, fieldValue.length());
     }
 
-    if (fieldValue.length() > 0) {
-      try {
-        l.add(new LinkRelation(fieldValue));
-      } catch (Exception ex) {
-        log.warn("parse error in Link Header field value", ex);
-      }
-    }
+    params = null;
   }
 
-  private static class LinkRelation {
+  private void addLink(int field, String value, int start, int end) {
+    if (start == end) {
+      return;
+    }
 
-    private static Pattern P = Pattern.compile("\\s*<(.*)>\\s*(.*)");
+    int open = start;
+    while (open < end && isSpace(value.charAt(open))) {
+      open++;
+    }
+    int close = open < end && value.charAt(open) == '<' ? targetEnd(value, open, end) : -1;
+    if (close < 0) {
+      return;
+    }
 
-    private String target;
-    private Map<String, String> parameters;
+    // Parameters are separated by ';' and are either a bare name, or name=value where the value
+    // may be quoted.
+    int count = 0;
+    int rel = -1;
+    int pos = close + 1;
+    while (pos < end) {
+      int nameStart = pos;
+      while (pos < end && value.charAt(pos) != '=' && value.charAt(pos) != ';') {
+        pos++;
+      }
+      int nameEnd = pos;
+      while (nameStart < nameEnd && Character.isWhitespace(value.charAt(nameStart))) {
+        nameStart++;
+      }
+      while (nameEnd > nameStart && Character.isWhitespace(value.charAt(nameEnd - 1))) {
+        nameEnd--;
+      }
 
-    /**
-     * Parses a single link relation, consisting of <URI> and optional
-     * parameters.
-     *
-     * @param field
-     *            field value
-     * @throws Exception
-     */
-    @SuppressWarnings("unchecked")
-    public LinkRelation(String field) throws Exception {
+      int valueStart = -1;
+      int valueEnd = -1;
+      if (pos < end && value.charAt(pos) == '=') {
+        valueStart = ++pos;
+        boolean quoted = false;
+        boolean escaped = false;
+        while (pos < end) {
+          char c = value.charAt(pos);
+          if (!quoted && c == ';') {
+            break;
+          }
+          if (!escaped && c == '"') {
+            quoted = !quoted;
+          }
+          escaped = !escaped && c == '\\';
+          pos++;
+        }
+        valueEnd = pos;
+        while (valueStart < valueEnd && Character.isWhitespace(value.charAt(valueStart))) {
+          valueStart++;
+        }
+        while (valueEnd > valueStart && Character.isWhitespace(value.charAt(valueEnd - 1))) {
+          valueEnd--;
+        }
+        if (valueEnd - valueStart >= 2 && value.charAt(valueStart) == '"' && value.charAt(valueEnd - 1) == '"') {
+          valueStart++;
+          valueEnd--;
+        }
+      }
+      if (pos < end && value.charAt(pos) == ';') {
+        pos++;
+      }
 
-      // find the link target using a regexp
-      Matcher m = P.matcher(field);
-      if (!m.matches()) {
-        throw new Exception("illegal Link header field value:" + field);
+      if (nameStart == nameEnd && valueStart < 0) {
+        continue;
       }
 
-      target = m.group(1);
-
-      // pass the remainder to the generic parameter parser
-      List<NameValuePair> params = (List<NameValuePair>) new ParameterParser()
-        .parse(m.group(2), ';');
-
-      if (params.size() == 0) {
-        parameters = Collections.emptyMap();
-      } else if (params.size() == 1) {
-        NameValuePair nvp = params.get(0);
-        parameters = Collections.singletonMap(nvp.getName()
-          .toLowerCase(Locale.ENGLISH), nvp.getValue());
-      } else {
-        parameters = new HashMap<String, String>();
-        for (NameValuePair p : params) {
-          if (null != parameters.put(
-            p.getName().toLowerCase(Locale.ENGLISH),
-            p.getValue())) {
-            throw new Exception("duplicate parameter + "
-              + p.getName() + " field ignored");
+      // A parameter may only be given again if its previous occurrence had no value.
+      for (int i = (count - 1) * 4; i >= 0; i -= 4) {
+        if (sameName(value, params[i], params[i + 1], nameStart, nameEnd)) {
+          if (params[i + 2] >= 0) {
+            return;
           }
+          break;
         }
       }
-    }
 
-    public String getTarget() {
-      return target;
+      if (count * 4 == params.length) {
+        params = grow(params);
+      }
+      int p = count++ * 4;
+      params[p] = nameStart;
+      params[p + 1] = nameEnd;
+      params[p + 2] = valueStart;
+      params[p + 3] = valueEnd;
+      if (isRel(value, nameStart, nameEnd)) {
+        rel = p;
+      }
     }
 
-    public Map<String, String> getParameters() {
-      return parameters;
+    // The last rel parameter wins, and a bare rel is no relation at all.
+    if (rel < 0 || params[rel + 2] < 0) {
+      return;
     }
 
-    public String toString() {
-      return target + " " + parameters;
+    if (linkCount * STRIDE == links.length) {
+      links = grow(links);
     }
+    int l = linkCount++ * STRIDE;
+    links[l] = field;
+    links[l + 1] = open + 1;
+    links[l + 2] = close;
+    links[l + 3] = params[rel + 2];
+    links[l + 4] = params[rel + 3];
   }
 
-  private static final class NameValuePair {
-    private String name;
-
-    private String value;
-
-    public NameValuePair(String name, String value) {
-      this.name = name;
-      this.value = value;
+  /**
+   * The '>' closing the target of a link-value starting with '<' at {@code open}, or -1 if there
+   * is none. The target runs to the last '>', unless a line break forces it to end earlier.
+   */
+  private static int targetEnd(String value, int open, int end) {
+    int lineBreak = -1;
+    for (int i = open + 1; i < end; i++) {
+      if (isLineBreak(value.charAt(i))) {
+        lineBreak = i;
+        break;
+      }
     }
 
-    public String getName() {
-      return name;
+    for (int i = (lineBreak < 0 ? end : lineBreak) - 1; i > open; i--) {
+      if (value.charAt(i) == '>' && (lineBreak < 0 || parametersValid(value, i + 1, end))) {
+        return i;
+      }
     }
+    return -1;
+  }
 
-    public String getValue() {
-      return value;
+  // Line breaks after the target may only appear in the whitespace directly following it.
+  private static boolean parametersValid(String value, int start, int end) {
+    int i = start;
+    while (i < end && isSpace(value.charAt(i))) {
+      i++;
     }
+    for (; i < end; i++) {
+      if (isLineBreak(value.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
   }
 
   /**
-   * A simple parser intended to parse sequences of name/value pairs.
-   * Parameter values are exptected to be enclosed in quotes if they
-   * contain unsafe characters, such as '=' characters or separators.
-   * Parameter values are optional and can be omitted.
-   *
-   * <p>
-   *  <code>param1 = value; param2 = "anything goes; really"; param3</code>
-   * </p>
-   *
-   * @author <a href="mailto:oleg@ural.ru">Oleg Kalnichevski</a>
-   *
-   * @since 3.0
+   * Whether the whitespace separated rel value contains the relation type, compared lower-cased.
    */
-  private static final class ParameterParser {
-
-    /** String to be parsed */
-    private char[] chars = null;
-
-    /** Current position in the string */
-    private int pos = 0;
-
-    /** Maximum position in the string */
-    private int len = 0;
-
-    /** Start of a token */
-    private int i1 = 0;
-
-    /** End of a token */
-    private int i2 = 0;
-
-    /** Default ParameterParser constructor */
-    public ParameterParser() {
-      super();
-    }
-
-
-    /** Are there any characters left to parse? */
-    private boolean hasChar() {
-      return this.pos < this.len;
-    }
-
-
-    /** A helper method to process the parsed token. */
-    private String getToken(boolean quoted) {
-      // Trim leading white spaces
-      while ((i1 < i2) && (Character.isWhitespace(chars[i1]))) {
-        i1++;
-      }
-      // Trim trailing white spaces
-      while ((i2 > i1) && (Character.isWhitespace(chars[i2 - 1]))) {
-        i2--;
-      }
-      // Strip away quotes if necessary
-      if (quoted) {
-        if (((i2 - i1) >= 2)
-          && (chars[i1] == '"')
-          && (chars[i2 - 1] == '"')) {
-          i1++;
-          i2--;
+  private static boolean hasRelation(String value, int start, int end, String relationType) {
+    if (!isAscii(value, start, end)) {
+      // Lower-casing may change the length of anything else, so leave it to String.
+      for (String rn : value.substring(start, end).toLowerCase(Locale.ENGLISH).split("\\s")) {
+        if (relationType.equals(rn)) {
+          return true;
         }
       }
-      String result = null;
-      if (i2 >= i1) {
-        result = new String(chars, i1, i2 - i1);
-      }
-      return result;
+      return false;
     }
 
-
-    /** Is given character present in the array of characters? */
-    private boolean isOneOf(char ch, char[] charray) {
-      boolean result = false;
-      for (int i = 0; i < charray.length; i++) {
-        if (ch == charray[i]) {
-          result = true;
-          break;
-        }
-      }
-      return result;
+    if (start == end) {
+      return relationType.isEmpty();
     }
-
-
-    /** Parse out a token until any of the given terminators
-     * is encountered. */
-    private String parseToken(final char[] terminators) {
-      char ch;
-      i1 = pos;
-      i2 = pos;
-      while (hasChar()) {
-        ch = chars[pos];
-        if (isOneOf(ch, terminators)) {
-          break;
+    // Like String.split, empty relations are only seen before the last non-empty one.
+    boolean empty = false;
+    int tokenStart = start;
+    for (int i = start; i <= end; i++) {
+      if (i == end || isSpace(value.charAt(i))) {
+        if (i == tokenStart) {
+          empty = true;
+        } else if (relationType.isEmpty() ? empty : equalsLowerCase(value, tokenStart, i, relationType)) {
+          return true;
         }
-        i2++;
-        pos++;
+        tokenStart = i + 1;
       }
-      return getToken(false);
     }
+    return false;
+  }
 
-
-    /** Parse out a token until any of the given terminators
-     * is encountered. Special characters in quoted tokens
-     * are escaped. */
-    private String parseQuotedToken(final char[] terminators) {
-      char ch;
-      i1 = pos;
-      i2 = pos;
-      boolean quoted = false;
-      boolean charEscaped = false;
-      while (hasChar()) {
-        ch = chars[pos];
-        if (!quoted && isOneOf(ch, terminators)) {
-          break;
-        }
-        if (!charEscaped && ch == '"') {
-          quoted = !quoted;
-        }
-        charEscaped = (!charEscaped && ch == '\\');
-        i2++;
-        pos++;
-
-      }
-      return getToken(true);
+  private static boolean isRel(String value, int start, int end) {
+    if (!isAscii(value, start, end)) {
+      return "rel".equals(value.substring(start, end).toLowerCase(Locale.ENGLISH));
     }
+    return equalsLowerCase(value, start, end, "rel");
+  }
 
-    /**
-     * Extracts a list of {@link NameValuePair}s from the given string.
-     *
-     * @param str the string that contains a sequence of name/value pairs
-     * @return a list of {@link NameValuePair}s
-     *
-     */
-    public List parse(final String str, char separator) {
-
-      if (str == null) {
-        return new ArrayList();
+  private static boolean sameName(String value, int start1, int end1, int start2, int end2) {
+    if (!isAscii(value, start1, end1) || !isAscii(value, start2, end2)) {
+      return value.substring(start1, end1).toLowerCase(Locale.ENGLISH).equals(value.substring(start2, end2).toLowerCase(Locale.ENGLISH));
+    }
+    if (end1 - start1 != end2 - start2) {
+      return false;
+    }
+    for (int i = 0; i < end1 - start1; i++) {
+      if (toLowerCase(value.charAt(start1 + i)) != toLowerCase(value.charAt(start2 + i))) {
+        return false;
       }
-      return parse(str.toCharArray(), separator);
     }
+    return true;
+  }
 
-    /**
-     * Extracts a list of {@link NameValuePair}s from the given array of
-     * characters.
-     *
-     * @param chars the array of characters that contains a sequence of
-     * name/value pairs
-     *
-     * @return a list of {@link NameValuePair}s
-     */
-    public List parse(final char[] chars, char separator) {
-
-      if (chars == null) {
-        return new ArrayList();
+  // Whether the ASCII region, lower-cased, equals the string.
+  private static boolean equalsLowerCase(String value, int start, int end, String lowerCase) {
+    if (end - start != lowerCase.length()) {
+      return false;
+    }
+    for (int i = 0; i < lowerCase.length(); i++) {
+      if (toLowerCase(value.charAt(start + i)) != lowerCase.charAt(i)) {
+        return false;
       }
-      return parse(chars, 0, chars.length, separator);
     }
+    return true;
+  }
 
+  private static char toLowerCase(char c) {
+    return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+  }
 
-    /**
-     * Extracts a list of {@link NameValuePair}s from the given array of
-     * characters.
-     *
-     * @param chars the array of characters that contains a sequence of
-     * name/value pairs
-     * @param offset - the initial offset.
-     * @param length - the length.
-     *
-     * @return a list of {@link NameValuePair}s
-     */
-    public List parse(final char[] chars, int offset, int length, char separator) {
-
-      if (chars == null) {
-        return new ArrayList();
-      }
-      List params = new ArrayList();
-      this.chars = chars;
-      this.pos = offset;
-      this.len = length;
-
-      String paramName = null;
-      String paramValue = null;
-      while (hasChar()) {
-        paramName = parseToken(new char[] {'=', separator});
-        paramValue = null;
-        if (hasChar() && (chars[pos] == '=')) {
-          pos++; // skip '='
-          paramValue = parseQuotedToken(new char[] {separator});
-        }
-        if (hasChar() && (chars[pos] == separator)) {
-          pos++; // skip separator
-        }
-        if (paramName != null && !(paramName.equals("") && paramValue == null)) {
-          params.add(new NameValuePair(paramName, paramValue));
-        }
+  private static boolean isAscii(String value, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (value.charAt(i) > 0x7f) {
+        return false;
       }
-      return params;
     }
+    return true;
+  }
+
+  // Whitespace as in the regular expression \s.
+  private static boolean isSpace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == 0x0b || c == '\f' || c == '\r';
+  }
+
+  // Characters a regular expression '.' doesn't match.
+  private static boolean isLineBreak(char c) {
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+
+  private static int[] grow(int[] array) {
+    int[] grown = new int[array.length * 2];
+    System.arraycopy(array, 0, grown, 0, array.length);
+    return grown;
   }
 }
@@ -16,51 +16,239 @@
 package io.fabric8.acme.client.internal;
 
 import io.fabric8.acme.client.ACMEClientException;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
+import io.fabric8.acme.client.Config;
+import io.fabric8.acme.client.transport.HttpRequest;
+import io.fabric8.acme.client.transport.HttpResponse;
+import io.fabric8.acme.client.transport.HttpTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.URL;
+import java.time.Clock;
 import java.util.Base64;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Bounded pool of anti-replay nonces - see https://ietf-wg-acme.github.io/acme/#rfc.section.5.5.
+ * <p>
+ * Every ACME response carries a fresh nonce which is returned to the pool. When the pool drops
+ * below the low-water mark it is topped up in the background with HEAD requests against the
+ * directory, and only falls back to a blocking HEAD request when it is completely empty. Nonces
+ * older than the maximum age are discarded rather than handed out.
+ */
 public class Nonce {
 
-  private OkHttpClient okHttpClient;
 
-  private URL directoryUrl;
+  private static final Logger logger = LoggerFactory.getLogger(Nonce.class);
+
+  private final HttpTransport transport;
+
+  private final URL directoryUrl;
+
+  private final int poolSize;
+
+  private final int lowWaterMark;
+
+  private final long maxAgeMillis;
+
+  private final Clock clock;
+
+  private final int maxBadNonceRetries;
+
+  // Newest nonces are at the tail, so the oldest are the first to be dropped when the pool is full.
+  private final Deque<PooledNonce> nonces = new ConcurrentLinkedDeque<>();
 
-  private AtomicReference<String> nonce = new AtomicReference<>();
+  private final AtomicInteger size = new AtomicInteger();
+
+  private final AtomicInteger refilling = new AtomicInteger();
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private final AtomicLong expired = new AtomicLong();
+
+  private final AtomicLong badNonceRetries = new AtomicLong();
+
+  public Nonce(HttpTransport transport, URL directoryUrl) {
+    this(transport, directoryUrl, Config.DEFAULT_NONCE_POOL_SIZE, 0, 0, TimeUnit.SECONDS, Config.DEFAULT_MAX_BAD_NONCE_RETRIES);
+  }
+
+  public Nonce(HttpTransport transport, URL directoryUrl, int poolSize, int lowWaterMark, long maxAge, TimeUnit maxAgeUnit, int maxBadNonceRetries) {
+    this(transport, directoryUrl, poolSize, lowWaterMark, maxAge, maxAgeUnit, maxBadNonceRetries, Clock.systemUTC());
+  }
 
-  public Nonce(OkHttpClient okHttpClient, URL directoryUrl) {
-    this.okHttpClient = okHttpClient;
+  /**
+   * @param clock what the age of pooled nonces is measured against.
+   */
+  public Nonce(HttpTransport transport, URL directoryUrl, int poolSize, int lowWaterMark, long maxAge, TimeUnit maxAgeUnit, int maxBadNonceRetries, Clock clock) {
+    if (poolSize < 1) {
+      throw new ACMEClientException("configError", "Nonce pool size must be at least 1");
+    }
+    if (lowWaterMark < 0 || lowWaterMark > poolSize) {
+      throw new ACMEClientException("configError", "Nonce pool low-water mark must be between 0 and the pool size");
+    }
+    this.transport = transport;
     this.directoryUrl = directoryUrl;
+    this.poolSize = poolSize;
+    this.lowWaterMark = lowWaterMark;
+    this.maxAgeMillis = maxAge > 0 ? maxAgeUnit.toMillis(maxAge) : 0;
+    this.maxBadNonceRetries = Math.max(0, maxBadNonceRetries);
+    this.clock = clock;
   }
 
   public String get() {
-    String nonce = this.nonce.getAndSet(null);
-    if (nonce == null) {
-      Request req = new Request.Builder().head().url(directoryUrl).build();
-      Response response = null;
+    String nonce = poll();
+    if (nonce != null) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+      nonce = fetch();
+    }
+    refill();
+    return nonce;
+  }
+
+  /**
+   * Like {@link #get()}, but an empty pool is topped up with a HEAD request that doesn't block
+   * the calling thread.
+   */
+  public CompletableFuture<String> getAsync() {
+    String nonce = poll();
+    if (nonce != null) {
+      hits.incrementAndGet();
+      refill();
+      return CompletableFuture.completedFuture(nonce);
+    }
+
+    misses.incrementAndGet();
+    CompletableFuture<String> future = new CompletableFuture<>();
+    transport.executeAsync(HttpRequest.head(directoryUrl.toString())).whenComplete((response, e) -> {
+      if (e != null) {
+        future.completeExceptionally(new ACMEClientException("An error has occurred.", e));
+        return;
+      }
       try {
-        response = okHttpClient.newCall(req).execute();
-      } catch (IOException e) {
-        throw ACMEClientException.launderThrowable(e);
+        future.complete(validNonce(response));
+      } catch (ACMEClientException ex) {
+        future.completeExceptionally(ex);
       } finally {
-        response.body().close();
+        response.close();
       }
-      String replayNonce = response.header("Replay-Nonce");
-      if (replayNonce == null || replayNonce.isEmpty()) {
-        throw new ACMEClientException("Response doesn't contain a valid nonce - misconfigured server?");
+    });
+    refill();
+    return future;
+  }
+
+  public void extractNonce(HttpResponse response) {
+    // Details in https://ietf-wg-acme.github.io/acme/#rfc.section.5.5.1
+    offer(validNonce(response));
+  }
+
+  /**
+   * Pools the nonce from an error response, if it carries a valid one. Unlike
+   * {@link #extractNonce(HttpResponse)} a missing or invalid nonce is not an error here.
+   */
+  public void extractNonceIfPresent(HttpResponse response) {
+    try {
+      extractNonce(response);
+    } catch (ACMEClientException e) {
+      logger.debug("Ignoring invalid nonce in error response", e);
+    }
+  }
+
+  /**
+   * Records that a request was re-signed and resent after the server rejected its nonce.
+   */
+  public void badNonceRetried() {
+    badNonceRetries.incrementAndGet();
+  }
+
+  public int getMaxBadNonceRetries() {
+    return maxBadNonceRetries;
+  }
+
+  public long getBadNonceRetries() {
+    return badNonceRetries.get();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getExpired() {
+    return expired.get();
+  }
+
+  public int getSize() {
+    return size.get();
+  }
+
+  private String poll() {
+    PooledNonce pooled;
+    while ((pooled = nonces.pollLast()) != null) {
+      size.decrementAndGet();
+      if (!pooled.isExpired()) {
+        return pooled.value;
       }
-      return replayNonce;
+      // Keep draining - anything older than this nonce has expired as well.
+      expired.incrementAndGet();
     }
-    return nonce;
+    return null;
   }
 
-  public void extractNonce(Response response) {
-    // Details in https://ietf-wg-acme.github.io/acme/#rfc.section.5.5.1
+  private void offer(String nonce) {
+    nonces.offerLast(new PooledNonce(nonce));
+    if (size.incrementAndGet() > poolSize && nonces.pollFirst() != null) {
+      size.decrementAndGet();
+    }
+  }
+
+  private String fetch() {
+    try (HttpResponse response = transport.execute(HttpRequest.head(directoryUrl.toString()))) {
+      return validNonce(response);
+    } catch (IOException e) {
+      throw ACMEClientException.launderThrowable(e);
+    }
+  }
+
+  private void refill() {
+    if (lowWaterMark == 0 || size.get() + refilling.get() >= lowWaterMark) {
+      return;
+    }
+
+    int wanted = poolSize - size.get() - refilling.get();
+    for (int i = 0; i < wanted; i++) {
+      refilling.incrementAndGet();
+      transport.executeAsync(HttpRequest.head(directoryUrl.toString())).whenComplete((response, e) -> {
+        if (e != null) {
+          refilling.decrementAndGet();
+          logger.debug("Failed to refill nonce pool", e);
+          return;
+        }
+        try {
+          offer(validNonce(response));
+        } catch (ACMEClientException ex) {
+          logger.debug("Failed to refill nonce pool", ex);
+        } finally {
+          refilling.decrementAndGet();
+          response.close();
+        }
+      });
+    }
+  }
+
+  private static String validNonce(HttpResponse response) {
     String replayNonce = response.header("Replay-Nonce");
     if (replayNonce == null || replayNonce.isEmpty()) {
       throw new ACMEClientException("Response doesn't contain a valid nonce - misconfigured server?");
@@ -71,12 +259,26 @@ public class Nonce {
     try {
       // Check the nonce header is properly encoded as a base64url.
       Base64.getUrlDecoder().decode(replayNonce);
-
-      // And store the already encoded nonce.
-      this.nonce.set(replayNonce);
     } catch (Exception e) {
       throw ACMEClientException.launderThrowable(e);
     }
+
+    // The already encoded nonce is what gets sent back.
+    return replayNonce;
   }
 
+  private final class PooledNonce {
+
+    private final String value;
+
+    private final long created = clock.millis();
+
+    private PooledNonce(String value) {
+      this.value = value;
+    }
+
+    private boolean isExpired() {
+      return maxAgeMillis > 0 && clock.millis() - created > maxAgeMillis;
+    }
+  }
 }
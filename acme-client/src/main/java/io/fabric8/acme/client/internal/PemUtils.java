@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.internal;
+
+import io.fabric8.acme.client.model.CertificateSink;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+public class PemUtils {
+
+  private static final String BEGIN_CERTIFICATE = "-----BEGIN CERTIFICATE-----";
+
+  private static final String END_CERTIFICATE = "-----END CERTIFICATE-----";
+
+  private PemUtils() {
+  }
+
+  public static boolean isPem(String contentType) {
+    return contentType != null && contentType.toLowerCase().contains("pem");
+  }
+
+  /**
+   * Decodes each PEM certificate in the stream in turn, passing it to the sink as DER starting at
+   * the given index. Only one certificate is held in memory at a time.
+   *
+   * @return the number of certificates read
+   */
+  public static int readCertificates(InputStream pem, int firstIndex, CertificateSink sink) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(pem, StandardCharsets.US_ASCII));
+    StringBuilder base64 = null;
+    int count = 0;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      line = line.trim();
+      if (BEGIN_CERTIFICATE.equals(line)) {
+        base64 = new StringBuilder();
+      } else if (END_CERTIFICATE.equals(line) && base64 != null) {
+        byte[] der = Base64.getMimeDecoder().decode(base64.toString());
+        sink.accept(firstIndex + count++, new ByteArrayInputStream(der));
+        base64 = null;
+      } else if (base64 != null) {
+        base64.append(line);
+      }
+    }
+    return count;
+  }
+}
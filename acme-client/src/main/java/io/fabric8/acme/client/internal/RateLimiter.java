@@ -0,0 +1,396 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.internal;
+
+import io.fabric8.acme.client.ACMEClientException;
+import io.fabric8.acme.client.RateLimit;
+import io.fabric8.acme.client.RateLimits;
+import io.fabric8.acme.client.model.Resource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets in front of the requests a CA rate limits - one per account, per registered
+ * domain and per resource type.
+ * <p>
+ * A request takes a token from every bucket it counts against, and when one is empty it waits,
+ * parked on the shared {@link RetryScheduler}, until its turn comes round rather than being sent
+ * to be turned away. Tokens are reserved up front, so waiting requests go out evenly spaced at
+ * the configured rate instead of all at once. A request that would have to wait longer than the
+ * maximum fails as {@code rateLimited} without being sent.
+ * <p>
+ * When the server does answer {@code rateLimited}, the most specific buckets the request
+ * counted against - its domains, otherwise its account, otherwise its resource type - are paused
+ * for as long as the Retry-After header asks and come back empty, so requests resume at the
+ * sustained rate rather than bursting straight back into the limit. That holds for buckets
+ * without a configured limit too.
+ */
+public class RateLimiter {
+
+  public static final long DEFAULT_PAUSE = 60;
+
+  public static final String RATE_LIMITED = "urn:acme:error:rateLimited";
+
+  private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+  private static final int MIN_SWEEP_SIZE = 1024;
+
+  // Public suffixes of two labels common enough to matter, registered under directly.
+  private static final Set<String> SECOND_LEVEL_SUFFIXES = new HashSet<>(Arrays.asList(
+    "co.uk", "org.uk", "me.uk", "ltd.uk", "plc.uk", "net.uk", "ac.uk", "gov.uk",
+    "com.au", "net.au", "org.au", "edu.au", "gov.au", "id.au",
+    "co.nz", "net.nz", "org.nz", "ac.nz", "govt.nz",
+    "co.jp", "ne.jp", "or.jp", "ac.jp", "go.jp",
+    "co.kr", "or.kr", "ne.kr",
+    "co.za", "org.za", "web.za",
+    "co.in", "net.in", "org.in", "firm.in", "gen.in",
+    "co.il", "org.il", "ac.il",
+    "co.id", "or.id", "web.id",
+    "com.br", "net.br", "org.br",
+    "com.cn", "net.cn", "org.cn",
+    "com.hk", "com.tw", "com.sg", "com.my", "com.ph", "com.pk",
+    "com.mx", "com.ar", "com.co", "com.tr", "com.ua", "com.pl"
+  ));
+
+  private final RateLimits limits;
+
+  private final long maxWaitNanos;
+
+  private final RetryScheduler retryScheduler;
+
+  private final Map<Key, Bucket> buckets = new HashMap<>();
+
+  private int sweepAt = MIN_SWEEP_SIZE;
+
+  private final AtomicLong throttled = new AtomicLong();
+
+  private final AtomicLong rejected = new AtomicLong();
+
+  /**
+   * @param limits the limits to enforce, or null to only pause after {@code rateLimited}
+   *               answers.
+   */
+  public RateLimiter(RateLimits limits) {
+    this(limits, RetryScheduler.getDefault());
+  }
+
+  public RateLimiter(RateLimits limits, RetryScheduler retryScheduler) {
+    this.limits = limits;
+    this.maxWaitNanos = TimeUnit.SECONDS.toNanos(limits != null ? limits.getMaxWait() : RateLimits.DEFAULT_MAX_WAIT);
+    this.retryScheduler = retryScheduler;
+  }
+
+  /**
+   * The buckets a request for the resource counts against.
+   *
+   * @param account the account key's thumbprint.
+   * @param domains the domains a new certificate is for, empty for other requests.
+   */
+  public List<Key> keys(Resource.ResourceType resourceType, String account, Collection<String> domains) {
+    List<Key> keys = new ArrayList<>();
+    keys.add(new Key(Scope.RESOURCE, resourceType.type()));
+    // There is no account yet to count a new registration against.
+    if (resourceType != Resource.ResourceType.NEW_REGISTRATION && resourceType != Resource.ResourceType.RECOVER_REGISTRATION) {
+      keys.add(new Key(Scope.ACCOUNT, account));
+    }
+    Set<String> registeredDomains = new LinkedHashSet<>();
+    for (String domain : domains) {
+      registeredDomains.add(registeredDomain(domain));
+    }
+    for (String registeredDomain : registeredDomains) {
+      keys.add(new Key(Scope.DOMAIN, registeredDomain));
+    }
+    return keys;
+  }
+
+  /**
+   * Returns a future that completes once there is capacity for the request in every bucket, or
+   * fails straight away as {@code rateLimited} if that is further off than the maximum wait.
+   */
+  public CompletableFuture<Void> acquire(List<Key> keys) {
+    long waitNanos;
+    synchronized (this) {
+      long now = System.nanoTime();
+      if (buckets.size() >= sweepAt) {
+        sweep(now);
+      }
+
+      Key limiting = null;
+      waitNanos = 0;
+      List<Bucket> taken = new ArrayList<>(keys.size());
+      for (Key key : keys) {
+        Bucket bucket = bucket(key, limit(key), now);
+        if (bucket == null) {
+          continue;
+        }
+        bucket.refill(now);
+        long bucketWait = bucket.waitNanos(now);
+        if (bucketWait > waitNanos) {
+          waitNanos = bucketWait;
+          limiting = key;
+        }
+        taken.add(bucket);
+      }
+
+      if (waitNanos > maxWaitNanos) {
+        rejected.incrementAndGet();
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        future.completeExceptionally(new ACMEClientException(RATE_LIMITED, "Rate limit for " + limiting + " has no capacity for another " + TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) + "s"));
+        return future;
+      }
+      for (Bucket bucket : taken) {
+        bucket.take();
+      }
+    }
+
+    if (waitNanos <= 0) {
+      return CompletableFuture.completedFuture(null);
+    }
+    throttled.incrementAndGet();
+    return retryScheduler.schedule(waitNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Records that the server turned away a request counted against the keys as rate limited.
+   *
+   * @param retryAfter the Retry-After header sent with the error, or null.
+   */
+  public void limited(List<Key> keys, String retryAfter) {
+    long pauseNanos = TimeUnit.SECONDS.toNanos(RetryAfterUtils.delaySeconds(retryAfter, DEFAULT_PAUSE));
+    Scope mostSpecific = Scope.RESOURCE;
+    for (Key key : keys) {
+      if (key.scope.compareTo(mostSpecific) > 0) {
+        mostSpecific = key.scope;
+      }
+    }
+
+    synchronized (this) {
+      long now = System.nanoTime();
+      for (Key key : keys) {
+        if (key.scope == mostSpecific) {
+          Bucket bucket = bucket(key, limit(key), now);
+          if (bucket == null) {
+            bucket = new Bucket(null, now);
+            buckets.put(key, bucket);
+          }
+          bucket.refill(now);
+          bucket.pause(now, pauseNanos);
+        }
+      }
+    }
+  }
+
+  /**
+   * Whether the error is the server turning the request away for exceeding a rate limit.
+   */
+  public static boolean isRateLimited(ACMEClientException e) {
+    return RATE_LIMITED.equals(e.getType()) || (e.getType() == null && e.getCode() == HTTP_TOO_MANY_REQUESTS);
+  }
+
+  /**
+   * Number of requests that had to wait for capacity.
+   */
+  public long getThrottledCount() {
+    return throttled.get();
+  }
+
+  /**
+   * Number of requests failed without being sent because capacity was too far off.
+   */
+  public long getRejectedCount() {
+    return rejected.get();
+  }
+
+  /**
+   * The domain a CA counts certificates against - the public suffix plus one label. Without a
+   * public suffix list, the suffix is the top-level domain unless the name ends in one of a
+   * handful of well-known second-level suffixes such as {@code co.uk} or {@code com.au}.
+   */
+  static String registeredDomain(String domain) {
+    String name = domain.toLowerCase(Locale.ROOT);
+    if (name.startsWith("*.")) {
+      name = name.substring(2);
+    }
+    if (name.endsWith(".")) {
+      name = name.substring(0, name.length() - 1);
+    }
+    String[] labels = name.split("\\.");
+    int suffixLabels = 1;
+    if (labels.length >= 2 && SECOND_LEVEL_SUFFIXES.contains(labels[labels.length - 2] + "." + labels[labels.length - 1])) {
+      suffixLabels = 2;
+    }
+    if (labels.length <= suffixLabels + 1) {
+      return name;
+    }
+    StringBuilder registered = new StringBuilder(labels[labels.length - suffixLabels - 1]);
+    for (int i = labels.length - suffixLabels; i < labels.length; i++) {
+      registered.append('.').append(labels[i]);
+    }
+    return registered.toString();
+  }
+
+  // Called with the limiter locked.
+  private Bucket bucket(Key key, RateLimit limit, long now) {
+    Bucket bucket = buckets.get(key);
+    if (bucket == null && limit != null) {
+      bucket = new Bucket(limit, now);
+      buckets.put(key, bucket);
+    }
+    return bucket;
+  }
+
+  private RateLimit limit(Key key) {
+    if (limits == null) {
+      return null;
+    }
+    switch (key.scope) {
+      case ACCOUNT:
+        return limits.getAccount();
+      case DOMAIN:
+        return limits.getRegisteredDomain();
+      default:
+        if (Resource.ResourceType.NEW_REGISTRATION.type().equals(key.value)) {
+          return limits.getNewRegistration();
+        } else if (Resource.ResourceType.NEW_AUTHORIZATION.type().equals(key.value)) {
+          return limits.getNewAuthorization();
+        } else if (Resource.ResourceType.NEW_CERTIFICATE.type().equals(key.value)) {
+          return limits.getNewCertificate();
+        }
+        return null;
+    }
+  }
+
+  // Called with the limiter locked - forgets buckets that are back to where a new one would
+  // start, so a long run over many domains doesn't keep one for each of them.
+  private void sweep(long now) {
+    for (Iterator<Bucket> it = buckets.values().iterator(); it.hasNext(); ) {
+      Bucket bucket = it.next();
+      bucket.refill(now);
+      if (bucket.isIdle(now)) {
+        it.remove();
+      }
+    }
+    sweepAt = Math.max(MIN_SWEEP_SIZE, buckets.size() * 2);
+  }
+
+  enum Scope {
+    // In increasing order of specificity.
+    RESOURCE, ACCOUNT, DOMAIN
+  }
+
+  public static final class Key {
+
+    private final Scope scope;
+
+    private final String value;
+
+    Key(Scope scope, String value) {
+      this.scope = scope;
+      this.value = value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) o;
+      return scope == key.scope && value.equals(key.value);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * scope.hashCode() + value.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return scope.name().toLowerCase(Locale.ROOT) + " " + value;
+    }
+  }
+
+  private static final class Bucket {
+
+    // Null for a bucket that only exists to hold a pause.
+    private final RateLimit limit;
+
+    private final double tokensPerNano;
+
+    // Negative while requests are waiting on tokens they have already reserved.
+    private double tokens;
+
+    private long refilledAt;
+
+    private long pausedUntil;
+
+    private Bucket(RateLimit limit, long now) {
+      this.limit = limit;
+      this.refilledAt = now;
+      this.pausedUntil = now;
+      this.tokensPerNano = limit != null ? limit.getPermits() / (double) TimeUnit.SECONDS.toNanos(limit.getPeriod()) : 0;
+      this.tokens = limit != null ? limit.getPermits() : 0;
+    }
+
+    private void refill(long now) {
+      if (limit != null) {
+        tokens = Math.min(limit.getPermits(), tokens + (now - refilledAt) * tokensPerNano);
+      }
+      refilledAt = now;
+    }
+
+    private long waitNanos(long now) {
+      long wait = pausedUntil - now;
+      if (limit != null && tokens < 1) {
+        wait = Math.max(wait, (long) Math.ceil((1 - tokens) / tokensPerNano));
+      }
+      return wait;
+    }
+
+    private void take() {
+      if (limit != null) {
+        tokens--;
+      }
+    }
+
+    private void pause(long now, long pauseNanos) {
+      pausedUntil = Math.max(pausedUntil, now + pauseNanos);
+      if (limit != null) {
+        // Empty by the time the pause ends.
+        tokens = Math.min(tokens, -(pausedUntil - now) * tokensPerNano);
+      }
+    }
+
+    private boolean isIdle(long now) {
+      return pausedUntil - now <= 0 && (limit == null || tokens >= limit.getPermits());
+    }
+  }
+}
@@ -15,15 +15,11 @@
  */
 package io.fabric8.acme.client.internal;
 
-import com.nimbusds.jose.JOSEException;
-import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.JWSHeader;
 import com.nimbusds.jose.JWSObject;
 import com.nimbusds.jose.Payload;
-import com.nimbusds.jose.jwk.JWK;
 import io.fabric8.acme.client.ACMEClientException;
 import io.fabric8.acme.client.dsl.GetCreateUpdateEditKeyUpdateRecoverable;
-import io.fabric8.acme.client.model.Directory;
 import io.fabric8.acme.client.model.NewRegistration;
 import io.fabric8.acme.client.model.RecoveryRegistration;
 import io.fabric8.acme.client.model.Registration;
@@ -32,17 +28,33 @@ import io.fabric8.acme.client.model.Resource;
 import io.fabric8.acme.client.model.SendableNewRegistration;
 import io.fabric8.acme.client.model.SendableRecoveryRegistration;
 import io.fabric8.acme.client.model.SendableRegistration;
+import io.fabric8.acme.client.store.AccountStore;
+import io.fabric8.acme.client.transport.HttpResponse;
+import io.fabric8.acme.client.transport.HttpTransport;
 import net.minidev.json.JSONObject;
-import okhttp3.OkHttpClient;
-import okhttp3.Response;
 
 import java.net.HttpURLConnection;
 import java.security.KeyPair;
 
 public class RegistrationOperations extends BaseOperations<Registration> implements GetCreateUpdateEditKeyUpdateRecoverable<Registration, NewRegistration, SendableNewRegistration, SendableRegistration, SendableRecoveryRegistration> {
 
-  public RegistrationOperations(Directory directory, OkHttpClient okHttpClient, Nonce nonce, JWSAlgorithm jwsAlgorithm, Signer signer, JWK jwk) {
-    super(directory, okHttpClient, nonce, jwsAlgorithm, signer, jwk);
+  private final AccountStore accountStore;
+
+  public RegistrationOperations(DirectoryProvider directory, HttpTransport transport, Nonce nonce, AccountCredentials credentials) {
+    this(directory, transport, nonce, credentials, null);
+  }
+
+  /**
+   * @param accountStore where registrations are remembered between runs, or null to always ask
+   *                     the server.
+   */
+  public RegistrationOperations(DirectoryProvider directory, HttpTransport transport, Nonce nonce, AccountCredentials credentials, AccountStore accountStore) {
+    this(directory, transport, nonce, credentials, accountStore, new RateLimiter(null));
+  }
+
+  public RegistrationOperations(DirectoryProvider directory, HttpTransport transport, Nonce nonce, AccountCredentials credentials, AccountStore accountStore, RateLimiter rateLimiter) {
+    super(directory, transport, nonce, credentials, rateLimiter);
+    this.accountStore = accountStore;
   }
 
   @Override
@@ -54,17 +66,31 @@ public class RegistrationOperations extends BaseOperations<Registration> impleme
   public Registration create(NewRegistration item) {
     JWSHeader jwsHeader = jwsHeader().build();
 
-    return sendRequest(
+    return remember(sendRequest(
       Resource.ResourceType.NEW_REGISTRATION,
       item,
       jwsHeader,
       ((response) -> handleRegistrationResponse(response, item.isAgreeToTerms(), null)),
       HttpURLConnection.HTTP_CREATED
-    );
+    ));
   }
 
   @Override
   public Registration update(Registration item) {
+    try {
+      return remember(send(item));
+    } catch (ACMEClientException e) {
+      // The stored location is only revalidated once the server stops recognising it.
+      if (!isStale(e, accountStore, getAccountKey(), item)) {
+        throw e;
+      }
+      forget(accountStore, getAccountKey());
+      Registration current = fetch();
+      return remember(send(new RegistrationBuilder(item).withLocation(current.getLocation()).build()));
+    }
+  }
+
+  private Registration send(Registration item) {
     JWSHeader jwsHeader = jwsHeader().build();
 
     return sendRequest(
@@ -76,43 +102,64 @@ public class RegistrationOperations extends BaseOperations<Registration> impleme
     );
   }
 
-  private Registration handleRegistrationResponse(Response response, boolean agreeToTerms, String certificatesLocation) {
+  private Registration handleRegistrationResponse(HttpResponse response, boolean agreeToTerms, String certificatesLocation) {
+    RegistrationResponse registrationResponse = parseRegistrationResponse(response, certificatesLocation);
+    if (agreeToTerms && registrationResponse.agreementChanged) {
+      return send(registrationResponse.registration);
+    }
+    return registrationResponse.registration;
+  }
+
+  static RegistrationResponse parseRegistrationResponse(HttpResponse response, String certificatesLocation) {
     try {
       String location = response.header("Location");
       if (location == null || location.isEmpty()) {
-        location = response.request().url().toString();
+        location = response.url();
       }
 
-      JSONObject jsonObject = JSONParserUtils.parse(response.body().byteStream());
-      RegistrationBuilder builder = new RegistrationBuilder(Registration.fromJSONObject(jsonObject));
+      Registration body = StreamingModelDecoder.decodeRegistration(response.byteStream());
 
-      if (builder.getCertificatesLocation() == null || builder.getCertificatesLocation().isEmpty()) {
-        builder.withCertificatesLocation(certificatesLocation);
+      if (body.getCertificatesLocation() != null) {
+        certificatesLocation = body.getCertificatesLocation();
       }
-      builder.withLocation(location);
 
       LinkHeaderFieldParser linkParser = new LinkHeaderFieldParser(response.headers("Link"));
 
-      String oldAgreementLocation = builder.getAgreementLocation();
+      String oldAgreementLocation = body.getAgreementLocation();
       String newAgreementLocation = linkParser.getFirstTargetForRelation("terms-of-service");
-      builder.withAgreementLocation(newAgreementLocation);
-      builder.withAuthorizationsLocation(linkParser.getFirstTargetForRelation("next"));
-      builder.withRecoverLocation(linkParser.getFirstTargetForRelation("recover"));
-
-      if (agreeToTerms) {
-        if (newAgreementLocation != null && !newAgreementLocation.isEmpty() && !newAgreementLocation.equals(oldAgreementLocation)) {
-          return update(builder.build());
-        }
-      }
 
-      return builder.build();
+      Registration registration = new Registration(
+        body.getJwk(),
+        body.getContact(),
+        location,
+        newAgreementLocation,
+        linkParser.getFirstTargetForRelation("next"),
+        certificatesLocation,
+        linkParser.getFirstTargetForRelation("recover"),
+        false
+      );
+
+      boolean agreementChanged = newAgreementLocation != null && !newAgreementLocation.isEmpty() && !newAgreementLocation.equals(oldAgreementLocation);
+
+      return new RegistrationResponse(registration, agreementChanged);
     } catch (Exception e) {
       throw ACMEClientException.launderThrowable(e);
     }
   }
 
+  /**
+   * Answers from the account store when it knows the registration, otherwise asks the server.
+   */
   @Override
   public Registration get() {
+    Registration stored = stored(accountStore, getAccountKey());
+    if (stored != null) {
+      return stored;
+    }
+    return remember(fetch());
+  }
+
+  private Registration fetch() {
     JWSHeader jwsHeader = jwsHeader().build();
 
     return sendRequest(
@@ -124,15 +171,65 @@ public class RegistrationOperations extends BaseOperations<Registration> impleme
     );
   }
 
-  private Registration handleGetRegistrationResponse(Response response) {
+  private Registration handleGetRegistrationResponse(HttpResponse response) {
+    Registration existing = existingRegistration(response);
+    if (existing != null) {
+      return send(existing);
+    }
+    return handleRegistrationResponse(response, false, null);
+  }
+
+  private Registration remember(Registration registration) {
+    if (accountStore != null && registration.getLocation() != null) {
+      accountStore.save(getAccountKey().getThumbprint().toString(), registration);
+    }
+    return registration;
+  }
+
+  /**
+   * The stored registration for the account key, with the key itself filled in.
+   */
+  static Registration stored(AccountStore accountStore, AccountKey accountKey) {
+    if (accountStore == null) {
+      return null;
+    }
+    Registration stored = accountStore.load(accountKey.getThumbprint().toString());
+    if (stored == null || stored.getLocation() == null) {
+      return null;
+    }
+    return new RegistrationBuilder(stored).withJwk(accountKey.getJwk()).build();
+  }
+
+  static void forget(AccountStore accountStore, AccountKey accountKey) {
+    if (accountStore != null) {
+      accountStore.remove(accountKey.getThumbprint().toString());
+    }
+  }
+
+  /**
+   * Whether a request to the stored registration failed because the server no longer knows it
+   * there, e.g. it was deactivated or the stored state belongs to another server.
+   */
+  static boolean isStale(ACMEClientException e, AccountStore accountStore, AccountKey accountKey, Registration item) {
+    if (e.getCode() != HttpURLConnection.HTTP_NOT_FOUND && e.getCode() != HttpURLConnection.HTTP_FORBIDDEN && !"urn:acme:error:unauthorized".equals(e.getType())) {
+      return false;
+    }
+    Registration stored = stored(accountStore, accountKey);
+    return stored != null && stored.getLocation().equals(item.getLocation());
+  }
+
+  /**
+   * A conflict on new-reg only tells us where the existing registration lives - its details have
+   * to be fetched with an (empty) update.
+   */
+  static Registration existingRegistration(HttpResponse response) {
     if (response.code() == HttpURLConnection.HTTP_CONFLICT) {
       String location = response.header("Location");
       if (location != null && !location.isEmpty()) {
-        Registration reg = new RegistrationBuilder().withLocation(location).build();
-        return update(reg);
+        return new RegistrationBuilder().withLocation(location).build();
       }
     }
-    return handleRegistrationResponse(response, false, null);
+    return null;
   }
 
   @Override
@@ -141,27 +238,53 @@ public class RegistrationOperations extends BaseOperations<Registration> impleme
   }
 
   // See https://ietf-wg-acme.github.io/acme/#account-key-roll-over
+  //
+  // Other requests keep going out while the key changes: any the server rejects in the
+  // meantime are re-signed with the new key once it is published.
   @Override
   public void updateKey(KeyPair newKeyPair) {
-    try {
-      JSONObject oldKey = new JSONObject();
-      oldKey.put("resource", "reg");
-      oldKey.put("oldKey", getJwk().computeThumbprint());
+    AccountCredentials.Credential old = getCredentials().get();
+    AccountCredentials.Credential next = old.rollover(newKeyPair);
 
-      JWK newJWK = JWKUtils.jwkFromPublicKey(newKeyPair.getPublic());
+    JSONObject oldKey = new JSONObject();
+    oldKey.put("resource", "reg");
+    oldKey.put("oldKey", old.getAccountKey().getThumbprint());
 
-      JWSHeader oldKeyHeader = new JWSHeader.Builder(getJwsAlgorithm()).jwk(newJWK).build();
-      JWSObject oldJwsObject = new JWSObject(oldKeyHeader, new Payload(oldKey));
+    JWSHeader oldKeyHeader = new JWSHeader.Builder(next.getJwsAlgorithm()).jwk(next.getAccountKey().getJwk()).build();
+    JWSObject oldJwsObject = new JWSObject(oldKeyHeader, new Payload(oldKey));
 
-      new Signer(newKeyPair.getPrivate()).sign(oldJwsObject);
+    next.getSigner().sign(oldJwsObject);
 
-      JSONObject newKey = new JSONObject();
-      newKey.put("resource", "reg");
-      newKey.put("newKey", oldJwsObject.serialize());
+    JSONObject newKey = new JSONObject();
+    newKey.put("resource", "reg");
+    newKey.put("newKey", oldJwsObject.serialize());
 
-      sendRequest(get().getLocation(), newKey, jwsHeader().build(), (response) -> null, HttpURLConnection.HTTP_OK);
-    } catch (JOSEException e) {
-      throw ACMEClientException.launderThrowable(e);
+    Registration registration = get();
+    try {
+      sendKeyChange(registration.getLocation(), newKey, old);
+    } catch (ACMEClientException e) {
+      if (!isStale(e, accountStore, old.getAccountKey(), registration)) {
+        throw e;
+      }
+      forget(accountStore, old.getAccountKey());
+      registration = remember(fetch());
+      sendKeyChange(registration.getLocation(), newKey, old);
+    }
+
+    // The registration now belongs to the new key.
+    getCredentials().publish(next);
+    forget(accountStore, old.getAccountKey());
+    remember(registration);
+  }
+
+  private void sendKeyChange(String location, JSONObject newKey, AccountCredentials.Credential old) {
+    JWSHeader jwsHeader = jwsHeader().build();
+    getCredentials().beginRollover(old);
+    try {
+      sendRolloverRequest(location, newKey, jwsHeader, (response) -> null, HttpURLConnection.HTTP_OK);
+    } catch (RuntimeException e) {
+      getCredentials().abort();
+      throw e;
     }
   }
 
@@ -171,6 +294,10 @@ public class RegistrationOperations extends BaseOperations<Registration> impleme
   }
 
   private Registration recover(RecoveryRegistration recoveryRegistration) {
+    return remember(recoverRegistration(recoveryRegistration));
+  }
+
+  private Registration recoverRegistration(RecoveryRegistration recoveryRegistration) {
     Registration stubRegistration = sendRequest(
       Resource.ResourceType.RECOVER_REGISTRATION,
       recoveryRegistration,
@@ -184,11 +311,23 @@ public class RegistrationOperations extends BaseOperations<Registration> impleme
     return requestWithRetryAfter(
       stubRegistration.getLocation(),
       emptyReg,
-      jwsHeader().build(),
       ((response) -> handleRegistrationResponse(response, false, null)),
       HttpURLConnection.HTTP_OK,
       HttpURLConnection.HTTP_ACCEPTED
     );
   }
 
+  static final class RegistrationResponse {
+
+    final Registration registration;
+
+    // The server links to terms of service other than the ones already agreed to.
+    final boolean agreementChanged;
+
+    RegistrationResponse(Registration registration, boolean agreementChanged) {
+      this.registration = registration;
+      this.agreementChanged = agreementChanged;
+    }
+  }
+
 }
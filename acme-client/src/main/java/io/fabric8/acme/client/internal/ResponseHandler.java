@@ -15,10 +15,10 @@
  */
 package io.fabric8.acme.client.internal;
 
-import okhttp3.Response;
+import io.fabric8.acme.client.transport.HttpResponse;
 
 public interface ResponseHandler<T> {
 
-  public T handle(Response response);
+  public T handle(HttpResponse response);
 
 }
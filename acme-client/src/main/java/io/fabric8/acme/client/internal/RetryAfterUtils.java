@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.internal;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+
+public class RetryAfterUtils {
+
+  public static final long DEFAULT_RETRY_AFTER_SECONDS = 1;
+
+  private RetryAfterUtils() {
+  }
+
+  /**
+   * Parses a Retry-After header into a delay in seconds, falling back to the default when the
+   * header is missing or malformed.
+   */
+  public static long delaySeconds(String retryAfter, long defaultDelaySeconds) {
+    if (retryAfter == null || retryAfter.trim().isEmpty()) {
+      return defaultDelaySeconds;
+    }
+
+    // Retry-After  = "Retry-After" ":" ( HTTP-date | delta-seconds )
+    String value = retryAfter.trim();
+    long delay;
+    try {
+      delay = Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      try {
+        Instant retryAfterInstant = Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(value));
+        delay = Instant.now().until(retryAfterInstant, ChronoUnit.SECONDS);
+      } catch (DateTimeParseException e1) {
+        return defaultDelaySeconds;
+      }
+    }
+    return Math.max(0, delay);
+  }
+
+  public static long delaySeconds(String retryAfter) {
+    return delaySeconds(retryAfter, DEFAULT_RETRY_AFTER_SECONDS);
+  }
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed wheel timer shared by every retry and polling loop in the client.
+ * <p>
+ * Delayed retries are parked in one of a fixed number of buckets rather than on a sleeping
+ * thread, so any number of outstanding waits costs a single daemon thread that wakes once per
+ * tick. Timeouts fire at most one tick late, which is plenty for Retry-After granularity.
+ * Tasks run on the timer thread and so must be short - typically they just kick off the next
+ * asynchronous request.
+ */
+public class RetryScheduler {
+
+  public static final long DEFAULT_TICK_MILLIS = 100;
+
+  public static final int DEFAULT_WHEEL_SIZE = 512;
+
+  private static final Logger logger = LoggerFactory.getLogger(RetryScheduler.class);
+
+  private static final RetryScheduler DEFAULT = new RetryScheduler(DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+
+  private final long tickNanos;
+
+  private final Deque<Timeout>[] wheel;
+
+  private final int mask;
+
+  // Timeouts scheduled since the last tick - only the timer thread touches the wheel itself.
+  private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger queueDepth = new AtomicInteger();
+
+  private final AtomicBoolean started = new AtomicBoolean();
+
+  private final long startTime = System.nanoTime();
+
+  @SuppressWarnings("unchecked")
+  public RetryScheduler(long tickDuration, TimeUnit unit, int wheelSize) {
+    if (tickDuration <= 0) {
+      throw new IllegalArgumentException("Tick duration must be positive");
+    }
+    if (wheelSize < 1 || wheelSize > 1 << 16) {
+      throw new IllegalArgumentException("Wheel size must be between 1 and 65536");
+    }
+    // Round up to a power of two so the bucket index is a simple mask.
+    int normalizedSize = 1;
+    while (normalizedSize < wheelSize) {
+      normalizedSize <<= 1;
+    }
+    this.tickNanos = unit.toNanos(tickDuration);
+    this.wheel = new Deque[normalizedSize];
+    for (int i = 0; i < wheel.length; i++) {
+      wheel[i] = new ArrayDeque<>();
+    }
+    this.mask = wheel.length - 1;
+  }
+
+  public static RetryScheduler getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Runs the task on the timer thread once the delay has elapsed.
+   */
+  public void schedule(Runnable task, long delay, TimeUnit unit) {
+    start();
+    long deadline = System.nanoTime() - startTime + unit.toNanos(Math.max(0, delay));
+    queueDepth.incrementAndGet();
+    incoming.add(new Timeout(task, deadline));
+  }
+
+  /**
+   * Returns a future that completes once the delay has elapsed.
+   */
+  public CompletableFuture<Void> schedule(long delay, TimeUnit unit) {
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    schedule(() -> future.complete(null), delay, unit);
+    return future;
+  }
+
+  /**
+   * Number of scheduled tasks that have not run yet.
+   */
+  public int getQueueDepth() {
+    return queueDepth.get();
+  }
+
+  private void start() {
+    if (started.compareAndSet(false, true)) {
+      Thread worker = new Thread(this::run, "acme-retry-scheduler");
+      worker.setDaemon(true);
+      worker.start();
+    }
+  }
+
+  private void run() {
+    long tick = (System.nanoTime() - startTime) / tickNanos;
+    while (!Thread.currentThread().isInterrupted()) {
+      long sleepNanos = startTime + (tick + 1) * tickNanos - System.nanoTime();
+      if (sleepNanos > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(sleepNanos);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        continue;
+      }
+      transferIncoming(tick);
+      expire(wheel[(int) (tick & mask)]);
+      tick++;
+    }
+  }
+
+  private void transferIncoming(long tick) {
+    Timeout timeout;
+    while ((timeout = incoming.poll()) != null) {
+      long deadlineTick = timeout.deadline / tickNanos;
+      timeout.remainingRounds = (deadlineTick - tick) / wheel.length;
+      // Anything already overdue goes into the current bucket.
+      wheel[(int) (Math.max(deadlineTick, tick) & mask)].add(timeout);
+    }
+  }
+
+  private void expire(Deque<Timeout> bucket) {
+    Iterator<Timeout> iterator = bucket.iterator();
+    while (iterator.hasNext()) {
+      Timeout timeout = iterator.next();
+      if (timeout.remainingRounds > 0) {
+        timeout.remainingRounds--;
+        continue;
+      }
+      iterator.remove();
+      queueDepth.decrementAndGet();
+      try {
+        timeout.task.run();
+      } catch (RuntimeException e) {
+        logger.warn("Scheduled retry failed", e);
+      }
+    }
+  }
+
+  private static final class Timeout {
+
+    private final Runnable task;
+
+    private final long deadline;
+
+    private long remainingRounds;
+
+    private Timeout(Runnable task, long deadline) {
+      this.task = task;
+      this.deadline = deadline;
+    }
+  }
+}
@@ -16,42 +16,195 @@
 package io.fabric8.acme.client.internal;
 
 import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
 import com.nimbusds.jose.JWSObject;
 import com.nimbusds.jose.JWSSigner;
-import com.nimbusds.jose.crypto.ECDSASigner;
-import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jca.JCAContext;
+import com.nimbusds.jose.util.Base64URL;
 import io.fabric8.acme.client.ACMEClientException;
 
+import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.Signature;
 import java.security.interfaces.ECPrivateKey;
 import java.security.interfaces.RSAPrivateKey;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
-public class Signer {
+/**
+ * Signs JWS objects with the account key - see https://ietf-wg-acme.github.io/acme/#rfc.section.5.2.
+ * <p>
+ * Every thread keeps its own {@link Signature} initialised with the key, so signing a request
+ * costs neither a provider lookup nor a key initialisation, and threads never contend on a
+ * shared engine.
+ */
+public class Signer implements JWSSigner {
+
+  private final PrivateKey privateKey;
 
-  private JWSSigner signer;
+  private final Set<JWSAlgorithm> supportedAlgorithms;
+
+  private final JCAContext jcaContext = new JCAContext();
+
+  private final ThreadLocal<Engine> engine = new ThreadLocal<>();
 
   public Signer(PrivateKey privateKey) {
+    this(privateKey, null);
+  }
+
+  /**
+   * @param provider the JCA provider to sign with, or null for the platform's preferred one.
+   */
+  public Signer(PrivateKey privateKey, Provider provider) {
     if (privateKey == null) {
       throw new ACMEClientException("signingError", "Account private key pair is required for signing");
     }
+    this.privateKey = privateKey;
+    this.jcaContext.setProvider(provider);
 
+    Set<JWSAlgorithm> algorithms = new HashSet<>();
     if (privateKey instanceof RSAPrivateKey) {
-      signer = new RSASSASigner((RSAPrivateKey) privateKey);
+      algorithms.add(JWSAlgorithm.RS256);
+      algorithms.add(JWSAlgorithm.RS384);
+      algorithms.add(JWSAlgorithm.RS512);
     } else if (privateKey instanceof ECPrivateKey) {
-      try {
-        signer = new ECDSASigner((ECPrivateKey) privateKey);
-      } catch (JOSEException e) {
-        throw ACMEClientException.launderThrowable(e);
+      // ECDSA signatures only verify with the hash matching the curve.
+      int fieldSize = ((ECPrivateKey) privateKey).getParams().getCurve().getField().getFieldSize();
+      if (fieldSize == 256) {
+        algorithms.add(JWSAlgorithm.ES256);
+      } else if (fieldSize == 384) {
+        algorithms.add(JWSAlgorithm.ES384);
+      } else if (fieldSize == 521) {
+        algorithms.add(JWSAlgorithm.ES512);
       }
     }
+    this.supportedAlgorithms = Collections.unmodifiableSet(algorithms);
   }
 
   public void sign(JWSObject jwsObject) {
     try {
-      jwsObject.sign(signer);
+      jwsObject.sign(this);
     } catch (JOSEException e) {
       throw ACMEClientException.launderThrowable(e);
     }
   }
 
+  @Override
+  public Base64URL sign(JWSHeader header, byte[] signingInput) throws JOSEException {
+    JWSAlgorithm algorithm = header.getAlgorithm();
+    Engine current = engine.get();
+    if (current == null || !current.algorithm.equals(algorithm)) {
+      current = new Engine(algorithm, newSignature(algorithm));
+      engine.set(current);
+    }
+
+    byte[] signature;
+    try {
+      current.signature.update(signingInput);
+      signature = current.signature.sign();
+    } catch (GeneralSecurityException e) {
+      // Don't leave a half-used engine behind.
+      engine.remove();
+      throw new JOSEException(e.getMessage(), e);
+    }
+
+    if (JWSAlgorithm.Family.EC.contains(algorithm)) {
+      // JWS wants R || S rather than the DER sequence the JCA produces.
+      signature = transcodeToConcat(signature, concatLength(algorithm));
+    }
+    return Base64URL.encode(signature);
+  }
+
+  private Signature newSignature(JWSAlgorithm algorithm) throws JOSEException {
+    if (!supportedAlgorithms.contains(algorithm)) {
+      throw new JOSEException("Unsupported JWS algorithm " + algorithm + " for the account key");
+    }
+    String name = "SHA" + algorithm.getName().substring(2) + (JWSAlgorithm.Family.EC.contains(algorithm) ? "withECDSA" : "withRSA");
+    try {
+      Provider provider = jcaContext.getProvider();
+      Signature signature = provider != null ? Signature.getInstance(name, provider) : Signature.getInstance(name);
+      signature.initSign(privateKey);
+      return signature;
+    } catch (GeneralSecurityException e) {
+      throw new JOSEException("Cannot create " + name + " signature: " + e.getMessage(), e);
+    }
+  }
+
+  // See https://tools.ietf.org/html/rfc7518#section-3.4.
+  private static int concatLength(JWSAlgorithm algorithm) {
+    if (JWSAlgorithm.ES384.equals(algorithm)) {
+      return 96;
+    }
+    if (JWSAlgorithm.ES512.equals(algorithm)) {
+      return 132;
+    }
+    return 64;
+  }
+
+  /**
+   * Converts a DER encoded ECDSA signature - {@code SEQUENCE { INTEGER r, INTEGER s }} - into
+   * the fixed length concatenation of R and S that JWS uses.
+   */
+  static byte[] transcodeToConcat(byte[] der, int length) throws JOSEException {
+    if (der.length < 8 || der[0] != 0x30) {
+      throw new JOSEException("Invalid ECDSA signature format");
+    }
+    // The sequence length takes a second byte once the signature outgrows 127 bytes (P-521).
+    int offset = (der[1] & 0xff) == 0x81 ? 3 : 2;
+    byte[] concat = new byte[length];
+    offset = copyInteger(der, offset, concat, 0, length / 2);
+    offset = copyInteger(der, offset, concat, length / 2, length / 2);
+    if (offset != der.length) {
+      throw new JOSEException("Invalid ECDSA signature format");
+    }
+    return concat;
+  }
+
+  // Copies a DER INTEGER right-aligned into its half of the output, returning the offset after it.
+  private static int copyInteger(byte[] der, int offset, byte[] out, int outOffset, int size) throws JOSEException {
+    if (offset + 2 > der.length || der[offset] != 0x02) {
+      throw new JOSEException("Invalid ECDSA signature format");
+    }
+    int length = der[offset + 1] & 0xff;
+    int start = offset + 2;
+    int end = start + length;
+    if (end > der.length) {
+      throw new JOSEException("Invalid ECDSA signature format");
+    }
+    // A leading zero only keeps a positive INTEGER from reading as negative.
+    while (length > size && der[start] == 0) {
+      start++;
+      length--;
+    }
+    if (length > size) {
+      throw new JOSEException("Invalid ECDSA signature format");
+    }
+    System.arraycopy(der, start, out, outOffset + size - length, length);
+    return end;
+  }
+
+  @Override
+  public Set<JWSAlgorithm> supportedJWSAlgorithms() {
+    return supportedAlgorithms;
+  }
+
+  @Override
+  public JCAContext getJCAContext() {
+    return jcaContext;
+  }
+
+  private static final class Engine {
+
+    private final JWSAlgorithm algorithm;
+
+    private final Signature signature;
+
+    private Engine(JWSAlgorithm algorithm, Signature signature) {
+      this.algorithm = algorithm;
+      this.signature = signature;
+    }
+  }
 }
@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.internal;
+
+import io.fabric8.acme.client.ACMEClientException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key so that only the first caller goes to the server
+ * and everyone else arriving before it completes shares its result (or its failure).
+ * <p>
+ * Calls are tracked in a {@link ConcurrentHashMap}, so claiming a key is a single CAS into a
+ * hash bin and unrelated keys never contend with each other. A key is released as soon as its
+ * call completes - nothing is cached beyond the lifetime of the call.
+ */
+public class SingleFlight<K, V> {
+
+  private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+  private final AtomicLong coalesced = new AtomicLong();
+
+  /**
+   * Runs the call on the calling thread unless one for the same key is already in flight, in
+   * which case this blocks until that one completes.
+   */
+  public V execute(K key, Supplier<V> call) {
+    CompletableFuture<V> mine = new CompletableFuture<>();
+    CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+    if (existing != null) {
+      coalesced.incrementAndGet();
+      try {
+        return existing.join();
+      } catch (CompletionException e) {
+        throw ACMEClientException.launderThrowable(e.getCause());
+      }
+    }
+
+    try {
+      V result = call.get();
+      mine.complete(result);
+      return result;
+    } catch (RuntimeException e) {
+      mine.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, mine);
+    }
+  }
+
+  /**
+   * Starts the call unless one for the same key is already in flight, in which case the returned
+   * future completes with that one's result.
+   */
+  public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> call) {
+    CompletableFuture<V> mine = new CompletableFuture<>();
+    CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+    if (existing != null) {
+      coalesced.incrementAndGet();
+      return dependent(existing);
+    }
+
+    CompletableFuture<V> started;
+    try {
+      started = call.get();
+    } catch (RuntimeException e) {
+      started = new CompletableFuture<>();
+      started.completeExceptionally(e);
+    }
+    started.whenComplete((result, throwable) -> {
+      inFlight.remove(key, mine);
+      if (throwable != null) {
+        mine.completeExceptionally(throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable);
+      } else {
+        mine.complete(result);
+      }
+    });
+    return dependent(mine);
+  }
+
+  /**
+   * Number of calls that were answered by another caller's request rather than their own.
+   */
+  public long getCoalesced() {
+    return coalesced.get();
+  }
+
+  public int getInFlight() {
+    return inFlight.size();
+  }
+
+  // Every caller gets its own stage so that one of them cancelling doesn't fail the others.
+  private static <V> CompletableFuture<V> dependent(CompletableFuture<V> shared) {
+    return shared.thenApply(Function.identity());
+  }
+}
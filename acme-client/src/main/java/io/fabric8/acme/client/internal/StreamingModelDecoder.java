@@ -0,0 +1,323 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.internal;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.nimbusds.jose.jwk.JWK;
+import io.fabric8.acme.client.ACMEClientException;
+import io.fabric8.acme.client.model.Authorization;
+import io.fabric8.acme.client.model.Challenge;
+import io.fabric8.acme.client.model.Dns01Challenge;
+import io.fabric8.acme.client.model.Http01Challenge;
+import io.fabric8.acme.client.model.Identifier;
+import io.fabric8.acme.client.model.Registration;
+import io.fabric8.acme.client.model.Status;
+import io.fabric8.acme.client.model.TlsSni01Challenge;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binds ACME resources straight from a response stream to the model classes in a single pass,
+ * without building an intermediate {@link JSONObject} or going through the generated builders.
+ * Unknown fields are skipped, and the resulting objects match what the corresponding
+ * {@code fromJSONObject} methods produce.
+ */
+public class StreamingModelDecoder {
+
+  // Thread-safe, and recycles its read buffers per thread. Trailing commas and single quotes
+  // are accepted, as they are by the json-smart parser used elsewhere.
+  private static final JsonFactory JSON_FACTORY = new JsonFactory()
+    .enable(JsonParser.Feature.ALLOW_TRAILING_COMMA)
+    .enable(JsonParser.Feature.ALLOW_SINGLE_QUOTES);
+
+  private StreamingModelDecoder() {
+  }
+
+  public static Authorization decodeAuthorization(InputStream json, String location) throws IOException {
+    try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+      parser.nextToken();
+      return readAuthorization(parser, location);
+    }
+  }
+
+  public static Challenge decodeChallenge(InputStream json) throws IOException {
+    try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+      parser.nextToken();
+      return readChallenge(parser);
+    }
+  }
+
+  public static Registration decodeRegistration(InputStream json) throws IOException {
+    try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+      parser.nextToken();
+      return readRegistration(parser);
+    }
+  }
+
+  private static Authorization readAuthorization(JsonParser parser, String location) throws IOException {
+    expectObject(parser, "authorization");
+
+    Identifier identifier = null;
+    Status status = null;
+    Instant expires = null;
+    List<Challenge> challenges = new ArrayList<>();
+    // Combinations refer to challenges by index, and the challenges may not have been read yet.
+    List<int[]> combinationIndexes = null;
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      switch (field) {
+        case "identifier":
+          identifier = readIdentifier(parser);
+          break;
+        case "status":
+          String statusText = textOrNull(parser);
+          if (statusText != null && !statusText.isEmpty()) {
+            status = Status.findByStatus(statusText);
+          }
+          break;
+        case "expires":
+          String expiresText = textOrNull(parser);
+          if (expiresText != null && !expiresText.isEmpty()) {
+            expires = Instant.parse(expiresText);
+          }
+          break;
+        case "challenges":
+          if (parser.getCurrentToken() == JsonToken.START_ARRAY) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+              challenges.add(readChallenge(parser));
+            }
+          }
+          break;
+        case "combinations":
+          if (parser.getCurrentToken() == JsonToken.START_ARRAY) {
+            combinationIndexes = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.START_ARRAY) {
+              combinationIndexes.add(readIndexes(parser));
+            }
+          }
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+
+    List<List<Challenge>> combinations = new ArrayList<>(combinationIndexes != null ? combinationIndexes.size() : 0);
+    if (combinationIndexes != null) {
+      for (int[] indexes : combinationIndexes) {
+        List<Challenge> combination = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+          combination.add(challenges.get(index));
+        }
+        combinations.add(combination);
+      }
+    }
+
+    return new Authorization(location, identifier, status, expires, challenges, combinations);
+  }
+
+  private static int[] readIndexes(JsonParser parser) throws IOException {
+    int[] indexes = new int[4];
+    int count = 0;
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      if (count == indexes.length) {
+        int[] grown = new int[count * 2];
+        System.arraycopy(indexes, 0, grown, 0, count);
+        indexes = grown;
+      }
+      indexes[count++] = parser.getIntValue();
+    }
+    if (count == indexes.length) {
+      return indexes;
+    }
+    int[] trimmed = new int[count];
+    System.arraycopy(indexes, 0, trimmed, 0, count);
+    return trimmed;
+  }
+
+  private static Challenge readChallenge(JsonParser parser) throws IOException {
+    expectObject(parser, "challenge");
+
+    String type = null;
+    Status status = null;
+    String uri = null;
+    String token = null;
+    String keyAuthorization = null;
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      switch (field) {
+        case "type":
+          type = textOrNull(parser);
+          break;
+        case "status":
+          status = Status.findByStatus(textOrNull(parser));
+          break;
+        case "uri":
+          uri = textOrNull(parser);
+          break;
+        case "token":
+          token = textOrNull(parser);
+          break;
+        case "keyAuthorization":
+          keyAuthorization = textOrNull(parser);
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+
+    if (type == null) {
+      throw new ACMEClientException("unknownChallengeType", "Challenge is missing its type");
+    }
+    switch (type) {
+      case "dns-01":
+        return new Dns01Challenge(token, status, uri, keyAuthorization);
+      case "http-01":
+        return new Http01Challenge(token, status, uri, keyAuthorization);
+      case "tls-sni-01":
+        return new TlsSni01Challenge(token, status, uri, keyAuthorization);
+      default:
+        throw new ACMEClientException("unknownChallengeType", "Unknown challenge type: " + type);
+    }
+  }
+
+  private static Identifier readIdentifier(JsonParser parser) throws IOException {
+    if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+      return null;
+    }
+    expectObject(parser, "identifier");
+
+    String type = null;
+    String value = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      switch (field) {
+        case "type":
+          type = textOrNull(parser);
+          break;
+        case "value":
+          value = textOrNull(parser);
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    return new Identifier(type, value);
+  }
+
+  private static Registration readRegistration(JsonParser parser) throws IOException {
+    expectObject(parser, "registration");
+
+    JWK jwk = null;
+    Map<String, String> contact = new HashMap<>();
+    String agreementLocation = null;
+    String authorizationsLocation = null;
+    String certificatesLocation = null;
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      switch (field) {
+        case "key":
+          jwk = readJwk(parser);
+          break;
+        case "contact":
+          if (parser.getCurrentToken() == JsonToken.START_ARRAY) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+              String[] split = parser.getText().split(":", 2);
+              contact.put(split[0], split[1]);
+            }
+          }
+          break;
+        case "agreement":
+          agreementLocation = emptyToNull(textOrNull(parser));
+          break;
+        case "authorizations":
+          authorizationsLocation = emptyToNull(textOrNull(parser));
+          break;
+        case "certificates":
+          certificatesLocation = emptyToNull(textOrNull(parser));
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+
+    if (jwk == null) {
+      throw new ACMEClientException("badObject", "Registration JSON is missing required key - see https://ietf-wg-acme.github.io/acme/#rfc.section.5.2");
+    }
+
+    return new Registration(jwk, contact, null, agreementLocation, authorizationsLocation, certificatesLocation, null, false);
+  }
+
+  // JWK parsing needs a map - the key object is small and flat, so this is the only nested
+  // structure that gets materialised.
+  private static JWK readJwk(JsonParser parser) throws IOException {
+    expectObject(parser, "key");
+
+    JSONObject jwkObject = new JSONObject();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken token = parser.nextToken();
+      if (token == JsonToken.START_ARRAY) {
+        JSONArray values = new JSONArray();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+          values.add(parser.getText());
+        }
+        jwkObject.put(field, values);
+      } else if (token.isScalarValue()) {
+        jwkObject.put(field, textOrNull(parser));
+      } else {
+        parser.skipChildren();
+      }
+    }
+
+    try {
+      return JWK.parse(jwkObject);
+    } catch (ParseException e) {
+      throw ACMEClientException.launderThrowable(e);
+    }
+  }
+
+  private static void expectObject(JsonParser parser, String what) throws IOException {
+    if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+      throw new ACMEClientException("badObject", "Expected " + what + " to be a JSON object");
+    }
+  }
+
+  private static String textOrNull(JsonParser parser) throws IOException {
+    return parser.getCurrentToken() == JsonToken.VALUE_NULL ? null : parser.getText();
+  }
+
+  private static String emptyToNull(String value) {
+    return value == null || value.isEmpty() ? null : value;
+  }
+}
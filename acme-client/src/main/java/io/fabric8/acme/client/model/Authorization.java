@@ -44,10 +44,13 @@ public class Authorization extends BaseResource {
 
   private List<List<Challenge>> combinations;
 
-  public Authorization(String location, Identifier identifier, TemporalAccessor expires, List<Challenge> challenges, List<List<Challenge>> combinations) {
+  public Authorization(String location, Identifier identifier, Status status, TemporalAccessor expires, List<Challenge> challenges, List<List<Challenge>> combinations) {
     super(ResourceType.AUTHORIZATION);
     this.location = location;
     this.identifier = identifier;
+    if (status != null) {
+      this.status = status;
+    }
     this.expires = expires;
     this.challenges = challenges;
     this.combinations = combinations;
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.model;
+
+import java.security.KeyPair;
+
+/**
+ * Where an issued certificate lives. The certificate itself is streamed to a
+ * {@link CertificateSink} rather than held here.
+ */
+public class Certificate {
+
+  private final String location;
+
+  private final String issuerLocation;
+
+  private final KeyPair keyPair;
+
+  public Certificate(String location, String issuerLocation) {
+    this(location, issuerLocation, null);
+  }
+
+  public Certificate(String location, String issuerLocation, KeyPair keyPair) {
+    this.location = location;
+    this.issuerLocation = issuerLocation;
+    this.keyPair = keyPair;
+  }
+
+  public String getLocation() {
+    return location;
+  }
+
+  /**
+   * The issuer certificate from the {@code Link rel="up"} header, if any.
+   */
+  public String getIssuerLocation() {
+    return issuerLocation;
+  }
+
+  /**
+   * The certificate's key pair, when it was generated by the client.
+   */
+  public KeyPair getKeyPair() {
+    return keyPair;
+  }
+}
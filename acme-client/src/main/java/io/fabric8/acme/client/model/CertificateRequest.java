@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.model;
+
+import java.security.KeyPair;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A freshly generated certificate key pair and the signed request for a certificate covering
+ * the domains.
+ */
+public class CertificateRequest {
+
+  private final KeyPair keyPair;
+
+  private final List<String> domains;
+
+  private final byte[] csr;
+
+  public CertificateRequest(KeyPair keyPair, List<String> domains, byte[] csr) {
+    this.keyPair = keyPair;
+    this.domains = Collections.unmodifiableList(domains);
+    this.csr = csr;
+  }
+
+  public KeyPair getKeyPair() {
+    return keyPair;
+  }
+
+  public List<String> getDomains() {
+    return domains;
+  }
+
+  /**
+   * The DER encoded PKCS #10 request.
+   */
+  public byte[] getCsr() {
+    return csr.clone();
+  }
+
+  public NewCertificate toNewCertificate() {
+    return new NewCertificate(NewCertificate.encodeCsr(csr), null, null);
+  }
+}
@@ -0,0 +1,30 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Receives downloaded certificates one at a time as DER encoded streams: the issued certificate
+ * first at index 0, followed by each issuer up the chain. The stream is only valid for the
+ * duration of the call.
+ */
+public interface CertificateSink {
+
+  void accept(int index, InputStream der) throws IOException;
+
+}
@@ -18,6 +18,8 @@ package io.fabric8.acme.client.model;
 import io.sundr.builder.annotations.Buildable;
 import net.minidev.json.JSONObject;
 
+import java.util.Objects;
+
 @Buildable(
   generateBuilderPackage = true,
   builderPackage = "io.fabric8.acme.client.builder",
@@ -49,6 +51,23 @@ public class Identifier {
     return jsonObject;
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    Identifier that = (Identifier) o;
+    return Objects.equals(type, that.type) && Objects.equals(value, that.value);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(type, value);
+  }
+
   public static Identifier fromJSONObject(JSONObject jsonObject) {
     if (jsonObject == null) {
       return null;
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.model;
+
+import io.fabric8.acme.client.dsl.Sendable;
+import io.sundr.builder.annotations.Buildable;
+import io.sundr.builder.annotations.Inline;
+import net.minidev.json.JSONObject;
+
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.Base64;
+
+@Buildable(
+  generateBuilderPackage = true,
+  builderPackage = "io.fabric8.acme.client.builder",
+  editableEnabled = false,
+  inline = @Inline(prefix = "Sendable", value = "send", type = Sendable.class, returnType = Certificate.class)
+)
+public class NewCertificate extends BaseResource {
+
+  private String csr;
+
+  private TemporalAccessor notBefore;
+
+  private TemporalAccessor notAfter;
+
+  public NewCertificate(String csr, TemporalAccessor notBefore, TemporalAccessor notAfter) {
+    super(ResourceType.NEW_CERTIFICATE);
+    this.csr = csr;
+    this.notBefore = notBefore;
+    this.notAfter = notAfter;
+  }
+
+  /**
+   * The base64url encoded DER certificate signing request - see {@link #encodeCsr(byte[])}.
+   */
+  public String getCsr() {
+    return csr;
+  }
+
+  public TemporalAccessor getNotBefore() {
+    return notBefore;
+  }
+
+  public TemporalAccessor getNotAfter() {
+    return notAfter;
+  }
+
+  public static String encodeCsr(byte[] der) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(der);
+  }
+
+  @Override
+  public JSONObject toJSONObject() {
+    JSONObject json = new JSONObject();
+    json.put("resource", getType().type());
+    if (csr != null) {
+      json.put("csr", csr);
+    }
+    if (notBefore != null) {
+      json.put("notBefore", DateTimeFormatter.ISO_INSTANT.format(notBefore));
+    }
+    if (notAfter != null) {
+      json.put("notAfter", DateTimeFormatter.ISO_INSTANT.format(notAfter));
+    }
+    return json;
+  }
+}
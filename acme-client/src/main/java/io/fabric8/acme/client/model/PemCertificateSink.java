@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.model;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Writes each certificate to an output stream as PEM, encoding on the fly so a chain is never
+ * held in memory.
+ */
+public class PemCertificateSink implements CertificateSink {
+
+  private static final byte[] BEGIN = "-----BEGIN CERTIFICATE-----\n".getBytes(StandardCharsets.US_ASCII);
+
+  private static final byte[] END = "\n-----END CERTIFICATE-----\n".getBytes(StandardCharsets.US_ASCII);
+
+  private static final byte[] LINE_SEPARATOR = "\n".getBytes(StandardCharsets.US_ASCII);
+
+  private final OutputStream out;
+
+  public PemCertificateSink(OutputStream out) {
+    this.out = out;
+  }
+
+  @Override
+  public void accept(int index, InputStream der) throws IOException {
+    out.write(BEGIN);
+    // Closing the encoder writes any padding, but mustn't close the underlying stream.
+    try (OutputStream encoder = Base64.getMimeEncoder(64, LINE_SEPARATOR).wrap(new FilterOutputStream(out) {
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+      }
+
+      @Override
+      public void close() throws IOException {
+        flush();
+      }
+    })) {
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = der.read(buffer)) != -1) {
+        encoder.write(buffer, 0, read);
+      }
+    }
+    out.write(END);
+  }
+}
@@ -33,7 +33,7 @@ public enum Status {
     return status;
   }
 
-  static Status findByStatus(String status){
+  public static Status findByStatus(String status){
     for(Status v : values()){
       if( v.status.equals(status)){
         return v;
@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.renewal;
+
+import io.fabric8.acme.client.ACMEClientException;
+import io.fabric8.acme.client.AsyncACMEClient;
+import io.fabric8.acme.client.DefaultACMEClient;
+import io.fabric8.acme.client.model.Authorization;
+import io.fabric8.acme.client.model.Certificate;
+import io.fabric8.acme.client.model.Challenge;
+import io.fabric8.acme.client.model.Identifier;
+import io.fabric8.acme.client.model.NewAuthorization;
+import io.fabric8.acme.client.model.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Renews certificates through the full ACME flow: each domain is authorized by responding to a
+ * challenge of the chosen type, then a certificate is issued with a pooled key pair, downloaded
+ * and handed to the installer.
+ * <p>
+ * Authorizations run concurrently without tying up threads. Issuance and download block, so they
+ * run on the given executor. Challenge responses are cleaned up as soon as their authorization
+ * settles, whether or not the renewal goes on to succeed.
+ */
+public class ACMERenewer implements Renewer {
+
+  private static final Logger logger = LoggerFactory.getLogger(ACMERenewer.class);
+
+  private final DefaultACMEClient client;
+
+  private final AsyncACMEClient asyncClient;
+
+  private final String challengeType;
+
+  private final ChallengeResponder responder;
+
+  private final CertificateInstaller installer;
+
+  private final Executor executor;
+
+  public ACMERenewer(DefaultACMEClient client, String challengeType, ChallengeResponder responder, CertificateInstaller installer, Executor executor) {
+    this.client = client;
+    this.asyncClient = client.async();
+    this.challengeType = challengeType;
+    this.responder = responder;
+    this.installer = installer;
+    this.executor = executor;
+  }
+
+  @Override
+  public CompletableFuture<Instant> renew(TrackedCertificate tracked) {
+    List<String> domains = tracked.getDomains();
+    CompletableFuture<?>[] authorizations = new CompletableFuture<?>[domains.size()];
+    for (int i = 0; i < authorizations.length; i++) {
+      authorizations[i] = authorize(domains.get(i));
+    }
+
+    return CompletableFuture.allOf(authorizations).thenApplyAsync(ignored -> {
+      Certificate certificate = client.certificates().issue(domains.toArray(new String[domains.size()]));
+
+      List<X509Certificate> chain = new ArrayList<>();
+      try {
+        CertificateFactory factory = CertificateFactory.getInstance("X.509");
+        client.certificates().at(certificate.getLocation()).download((index, der) -> {
+          try {
+            chain.add((X509Certificate) factory.generateCertificate(der));
+          } catch (CertificateException e) {
+            throw new ACMEClientException("Cannot parse certificate " + index + " from " + certificate.getLocation(), e);
+          }
+        });
+      } catch (CertificateException e) {
+        throw ACMEClientException.launderThrowable(e);
+      }
+
+      if (chain.isEmpty()) {
+        throw new ACMEClientException("badObject", "No certificates were downloaded from " + certificate.getLocation());
+      }
+      installer.install(tracked, certificate, chain);
+      return chain.get(0).getNotAfter().toInstant();
+    }, executor);
+  }
+
+  private CompletableFuture<Authorization> authorize(String domain) {
+    return asyncClient.authorization().create(new NewAuthorization(new Identifier("dns", domain))).thenCompose(authorization -> {
+      if (authorization.getStatus() == Status.VALID) {
+        return CompletableFuture.completedFuture(authorization);
+      }
+
+      Challenge prepared = asyncClient.challenges().use(challenge(authorization, challengeType, domain)).prepare();
+      return responder.respond(domain, prepared)
+        .thenCompose(ignored -> asyncClient.challenges().use(prepared).ready())
+        .thenCompose(ignored -> asyncClient.authorizationPoller().poll(authorization.getLocation()))
+        .whenComplete((settled, throwable) -> cleanup(responder, domain, prepared));
+    }).thenApply(authorization -> requireValid(authorization, domain));
+  }
+
+  /**
+   * Asks the responder to remove a published response. Failing to is logged rather than failing
+   * the certificate it was for.
+   */
+  static void cleanup(ChallengeResponder responder, String domain, Challenge challenge) {
+    CompletableFuture<Void> cleanup;
+    try {
+      cleanup = responder.cleanup(domain, challenge);
+    } catch (RuntimeException e) {
+      logger.warn("Failed to clean up the {} challenge response for {}", challenge.getType(), domain, e);
+      return;
+    }
+    cleanup.whenComplete((ignored, throwable) -> {
+      if (throwable != null) {
+        logger.warn("Failed to clean up the {} challenge response for {}", challenge.getType(), domain, throwable);
+      }
+    });
+  }
+
+  static Challenge challenge(Authorization authorization, String challengeType, String domain) {
+    for (Challenge candidate : authorization.getChallenges()) {
+      if (challengeType.equals(candidate.getType())) {
+        return candidate;
+      }
+    }
+    throw new ACMEClientException("unauthorized", "No " + challengeType + " challenge offered for " + domain);
+  }
+
+  static Authorization requireValid(Authorization authorization, String domain) {
+    if (authorization.getStatus() != Status.VALID) {
+      throw new ACMEClientException("unauthorized", "Authorization for " + domain + " is " + authorization.getStatus().status());
+    }
+    return authorization;
+  }
+}
@@ -0,0 +1,31 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.renewal;
+
+import io.fabric8.acme.client.model.Certificate;
+
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+public interface CertificateInstaller {
+
+  /**
+   * Puts a renewed certificate into service. The chain starts with the certificate itself,
+   * followed by its issuers.
+   */
+  void install(TrackedCertificate tracked, Certificate certificate, List<X509Certificate> chain);
+
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.renewal;
+
+import io.fabric8.acme.client.model.Challenge;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface ChallengeResponder {
+
+  /**
+   * Publishes the response to a prepared challenge - a DNS record or HTTP resource built from its
+   * key authorization - completing once the server can see it.
+   */
+  CompletableFuture<Void> respond(String domain, Challenge challenge);
+
+  /**
+   * Removes what {@link #respond} published, once the authorization it was for has settled one
+   * way or the other - or failed before getting that far. Does nothing by default.
+   */
+  default CompletableFuture<Void> cleanup(String domain, Challenge challenge) {
+    return CompletableFuture.completedFuture(null);
+  }
+
+}
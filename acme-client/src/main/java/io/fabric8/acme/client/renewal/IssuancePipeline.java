@@ -0,0 +1,478 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.renewal;
+
+import io.fabric8.acme.client.ACMEClientException;
+import io.fabric8.acme.client.AsyncACMEClient;
+import io.fabric8.acme.client.DefaultACMEClient;
+import io.fabric8.acme.client.model.Authorization;
+import io.fabric8.acme.client.model.Certificate;
+import io.fabric8.acme.client.model.Challenge;
+import io.fabric8.acme.client.model.Identifier;
+import io.fabric8.acme.client.model.NewAuthorization;
+import io.fabric8.acme.client.model.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Issues certificates for a stream of domain sets, running the ACME flow as a pipeline: create
+ * the authorizations, publish the challenge responses, mark the challenges ready, poll until the
+ * authorizations are valid, and issue the certificate.
+ * <p>
+ * Every stage has its own bounded queue and its own workers, so a stage waiting on the network
+ * only ever holds up its own workers. A stage that falls behind fills its queue, which makes the
+ * stage feeding it wait, and eventually {@link #submit(Collection)} too - the pipeline never
+ * holds more domain sets than its queues and workers have room for. Domains whose
+ * authorizations are still valid skip the challenge stages. Published challenge responses are
+ * cleaned up once polling finishes, or as soon as the domain set fails or is dropped before then.
+ */
+public class IssuancePipeline implements AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(IssuancePipeline.class);
+
+  private static final long CLOSED_CHECK_MILLIS = 100;
+
+  private final DefaultACMEClient client;
+
+  private final AsyncACMEClient asyncClient;
+
+  private final String challengeType;
+
+  private final ChallengeResponder responder;
+
+  private final List<Stage> stages = new ArrayList<>();
+
+  private volatile boolean closed;
+
+  private volatile long startedAt;
+
+  public IssuancePipeline(DefaultACMEClient client, String challengeType, ChallengeResponder responder) {
+    this(client, challengeType, responder, new IssuancePipelineConfig());
+  }
+
+  public IssuancePipeline(DefaultACMEClient client, String challengeType, ChallengeResponder responder, IssuancePipelineConfig config) {
+    this.client = client;
+    this.asyncClient = client.async();
+    this.challengeType = challengeType;
+    this.responder = responder;
+
+    stages.add(new Stage("authorize", config.getAuthorizeWorkers(), config.getQueueCapacity(), this::authorize));
+    stages.add(new Stage("provision", config.getProvisionWorkers(), config.getQueueCapacity(), this::provision));
+    stages.add(new Stage("ready", config.getReadyWorkers(), config.getQueueCapacity(), this::ready));
+    stages.add(new Stage("poll", config.getPollWorkers(), config.getQueueCapacity(), this::poll));
+    stages.add(new Stage("issue", config.getIssueWorkers(), config.getQueueCapacity(), this::issue));
+    // A certificate being requested can't be taken back, so it's better to let it arrive.
+    stages.get(stages.size() - 1).interruptible = false;
+    for (int i = 0; i < stages.size() - 1; i++) {
+      stages.get(i).next = stages.get(i + 1);
+    }
+  }
+
+  public IssuancePipeline start() {
+    startedAt = System.nanoTime();
+    for (Stage stage : stages) {
+      stage.start();
+    }
+    return this;
+  }
+
+  /**
+   * Queues a domain set to be issued a certificate, waiting while the first stage's queue is
+   * full.
+   */
+  public CompletableFuture<Certificate> submit(Collection<String> domains) {
+    if (closed) {
+      throw closedException();
+    }
+    Job job = new Job(new ArrayList<>(domains));
+    Stage first = stages.get(0);
+    try {
+      first.queue.put(job);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ACMEClientException("Interrupted while submitting " + domains, e);
+    }
+    // Closing may have drained the queue just before the job went in.
+    if (closed && first.queue.remove(job)) {
+      job.fail(closedException());
+    }
+    return job.certificate;
+  }
+
+  /**
+   * Submits every domain set from the iterator on the calling thread, which waits whenever the
+   * pipeline is full, and reports each outcome to the listener. The returned future completes
+   * once all of them have been issued or have failed.
+   */
+  public CompletableFuture<Void> issueAll(Iterator<? extends Collection<String>> domainSets, IssuanceListener listener) {
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    // Counts the submitting itself too, so nothing completes the future before the last one is in.
+    AtomicInteger outstanding = new AtomicInteger(1);
+    Runnable finished = () -> {
+      if (outstanding.decrementAndGet() == 0) {
+        done.complete(null);
+      }
+    };
+
+    while (domainSets.hasNext()) {
+      List<String> domains = Collections.unmodifiableList(new ArrayList<>(domainSets.next()));
+      outstanding.incrementAndGet();
+      submit(domains).whenComplete((certificate, throwable) -> {
+        try {
+          if (throwable != null) {
+            listener.failed(domains, unwrap(throwable));
+          } else {
+            listener.issued(domains, certificate);
+          }
+        } finally {
+          finished.run();
+        }
+      });
+    }
+    finished.run();
+    return done;
+  }
+
+  /**
+   * A snapshot of each stage, in pipeline order.
+   */
+  public List<StageStats> getStats() {
+    double elapsedSeconds = startedAt == 0 ? 0 : (System.nanoTime() - startedAt) / 1e9;
+    List<StageStats> stats = new ArrayList<>(stages.size());
+    for (Stage stage : stages) {
+      long completed = stage.completed.get();
+      stats.add(new StageStats(
+        stage.name,
+        stage.workers,
+        stage.queue.size(),
+        stage.active.get(),
+        completed,
+        stage.failed.get(),
+        elapsedSeconds > 0 ? completed / elapsedSeconds : 0
+      ));
+    }
+    return stats;
+  }
+
+  /**
+   * Stops the workers. Domain sets still in the pipeline fail, apart from certificates already
+   * being requested, which are left to finish: the issue stage isn't interrupted, its workers
+   * just stop taking more work.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    for (Stage stage : stages) {
+      if (stage.interruptible) {
+        for (Thread thread : stage.threads) {
+          thread.interrupt();
+        }
+      }
+    }
+    for (Stage stage : stages) {
+      Job job;
+      while ((job = stage.queue.poll()) != null) {
+        job.fail(closedException());
+        cleanup(job);
+      }
+    }
+  }
+
+  private CompletableFuture<?> authorize(Job job) {
+    List<CompletableFuture<Authorization>> authorizations = new ArrayList<>(job.domains.size());
+    for (String domain : job.domains) {
+      authorizations.add(asyncClient.authorization().create(new NewAuthorization(new Identifier("dns", domain))));
+    }
+    return allOf(authorizations).thenRun(() -> {
+      job.authorizations = new ArrayList<>(authorizations.size());
+      for (CompletableFuture<Authorization> authorization : authorizations) {
+        job.authorizations.add(authorization.join());
+      }
+    });
+  }
+
+  private CompletableFuture<?> provision(Job job) {
+    job.challenges = new Challenge[job.domains.size()];
+    List<CompletableFuture<Void>> responses = new ArrayList<>();
+    for (int i = 0; i < job.challenges.length; i++) {
+      Authorization authorization = job.authorizations.get(i);
+      if (authorization.getStatus() == Status.VALID) {
+        continue;
+      }
+      String domain = job.domains.get(i);
+      Challenge prepared = asyncClient.challenges().use(ACMERenewer.challenge(authorization, challengeType, domain)).prepare();
+      job.challenges[i] = prepared;
+      responses.add(responder.respond(domain, prepared));
+    }
+    return allOf(responses);
+  }
+
+  private CompletableFuture<?> ready(Job job) {
+    List<CompletableFuture<Challenge>> readied = new ArrayList<>();
+    for (Challenge challenge : job.challenges) {
+      if (challenge != null) {
+        readied.add(asyncClient.challenges().use(challenge).ready());
+      }
+    }
+    return allOf(readied);
+  }
+
+  private CompletableFuture<?> poll(Job job) {
+    List<CompletableFuture<Authorization>> polled = new ArrayList<>();
+    for (int i = 0; i < job.challenges.length; i++) {
+      if (job.challenges[i] != null) {
+        String domain = job.domains.get(i);
+        polled.add(asyncClient.authorizationPoller().poll(job.authorizations.get(i).getLocation())
+          .thenApply(authorization -> ACMERenewer.requireValid(authorization, domain)));
+      }
+    }
+    return allOf(polled).whenComplete((ignored, throwable) -> cleanup(job));
+  }
+
+  private void cleanup(Job job) {
+    Challenge[] challenges = job.challenges;
+    if (challenges == null || !job.cleanedUp.compareAndSet(false, true)) {
+      return;
+    }
+    for (int i = 0; i < challenges.length; i++) {
+      if (challenges[i] != null) {
+        ACMERenewer.cleanup(responder, job.domains.get(i), challenges[i]);
+      }
+    }
+  }
+
+  private CompletableFuture<?> issue(Job job) {
+    Certificate certificate = client.certificates().issue(job.domains.toArray(new String[job.domains.size()]));
+    return CompletableFuture.completedFuture(certificate);
+  }
+
+  private static CompletableFuture<Void> allOf(List<? extends CompletableFuture<?>> futures) {
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]));
+  }
+
+  private static Throwable unwrap(Throwable throwable) {
+    while ((throwable instanceof CompletionException || throwable instanceof ExecutionException) && throwable.getCause() != null) {
+      throwable = throwable.getCause();
+    }
+    return throwable;
+  }
+
+  private static ACMEClientException closedException() {
+    return new ACMEClientException("pipelineError", "Issuance pipeline is closed");
+  }
+
+  private final class Stage {
+
+    private final String name;
+
+    private final int workers;
+
+    private final BlockingQueue<Job> queue;
+
+    private final Function<Job, CompletableFuture<?>> work;
+
+    private final List<Thread> threads = new ArrayList<>();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicLong completed = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private Stage next;
+
+    private boolean interruptible = true;
+
+    private Stage(String name, int workers, int queueCapacity, Function<Job, CompletableFuture<?>> work) {
+      this.name = name;
+      this.workers = workers;
+      this.queue = new ArrayBlockingQueue<>(queueCapacity);
+      this.work = work;
+    }
+
+    private void start() {
+      for (int i = 0; i < workers; i++) {
+        Thread thread = new Thread(this::run, "acme-issuance-" + name + "-" + i);
+        thread.setDaemon(true);
+        threads.add(thread);
+        thread.start();
+      }
+    }
+
+    private void run() {
+      while (true) {
+        Job job;
+        try {
+          // Workers that are never interrupted look in on closed every so often instead.
+          job = interruptible ? queue.take() : queue.poll(CLOSED_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          return;
+        }
+        if (job == null) {
+          if (closed) {
+            return;
+          }
+          continue;
+        }
+        if (closed && !interruptible) {
+          job.fail(closedException());
+          cleanup(job);
+          continue;
+        }
+
+        Object result;
+        active.incrementAndGet();
+        try {
+          result = work.apply(job).get();
+          completed.incrementAndGet();
+        } catch (InterruptedException e) {
+          job.fail(closedException());
+          cleanup(job);
+          return;
+        } catch (Exception e) {
+          failed.incrementAndGet();
+          logger.debug("Issuing a certificate for {} failed in the {} stage", job.domains, name, e);
+          job.fail(unwrap(e));
+          cleanup(job);
+          continue;
+        } finally {
+          active.decrementAndGet();
+        }
+
+        if (next == null) {
+          // Only once counted, so the stats already include a job its submitter sees complete.
+          job.certificate.complete((Certificate) result);
+        } else {
+          try {
+            // Waits while the next stage is behind.
+            next.queue.put(job);
+          } catch (InterruptedException e) {
+            job.fail(closedException());
+            cleanup(job);
+            return;
+          }
+        }
+      }
+    }
+  }
+
+  private static final class Job {
+
+    private final List<String> domains;
+
+    private final CompletableFuture<Certificate> certificate = new CompletableFuture<>();
+
+    private final AtomicBoolean cleanedUp = new AtomicBoolean();
+
+    private List<Authorization> authorizations;
+
+    // The prepared challenge for each domain, or null where the authorization is already valid.
+    private volatile Challenge[] challenges;
+
+    private Job(List<String> domains) {
+      this.domains = domains;
+    }
+
+    private void fail(Throwable cause) {
+      certificate.completeExceptionally(cause instanceof RuntimeException || cause instanceof Error ? cause : new ACMEClientException("An error has occurred.", cause));
+    }
+  }
+
+  public static final class StageStats {
+
+    private final String name;
+
+    private final int workers;
+
+    private final int queued;
+
+    private final int active;
+
+    private final long completed;
+
+    private final long failed;
+
+    private final double throughput;
+
+    private StageStats(String name, int workers, int queued, int active, long completed, long failed, double throughput) {
+      this.name = name;
+      this.workers = workers;
+      this.queued = queued;
+      this.active = active;
+      this.completed = completed;
+      this.failed = failed;
+      this.throughput = throughput;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getWorkers() {
+      return workers;
+    }
+
+    /**
+     * Domain sets waiting for a worker.
+     */
+    public int getQueued() {
+      return queued;
+    }
+
+    /**
+     * Workers busy with a domain set - the rest are idle, or waiting for room in the next stage.
+     */
+    public int getActive() {
+      return active;
+    }
+
+    public long getCompleted() {
+      return completed;
+    }
+
+    public long getFailed() {
+      return failed;
+    }
+
+    /**
+     * Domain sets completed per second since the pipeline started.
+     */
+    public double getThroughput() {
+      return throughput;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s: %d/%d active, %d queued, %d completed (%.2f/s), %d failed", name, active, workers, queued, completed, throughput, failed);
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.renewal;
+
+import io.fabric8.acme.client.ACMEClientException;
+import io.sundr.builder.annotations.Buildable;
+
+/**
+ * How many workers each stage of an {@link IssuancePipeline} has, and how many domain sets may
+ * wait in front of each stage. Zero means the default.
+ */
+@Buildable(
+  generateBuilderPackage = true,
+  builderPackage = "io.fabric8.acme.client.builder"
+)
+public class IssuancePipelineConfig {
+
+  public static final int DEFAULT_WORKERS = 4;
+
+  // Polling mostly waits on the server validating, so it gets more workers by default.
+  public static final int DEFAULT_POLL_WORKERS = 16;
+
+  public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+  private int authorizeWorkers;
+
+  private int provisionWorkers;
+
+  private int readyWorkers;
+
+  private int pollWorkers;
+
+  private int issueWorkers;
+
+  private int queueCapacity;
+
+  public IssuancePipelineConfig(int authorizeWorkers, int provisionWorkers, int readyWorkers, int pollWorkers, int issueWorkers, int queueCapacity) {
+    if (authorizeWorkers < 0 || provisionWorkers < 0 || readyWorkers < 0 || pollWorkers < 0 || issueWorkers < 0 || queueCapacity < 0) {
+      throw new ACMEClientException("configError", "Issuance pipeline settings cannot be negative");
+    }
+    this.authorizeWorkers = authorizeWorkers > 0 ? authorizeWorkers : DEFAULT_WORKERS;
+    this.provisionWorkers = provisionWorkers > 0 ? provisionWorkers : DEFAULT_WORKERS;
+    this.readyWorkers = readyWorkers > 0 ? readyWorkers : DEFAULT_WORKERS;
+    this.pollWorkers = pollWorkers > 0 ? pollWorkers : DEFAULT_POLL_WORKERS;
+    this.issueWorkers = issueWorkers > 0 ? issueWorkers : DEFAULT_WORKERS;
+    this.queueCapacity = queueCapacity > 0 ? queueCapacity : DEFAULT_QUEUE_CAPACITY;
+  }
+
+  public IssuancePipelineConfig() {
+    this(0, 0, 0, 0, 0, 0);
+  }
+
+  /**
+   * Workers creating the authorizations for a domain set.
+   */
+  public int getAuthorizeWorkers() {
+    return authorizeWorkers;
+  }
+
+  /**
+   * Workers publishing challenge responses through the {@link ChallengeResponder}.
+   */
+  public int getProvisionWorkers() {
+    return provisionWorkers;
+  }
+
+  /**
+   * Workers telling the server the challenges are ready to be validated.
+   */
+  public int getReadyWorkers() {
+    return readyWorkers;
+  }
+
+  /**
+   * Workers waiting for the server to validate the authorizations.
+   */
+  public int getPollWorkers() {
+    return pollWorkers;
+  }
+
+  /**
+   * Workers requesting the certificates.
+   */
+  public int getIssueWorkers() {
+    return issueWorkers;
+  }
+
+  /**
+   * Domain sets that may queue in front of each stage before the one feeding it has to wait.
+   */
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+}
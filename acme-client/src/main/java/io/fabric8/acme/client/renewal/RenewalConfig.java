@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.renewal;
+
+import io.fabric8.acme.client.ACMEClientException;
+import io.sundr.builder.annotations.Buildable;
+
+/**
+ * When and how eagerly {@link RenewalScheduler} renews certificates. Durations are in seconds and
+ * zero means the default.
+ */
+@Buildable(
+  generateBuilderPackage = true,
+  builderPackage = "io.fabric8.acme.client.builder"
+)
+public class RenewalConfig {
+
+  public static final long DEFAULT_RENEW_BEFORE = 30L * 24 * 60 * 60;
+
+  public static final long DEFAULT_JITTER = 24L * 60 * 60;
+
+  public static final int DEFAULT_MAX_CONCURRENT_RENEWALS = 10;
+
+  public static final long DEFAULT_RETRY_DELAY = 60;
+
+  public static final long DEFAULT_MAX_RETRY_DELAY = 24L * 60 * 60;
+
+  private long renewBefore;
+
+  private Long jitter;
+
+  private int maxConcurrentRenewals;
+
+  private long retryDelay;
+
+  private long maxRetryDelay;
+
+  public RenewalConfig(long renewBefore, Long jitter, int maxConcurrentRenewals, long retryDelay, long maxRetryDelay) {
+    if (renewBefore < 0 || (jitter != null && jitter < 0) || maxConcurrentRenewals < 0 || retryDelay < 0 || maxRetryDelay < 0) {
+      throw new ACMEClientException("configError", "Renewal settings cannot be negative");
+    }
+    this.renewBefore = renewBefore > 0 ? renewBefore : DEFAULT_RENEW_BEFORE;
+    // Zero is a meaningful jitter, so only a missing one gets the default.
+    this.jitter = jitter != null ? jitter : DEFAULT_JITTER;
+    this.maxConcurrentRenewals = maxConcurrentRenewals > 0 ? maxConcurrentRenewals : DEFAULT_MAX_CONCURRENT_RENEWALS;
+    this.retryDelay = retryDelay > 0 ? retryDelay : DEFAULT_RETRY_DELAY;
+    this.maxRetryDelay = Math.max(this.retryDelay, maxRetryDelay > 0 ? maxRetryDelay : DEFAULT_MAX_RETRY_DELAY);
+  }
+
+  public RenewalConfig() {
+    this(0, null, 0, 0, 0);
+  }
+
+  /**
+   * How long before a certificate expires to renew it.
+   */
+  public long getRenewBefore() {
+    return renewBefore;
+  }
+
+  /**
+   * Each renewal is brought forward by a random amount up to this, so certificates issued
+   * together don't all come up for renewal together.
+   */
+  public Long getJitter() {
+    return jitter;
+  }
+
+  public int getMaxConcurrentRenewals() {
+    return maxConcurrentRenewals;
+  }
+
+  /**
+   * Delay before retrying a failed renewal, doubled after each further failure up to
+   * {@link #getMaxRetryDelay()}.
+   */
+  public long getRetryDelay() {
+    return retryDelay;
+  }
+
+  public long getMaxRetryDelay() {
+    return maxRetryDelay;
+  }
+}
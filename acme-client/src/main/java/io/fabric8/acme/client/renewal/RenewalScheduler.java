@@ -0,0 +1,340 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.renewal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks certificate expiry and renews each certificate a configurable time before it expires.
+ * <p>
+ * Certificates wait in a binary min-heap keyed on when they are due for renewal, which is their
+ * expiry brought forward by the renewal window and a random jitter. Every certificate knows its
+ * position in the heap, so tracking, re-tracking and untracking are all O(log n). Due
+ * certificates move to a ready queue ordered by expiry, so when more are due than can be renewed
+ * at once those closest to expiring go first. At most
+ * {@link RenewalConfig#getMaxConcurrentRenewals()} renewals are in flight at a time, driven by a
+ * single daemon thread which sleeps until the next renewal is due.
+ */
+public class RenewalScheduler implements AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(RenewalScheduler.class);
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final Renewer renewer;
+
+  private final RenewalConfig config;
+
+  private final Object lock = new Object();
+
+  private final Map<String, TrackedCertificate> tracked = new HashMap<>();
+
+  private TrackedCertificate[] heap = new TrackedCertificate[INITIAL_CAPACITY];
+
+  private int heapSize;
+
+  private long heapMoves;
+
+  private final PriorityQueue<TrackedCertificate> ready = new PriorityQueue<>(Comparator.comparingLong(c -> c.notAfter));
+
+  private int inFlight;
+
+  private boolean closed;
+
+  private final Thread dispatcher;
+
+  private final AtomicLong renewed = new AtomicLong();
+
+  private final AtomicLong failed = new AtomicLong();
+
+  public RenewalScheduler(Renewer renewer) {
+    this(renewer, new RenewalConfig());
+  }
+
+  public RenewalScheduler(Renewer renewer, RenewalConfig config) {
+    this.renewer = renewer;
+    this.config = config;
+    this.dispatcher = new Thread(this::dispatch, "acme-renewal-scheduler");
+    this.dispatcher.setDaemon(true);
+  }
+
+  public RenewalScheduler start() {
+    dispatcher.start();
+    return this;
+  }
+
+  /**
+   * Starts tracking a certificate, replacing any already tracked under the same name. A renewal
+   * of the replaced certificate that is already in flight is left to finish, but its result is
+   * ignored.
+   */
+  public void track(String name, Collection<String> domains, Instant notAfter) {
+    TrackedCertificate certificate = new TrackedCertificate(name, domains.toArray(new String[domains.size()]), notAfter.toEpochMilli());
+    synchronized (lock) {
+      TrackedCertificate previous = tracked.put(name, certificate);
+      if (previous != null) {
+        detach(previous);
+      }
+      schedule(certificate, renewAt(certificate.notAfter));
+    }
+  }
+
+  public boolean untrack(String name) {
+    synchronized (lock) {
+      TrackedCertificate previous = tracked.remove(name);
+      if (previous == null) {
+        return false;
+      }
+      detach(previous);
+      return true;
+    }
+  }
+
+  public TrackedCertificate get(String name) {
+    synchronized (lock) {
+      return tracked.get(name);
+    }
+  }
+
+  public int size() {
+    synchronized (lock) {
+      return tracked.size();
+    }
+  }
+
+  /**
+   * When the next renewal is due, or null if nothing is waiting.
+   */
+  public Instant getNextRenewal() {
+    synchronized (lock) {
+      if (!ready.isEmpty()) {
+        return Instant.now();
+      }
+      return heapSize > 0 ? Instant.ofEpochMilli(heap[0].renewAt) : null;
+    }
+  }
+
+  public int getInFlight() {
+    synchronized (lock) {
+      return inFlight;
+    }
+  }
+
+  public long getRenewedCount() {
+    return renewed.get();
+  }
+
+  public long getFailedCount() {
+    return failed.get();
+  }
+
+  /**
+   * Number of times a certificate has been moved up or down the heap - at most its depth,
+   * log2 of the number tracked, for each track, re-track or untrack.
+   */
+  public long getHeapMoves() {
+    synchronized (lock) {
+      return heapMoves;
+    }
+  }
+
+  @Override
+  public void close() {
+    synchronized (lock) {
+      closed = true;
+      lock.notifyAll();
+    }
+  }
+
+  private void dispatch() {
+    List<TrackedCertificate> batch = new ArrayList<>();
+    while (true) {
+      synchronized (lock) {
+        while (true) {
+          if (closed) {
+            return;
+          }
+          long now = System.currentTimeMillis();
+          while (heapSize > 0 && heap[0].renewAt <= now) {
+            ready.add(removeAt(0));
+          }
+          while (inFlight < config.getMaxConcurrentRenewals() && !ready.isEmpty()) {
+            batch.add(ready.poll());
+            inFlight++;
+          }
+          if (!batch.isEmpty()) {
+            break;
+          }
+          try {
+            // Woken early by anything that changes what is due first or frees up a slot.
+            lock.wait(heapSize > 0 && inFlight < config.getMaxConcurrentRenewals() ? heap[0].renewAt - now : 0);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+        }
+      }
+
+      // Renewers may do some of their work before returning, so call them outside the lock.
+      for (TrackedCertificate certificate : batch) {
+        renew(certificate);
+      }
+      batch.clear();
+    }
+  }
+
+  private void renew(TrackedCertificate certificate) {
+    CompletableFuture<Instant> renewal;
+    try {
+      logger.debug("Renewing {}, expiring at {}", certificate, certificate.getNotAfter());
+      renewal = renewer.renew(certificate);
+    } catch (RuntimeException e) {
+      renewal = new CompletableFuture<>();
+      renewal.completeExceptionally(e);
+    }
+    renewal.whenComplete((notAfter, error) -> renewed(certificate, notAfter, error));
+  }
+
+  private void renewed(TrackedCertificate certificate, Instant notAfter, Throwable error) {
+    synchronized (lock) {
+      inFlight--;
+      lock.notifyAll();
+
+      if (error != null || notAfter == null) {
+        failed.incrementAndGet();
+        certificate.failures++;
+        long delay = Math.min(
+          TimeUnit.SECONDS.toMillis(config.getRetryDelay()) << Math.min(certificate.failures - 1, 20),
+          TimeUnit.SECONDS.toMillis(config.getMaxRetryDelay())
+        );
+        logger.warn("Failed to renew {}, retrying in {}ms", certificate, delay, error);
+        if (tracked.get(certificate.getName()) == certificate && !closed) {
+          schedule(certificate, System.currentTimeMillis() + delay);
+        }
+        return;
+      }
+
+      renewed.incrementAndGet();
+      certificate.failures = 0;
+      certificate.notAfter = notAfter.toEpochMilli();
+      if (tracked.get(certificate.getName()) == certificate && !closed) {
+        // A certificate shorter-lived than the renewal window would otherwise be renewed again
+        // straight away, over and over.
+        long earliest = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(config.getRetryDelay());
+        schedule(certificate, Math.max(renewAt(certificate.notAfter), earliest));
+      }
+    }
+  }
+
+  private long renewAt(long notAfter) {
+    long jitter = TimeUnit.SECONDS.toMillis(config.getJitter());
+    return notAfter - TimeUnit.SECONDS.toMillis(config.getRenewBefore()) - (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0);
+  }
+
+  private void detach(TrackedCertificate certificate) {
+    if (certificate.heapIndex >= 0) {
+      removeAt(certificate.heapIndex);
+    } else {
+      // Only a certificate that is due but not yet being renewed can be here - rare and short.
+      ready.remove(certificate);
+    }
+  }
+
+  private void schedule(TrackedCertificate certificate, long renewAt) {
+    certificate.renewAt = renewAt;
+    if (heapSize == heap.length) {
+      heap = Arrays.copyOf(heap, heapSize + (heapSize >> 1));
+    }
+    heap[heapSize] = certificate;
+    certificate.heapIndex = heapSize;
+    heapSize++;
+    siftUp(certificate.heapIndex);
+    if (certificate.heapIndex == 0) {
+      lock.notifyAll();
+    }
+  }
+
+  private TrackedCertificate removeAt(int index) {
+    TrackedCertificate removed = heap[index];
+    heapSize--;
+    if (index != heapSize) {
+      heap[index] = heap[heapSize];
+      heap[index].heapIndex = index;
+      heap[heapSize] = null;
+      TrackedCertificate moved = heap[index];
+      siftDown(index);
+      if (heap[index] == moved) {
+        siftUp(index);
+      }
+    } else {
+      heap[heapSize] = null;
+    }
+    removed.heapIndex = -1;
+    return removed;
+  }
+
+  private void siftUp(int index) {
+    TrackedCertificate certificate = heap[index];
+    while (index > 0) {
+      int parent = (index - 1) >>> 1;
+      if (heap[parent].renewAt <= certificate.renewAt) {
+        break;
+      }
+      heap[index] = heap[parent];
+      heap[index].heapIndex = index;
+      index = parent;
+      heapMoves++;
+    }
+    heap[index] = certificate;
+    certificate.heapIndex = index;
+  }
+
+  private void siftDown(int index) {
+    TrackedCertificate certificate = heap[index];
+    int half = heapSize >>> 1;
+    while (index < half) {
+      int child = 2 * index + 1;
+      int right = child + 1;
+      if (right < heapSize && heap[right].renewAt < heap[child].renewAt) {
+        child = right;
+      }
+      if (certificate.renewAt <= heap[child].renewAt) {
+        break;
+      }
+      heap[index] = heap[child];
+      heap[index].heapIndex = index;
+      index = child;
+      heapMoves++;
+    }
+    heap[index] = certificate;
+    certificate.heapIndex = index;
+  }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.renewal;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A certificate tracked by {@link RenewalScheduler}. Kept deliberately small, since a scheduler
+ * may track hundreds of thousands of them.
+ */
+public final class TrackedCertificate {
+
+  private final String name;
+
+  private final String[] domains;
+
+  // Epoch millis. The scheduling state below is guarded by the scheduler's lock.
+  volatile long notAfter;
+
+  long renewAt;
+
+  // Position in the scheduler's heap, or -1 once due.
+  int heapIndex = -1;
+
+  int failures;
+
+  TrackedCertificate(String name, String[] domains, long notAfter) {
+    this.name = name;
+    this.domains = domains;
+    this.notAfter = notAfter;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public List<String> getDomains() {
+    return Collections.unmodifiableList(Arrays.asList(domains));
+  }
+
+  public Instant getNotAfter() {
+    return Instant.ofEpochMilli(notAfter);
+  }
+
+  @Override
+  public String toString() {
+    return name + Arrays.toString(domains);
+  }
+}
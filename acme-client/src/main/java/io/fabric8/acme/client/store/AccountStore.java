@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.store;
+
+import io.fabric8.acme.client.model.Registration;
+
+/**
+ * Remembers where an account's registration lives between runs, so the client doesn't have to
+ * ask the server every time it starts. Registrations are keyed by the base64url JWK thumbprint
+ * of the account key they belong to.
+ */
+public interface AccountStore {
+
+  /**
+   * Returns the stored registration for the account key, or null if there isn't one.
+   */
+  Registration load(String thumbprint);
+
+  void save(String thumbprint, Registration registration);
+
+  void remove(String thumbprint);
+
+}
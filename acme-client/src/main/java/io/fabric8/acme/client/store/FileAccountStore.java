@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.store;
+
+import io.fabric8.acme.client.ACMEClientException;
+import io.fabric8.acme.client.internal.FileUtils;
+import io.fabric8.acme.client.internal.JSONParserUtils;
+import io.fabric8.acme.client.model.Registration;
+import io.fabric8.acme.client.model.RegistrationBuilder;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import net.minidev.json.parser.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Keeps each registration as a small JSON file named after the account key thumbprint. Files are
+ * replaced atomically, so a crash mid-write leaves the previous state rather than a torn file. A
+ * file that can't be read back anyway is ignored, so the registration is looked up from the
+ * server and the file rewritten.
+ */
+public class FileAccountStore implements AccountStore {
+
+  private static final Logger logger = LoggerFactory.getLogger(FileAccountStore.class);
+
+  private static final String SUFFIX = ".json";
+
+  private final Path directory;
+
+  public FileAccountStore(Path directory) {
+    this.directory = directory;
+  }
+
+  @Override
+  public Registration load(String thumbprint) {
+    Path file = file(thumbprint);
+    try (InputStream in = Files.newInputStream(file)) {
+      return fromJSONObject(JSONParserUtils.parse(in));
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      throw ACMEClientException.launderThrowable(e);
+    } catch (ParseException | RuntimeException e) {
+      logger.warn("Ignoring unreadable registration {}", file, e);
+      return null;
+    }
+  }
+
+  @Override
+  public void save(String thumbprint, Registration registration) {
+    try {
+      FileUtils.writeAtomically(file(thumbprint), toJSONObject(registration).toJSONString().getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw ACMEClientException.launderThrowable(e);
+    }
+  }
+
+  @Override
+  public void remove(String thumbprint) {
+    try {
+      Files.deleteIfExists(file(thumbprint));
+    } catch (IOException e) {
+      throw ACMEClientException.launderThrowable(e);
+    }
+  }
+
+  private Path file(String thumbprint) {
+    // Thumbprints are base64url, so always safe to use as file names.
+    return directory.resolve(thumbprint + SUFFIX);
+  }
+
+  private static JSONObject toJSONObject(Registration registration) {
+    JSONObject json = new JSONObject();
+    json.put("location", registration.getLocation());
+    json.put("agreement", registration.getAgreementLocation());
+    json.put("authorizations", registration.getAuthorizationsLocation());
+    json.put("certificates", registration.getCertificatesLocation());
+    json.put("recover", registration.getRecoverLocation());
+    if (registration.getContact() != null && !registration.getContact().isEmpty()) {
+      JSONArray contacts = new JSONArray();
+      for (Map.Entry<String, String> contact : registration.getContact().entrySet()) {
+        contacts.add(contact.getKey() + ":" + contact.getValue());
+      }
+      json.put("contact", contacts);
+    }
+    return json;
+  }
+
+  private static Registration fromJSONObject(JSONObject json) {
+    RegistrationBuilder builder = new RegistrationBuilder()
+      .withLocation((String) json.get("location"))
+      .withAgreementLocation((String) json.get("agreement"))
+      .withAuthorizationsLocation((String) json.get("authorizations"))
+      .withCertificatesLocation((String) json.get("certificates"))
+      .withRecoverLocation((String) json.get("recover"));
+
+    JSONArray contacts = (JSONArray) json.get("contact");
+    if (contacts != null) {
+      for (Object contact : contacts) {
+        String[] split = ((String) contact).split(":", 2);
+        builder.addToContact(split[0], split[1]);
+      }
+    }
+    return builder.build();
+  }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.transport;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The few kinds of request an ACME client sends: GETs (optionally conditional), HEADs for
+ * nonces and POSTs of a JWS.
+ */
+public final class HttpRequest {
+
+  private final String method;
+
+  private final String url;
+
+  private final Map<String, String> headers;
+
+  private final String contentType;
+
+  private final byte[] body;
+
+  private HttpRequest(String method, String url, Map<String, String> headers, String contentType, byte[] body) {
+    this.method = method;
+    this.url = url;
+    this.headers = headers;
+    this.contentType = contentType;
+    this.body = body;
+  }
+
+  public static HttpRequest get(String url) {
+    return new HttpRequest("GET", url, Collections.emptyMap(), null, null);
+  }
+
+  public static HttpRequest head(String url) {
+    return new HttpRequest("HEAD", url, Collections.emptyMap(), null, null);
+  }
+
+  public static HttpRequest post(String url, String contentType, byte[] body) {
+    return new HttpRequest("POST", url, Collections.emptyMap(), contentType, body);
+  }
+
+  /**
+   * A copy of this request with the header added.
+   */
+  public HttpRequest withHeader(String name, String value) {
+    Map<String, String> headers = new LinkedHashMap<>(this.headers);
+    headers.put(name, value);
+    return new HttpRequest(method, url, Collections.unmodifiableMap(headers), contentType, body);
+  }
+
+  public String getMethod() {
+    return method;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public Map<String, String> getHeaders() {
+    return headers;
+  }
+
+  /**
+   * The media type of the body, or null if there is none.
+   */
+  public String getContentType() {
+    return contentType;
+  }
+
+  public byte[] getBody() {
+    return body;
+  }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * A response whose body is streamed - it has to be closed once read, or when it isn't needed.
+ */
+public interface HttpResponse extends Closeable {
+
+  int code();
+
+  default boolean isSuccessful() {
+    return code() >= 200 && code() < 300;
+  }
+
+  /**
+   * The reason phrase, which may be empty (HTTP/2 has none).
+   */
+  String message();
+
+  /**
+   * The first value of the header, or null if there is none.
+   */
+  String header(String name);
+
+  List<String> headers(String name);
+
+  /**
+   * The URL that was requested.
+   */
+  String url();
+
+  InputStream byteStream();
+
+  /**
+   * Reads the whole body as UTF-8.
+   */
+  String string() throws IOException;
+
+  /**
+   * Closes the body without throwing.
+   */
+  @Override
+  void close();
+
+}
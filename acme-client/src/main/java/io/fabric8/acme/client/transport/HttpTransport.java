@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.transport;
+
+import io.fabric8.acme.client.Config;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The HTTP client the ACME client talks to the server through.
+ * <p>
+ * Implementations must not follow redirects, and must hand back error responses like any other
+ * rather than failing on them.
+ */
+public interface HttpTransport extends AutoCloseable {
+
+  HttpResponse execute(HttpRequest request) throws IOException;
+
+  /**
+   * Like {@link #execute(HttpRequest)}, without blocking the calling thread. Failures complete the
+   * future exceptionally.
+   */
+  CompletableFuture<HttpResponse> executeAsync(HttpRequest request);
+
+  /**
+   * A transport for another server that shares this one's connections and threads, with the
+   * server specific settings (such as certificate pins) from its config. Closing it leaves this
+   * transport running.
+   */
+  default HttpTransport forServer(Config config) {
+    return this;
+  }
+
+  /**
+   * Releases connections and threads.
+   */
+  @Override
+  void close();
+
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.transport;
+
+import io.fabric8.acme.client.Config;
+import io.fabric8.acme.client.internal.HttpClientUtils;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The default transport, on OkHttp.
+ */
+public class OkHttpTransport implements HttpTransport {
+
+  private final OkHttpClient okHttpClient;
+
+  // Transports derived for another server share the connection pool and dispatcher, which are
+  // only shut down with the transport they came from.
+  private final boolean owner;
+
+  public OkHttpTransport(Config config) {
+    this(HttpClientUtils.newClient(config), true);
+  }
+
+  public OkHttpTransport(OkHttpClient okHttpClient) {
+    this(okHttpClient, true);
+  }
+
+  private OkHttpTransport(OkHttpClient okHttpClient, boolean owner) {
+    this.okHttpClient = okHttpClient;
+    this.owner = owner;
+  }
+
+  public OkHttpClient getOkHttpClient() {
+    return okHttpClient;
+  }
+
+  @Override
+  public HttpResponse execute(HttpRequest request) throws IOException {
+    return new OkHttpResponse(okHttpClient.newCall(toRequest(request)).execute());
+  }
+
+  @Override
+  public CompletableFuture<HttpResponse> executeAsync(HttpRequest request) {
+    CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+    okHttpClient.newCall(toRequest(request)).enqueue(new Callback() {
+      @Override
+      public void onFailure(Call call, IOException e) {
+        future.completeExceptionally(e);
+      }
+
+      @Override
+      public void onResponse(Call call, Response response) {
+        future.complete(new OkHttpResponse(response));
+      }
+    });
+    return future;
+  }
+
+  @Override
+  public HttpTransport forServer(Config config) {
+    return new OkHttpTransport(HttpClientUtils.newClient(config, okHttpClient), false);
+  }
+
+  @Override
+  public void close() {
+    if (owner) {
+      HttpClientUtils.close(okHttpClient);
+    }
+  }
+
+  private static Request toRequest(HttpRequest request) {
+    Request.Builder builder = new Request.Builder().url(request.getUrl());
+    for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+      builder.header(header.getKey(), header.getValue());
+    }
+    switch (request.getMethod()) {
+      case "HEAD":
+        builder.head();
+        break;
+      case "POST":
+        builder.post(RequestBody.create(MediaType.parse(request.getContentType()), request.getBody()));
+        break;
+      default:
+        builder.get();
+    }
+    return builder.build();
+  }
+
+  private static final class OkHttpResponse implements HttpResponse {
+
+    private final Response response;
+
+    private OkHttpResponse(Response response) {
+      this.response = response;
+    }
+
+    @Override
+    public int code() {
+      return response.code();
+    }
+
+    @Override
+    public String message() {
+      return response.message();
+    }
+
+    @Override
+    public String header(String name) {
+      return response.header(name);
+    }
+
+    @Override
+    public List<String> headers(String name) {
+      return response.headers(name);
+    }
+
+    @Override
+    public String url() {
+      return response.request().url().toString();
+    }
+
+    @Override
+    public InputStream byteStream() {
+      return response.body().byteStream();
+    }
+
+    @Override
+    public String string() throws IOException {
+      return response.body().string();
+    }
+
+    @Override
+    public void close() {
+      response.body().close();
+    }
+  }
+}
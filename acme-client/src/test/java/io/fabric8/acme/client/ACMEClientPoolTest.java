@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import com.nimbusds.jose.JWSObject;
+import io.fabric8.acme.client.model.Registration;
+import io.fabric8.acme.client.transport.OkHttpTransport;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.Test;
+
+import java.net.HttpURLConnection;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+import static io.fabric8.acme.client.Helpers.noncedResponse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ACMEClientPoolTest extends BaseTest {
+
+  private static final String REGISTRATION = "{\n" +
+    "  \"id\": 1,\n" +
+    "  \"key\": {\n" +
+    "    \"kty\": \"RSA\",\n" +
+    "    \"kid\": \"3gb1Haaaaaah0TBsQaaaaa\",\n" +
+    "    \"n\": \"asafada-kLP-2mT3vBaWJG_JLJKdV5xtdsEOkmAZzY91fRM4HoLmvLrpjB4siACOZulkyKgs8DM0v9BP4T9hIqUBzvKLGRCCXFypwLDVyLYmkTsFwi-wvxfS13rZXdrLjwdAztLUIsJGqCZY6Lw6XZ1E9GriWnQQCqYRLi3ECEi33-BcuYJ7FBz36eeRZeGcHOLE5susgO00YxTAha4dgjl_SnbvYMOTXv4PEk7ai_ecQk-XlVGcCJrw\",\n" +
+    "    \"e\": \"AQAB\"\n" +
+    "  }\n" +
+    "}";
+
+  @Test
+  public void testAccountsShareTransport() throws Exception {
+    server.enqueue(noncedResponse(REGISTRATION)
+      .addHeader("Location", server.url("/acme/reg/1"))
+      .setResponseCode(HttpURLConnection.HTTP_CREATED)
+    );
+    server.enqueue(noncedResponse(REGISTRATION)
+      .addHeader("Location", server.url("/acme/reg/2"))
+      .setResponseCode(HttpURLConnection.HTTP_CREATED)
+    );
+
+    HttpUrl baseUrl = server.url("/directory");
+    KeyPair firstKey = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+    KeyPair secondKey = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+
+    try (ACMEClientPool pool = new ACMEClientPool()) {
+      DefaultACMEClient first = pool.client(new ConfigBuilder().withServer(baseUrl.url()).withKeyPair(firstKey).build());
+      DefaultACMEClient second = pool.client(new ConfigBuilder().withServer(baseUrl.url()).withKeyPair(secondKey).build());
+
+      assertSame(first.getTransport(), second.getTransport());
+      assertSame(okHttpClient(first).connectionPool(), okHttpClient(second).connectionPool());
+      assertSame(okHttpClient(first).dispatcher(), okHttpClient(second).dispatcher());
+      assertSame(first.getNonce(), second.getNonce());
+      assertSame(first.getKeyPairPool(), second.getKeyPairPool());
+      assertEquals(1, pool.getServerCount());
+
+      Registration firstReg = first.registration().createNew().send();
+      // Closing a pooled client leaves the shared transport running.
+      first.close();
+      Registration secondReg = second.registration().createNew().send();
+      assertFalse(okHttpClient(second).dispatcher().executorService().isShutdown());
+
+      assertEquals(server.url("/acme/reg/1").toString(), firstReg.getLocation());
+      assertEquals(server.url("/acme/reg/2").toString(), secondReg.getLocation());
+
+      // One directory fetch, and the second account signed with the nonce the first one got back.
+      assertEquals(3, server.getRequestCount());
+      assertEquals(0, second.getNonce().getMisses());
+
+      assertEquals("/directory", server.takeRequest().getPath());
+      RecordedRequest firstRequest = server.takeRequest();
+      RecordedRequest secondRequest = server.takeRequest();
+      assertEquals("/acme/new-reg", firstRequest.getPath());
+      assertEquals("/acme/new-reg", secondRequest.getPath());
+      assertNotEquals(
+        JWSObject.parse(firstRequest.getBody().readUtf8()).getHeader().getJWK().computeThumbprint(),
+        JWSObject.parse(secondRequest.getBody().readUtf8()).getHeader().getJWK().computeThumbprint()
+      );
+    }
+  }
+
+  @Test
+  public void testAccountsSharePoller() throws Exception {
+    HttpUrl baseUrl = server.url("/directory");
+    try (ACMEClientPool pool = new ACMEClientPool()) {
+      DefaultACMEClient first = pool.client(new ConfigBuilder().withServer(baseUrl.url()).withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair()).build());
+      DefaultACMEClient second = pool.client(new ConfigBuilder().withServer(baseUrl.url()).withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair()).build());
+
+      // One poller, so the poll rate cap holds across the accounts.
+      assertSame(first.getAuthorizationPoller(), second.getAuthorizationPoller());
+      assertNotSame(first.getValidAuthorizations(), second.getValidAuthorizations());
+    }
+  }
+
+  @Test
+  public void testClosedPoolHandsOutNoClients() throws Exception {
+    Config config = new ConfigBuilder().withServer(server.url("/directory").url()).withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair()).build();
+    ACMEClientPool pool = new ACMEClientPool();
+    DefaultACMEClient client = pool.client(config);
+    pool.close();
+
+    assertTrue(okHttpClient(client).dispatcher().executorService().isShutdown());
+    assertEquals(0, pool.getServerCount());
+    try {
+      pool.client(config);
+      fail("Expected the closed pool to refuse a client");
+    } catch (ACMEClientException e) {
+      assertEquals("poolError", e.getType());
+    }
+  }
+
+  private static OkHttpClient okHttpClient(DefaultACMEClient client) {
+    return ((OkHttpTransport) client.getTransport()).getOkHttpClient();
+  }
+
+}
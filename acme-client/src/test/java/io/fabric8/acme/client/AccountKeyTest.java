@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import com.nimbusds.jose.jwk.JWK;
+import io.fabric8.acme.client.internal.AccountKey;
+import io.fabric8.acme.client.internal.JWKUtils;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+import static org.junit.Assert.assertEquals;
+
+public class AccountKeyTest {
+
+  @Test
+  public void testThumbprint() throws Exception {
+    for (String algorithm : new String[]{"RSA", "EC"}) {
+      KeyPair keyPair = KeyPairGenerator.getInstance(algorithm).generateKeyPair();
+      JWK jwk = JWKUtils.jwkFromPublicKey(keyPair.getPublic());
+
+      assertEquals(jwk.computeThumbprint(), AccountKey.fromPublicKey(keyPair.getPublic()).getThumbprint());
+      assertEquals(jwk.computeThumbprint(), new AccountKey(jwk).getThumbprint());
+    }
+  }
+
+  @Test
+  public void testKeyAuthorization() throws Exception {
+    KeyPair keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+    AccountKey accountKey = AccountKey.fromPublicKey(keyPair.getPublic());
+    String thumbprint = accountKey.getJwk().computeThumbprint().toString();
+
+    assertEquals("qwerty." + thumbprint, accountKey.keyAuthorization("qwerty"));
+
+    // Longer than the initial buffer, then shorter again to check nothing is left behind.
+    StringBuilder longToken = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      longToken.append('a');
+    }
+    assertEquals(longToken + "." + thumbprint, accountKey.keyAuthorization(longToken.toString()));
+    assertEquals("x." + thumbprint, accountKey.keyAuthorization("x"));
+  }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import io.fabric8.acme.client.internal.AccountKey;
+import io.fabric8.acme.client.model.Registration;
+import io.fabric8.acme.client.model.RegistrationBuilder;
+import io.fabric8.acme.client.store.AccountStore;
+import io.fabric8.acme.client.store.FileAccountStore;
+import okhttp3.HttpUrl;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+import static io.fabric8.acme.client.Helpers.noncedResponse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class AccountStoreTest extends BaseTest {
+
+  private static final String REGISTRATION = "{\n" +
+    "  \"id\": 1,\n" +
+    "  \"key\": {\n" +
+    "    \"kty\": \"RSA\",\n" +
+    "    \"kid\": \"3gb1Haaaaaah0TBsQaaaaa\",\n" +
+    "    \"n\": \"asafada-kLP-2mT3vBaWJG_JLJKdV5xtdsEOkmAZzY91fRM4HoLmvLrpjB4siACOZulkyKgs8DM0v9BP4T9hIqUBzvKLGRCCXFypwLDVyLYmkTsFwi-wvxfS13rZXdrLjwdAztLUIsJGqCZY6Lw6XZ1E9GriWnQQCqYRLi3ECEi33-BcuYJ7FBz36eeRZeGcHOLE5susgO00YxTAha4dgjl_SnbvYMOTXv4PEk7ai_ecQk-XlVGcCJrw\",\n" +
+    "    \"e\": \"AQAB\"\n" +
+    "  },\n" +
+    "  \"contact\": [\n" +
+    "    \"mailto:noone@nowhere.com\"\n" +
+    "  ],\n" +
+    "  \"agreement\": \"https://letsencrypt.org/documents/LE-SA-v1.0.1-July-27-2015.pdf\"\n" +
+    "}";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testGetAnswersFromStore() throws Exception {
+    server.enqueue(noncedResponse(null)
+      .addHeader("Location", server.url("/acme/reg/1"))
+      .setResponseCode(HttpURLConnection.HTTP_CONFLICT)
+    );
+    server.enqueue(noncedResponse(REGISTRATION)
+      .addHeader("Link", "<https://acme-staging.api.letsencrypt.org/acme/new-authz>;rel=\"next\"")
+      .addHeader("Link", "<https://letsencrypt.org/documents/LE-SA-v1.0.1-July-27-2015.pdf>;rel=\"terms-of-service\"")
+      .setResponseCode(HttpURLConnection.HTTP_ACCEPTED)
+    );
+
+    KeyPair keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+    AccountStore store = new FileAccountStore(folder.getRoot().toPath().resolve("accounts"));
+    HttpUrl baseUrl = server.url("/directory");
+
+    ACMEClient client = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(keyPair)
+        .withAccountStore(store)
+        .build());
+
+    Registration reg = client.registration().get();
+    assertEquals(server.url("/acme/reg/1").toString(), reg.getLocation());
+
+    // Read back from disk this time, so only the original lookup went to the server.
+    reg = client.registration().get();
+    assertEquals(server.url("/acme/reg/1").toString(), reg.getLocation());
+    assertEquals("https://letsencrypt.org/documents/LE-SA-v1.0.1-July-27-2015.pdf", reg.getAgreementLocation());
+    assertEquals("https://acme-staging.api.letsencrypt.org/acme/new-authz", reg.getAuthorizationsLocation());
+    assertEquals("noone@nowhere.com", reg.getContact().get("mailto"));
+    assertEquals(AccountKey.fromPublicKey(keyPair.getPublic()).getThumbprint(), reg.getJwk().computeThumbprint());
+    assertEquals(3, server.getRequestCount());
+  }
+
+  @Test
+  public void testStaleRegistrationIsRevalidated() throws Exception {
+    server.enqueue(noncedResponse("{\"type\":\"urn:acme:error:unauthorized\",\"detail\":\"No registration exists matching provided key\"}")
+      .addHeader("Content-Type", "application/problem+json")
+      .setResponseCode(HttpURLConnection.HTTP_FORBIDDEN)
+    );
+    server.enqueue(noncedResponse(null)
+      .addHeader("Location", server.url("/acme/reg/1"))
+      .setResponseCode(HttpURLConnection.HTTP_CONFLICT)
+    );
+    server.enqueue(noncedResponse(REGISTRATION).setResponseCode(HttpURLConnection.HTTP_ACCEPTED));
+    server.enqueue(noncedResponse(REGISTRATION).setResponseCode(HttpURLConnection.HTTP_ACCEPTED));
+
+    KeyPair keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+    String thumbprint = AccountKey.fromPublicKey(keyPair.getPublic()).getThumbprint().toString();
+    AccountStore store = new FileAccountStore(folder.getRoot().toPath());
+    store.save(thumbprint, new RegistrationBuilder().withLocation(server.url("/acme/reg/old").toString()).build());
+
+    HttpUrl baseUrl = server.url("/directory");
+
+    ACMEClient client = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(keyPair)
+        .withAccountStore(store)
+        .build());
+
+    Registration reg = client.registration().edit().addToContact("mailto", "someone@nowhere.com").send();
+    assertEquals(server.url("/acme/reg/1").toString(), reg.getLocation());
+    assertEquals(server.url("/acme/reg/1").toString(), store.load(thumbprint).getLocation());
+
+    assertEquals("/directory", server.takeRequest().getPath());
+    assertEquals("/acme/reg/old", server.takeRequest().getPath());
+    assertEquals("/acme/new-reg", server.takeRequest().getPath());
+    assertEquals("/acme/reg/1", server.takeRequest().getPath());
+    assertEquals("/acme/reg/1", server.takeRequest().getPath());
+
+    store.remove(thumbprint);
+    assertNull(store.load(thumbprint));
+  }
+
+  @Test
+  public void testCorruptFileIsReplaced() throws Exception {
+    server.enqueue(noncedResponse(null)
+      .addHeader("Location", server.url("/acme/reg/1"))
+      .setResponseCode(HttpURLConnection.HTTP_CONFLICT)
+    );
+    server.enqueue(noncedResponse(REGISTRATION).setResponseCode(HttpURLConnection.HTTP_ACCEPTED));
+
+    KeyPair keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+    String thumbprint = AccountKey.fromPublicKey(keyPair.getPublic()).getThumbprint().toString();
+    AccountStore store = new FileAccountStore(folder.getRoot().toPath());
+    // Cut short mid-write by something other than the store itself.
+    Files.write(folder.getRoot().toPath().resolve(thumbprint + ".json"), "{\"location\":\"https://acme".getBytes(StandardCharsets.UTF_8));
+    assertNull(store.load(thumbprint));
+
+    HttpUrl baseUrl = server.url("/directory");
+
+    ACMEClient client = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(keyPair)
+        .withAccountStore(store)
+        .build());
+
+    Registration reg = client.registration().get();
+    assertEquals(server.url("/acme/reg/1").toString(), reg.getLocation());
+    assertEquals(server.url("/acme/reg/1").toString(), store.load(thumbprint).getLocation());
+  }
+
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import io.fabric8.acme.client.model.Authorization;
+import io.fabric8.acme.client.model.Challenge;
+import io.fabric8.acme.client.model.NewAuthorizationBuilder;
+import io.fabric8.acme.client.model.NewRegistrationBuilder;
+import io.fabric8.acme.client.model.Registration;
+import okhttp3.HttpUrl;
+import org.junit.Test;
+
+import java.net.HttpURLConnection;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static io.fabric8.acme.client.Helpers.noncedResponse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncClientTest extends BaseTest {
+
+  private static final String REGISTRATION = "{\n" +
+    "  \"id\": 1,\n" +
+    "  \"key\": {\n" +
+    "    \"kty\": \"RSA\",\n" +
+    "    \"kid\": \"3gb1Haaaaaah0TBsQaaaaa\",\n" +
+    "    \"n\": \"asafada-kLP-2mT3vBaWJG_JLJKdV5xtdsEOkmAZzY91fRM4HoLmvLrpjB4siACOZulkyKgs8DM0v9BP4T9hIqUBzvKLGRCCXFypwLDVyLYmkTsFwi-wvxfS13rZXdrLjwdAztLUIsJGqCZY6Lw6XZ1E9GriWnQQCqYRLi3ECEi33-BcuYJ7FBz36eeRZeGcHOLE5susgO00YxTAha4dgjl_SnbvYMOTXv4PEk7ai_ecQk-XlVGcCJrw\",\n" +
+    "    \"e\": \"AQAB\"\n" +
+    "  },\n" +
+    "  \"contact\": [\n" +
+    "    \"mailto:noone@nowhere.com\"\n" +
+    "  ]\n" +
+    "}";
+
+  @Test
+  public void testAsyncRegistrationAgreesToTerms() throws Exception {
+    server.enqueue(noncedResponse(REGISTRATION)
+      .addHeader("Link", "<https://acme-staging.api.letsencrypt.org/acme/new-authz>;rel=\"next\"")
+      .addHeader("Link", "<https://letsencrypt.org/documents/LE-SA-v1.0.1-July-27-2015.pdf>;rel=\"terms-of-service\"")
+      .addHeader("Location", server.url("/acme/reg/1"))
+      .setResponseCode(HttpURLConnection.HTTP_CREATED)
+    );
+    server.enqueue(noncedResponse(REGISTRATION)
+      .addHeader("Link", "<https://acme-staging.api.letsencrypt.org/acme/new-authz>;rel=\"next\"")
+      .addHeader("Link", "<https://letsencrypt.org/documents/LE-SA-v1.0.1-July-27-2015.pdf>;rel=\"terms-of-service\"")
+      .setResponseCode(HttpURLConnection.HTTP_ACCEPTED)
+    );
+
+    HttpUrl baseUrl = server.url("/directory");
+
+    AsyncACMEClient client = new DefaultAsyncACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .build());
+
+    Registration reg = client.registration()
+      .create(new NewRegistrationBuilder().addToContact("mailto", "noone@nowhere.com").withAgreeToTerms(true).build())
+      .get(5, TimeUnit.SECONDS);
+
+    assertEquals("https://letsencrypt.org/documents/LE-SA-v1.0.1-July-27-2015.pdf", reg.getAgreementLocation());
+    assertEquals(server.url("/acme/reg/1").toString(), reg.getLocation());
+
+    assertEquals("/directory", server.takeRequest().getPath());
+    assertEquals("/acme/new-reg", server.takeRequest().getPath());
+    assertEquals("/acme/reg/1", server.takeRequest().getPath());
+  }
+
+  @Test
+  public void testAsyncAuthorizationAndChallenge() throws Exception {
+    server.enqueue(
+      noncedResponse("{\"identifier\":{\"type\":\"dns\",\"value\":\"fabric8.io\"},\"status\":\"pending\",\"expires\":\"2017-03-23T21:06:45.899078471Z\",\"challenges\":[{\"type\":\"dns-01\",\"status\":\"pending\",\"uri\":\"" + server.url("/acme/challenge/abcde/1234") + "\",\"token\":\"qwerty\"}],\"combinations\":[[0]]}")
+        .addHeader("Location", server.url("/acme/authorization/111"))
+        .setResponseCode(HttpURLConnection.HTTP_CREATED)
+    );
+    server.enqueue(
+      noncedResponse("{\"type\":\"dns-01\",\"status\":\"pending\",\"uri\":\"" + server.url("/acme/challenge/abcde/1234") + "\",\"token\":\"qwerty\"}")
+        .setResponseCode(HttpURLConnection.HTTP_ACCEPTED)
+    );
+
+    HttpUrl baseUrl = server.url("/directory");
+
+    AsyncACMEClient client = new DefaultAsyncACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .build());
+
+    Challenge challenge = client.authorization()
+      .create(new NewAuthorizationBuilder().withNewIdentifier("dns", "fabric8.io").build())
+      .thenCompose(authz -> client.challenges().use(authz.getChallenges().get(0)).ready())
+      .get(5, TimeUnit.SECONDS);
+
+    assertEquals("dns-01", challenge.getType());
+    assertEquals("/directory", server.takeRequest().getPath());
+    assertEquals("/acme/new-authz", server.takeRequest().getPath());
+    assertEquals("/acme/challenge/abcde/1234", server.takeRequest().getPath());
+  }
+
+  @Test
+  public void testConcurrentAuthorizationsAreCoalesced() throws Exception {
+    server.enqueue(
+      noncedResponse("{\"identifier\":{\"type\":\"dns\",\"value\":\"fabric8.io\"},\"status\":\"pending\",\"expires\":\"2017-03-23T21:06:45.899078471Z\",\"challenges\":[{\"type\":\"dns-01\",\"status\":\"pending\",\"uri\":\"" + server.url("/acme/challenge/abcde/1234") + "\",\"token\":\"qwerty\"}],\"combinations\":[[0]]}")
+        .addHeader("Location", server.url("/acme/authorization/111"))
+        .setResponseCode(HttpURLConnection.HTTP_CREATED)
+        .setBodyDelay(500, TimeUnit.MILLISECONDS)
+    );
+
+    HttpUrl baseUrl = server.url("/directory");
+
+    DefaultACMEClient blockingClient = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .build());
+    AsyncACMEClient client = blockingClient.async();
+
+    List<CompletableFuture<Authorization>> futures = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      futures.add(client.authorization().create(new NewAuthorizationBuilder().withNewIdentifier("dns", "fabric8.io").build()));
+    }
+
+    for (CompletableFuture<Authorization> future : futures) {
+      assertEquals(server.url("/acme/authorization/111").toString(), future.get(5, TimeUnit.SECONDS).getLocation());
+    }
+    assertEquals(4, blockingClient.getPendingAuthorizations().getCoalesced());
+    assertEquals(0, blockingClient.getPendingAuthorizations().getInFlight());
+    assertEquals(2, server.getRequestCount());
+  }
+
+  @Test
+  public void testAsyncErrorCompletesExceptionally() throws Exception {
+    server.enqueue(noncedResponse("{\"type\":\"urn:acme:error:malformed\",\"detail\":\"Request payload did not parse as JSON\"}")
+      .addHeader("Content-Type", "application/problem+json")
+      .setResponseCode(HttpURLConnection.HTTP_BAD_REQUEST)
+    );
+
+    HttpUrl baseUrl = server.url("/directory");
+
+    AsyncACMEClient client = new DefaultAsyncACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .build());
+
+    try {
+      Authorization authz = client.authorization().at(server.url("/acme/authorization/111").toString()).get().get(5, TimeUnit.SECONDS);
+      fail("Expected failure, got " + authz);
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof ACMEClientException);
+      ACMEClientException cause = (ACMEClientException) e.getCause();
+      assertEquals("urn:acme:error:malformed", cause.getType());
+      assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, cause.getCode());
+    }
+  }
+
+}
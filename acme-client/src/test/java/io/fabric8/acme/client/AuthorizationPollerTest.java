@@ -0,0 +1,230 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import io.fabric8.acme.client.dsl.Pollable;
+import io.fabric8.acme.client.internal.AuthorizationPoller;
+import io.fabric8.acme.client.model.Authorization;
+import io.fabric8.acme.client.model.Status;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.Test;
+
+import java.net.HttpURLConnection;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static io.fabric8.acme.client.Helpers.newDirectory;
+import static io.fabric8.acme.client.Helpers.noncedResponse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AuthorizationPollerTest extends BaseTest {
+
+  private MockResponse authorizationResponse(String status) {
+    return noncedResponse("{\"identifier\":{\"type\":\"dns\",\"value\":\"fabric8.io\"},\"status\":\"" + status + "\",\"expires\":\"2017-03-23T21:06:45.899078471Z\",\"challenges\":[{\"type\":\"dns-01\",\"status\":\"" + status + "\",\"uri\":\"" + server.url("/acme/challenge/abcde/1234") + "\",\"token\":\"qwerty\"}],\"combinations\":[[0]]}")
+      .setResponseCode(HttpURLConnection.HTTP_OK);
+  }
+
+  @Test
+  public void testPollUntilValid() throws Exception {
+    server.enqueue(authorizationResponse("pending"));
+    server.enqueue(authorizationResponse("processing"));
+    server.enqueue(authorizationResponse("valid"));
+
+    HttpUrl baseUrl = server.url("/directory");
+
+    DefaultACMEClient client = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .build());
+
+    Pollable<Authorization> poller = client.async().authorizationPoller();
+    String location = server.url("/acme/authorization/111").toString();
+    CompletableFuture<Authorization> future = poller.poll(location);
+    CompletableFuture<Authorization> second = poller.poll(location);
+    assertNotSame(future, second);
+    assertEquals(1, client.getAuthorizationPoller().getWatchCount());
+
+    Authorization authz = future.get(10, TimeUnit.SECONDS);
+    assertSame(authz, second.get(10, TimeUnit.SECONDS));
+    assertEquals(Status.VALID, authz.getStatus());
+    assertEquals(location, authz.getLocation());
+
+    assertEquals("/directory", server.takeRequest().getPath());
+    for (int i = 0; i < 3; i++) {
+      assertEquals("/acme/authorization/111", server.takeRequest().getPath());
+    }
+  }
+
+  @Test
+  public void testPollHonoursRetryAfter() throws Exception {
+    server.enqueue(authorizationResponse("pending").addHeader("Retry-After", "2"));
+    server.enqueue(authorizationResponse("invalid"));
+
+    HttpUrl baseUrl = server.url("/directory");
+
+    AsyncACMEClient client = new DefaultAsyncACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .build());
+
+    long start = System.nanoTime();
+    Authorization authz = client.authorizationPoller().poll(server.url("/acme/authorization/111").toString()).get(10, TimeUnit.SECONDS);
+    assertEquals(Status.INVALID, authz.getStatus());
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 2000);
+  }
+
+  @Test
+  public void testBackoffDoesNotDelayOtherWatches() throws Exception {
+    CountDownLatch slowPolled = new CountDownLatch(1);
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        if ("/directory".equals(request.getPath())) {
+          return noncedResponse(newDirectory(server));
+        }
+        if ("/acme/authorization/slow".equals(request.getPath())) {
+          slowPolled.countDown();
+          return authorizationResponse("pending").addHeader("Retry-After", "30");
+        }
+        return authorizationResponse("valid");
+      }
+    });
+
+    AuthorizationPoller poller = newPoller(20);
+    CompletableFuture<Authorization> slow = poller.poll(server.url("/acme/authorization/slow").toString());
+    assertTrue(slowPolled.await(10, TimeUnit.SECONDS));
+
+    // The slow watch is now parked for 30 seconds; a new watch must not queue up behind it.
+    long start = System.nanoTime();
+    Authorization authz = poller.poll(server.url("/acme/authorization/fast").toString()).get(10, TimeUnit.SECONDS);
+    assertEquals(Status.VALID, authz.getStatus());
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 10000);
+    assertFalse(slow.isDone());
+    slow.cancel(false);
+  }
+
+  @Test
+  public void testPollRateIsCapped() throws Exception {
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        if ("/directory".equals(request.getPath())) {
+          return noncedResponse(newDirectory(server));
+        }
+        return authorizationResponse("valid");
+      }
+    });
+
+    AuthorizationPoller poller = newPoller(2);
+    long start = System.nanoTime();
+    List<CompletableFuture<Authorization>> futures = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      futures.add(poller.poll(server.url("/acme/authorization/" + i).toString()));
+    }
+    for (CompletableFuture<Authorization> future : futures) {
+      assertEquals(Status.VALID, future.get(10, TimeUnit.SECONDS).getStatus());
+    }
+
+    // A second's worth of polls goes out at once, the other four follow at two per second.
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 1500);
+    assertEquals(6, poller.getPollCount());
+  }
+
+  @Test
+  public void testCancellingOneCallerLeavesOthersWatching() throws Exception {
+    CountDownLatch polled = new CountDownLatch(1);
+    AtomicBoolean settled = new AtomicBoolean();
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        if ("/directory".equals(request.getPath())) {
+          return noncedResponse(newDirectory(server));
+        }
+        polled.countDown();
+        return authorizationResponse(settled.get() ? "valid" : "pending");
+      }
+    });
+
+    AuthorizationPoller poller = newPoller(20);
+    String location = server.url("/acme/authorization/111").toString();
+    CompletableFuture<Authorization> first = poller.poll(location);
+    CompletableFuture<Authorization> second = poller.poll(location);
+    assertTrue(polled.await(10, TimeUnit.SECONDS));
+
+    assertTrue(first.cancel(false));
+    assertEquals(1, poller.getWatchCount());
+
+    settled.set(true);
+    assertEquals(Status.VALID, second.get(10, TimeUnit.SECONDS).getStatus());
+  }
+
+  @Test
+  public void testCancellingEveryCallerStopsWatching() throws Exception {
+    CountDownLatch polled = new CountDownLatch(1);
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        if ("/directory".equals(request.getPath())) {
+          return noncedResponse(newDirectory(server));
+        }
+        polled.countDown();
+        return authorizationResponse("pending");
+      }
+    });
+
+    AuthorizationPoller poller = newPoller(20);
+    String location = server.url("/acme/authorization/111").toString();
+    CompletableFuture<Authorization> first = poller.poll(location);
+    CompletableFuture<Authorization> second = poller.poll(location);
+    assertTrue(polled.await(10, TimeUnit.SECONDS));
+
+    first.cancel(false);
+    second.cancel(false);
+    assertEquals(0, poller.getWatchCount());
+
+    // Watching the location again starts a fresh watch rather than joining the abandoned one.
+    CompletableFuture<Authorization> third = poller.poll(location);
+    assertFalse(third.isDone());
+    assertEquals(1, poller.getWatchCount());
+    third.cancel(false);
+    assertEquals(0, poller.getWatchCount());
+  }
+
+  private AuthorizationPoller newPoller(int maxPollRate) throws Exception {
+    DefaultACMEClient client = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(server.url("/directory").url())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .withMaxAuthorizationPollRate(maxPollRate)
+        .build());
+    return client.getAuthorizationPoller();
+  }
+
+}
@@ -17,20 +17,31 @@ package io.fabric8.acme.client;
 
 import com.nimbusds.jose.jwk.JWK;
 import com.nimbusds.jose.util.Base64URL;
+import io.fabric8.acme.client.internal.AccountKey;
+import io.fabric8.acme.client.internal.AuthorizationCache;
 import io.fabric8.acme.client.internal.JWKUtils;
 import io.fabric8.acme.client.model.Authorization;
 import io.fabric8.acme.client.model.Dns01Challenge;
+import io.fabric8.acme.client.model.Identifier;
+import io.fabric8.acme.client.model.NewAuthorizationBuilder;
 import io.fabric8.acme.client.model.Registration;
+import io.fabric8.acme.client.model.Status;
 import okhttp3.HttpUrl;
 import org.junit.Test;
 
 import java.net.HttpURLConnection;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 import static io.fabric8.acme.client.Helpers.noncedResponse;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 public class AuthorizationTest extends BaseTest {
 
@@ -155,6 +166,75 @@ public class AuthorizationTest extends BaseTest {
     assertEquals(authz.getChallenges().get(2), authz.getCombinations().get(1).get(1));
   }
 
+  @Test
+  public void testValidAuthorizationIsReused() throws Exception {
+    Instant expires = Instant.now().plus(30, ChronoUnit.DAYS);
+    server.enqueue(
+      noncedResponse("{\"identifier\":{\"type\":\"dns\",\"value\":\"fabric8.io\"},\"status\":\"valid\",\"expires\":\"" + expires + "\",\"challenges\":[{\"type\":\"dns-01\",\"status\":\"valid\",\"uri\":\"" + server.url("/acme/challenge/abcde/1234") + "\",\"token\":\"qwerty\"}],\"combinations\":[[0]]}")
+        .addHeader("Location", server.url("/acme/authorization/111"))
+        .setResponseCode(HttpURLConnection.HTTP_CREATED)
+    );
+    // Expires within the safety margin, so has to be requested every time.
+    server.enqueue(
+      noncedResponse("{\"identifier\":{\"type\":\"dns\",\"value\":\"www.fabric8.io\"},\"status\":\"valid\",\"expires\":\"" + Instant.now().plus(10, ChronoUnit.MINUTES) + "\",\"challenges\":[{\"type\":\"dns-01\",\"status\":\"valid\",\"uri\":\"" + server.url("/acme/challenge/zxcvb/98765") + "\",\"token\":\"asdfg\"}],\"combinations\":[[0]]}")
+        .addHeader("Location", server.url("/acme/authorization/222"))
+        .setResponseCode(HttpURLConnection.HTTP_CREATED)
+    );
+    server.enqueue(
+      noncedResponse("{\"identifier\":{\"type\":\"dns\",\"value\":\"www.fabric8.io\"},\"status\":\"pending\",\"expires\":\"" + expires + "\",\"challenges\":[{\"type\":\"dns-01\",\"status\":\"pending\",\"uri\":\"" + server.url("/acme/challenge/lkjhg/456321") + "\",\"token\":\"mnbvc\"}],\"combinations\":[[0]]}")
+        .addHeader("Location", server.url("/acme/authorization/333"))
+        .setResponseCode(HttpURLConnection.HTTP_CREATED)
+    );
+
+    HttpUrl baseUrl = server.url("/directory");
+
+    DefaultACMEClient client = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .build());
+
+    Authorization authz = client.authorization().createNew().withNewIdentifier("dns", "fabric8.io").send();
+    assertEquals(Status.VALID, authz.getStatus());
+    assertSame(authz, client.authorization().createNew().withNewIdentifier("dns", "fabric8.io").send());
+    assertSame(authz, client.async().authorization().create(new NewAuthorizationBuilder().withNewIdentifier("dns", "fabric8.io").build()).get(5, TimeUnit.SECONDS));
+
+    assertEquals(server.url("/acme/authorization/222").toString(), client.authorization().createNew().withNewIdentifier("dns", "www.fabric8.io").send().getLocation());
+    assertEquals(server.url("/acme/authorization/333").toString(), client.authorization().createNew().withNewIdentifier("dns", "www.fabric8.io").send().getLocation());
+
+    assertEquals(2, client.getValidAuthorizations().getHits());
+    assertEquals(1, client.getValidAuthorizations().size());
+    assertEquals(4, server.getRequestCount());
+  }
+
+  @Test
+  public void testAuthorizationCacheEvictsSoonestExpiring() throws Exception {
+    AccountKey accountKey = AccountKey.fromPublicKey(KeyPairGenerator.getInstance("RSA").generateKeyPair().getPublic());
+    AuthorizationCache cache = new AuthorizationCache(0, 2);
+    Instant now = Instant.now();
+
+    cache.put(accountKey, validAuthorization("a.fabric8.io", now.plus(3, ChronoUnit.DAYS)));
+    cache.put(accountKey, validAuthorization("b.fabric8.io", now.plus(1, ChronoUnit.DAYS)));
+    cache.put(accountKey, validAuthorization("c.fabric8.io", now.plus(2, ChronoUnit.DAYS)));
+    cache.put(accountKey, validAuthorization("d.fabric8.io", now.minus(1, ChronoUnit.DAYS)));
+
+    assertEquals(2, cache.size());
+    assertNotNull(cache.get(accountKey, new Identifier("dns", "a.fabric8.io")));
+    assertNull(cache.get(accountKey, new Identifier("dns", "b.fabric8.io")));
+    assertNotNull(cache.get(accountKey, new Identifier("dns", "c.fabric8.io")));
+    assertNull(cache.get(accountKey, new Identifier("dns", "d.fabric8.io")));
+
+    AccountKey otherAccount = AccountKey.fromPublicKey(KeyPairGenerator.getInstance("RSA").generateKeyPair().getPublic());
+    assertNull(cache.get(otherAccount, new Identifier("dns", "a.fabric8.io")));
+
+    cache.invalidate(accountKey, new Identifier("dns", "a.fabric8.io"));
+    assertNull(cache.get(accountKey, new Identifier("dns", "a.fabric8.io")));
+  }
+
+  private static Authorization validAuthorization(String domain, Instant expires) {
+    return new Authorization("https://acme.example.com/acme/authz/" + domain, new Identifier("dns", domain), Status.VALID, expires, Collections.emptyList(), Collections.emptyList());
+  }
+
   @Test
   public void testReadyChallenge() throws Exception {
     KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import com.nimbusds.jose.JWSObject;
+import io.fabric8.acme.client.model.Registration;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.Test;
+
+import java.net.HttpURLConnection;
+import java.security.KeyPairGenerator;
+
+import static io.fabric8.acme.client.Helpers.noncedResponse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+public class BadNonceTest extends BaseTest {
+
+  private static final String REGISTRATION = "{\n" +
+    "  \"id\": 1,\n" +
+    "  \"key\": {\n" +
+    "    \"kty\": \"RSA\",\n" +
+    "    \"kid\": \"3gb1Haaaaaah0TBsQaaaaa\",\n" +
+    "    \"n\": \"asafada-kLP-2mT3vBaWJG_JLJKdV5xtdsEOkmAZzY91fRM4HoLmvLrpjB4siACOZulkyKgs8DM0v9BP4T9hIqUBzvKLGRCCXFypwLDVyLYmkTsFwi-wvxfS13rZXdrLjwdAztLUIsJGqCZY6Lw6XZ1E9GriWnQQCqYRLi3ECEi33-BcuYJ7FBz36eeRZeGcHOLE5susgO00YxTAha4dgjl_SnbvYMOTXv4PEk7ai_ecQk-XlVGcCJrw\",\n" +
+    "    \"e\": \"AQAB\"\n" +
+    "  },\n" +
+    "  \"contact\": [\n" +
+    "    \"mailto:noone@nowhere.com\"\n" +
+    "  ]\n" +
+    "}";
+
+  private static MockResponse badNonceResponse() {
+    return noncedResponse("{\"type\":\"urn:acme:error:badNonce\",\"detail\":\"JWS has invalid anti-replay nonce\"}")
+      .addHeader("Content-Type", "application/problem+json")
+      .setResponseCode(HttpURLConnection.HTTP_BAD_REQUEST);
+  }
+
+  @Test
+  public void testBadNonceIsRetried() throws Exception {
+    MockResponse badNonce = badNonceResponse();
+    server.enqueue(badNonce);
+    server.enqueue(noncedResponse(REGISTRATION)
+      .addHeader("Location", server.url("/acme/reg/1"))
+      .setResponseCode(HttpURLConnection.HTTP_CREATED)
+    );
+
+    HttpUrl baseUrl = server.url("/directory");
+
+    DefaultACMEClient client = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .build());
+
+    Registration reg = client.registration().createNew().addToContact("mailto", "noone@nowhere.com").send();
+    assertEquals(server.url("/acme/reg/1").toString(), reg.getLocation());
+    assertEquals(1, client.getNonce().getBadNonceRetries());
+
+    assertEquals("/directory", server.takeRequest().getPath());
+
+    RecordedRequest rejected = server.takeRequest();
+    RecordedRequest retried = server.takeRequest();
+    assertEquals("/acme/new-reg", rejected.getPath());
+    assertEquals("/acme/new-reg", retried.getPath());
+
+    JWSObject rejectedJws = JWSObject.parse(rejected.getBody().readUtf8());
+    JWSObject retriedJws = JWSObject.parse(retried.getBody().readUtf8());
+    assertNotEquals(rejectedJws.getHeader().getCustomParam("nonce"), retriedJws.getHeader().getCustomParam("nonce"));
+    assertEquals(badNonce.getHeaders().get("Replay-Nonce"), retriedJws.getHeader().getCustomParam("nonce"));
+    assertEquals(rejectedJws.getPayload().toString(), retriedJws.getPayload().toString());
+  }
+
+  @Test
+  public void testBadNonceRetriesAreBounded() throws Exception {
+    server.enqueue(badNonceResponse());
+    server.enqueue(badNonceResponse());
+
+    HttpUrl baseUrl = server.url("/directory");
+
+    DefaultACMEClient client = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .withMaxBadNonceRetries(1)
+        .build());
+
+    try {
+      client.registration().createNew().addToContact("mailto", "noone@nowhere.com").send();
+      fail("Expected badNonce to be reported");
+    } catch (ACMEClientException e) {
+      assertEquals("urn:acme:error:badNonce", e.getType());
+      assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, e.getCode());
+    }
+    assertEquals(1, client.getNonce().getBadNonceRetries());
+    assertEquals(3, server.getRequestCount());
+  }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import com.nimbusds.jose.JWSObject;
+import io.fabric8.acme.client.model.Certificate;
+import io.fabric8.acme.client.model.NewCertificate;
+import io.fabric8.acme.client.model.PemCertificateSink;
+import net.minidev.json.JSONObject;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static io.fabric8.acme.client.Helpers.noncedResponse;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CertificateTest extends BaseTest {
+
+  private static final byte[] CERTIFICATE = "certificate".getBytes(StandardCharsets.US_ASCII);
+
+  private static final byte[] ISSUER = "issuer".getBytes(StandardCharsets.US_ASCII);
+
+  @Test
+  public void testIssueAndDownload() throws Exception {
+    server.enqueue(noncedResponse(null)
+      .setBody(new Buffer().write(CERTIFICATE))
+      .addHeader("Location", server.url("/acme/cert/1"))
+      .addHeader("Link", "</acme/issuer-cert>;rel=\"up\"")
+      .setResponseCode(HttpURLConnection.HTTP_CREATED)
+    );
+    server.enqueue(noncedResponse(null)
+      .addHeader("Retry-After", "1")
+      .setResponseCode(HttpURLConnection.HTTP_ACCEPTED)
+    );
+    server.enqueue(noncedResponse(null)
+      .setBody(new Buffer().write(CERTIFICATE))
+      .addHeader("Content-Type", "application/pkix-cert")
+      .addHeader("Link", "</acme/issuer-cert>;rel=\"up\"")
+    );
+    // Issuer certificates needn't come from the ACME server, so may not carry a nonce - and
+    // a self-referencing link mustn't be followed forever.
+    server.enqueue(new MockResponse()
+      .setBody(new Buffer().write(ISSUER))
+      .addHeader("Content-Type", "application/pkix-cert")
+      .addHeader("Link", "</acme/issuer-cert>;rel=\"up\"")
+    );
+
+    ACMEClient client = newClient();
+
+    Certificate certificate = client.certificates().createNew().withCsr(NewCertificate.encodeCsr(new byte[]{1, 2, 3})).send();
+    assertEquals(server.url("/acme/cert/1").toString(), certificate.getLocation());
+    assertEquals(server.url("/acme/issuer-cert").toString(), certificate.getIssuerLocation());
+
+    List<byte[]> chain = new ArrayList<>();
+    long start = System.currentTimeMillis();
+    client.certificates().at(certificate.getLocation()).download((index, der) -> {
+      assertEquals(chain.size(), index);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1024];
+      int read;
+      while ((read = der.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      chain.add(out.toByteArray());
+    });
+    assertTrue(System.currentTimeMillis() - start >= 1000);
+
+    assertEquals(2, chain.size());
+    assertArrayEquals(CERTIFICATE, chain.get(0));
+    assertArrayEquals(ISSUER, chain.get(1));
+
+    server.takeRequest();
+    RecordedRequest newCert = server.takeRequest();
+    assertEquals("/acme/new-cert", newCert.getPath());
+    assertEquals("/acme/cert/1", server.takeRequest().getPath());
+    assertEquals("/acme/cert/1", server.takeRequest().getPath());
+    assertEquals("/acme/issuer-cert", server.takeRequest().getPath());
+    assertEquals(5, server.getRequestCount());
+  }
+
+  @Test
+  public void testPemChain() throws Exception {
+    ByteArrayOutputStream pem = new ByteArrayOutputStream();
+    PemCertificateSink pemSink = new PemCertificateSink(pem);
+    pemSink.accept(0, new ByteArrayInputStream(CERTIFICATE));
+    pemSink.accept(1, new ByteArrayInputStream(ISSUER));
+    assertTrue(pem.toString("US-ASCII").startsWith("-----BEGIN CERTIFICATE-----\n"));
+
+    server.enqueue(noncedResponse(null)
+      .setBody(new Buffer().write(pem.toByteArray()))
+      .addHeader("Content-Type", "application/pem-certificate-chain")
+    );
+
+    ByteArrayOutputStream downloaded = new ByteArrayOutputStream();
+    newClient().certificates().at(server.url("/acme/cert/1").toString()).download(new PemCertificateSink(downloaded));
+
+    assertArrayEquals(pem.toByteArray(), downloaded.toByteArray());
+  }
+
+  @Test
+  public void testIssue() throws Exception {
+    server.enqueue(noncedResponse(null)
+      .setBody(new Buffer().write(CERTIFICATE))
+      .addHeader("Location", server.url("/acme/cert/1"))
+      .setResponseCode(HttpURLConnection.HTTP_CREATED)
+    );
+
+    DefaultACMEClient client = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(server.url("/directory").url())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .withCertificateKeyAlgorithm("EC")
+        .build());
+
+    Certificate certificate = client.certificates().issue("fabric8.io", "www.fabric8.io");
+    assertEquals(server.url("/acme/cert/1").toString(), certificate.getLocation());
+    assertEquals("EC", certificate.getKeyPair().getPublic().getAlgorithm());
+    assertEquals(1, client.getKeyPairPool().getMisses() + client.getKeyPairPool().getHits());
+
+    server.takeRequest();
+    JSONObject payload = JWSObject.parse(server.takeRequest().getBody().readUtf8()).getPayload().toJSONObject();
+    assertEquals("new-cert", payload.get("resource"));
+    KeyPairPoolTest.verifyCsr(Base64.getUrlDecoder().decode((String) payload.get("csr")), certificate.getKeyPair().getPublic());
+  }
+
+  private ACMEClient newClient() throws Exception {
+    return new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(server.url("/directory").url())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .build());
+  }
+}
@@ -15,8 +15,19 @@
  */
 package io.fabric8.acme.client;
 
+import io.fabric8.acme.client.internal.HttpClientUtils;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import org.junit.Test;
 
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
 public class ConfigTest extends BaseTest {
 
   @Test(expected = ACMEClientException.class)
@@ -24,4 +35,76 @@ public class ConfigTest extends BaseTest {
     new Config(null, null, null, null);
   }
 
+  @Test
+  public void testDefaults() throws Exception {
+    Config config = new ConfigBuilder().withServer(server.url("/directory").url()).withKeyPair(keyPair()).build();
+    assertEquals(Config.DEFAULT_NONCE_POOL_SIZE, (int) config.getNoncePoolSize());
+    assertEquals(0, (int) config.getNonceLowWaterMark());
+    assertEquals(0, (long) config.getNonceMaxAge());
+    assertEquals(Config.DEFAULT_MAX_BAD_NONCE_RETRIES, (int) config.getMaxBadNonceRetries());
+    assertEquals(Config.DEFAULT_MAX_AUTHORIZATION_POLL_RATE, (int) config.getMaxAuthorizationPollRate());
+    assertEquals(Config.KEY_ALGORITHM_RSA, config.getCertificateKeyAlgorithm());
+    assertEquals(2048, (int) config.getCertificateKeySize());
+    assertEquals(Config.DEFAULT_KEY_PAIR_POOL_SIZE, (int) config.getKeyPairPoolSize());
+    assertEquals(Config.DEFAULT_AUTHORIZATION_CACHE_MARGIN, (long) config.getAuthorizationCacheMargin());
+    assertEquals(Config.DEFAULT_AUTHORIZATION_CACHE_SIZE, (int) config.getAuthorizationCacheSize());
+    assertEquals(0, (long) config.getDirectoryMaxAge());
+
+    config = new ConfigBuilder(config).withCertificateKeyAlgorithm(Config.KEY_ALGORITHM_EC).withCertificateKeySize(null).build();
+    assertEquals(256, (int) config.getCertificateKeySize());
+  }
+
+  @Test(expected = ACMEClientException.class)
+  public void testZeroPoolSize() throws Exception {
+    new ConfigBuilder().withServer(server.url("/directory").url()).withKeyPair(keyPair()).withNoncePoolSize(0).build();
+  }
+
+  @Test
+  public void testTransportDefaults() throws Exception {
+    Config config = new ConfigBuilder().withServer(server.url("/directory").url()).withKeyPair(keyPair()).build();
+    HttpSettings settings = config.getHttpSettings();
+    assertEquals(HttpSettings.DEFAULT_CONNECTION_POOL_SIZE, (int) settings.getConnectionPoolSize());
+    assertEquals(HttpSettings.DEFAULT_TIMEOUT, (long) settings.getReadTimeout());
+    assertEquals(HttpSettings.DEFAULT_MAX_REQUESTS_PER_HOST, (int) settings.getMaxRequestsPerHost());
+    assertTrue(settings.getHttp2());
+    assertNull(settings.getTlsSessionCacheSize());
+
+    OkHttpClient okHttpClient = HttpClientUtils.newClient(config);
+    assertTrue(okHttpClient.protocols().contains(Protocol.HTTP_2));
+  }
+
+  @Test
+  public void testTransportSettings() throws Exception {
+    Config config = new ConfigBuilder()
+      .withServer(server.url("/directory").url())
+      .withKeyPair(keyPair())
+      .withNewHttpSettings()
+        .withHttp2(false)
+        .withConnectTimeout(3L)
+        .withReadTimeout(30L)
+        .withWriteTimeout(0L)
+        .withMaxRequestsPerHost(100)
+        .withTlsSessionCacheSize(1000)
+      .endHttpSettings()
+      .build();
+
+    OkHttpClient okHttpClient = HttpClientUtils.newClient(config);
+    assertEquals(Collections.singletonList(Protocol.HTTP_1_1), okHttpClient.protocols());
+    assertEquals(3000, okHttpClient.connectTimeoutMillis());
+    assertEquals(30000, okHttpClient.readTimeoutMillis());
+    assertEquals(0, okHttpClient.writeTimeoutMillis());
+    assertEquals(100, okHttpClient.dispatcher().getMaxRequestsPerHost());
+    assertEquals(100, okHttpClient.dispatcher().getMaxRequests());
+    HttpClientUtils.close(okHttpClient);
+  }
+
+  @Test(expected = ACMEClientException.class)
+  public void testNegativeTimeout() throws Exception {
+    new ConfigBuilder().withServer(server.url("/directory").url()).withKeyPair(keyPair()).withNewHttpSettings().withReadTimeout(-1L).endHttpSettings().build();
+  }
+
+  private static KeyPair keyPair() throws Exception {
+    return KeyPairGenerator.getInstance("RSA").generateKeyPair();
+  }
+
 }
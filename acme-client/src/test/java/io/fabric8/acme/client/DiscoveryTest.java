@@ -15,16 +15,30 @@
  */
 package io.fabric8.acme.client;
 
+import io.fabric8.acme.client.internal.DirectoryProvider;
 import io.fabric8.acme.client.model.Directory;
 import okhttp3.HttpUrl;
 import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.net.HttpURLConnection;
+import java.nio.file.Path;
 import java.security.KeyPairGenerator;
+import java.util.concurrent.TimeUnit;
 
+import static io.fabric8.acme.client.Helpers.newDirectory;
+import static io.fabric8.acme.client.Helpers.noncedResponse;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 
 public class DiscoveryTest extends BaseTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   @Test
   public void testSuccessfulDiscovery() throws Exception {
     HttpUrl baseUrl = server.url("/directory");
@@ -44,4 +58,87 @@ public class DiscoveryTest extends BaseTest {
     RecordedRequest request1 = server.takeRequest();
     assertEquals("/directory", request1.getPath());
   }
+
+  @Test
+  public void testDiscoveryIsLazy() throws Exception {
+    HttpUrl baseUrl = server.url("/directory");
+
+    ACMEClient client = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .build());
+    assertEquals(0, server.getRequestCount());
+
+    client.directory();
+    client.directory();
+    assertEquals(1, server.getRequestCount());
+  }
+
+  @Test
+  public void testSharedDirectoryIsRevalidatedAndPersisted() throws Exception {
+    server.enqueue(noncedResponse(newDirectory(server)).addHeader("ETag", "\"v2\""));
+    server.enqueue(noncedResponse(null).setResponseCode(HttpURLConnection.HTTP_NOT_MODIFIED));
+    server.enqueue(noncedResponse(null).setResponseCode(HttpURLConnection.HTTP_NOT_MODIFIED));
+
+    HttpUrl baseUrl = server.url("/directory");
+    Path cacheFile = folder.getRoot().toPath().resolve("directory.json");
+
+    DefaultACMEClient client = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .build());
+    TestClock clock = new TestClock();
+    DirectoryProvider directory = new DirectoryProvider(client.getTransport(), client.getNonce(), baseUrl.url(), 60, cacheFile, clock);
+    DirectoryProvider other = new DirectoryProvider(client.getTransport(), client.getNonce(), baseUrl.url(), 60, null, clock);
+    directory.get();
+
+    // Shared with other clients for the same server, so no further request.
+    assertEquals(server.url("/acme/new-reg").toString(), other.get().newReg());
+    assertEquals(1, server.getRequestCount());
+
+    // Once stale it is still served straight away while being refreshed in the background.
+    clock.advance(61);
+    assertEquals(server.url("/acme/new-reg").toString(), other.get().newReg());
+    awaitRequests(2);
+    awaitLoaded(other);
+    clock.advance(61);
+    other.get();
+    awaitRequests(3);
+    awaitLoaded(other);
+
+    assertNull(server.takeRequest().getHeader("If-None-Match"));
+    assertNull(server.takeRequest().getHeader("If-None-Match"));
+    assertEquals("\"v2\"", server.takeRequest().getHeader("If-None-Match"));
+
+    // A client that isn't sharing starts from the persisted copy and revalidates it once.
+    ACMEClient restarted = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .withDirectoryCacheFile(cacheFile)
+        .build());
+    assertEquals(server.url("/acme/new-cert").toString(), restarted.directory().newCert());
+    awaitRequests(4);
+    assertEquals("\"v2\"", server.takeRequest().getHeader("If-None-Match"));
+    restarted.directory();
+    assertEquals(4, server.getRequestCount());
+  }
+
+  private void awaitRequests(int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+    while (server.getRequestCount() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, server.getRequestCount());
+  }
+
+  private static void awaitLoaded(DirectoryProvider directory) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+    while (directory.isLoading() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertFalse(directory.isLoading());
+  }
 }
@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import io.fabric8.acme.client.model.Certificate;
+import io.fabric8.acme.client.renewal.IssuanceListener;
+import io.fabric8.acme.client.renewal.IssuancePipeline;
+import io.fabric8.acme.client.renewal.IssuancePipelineConfigBuilder;
+import io.fabric8.acme.client.transport.HttpRequest;
+import io.fabric8.acme.client.transport.HttpResponse;
+import io.fabric8.acme.client.transport.HttpTransport;
+import io.fabric8.acme.client.transport.OkHttpTransport;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.fabric8.acme.client.Helpers.newDirectory;
+import static io.fabric8.acme.client.Helpers.noncedResponse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class IssuancePipelineTest extends BaseTest {
+
+  // New certificates are held back until this is released.
+  private final CountDownLatch issuing = new CountDownLatch(1);
+
+  private final AtomicInteger certificateRequests = new AtomicInteger();
+
+  // Whether a thread requesting a certificate had been interrupted by the time the answer came.
+  private final AtomicBoolean interruptedIssuing = new AtomicBoolean();
+
+  @Before
+  public void setUp() {
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+        if ("HEAD".equals(request.getMethod())) {
+          return noncedResponse(null);
+        }
+        if ("/directory".equals(request.getPath())) {
+          return noncedResponse(newDirectory(server));
+        }
+        if ("/acme/new-authz".equals(request.getPath())) {
+          // Already valid, so the challenge stages have nothing to do.
+          return noncedResponse("{\"identifier\":{\"type\":\"dns\",\"value\":\"fabric8.io\"},\"status\":\"valid\",\"expires\":\"2099-03-23T21:06:45.899078471Z\",\"challenges\":[],\"combinations\":[]}")
+            .addHeader("Location", server.url("/acme/authz/1"))
+            .setResponseCode(HttpURLConnection.HTTP_CREATED);
+        }
+        if ("/acme/new-cert".equals(request.getPath())) {
+          int n = certificateRequests.incrementAndGet();
+          issuing.await(30, TimeUnit.SECONDS);
+          return noncedResponse(null)
+            .addHeader("Location", server.url("/acme/cert/" + n))
+            .setResponseCode(HttpURLConnection.HTTP_CREATED);
+        }
+        return noncedResponse(null).setResponseCode(HttpURLConnection.HTTP_NOT_FOUND);
+      }
+    });
+  }
+
+  @Test
+  public void testFullPipelineHoldsUpSubmitter() throws Exception {
+    IssuancePipeline pipeline = newPipeline(1);
+
+    AtomicInteger pulled = new AtomicInteger();
+    Iterator<List<String>> domainSets = new Iterator<List<String>>() {
+      @Override
+      public boolean hasNext() {
+        return pulled.get() < 15;
+      }
+
+      @Override
+      public List<String> next() {
+        return Collections.singletonList("site" + pulled.getAndIncrement() + ".fabric8.io");
+      }
+    };
+    AtomicInteger issued = new AtomicInteger();
+    IssuanceListener listener = new IssuanceListener() {
+      @Override
+      public void issued(List<String> domains, Certificate certificate) {
+        issued.incrementAndGet();
+      }
+
+      @Override
+      public void failed(List<String> domains, Throwable cause) {
+      }
+    };
+
+    try {
+      CompletableFuture<CompletableFuture<Void>> feeding = CompletableFuture.supplyAsync(() -> pipeline.issueAll(domainSets, listener));
+
+      // Five stages of one worker and one queue slot each, plus the set waiting to get in.
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+      while (pulled.get() < 11 && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      Thread.sleep(200);
+      assertEquals(11, pulled.get());
+      assertEquals(1, certificateRequests.get());
+
+      issuing.countDown();
+      feeding.get(30, TimeUnit.SECONDS).get(30, TimeUnit.SECONDS);
+      assertEquals(15, issued.get());
+    } finally {
+      pipeline.close();
+    }
+  }
+
+  @Test
+  public void testCloseLetsCertificateBeingRequestedFinish() throws Exception {
+    IssuancePipeline pipeline = newPipeline(16);
+    try {
+      CompletableFuture<Certificate> inFlight = pipeline.submit(Arrays.asList("fabric8.io"));
+      CompletableFuture<Certificate> queued = pipeline.submit(Arrays.asList("www.fabric8.io"));
+
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+      while ((certificateRequests.get() == 0 || pipeline.getStats().get(4).getQueued() == 0) && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(1, pipeline.getStats().get(4).getActive());
+
+      pipeline.close();
+      try {
+        queued.get(10, TimeUnit.SECONDS);
+        fail("Expected the queued domain set to fail");
+      } catch (ExecutionException e) {
+        assertEquals("pipelineError", ((ACMEClientException) e.getCause()).getType());
+      }
+
+      issuing.countDown();
+      assertEquals(server.url("/acme/cert/1").toString(), inFlight.get(10, TimeUnit.SECONDS).getLocation());
+      assertEquals(1, certificateRequests.get());
+      assertFalse(interruptedIssuing.get());
+    } finally {
+      pipeline.close();
+    }
+  }
+
+  @Test(expected = ACMEClientException.class)
+  public void testSubmitAfterCloseFails() throws Exception {
+    IssuancePipeline pipeline = newPipeline(1);
+    pipeline.close();
+    pipeline.submit(Arrays.asList("fabric8.io"));
+  }
+
+  private IssuancePipeline newPipeline(int queueCapacity) throws Exception {
+    DefaultACMEClient client = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(server.url("/directory").url())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .withCertificateKeyAlgorithm("EC")
+        .withTransportFactory(config -> new HttpTransport() {
+          private final HttpTransport delegate = new OkHttpTransport(config);
+
+          @Override
+          public HttpResponse execute(HttpRequest request) throws IOException {
+            HttpResponse response = delegate.execute(request);
+            if (request.getUrl().endsWith("/acme/new-cert") && Thread.currentThread().isInterrupted()) {
+              interruptedIssuing.set(true);
+            }
+            return response;
+          }
+
+          @Override
+          public CompletableFuture<HttpResponse> executeAsync(HttpRequest request) {
+            return delegate.executeAsync(request);
+          }
+
+          @Override
+          public void close() {
+            delegate.close();
+          }
+        })
+        .build());
+    return new IssuancePipeline(
+      client,
+      "http-01",
+      (domain, challenge) -> CompletableFuture.completedFuture(null),
+      new IssuancePipelineConfigBuilder()
+        .withAuthorizeWorkers(1)
+        .withProvisionWorkers(1)
+        .withReadyWorkers(1)
+        .withPollWorkers(1)
+        .withIssueWorkers(1)
+        .withQueueCapacity(queueCapacity)
+        .build()
+    ).start();
+  }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import io.fabric8.acme.client.internal.JSONParserUtils;
+import net.minidev.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class JSONParserUtilsTest {
+
+  @Test
+  public void testConcurrentParsing() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        final int thread = t;
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 2000; i++) {
+            String token = "token-" + thread + "-" + i;
+            String json = "{\"type\":\"http-01\",\"status\":\"pending\",\"token\":\"" + token + "\",\"uri\":\"https://example.com/acme/challenge/" + i + "\"}";
+            JSONObject parsed = i % 2 == 0
+              ? JSONParserUtils.parse(json)
+              : JSONParserUtils.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+            assertEquals(token, parsed.get("token"));
+            assertEquals("https://example.com/acme/challenge/" + i, parsed.get("uri"));
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+}
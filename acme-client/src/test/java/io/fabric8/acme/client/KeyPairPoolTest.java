@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import io.fabric8.acme.client.internal.CsrBuilder;
+import io.fabric8.acme.client.internal.KeyPairPool;
+import io.fabric8.acme.client.model.CertificateRequest;
+import io.fabric8.acme.client.model.NewCertificate;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class KeyPairPoolTest {
+
+  @Test
+  public void testCsr() throws Exception {
+    for (String algorithm : new String[]{"RSA", "EC"}) {
+      KeyPair keyPair = KeyPairGenerator.getInstance(algorithm).generateKeyPair();
+
+      byte[] csr = CsrBuilder.build(keyPair, Arrays.asList("fabric8.io", "www.fabric8.io"));
+
+      byte[] requestInfo = verifyCsr(csr, keyPair.getPublic());
+      // dNSName entries are [2] IMPLICIT IA5String.
+      assertTrue(indexOf(requestInfo, concat(new byte[]{(byte) 0x82, 10}, "fabric8.io".getBytes(StandardCharsets.US_ASCII))) > 0);
+      assertTrue(indexOf(requestInfo, concat(new byte[]{(byte) 0x82, 14}, "www.fabric8.io".getBytes(StandardCharsets.US_ASCII))) > 0);
+
+      assertEquals(Arrays.asList("fabric8.io", "www.fabric8.io"), CsrBuilder.readDomains(NewCertificate.encodeCsr(csr)));
+    }
+  }
+
+  @Test
+  public void testReadDomainsFromUnparseableCsr() {
+    assertEquals(Collections.emptyList(), CsrBuilder.readDomains(NewCertificate.encodeCsr(new byte[]{1, 2, 3})));
+    assertEquals(Collections.emptyList(), CsrBuilder.readDomains(NewCertificate.encodeCsr(new byte[]{0x30, (byte) 0x84, 0, 0})));
+    assertEquals(Collections.emptyList(), CsrBuilder.readDomains(null));
+  }
+
+  @Test
+  public void testPool() throws Exception {
+    KeyPairPool pool = new KeyPairPool(Config.KEY_ALGORITHM_EC, 256, 2);
+
+    assertNotNull(pool.take());
+    assertEquals(1, pool.getMisses());
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (pool.getSize() < pool.getCapacity() && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(2, pool.getSize());
+
+    CertificateRequest request = pool.request(Arrays.asList("fabric8.io"));
+    assertEquals(1, pool.getHits());
+    assertEquals(1, pool.getMisses());
+    verifyCsr(request.getCsr(), request.getKeyPair().getPublic());
+
+    request = pool.requestAsync(Arrays.asList("fabric8.io")).get(10, TimeUnit.SECONDS);
+    assertEquals(2, pool.getHits());
+    verifyCsr(request.getCsr(), request.getKeyPair().getPublic());
+  }
+
+  @Test(expected = ACMEClientException.class)
+  public void testUnsupportedKeySize() {
+    new KeyPairPool(Config.KEY_ALGORITHM_EC, 123, 2);
+  }
+
+  /**
+   * Checks the request embeds the public key and is signed by the matching private key, and
+   * returns the encoded CertificationRequestInfo.
+   */
+  static byte[] verifyCsr(byte[] csr, PublicKey publicKey) throws Exception {
+    assertEquals(0x30, csr[0]);
+    int offset = headerLength(csr, 0);
+    int requestInfoLength = headerLength(csr, offset) + contentLength(csr, offset);
+    byte[] requestInfo = Arrays.copyOfRange(csr, offset, offset + requestInfoLength);
+    offset += requestInfoLength;
+
+    // Skip the signature algorithm, then the BIT STRING's unused bits byte.
+    offset += headerLength(csr, offset) + contentLength(csr, offset);
+    assertEquals(0x03, csr[offset]);
+    int signatureStart = offset + headerLength(csr, offset) + 1;
+    byte[] signatureBytes = Arrays.copyOfRange(csr, signatureStart, offset + headerLength(csr, offset) + contentLength(csr, offset));
+
+    assertTrue(indexOf(requestInfo, publicKey.getEncoded()) > 0);
+    Signature signature = Signature.getInstance("RSA".equals(publicKey.getAlgorithm()) ? "SHA256withRSA" : "SHA256withECDSA");
+    signature.initVerify(publicKey);
+    signature.update(requestInfo);
+    assertTrue(signature.verify(signatureBytes));
+    return requestInfo;
+  }
+
+  private static int headerLength(byte[] der, int offset) {
+    int length = der[offset + 1] & 0xff;
+    return length < 0x80 ? 2 : 2 + (length & 0x7f);
+  }
+
+  private static int contentLength(byte[] der, int offset) {
+    int length = der[offset + 1] & 0xff;
+    if (length < 0x80) {
+      return length;
+    }
+    int result = 0;
+    for (int i = 0; i < (length & 0x7f); i++) {
+      result = (result << 8) | (der[offset + 2 + i] & 0xff);
+    }
+    return result;
+  }
+
+  private static int indexOf(byte[] haystack, byte[] needle) {
+    for (int i = 0; i <= haystack.length - needle.length; i++) {
+      if (Arrays.equals(needle, Arrays.copyOfRange(haystack, i, i + needle.length))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static byte[] concat(byte[] a, byte[] b) {
+    byte[] result = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, result, a.length, b.length);
+    return result;
+  }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import io.fabric8.acme.client.internal.LinkHeaderFieldParser;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LinkHeaderFieldParserTest {
+
+  private static final String[] PIECES = {
+    "<", ">", "\"", "\\", ";", ",", "=", " ", "\t", "\n", " ", "rel", "REL", "next", "up", "terms-of-service",
+    "title", "a", "x", "https://example.com/acme/reg/1", "é", "İ"
+  };
+
+  private static final String[] RELATIONS = {"next", "up", "terms-of-service", "recover", "a", "x", "", "rel", "é", "i̇"};
+
+  @Test
+  public void testRegistrationLinks() {
+    LinkHeaderFieldParser parser = new LinkHeaderFieldParser(Arrays.asList(
+      "<https://example.com/acme/new-authz>;rel=\"next\"",
+      "<https://example.com/terms>;rel=\"terms-of-service\";title=\"Terms; v1, \\\"final\\\"\", <https://example.com/acme/recover-reg>; REL=\"recover other\""
+    ));
+
+    assertEquals("https://example.com/acme/new-authz", parser.getFirstTargetForRelation("next"));
+    assertEquals("https://example.com/terms", parser.getFirstTargetForRelation("terms-of-service"));
+    assertEquals("https://example.com/acme/recover-reg", parser.getFirstTargetForRelation("recover"));
+    assertEquals("https://example.com/acme/recover-reg", parser.getFirstTargetForRelation("other"));
+    assertNull(parser.getFirstTargetForRelation("up"));
+    assertNull(new LinkHeaderFieldParser((List<String>) null).getFirstTargetForRelation("up"));
+  }
+
+  @Test
+  public void testInvalidLinksAreIgnored() {
+    LinkHeaderFieldParser parser = new LinkHeaderFieldParser(Collections.singletonList(
+      "https://example.com/1;rel=up, <https://example.com/2>;rel=up;rel=next, <https://example.com/3>;rel;rel=up"
+    ));
+
+    assertEquals("https://example.com/3", parser.getFirstTargetForRelation("up"));
+    assertNull(parser.getFirstTargetForRelation("next"));
+  }
+
+  @Test
+  public void testMatchesReferenceParser() {
+    Random random = new Random(5988);
+    for (int i = 0; i < 20000; i++) {
+      List<String> fieldValues = new ArrayList<>();
+      for (int f = random.nextInt(3); f >= 0; f--) {
+        fieldValues.add(random.nextBoolean() ? links(random) : soup(random));
+      }
+
+      LinkHeaderFieldParser parser = new LinkHeaderFieldParser(fieldValues);
+      ReferenceLinkHeaderFieldParser reference = new ReferenceLinkHeaderFieldParser(fieldValues);
+      for (String relation : RELATIONS) {
+        assertEquals(fieldValues + " rel=" + relation, reference.getFirstTargetForRelation(relation), parser.getFirstTargetForRelation(relation));
+      }
+    }
+  }
+
+  // Mostly well-formed link-values, with the odd character inserted or dropped.
+  private static String links(Random random) {
+    StringBuilder links = new StringBuilder();
+    for (int l = random.nextInt(4); l >= 0; l--) {
+      links.append(random.nextInt(4) == 0 ? " " : "").append("<https://example.com/").append(random.nextInt(10)).append('>');
+      for (int p = random.nextInt(4); p > 0; p--) {
+        switch (random.nextInt(6)) {
+          case 0:
+            links.append(";rel=\"").append(pick(random, RELATIONS)).append(random.nextBoolean() ? " " : "  ").append(pick(random, RELATIONS)).append('"');
+            break;
+          case 1:
+            links.append("; rel=").append(pick(random, RELATIONS));
+            break;
+          case 2:
+            links.append(";title=\"a; b, \\\"c\\\"\"");
+            break;
+          case 3:
+            links.append(";REL=").append(pick(random, RELATIONS));
+            break;
+          case 4:
+            links.append(";rel");
+            break;
+          default:
+            links.append(";=x");
+        }
+      }
+      if (l > 0) {
+        links.append(random.nextBoolean() ? ", " : ",");
+      }
+    }
+    for (int m = random.nextInt(3); m > 0 && links.length() > 0; m--) {
+      int at = random.nextInt(links.length());
+      if (random.nextBoolean()) {
+        links.deleteCharAt(at);
+      } else {
+        links.insert(at, pick(random, PIECES));
+      }
+    }
+    return links.toString();
+  }
+
+  private static String soup(Random random) {
+    StringBuilder soup = new StringBuilder();
+    for (int p = random.nextInt(20); p > 0; p--) {
+      soup.append(pick(random, PIECES));
+    }
+    return soup.toString();
+  }
+
+  private static String pick(Random random, String[] choices) {
+    return choices[random.nextInt(choices.length)];
+  }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import io.fabric8.acme.client.internal.DirectoryProvider;
+import io.fabric8.acme.client.internal.Nonce;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.Test;
+
+import java.security.KeyPairGenerator;
+import java.util.concurrent.TimeUnit;
+
+import static io.fabric8.acme.client.Helpers.noncedResponse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class NonceTest extends BaseTest {
+
+  @Test
+  public void testNonceFromDirectoryIsPooled() throws Exception {
+    server.enqueue(noncedResponse(null));
+
+    HttpUrl baseUrl = server.url("/directory");
+
+    DefaultACMEClient client = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .build());
+
+    // Discovery is lazy - asking for the directory fetches it and pools its nonce.
+    client.directory();
+
+    Nonce nonce = client.getNonce();
+    assertEquals(1, nonce.getSize());
+
+    assertNotNull(nonce.get());
+    assertEquals(1, nonce.getHits());
+    assertEquals(0, nonce.getMisses());
+
+    assertNotNull(nonce.get());
+    assertEquals(1, nonce.getHits());
+    assertEquals(1, nonce.getMisses());
+
+    assertEquals("/directory", server.takeRequest().getPath());
+    RecordedRequest head = server.takeRequest();
+    assertEquals("HEAD", head.getMethod());
+    assertEquals("/directory", head.getPath());
+  }
+
+  @Test
+  public void testBackgroundRefill() throws Exception {
+    for (int i = 0; i < 4; i++) {
+      server.enqueue(noncedResponse(null));
+    }
+
+    HttpUrl baseUrl = server.url("/directory");
+
+    DefaultACMEClient client = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .withNoncePoolSize(4)
+        .withNonceLowWaterMark(2)
+        .build());
+    client.directory();
+
+    Nonce nonce = client.getNonce();
+
+    // Taking the directory nonce drops the pool below the low-water mark.
+    assertNotNull(nonce.get());
+
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+    while (nonce.getSize() < 4 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(4, nonce.getSize());
+
+    for (int i = 0; i < 2; i++) {
+      assertNotNull(nonce.get());
+    }
+    assertEquals(3, nonce.getHits());
+    assertEquals(0, nonce.getMisses());
+    assertEquals(5, server.getRequestCount());
+  }
+
+  @Test
+  public void testExpiredNoncesAreDiscarded() throws Exception {
+    server.enqueue(noncedResponse(null));
+
+    HttpUrl baseUrl = server.url("/directory");
+
+    DefaultACMEClient client = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .build());
+    TestClock clock = new TestClock();
+    Nonce nonce = new Nonce(client.getTransport(), baseUrl.url(), 10, 0, 1, TimeUnit.SECONDS, 3, clock);
+    new DirectoryProvider(client.getTransport(), nonce, baseUrl.url(), 0, null).get();
+    assertEquals(1, nonce.getSize());
+
+    clock.advance(2);
+
+    assertNotNull(nonce.get());
+    assertEquals(0, nonce.getHits());
+    assertEquals(1, nonce.getMisses());
+    assertEquals(1, nonce.getExpired());
+  }
+}
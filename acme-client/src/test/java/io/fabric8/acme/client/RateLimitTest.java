@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import io.fabric8.acme.client.internal.CsrBuilder;
+import io.fabric8.acme.client.model.NewCertificate;
+import io.fabric8.acme.client.model.Registration;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.MockResponse;
+import org.junit.Test;
+
+import java.net.HttpURLConnection;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static io.fabric8.acme.client.Helpers.noncedResponse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RateLimitTest extends BaseTest {
+
+  private static final String REGISTRATION = "{\n" +
+    "  \"id\": 1,\n" +
+    "  \"key\": {\n" +
+    "    \"kty\": \"RSA\",\n" +
+    "    \"kid\": \"3gb1Haaaaaah0TBsQaaaaa\",\n" +
+    "    \"n\": \"asafada-kLP-2mT3vBaWJG_JLJKdV5xtdsEOkmAZzY91fRM4HoLmvLrpjB4siACOZulkyKgs8DM0v9BP4T9hIqUBzvKLGRCCXFypwLDVyLYmkTsFwi-wvxfS13rZXdrLjwdAztLUIsJGqCZY6Lw6XZ1E9GriWnQQCqYRLi3ECEi33-BcuYJ7FBz36eeRZeGcHOLE5susgO00YxTAha4dgjl_SnbvYMOTXv4PEk7ai_ecQk-XlVGcCJrw\",\n" +
+    "    \"e\": \"AQAB\"\n" +
+    "  },\n" +
+    "  \"contact\": [\n" +
+    "    \"mailto:noone@nowhere.com\"\n" +
+    "  ]\n" +
+    "}";
+
+  private MockResponse registrationResponse() {
+    return noncedResponse(REGISTRATION)
+      .addHeader("Location", server.url("/acme/reg/1"))
+      .setResponseCode(HttpURLConnection.HTTP_CREATED);
+  }
+
+  @Test
+  public void testRateLimitedWaitsOutRetryAfter() throws Exception {
+    server.enqueue(noncedResponse("{\"type\":\"urn:acme:error:rateLimited\",\"detail\":\"Too many registrations\"}")
+      .addHeader("Content-Type", "application/problem+json")
+      .addHeader("Retry-After", "1")
+      .setResponseCode(429)
+    );
+    server.enqueue(registrationResponse());
+
+    HttpUrl baseUrl = server.url("/directory");
+
+    DefaultACMEClient client = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .build());
+
+    long start = System.nanoTime();
+    Registration reg = client.registration().createNew().addToContact("mailto", "noone@nowhere.com").send();
+    long elapsed = System.nanoTime() - start;
+
+    assertEquals(server.url("/acme/reg/1").toString(), reg.getLocation());
+    assertTrue("Retried after " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms", elapsed >= TimeUnit.SECONDS.toNanos(1));
+    assertEquals(1, client.getRateLimiter().getThrottledCount());
+
+    assertEquals("/directory", server.takeRequest().getPath());
+    assertEquals("/acme/new-reg", server.takeRequest().getPath());
+    assertEquals("/acme/new-reg", server.takeRequest().getPath());
+  }
+
+  @Test
+  public void testRequestBeyondLimitFailsWithoutBeingSent() throws Exception {
+    server.enqueue(registrationResponse());
+
+    HttpUrl baseUrl = server.url("/directory");
+    KeyPair keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+
+    DefaultACMEClient client = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(keyPair)
+        .withNewRateLimits()
+          .withNewNewRegistration(1, TimeUnit.HOURS.toSeconds(1))
+          .withMaxWait(0L)
+        .endRateLimits()
+        .build());
+
+    client.registration().createNew().addToContact("mailto", "noone@nowhere.com").send();
+    try {
+      client.registration().createNew().addToContact("mailto", "noone@nowhere.com").send();
+      fail("Expected the second registration to be rate limited");
+    } catch (ACMEClientException e) {
+      assertEquals("urn:acme:error:rateLimited", e.getType());
+    }
+
+    assertEquals(1, client.getRateLimiter().getRejectedCount());
+    // The directory and the first registration only.
+    assertEquals(2, server.getRequestCount());
+  }
+
+  @Test
+  public void testSubdomainsShareRegisteredDomainLimit() throws Exception {
+    server.enqueue(noncedResponse(null)
+      .addHeader("Location", server.url("/acme/cert/1"))
+      .setResponseCode(HttpURLConnection.HTTP_CREATED)
+    );
+
+    HttpUrl baseUrl = server.url("/directory");
+
+    DefaultACMEClient client = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .withCertificateKeyAlgorithm("EC")
+        .withNewRateLimits()
+          .withNewRegisteredDomain(1, TimeUnit.DAYS.toSeconds(7))
+          .withMaxWait(0L)
+        .endRateLimits()
+        .build());
+
+    client.certificates().issue("www.sap.de");
+    try {
+      client.certificates().issue("shop.sap.de");
+      fail("Expected the second certificate for sap.de to be rate limited");
+    } catch (ACMEClientException e) {
+      assertEquals("urn:acme:error:rateLimited", e.getType());
+    }
+
+    assertEquals(1, client.getRateLimiter().getRejectedCount());
+    // The directory and the first certificate only.
+    assertEquals(2, server.getRequestCount());
+  }
+
+  @Test
+  public void testCreateNewChargesDomainsInCsr() throws Exception {
+    server.enqueue(noncedResponse(null)
+      .addHeader("Location", server.url("/acme/cert/1"))
+      .setResponseCode(HttpURLConnection.HTTP_CREATED)
+    );
+
+    HttpUrl baseUrl = server.url("/directory");
+
+    DefaultACMEClient client = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(KeyPairGenerator.getInstance("RSA").generateKeyPair())
+        .withNewRateLimits()
+          .withNewRegisteredDomain(1, TimeUnit.DAYS.toSeconds(7))
+          .withMaxWait(0L)
+        .endRateLimits()
+        .build());
+
+    KeyPair keyPair = KeyPairGenerator.getInstance("EC").generateKeyPair();
+    client.certificates().createNew().withCsr(NewCertificate.encodeCsr(CsrBuilder.build(keyPair, Arrays.asList("www.sap.de")))).send();
+    try {
+      client.certificates().createNew().withCsr(NewCertificate.encodeCsr(CsrBuilder.build(keyPair, Arrays.asList("shop.sap.de")))).send();
+      fail("Expected the second certificate for sap.de to be rate limited");
+    } catch (ACMEClientException e) {
+      assertEquals("urn:acme:error:rateLimited", e.getType());
+    }
+
+    assertEquals(1, client.getRateLimiter().getRejectedCount());
+    assertEquals(2, server.getRequestCount());
+  }
+}
@@ -22,8 +22,11 @@ import com.nimbusds.jose.jwk.RSAKey;
 import com.nimbusds.jose.util.Base64URL;
 import io.fabric8.acme.client.internal.JWKUtils;
 import io.fabric8.acme.client.model.Registration;
+import io.fabric8.acme.client.model.RegistrationBuilder;
 import net.minidev.json.JSONObject;
 import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.RecordedRequest;
 import org.junit.Test;
 
@@ -31,10 +34,16 @@ import java.net.HttpURLConnection;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.interfaces.RSAPublicKey;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static io.fabric8.acme.client.Helpers.newDirectory;
 import static io.fabric8.acme.client.Helpers.noncedResponse;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -183,4 +192,88 @@ public class RegistrationKeyTest extends BaseTest {
     assertEquals("/acme/reg/1", server.takeRequest().getPath());
   }
 
+  @Test
+  public void testInFlightRequestIsResignedAfterKeyUpdate() throws Exception {
+    KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+    kpg.initialize(2048);
+    KeyPair oldKeyPair = kpg.generateKeyPair();
+    KeyPair newKeyPair = kpg.generateKeyPair();
+    Base64URL oldThumbprint = JWKUtils.jwkFromPublicKey(oldKeyPair.getPublic()).computeThumbprint();
+    Base64URL newThumbprint = JWKUtils.jwkFromPublicKey(newKeyPair.getPublic()).computeThumbprint();
+
+    CountDownLatch updateReceived = new CountDownLatch(1);
+    CountDownLatch keyChanged = new CountDownLatch(1);
+    List<Base64URL> updateKeys = new CopyOnWriteArrayList<>();
+    List<Base64URL> registrationKeys = new CopyOnWriteArrayList<>();
+
+    // Answers like a server whose registration belongs to whichever key it was last changed to.
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+        if ("HEAD".equals(request.getMethod())) {
+          return noncedResponse(null);
+        }
+        if ("/directory".equals(request.getPath())) {
+          return noncedResponse(newDirectory(server));
+        }
+        if ("/acme/new-reg".equals(request.getPath())) {
+          return noncedResponse(null)
+            .addHeader("Location", server.url("/acme/reg/1"))
+            .setResponseCode(HttpURLConnection.HTTP_CONFLICT);
+        }
+        try {
+          JWSObject jws = JWSObject.parse(request.getBody().readUtf8());
+          Base64URL thumbprint = jws.getHeader().getJWK().computeThumbprint();
+          JSONObject payload = jws.getPayload().toJSONObject();
+          if (payload.containsKey("newKey")) {
+            keyChanged.countDown();
+            return noncedResponse("{}").setResponseCode(HttpURLConnection.HTTP_OK);
+          }
+          if (payload.containsKey("contact")) {
+            // Hold the update until the key has been changed under it.
+            updateKeys.add(thumbprint);
+            updateReceived.countDown();
+            keyChanged.await(5, TimeUnit.SECONDS);
+          } else {
+            registrationKeys.add(thumbprint);
+          }
+          Base64URL current = keyChanged.getCount() == 0 ? newThumbprint : oldThumbprint;
+          if (!current.equals(thumbprint)) {
+            return noncedResponse("{\"type\":\"urn:acme:error:unauthorized\",\"detail\":\"No registration exists matching provided key\"}")
+              .setResponseCode(HttpURLConnection.HTTP_FORBIDDEN);
+          }
+          return noncedResponse("{\"id\":1,\"key\":" + jws.getHeader().getJWK().toJSONString() + ",\"contact\":[\"mailto:noone@nowhere.com\"]}")
+            .addHeader("Location", server.url("/acme/reg/1"))
+            .setResponseCode(HttpURLConnection.HTTP_ACCEPTED);
+        } catch (Exception e) {
+          return new MockResponse().setResponseCode(HttpURLConnection.HTTP_BAD_REQUEST);
+        }
+      }
+    });
+
+    HttpUrl baseUrl = server.url("/directory");
+
+    DefaultACMEClient client = new DefaultACMEClient(
+      new ConfigBuilder()
+        .withServer(baseUrl.url())
+        .withKeyPair(oldKeyPair)
+        .build());
+
+    CompletableFuture<Registration> update = client.async().registration().update(
+      new RegistrationBuilder().withLocation(server.url("/acme/reg/1").toString()).addToContact("mailto", "noone@nowhere.com").build());
+    assertTrue(updateReceived.await(5, TimeUnit.SECONDS));
+
+    client.registration().updateKey(newKeyPair);
+
+    assertEquals("noone@nowhere.com", update.get(5, TimeUnit.SECONDS).getContact().get("mailto"));
+    assertEquals(2, updateKeys.size());
+    assertEquals(oldThumbprint, updateKeys.get(0));
+    assertEquals(newThumbprint, updateKeys.get(1));
+
+    // Requests from here on are signed with the new key.
+    client.registration().get();
+    assertEquals(newThumbprint, registrationKeys.get(registrationKeys.size() - 1));
+    assertFalse(registrationKeys.subList(1, registrationKeys.size()).contains(oldThumbprint));
+  }
+
 }
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import io.fabric8.acme.client.renewal.RenewalConfigBuilder;
+import io.fabric8.acme.client.renewal.RenewalScheduler;
+import io.fabric8.acme.client.renewal.TrackedCertificate;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RenewalSchedulerTest {
+
+  private static final Instant RENEWED_NOT_AFTER = Instant.now().plus(90, ChronoUnit.DAYS);
+
+  @Test
+  public void testClosestToExpiryRenewedFirst() throws Exception {
+    List<String> renewed = new CopyOnWriteArrayList<>();
+    try (RenewalScheduler scheduler = new RenewalScheduler(
+      certificate -> {
+        renewed.add(certificate.getName());
+        return CompletableFuture.completedFuture(RENEWED_NOT_AFTER);
+      },
+      new RenewalConfigBuilder().withJitter(0L).withMaxConcurrentRenewals(1).build())) {
+
+      Instant now = Instant.now();
+      scheduler.track("b", Collections.singletonList("b.fabric8.io"), now.plus(10, ChronoUnit.DAYS));
+      scheduler.track("a", Collections.singletonList("a.fabric8.io"), now.plus(5, ChronoUnit.DAYS));
+      scheduler.track("c", Collections.singletonList("c.fabric8.io"), now.plus(20, ChronoUnit.DAYS));
+      scheduler.track("later", Collections.singletonList("later.fabric8.io"), now.plus(60, ChronoUnit.DAYS));
+      scheduler.start();
+
+      await(() -> scheduler.getRenewedCount() == 3);
+      assertEquals(3, renewed.size());
+      assertEquals(renewed.toString(), "a", renewed.get(0));
+      assertEquals("b", renewed.get(1));
+      assertEquals("c", renewed.get(2));
+
+      assertEquals(RENEWED_NOT_AFTER.toEpochMilli(), scheduler.get("a").getNotAfter().toEpochMilli());
+      assertEquals(now.plus(30, ChronoUnit.DAYS).toEpochMilli(), scheduler.getNextRenewal().toEpochMilli());
+    }
+  }
+
+  @Test
+  public void testConcurrencyIsBoundedAndFailuresRetried() throws Exception {
+    List<CompletableFuture<Instant>> renewals = new CopyOnWriteArrayList<>();
+    try (RenewalScheduler scheduler = new RenewalScheduler(
+      certificate -> {
+        CompletableFuture<Instant> renewal = new CompletableFuture<>();
+        renewals.add(renewal);
+        return renewal;
+      },
+      new RenewalConfigBuilder().withJitter(0L).withMaxConcurrentRenewals(2).withRetryDelay(1).build()).start()) {
+
+      for (int i = 0; i < 5; i++) {
+        scheduler.track("cert-" + i, Collections.singletonList("fabric8.io"), Instant.now());
+      }
+
+      await(() -> renewals.size() == 2);
+      Thread.sleep(200);
+      assertEquals(2, renewals.size());
+      assertEquals(2, scheduler.getInFlight());
+
+      renewals.get(0).completeExceptionally(new ACMEClientException("serverInternal", "Injected failure"));
+      renewals.get(1).complete(RENEWED_NOT_AFTER);
+      await(() -> renewals.size() == 4);
+
+      for (int i = 2; i < 4; i++) {
+        renewals.get(i).complete(RENEWED_NOT_AFTER);
+      }
+      // The last of the originals, then the failed one again once its retry delay has passed.
+      await(() -> renewals.size() == 6);
+      renewals.get(4).complete(RENEWED_NOT_AFTER);
+      renewals.get(5).complete(RENEWED_NOT_AFTER);
+
+      await(() -> scheduler.getRenewedCount() == 5);
+      assertEquals(1, scheduler.getFailedCount());
+      assertEquals(0, scheduler.getInFlight());
+    }
+  }
+
+  @Test
+  public void testTrackManyCertificates() throws Exception {
+    int count = 500000;
+    List<String> domains = Collections.singletonList("fabric8.io");
+    Instant now = Instant.now();
+
+    try (RenewalScheduler scheduler = new RenewalScheduler(certificate -> new CompletableFuture<>())) {
+      for (int i = 0; i < count; i++) {
+        scheduler.track("cert-" + i, domains, now.plus(40 + (i * 7919L) % 50, ChronoUnit.DAYS));
+      }
+      for (int i = 0; i < count; i += 2) {
+        scheduler.untrack("cert-" + i);
+      }
+      // Re-tracking moves a certificate within the heap rather than adding a second entry.
+      scheduler.track("cert-1", domains, now.plus(31, ChronoUnit.DAYS));
+
+      assertEquals(count / 2, scheduler.size());
+      // Each insertion or removal moves a certificate at most the heap's depth, which is under 19
+      // levels for 500000 - a re-track is one of each.
+      long operations = count + count / 2 + 2;
+      long moves = scheduler.getHeapMoves();
+      assertTrue(moves + " moves for " + operations + " operations", moves <= operations * 19);
+      assertTrue(scheduler.getNextRenewal().isBefore(now.plus(1, ChronoUnit.DAYS).plus(1, ChronoUnit.MINUTES)));
+
+      List<String> names = new ArrayList<>();
+      for (int i = 1; i < count; i += 2) {
+        names.add("cert-" + i);
+      }
+      for (String name : names) {
+        assertTrue(scheduler.untrack(name));
+      }
+      assertEquals(0, scheduler.size());
+      assertNull(scheduler.getNextRenewal());
+    }
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!condition.getAsBoolean()) {
+      assertTrue("Timed out waiting", System.nanoTime() < deadline);
+      Thread.sleep(10);
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import io.fabric8.acme.client.internal.RetryAfterUtils;
+import io.fabric8.acme.client.internal.RetryScheduler;
+import org.junit.Test;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RetrySchedulerTest {
+
+  @Test
+  public void testTimeoutsFireInDeadlineOrder() throws Exception {
+    // A tiny wheel forces the later timeouts to wait for several rounds.
+    RetryScheduler scheduler = new RetryScheduler(10, TimeUnit.MILLISECONDS, 4);
+    List<Integer> fired = new CopyOnWriteArrayList<>();
+    CountDownLatch latch = new CountDownLatch(3);
+
+    scheduler.schedule(() -> { fired.add(3); latch.countDown(); }, 300, TimeUnit.MILLISECONDS);
+    scheduler.schedule(() -> { fired.add(1); latch.countDown(); }, 20, TimeUnit.MILLISECONDS);
+    scheduler.schedule(() -> { fired.add(2); latch.countDown(); }, 150, TimeUnit.MILLISECONDS);
+    assertEquals(3, scheduler.getQueueDepth());
+
+    long start = System.nanoTime();
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 250);
+    assertEquals(0, scheduler.getQueueDepth());
+    assertEquals(1, (int) fired.get(0));
+    assertEquals(2, (int) fired.get(1));
+    assertEquals(3, (int) fired.get(2));
+  }
+
+  @Test
+  public void testScheduledFuture() throws Exception {
+    RetryScheduler scheduler = new RetryScheduler(10, TimeUnit.MILLISECONDS, 8);
+    scheduler.schedule(50, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS);
+    assertEquals(0, scheduler.getQueueDepth());
+  }
+
+  @Test
+  public void testRetryAfterForms() {
+    assertEquals(120, RetryAfterUtils.delaySeconds("120"));
+    assertEquals(RetryAfterUtils.DEFAULT_RETRY_AFTER_SECONDS, RetryAfterUtils.delaySeconds(null));
+    assertEquals(7, RetryAfterUtils.delaySeconds("soon", 7));
+    assertEquals(0, RetryAfterUtils.delaySeconds("Wed, 21 Oct 2015 07:28:00 GMT"));
+
+    long delay = RetryAfterUtils.delaySeconds(DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now().plus(30, ChronoUnit.SECONDS)));
+    assertTrue(delay >= 28 && delay <= 30);
+  }
+
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.Payload;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import io.fabric8.acme.client.internal.Signer;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SignerTest {
+
+  private static final Payload PAYLOAD = new Payload("{\"resource\":\"new-authz\",\"identifier\":{\"type\":\"dns\",\"value\":\"www.example.com\"}}");
+
+  @Test
+  public void testSignaturesVerify() throws Exception {
+    assertVerifies(rsaKeyPair(), JWSAlgorithm.RS256, 10);
+    assertVerifies(rsaKeyPair(), JWSAlgorithm.RS512, 10);
+    // Enough signatures for R and S to come out both shorter than the curve and padded.
+    assertVerifies(ecKeyPair("secp256r1"), JWSAlgorithm.ES256, 300);
+    assertVerifies(ecKeyPair("secp384r1"), JWSAlgorithm.ES384, 20);
+    assertVerifies(ecKeyPair("secp521r1"), JWSAlgorithm.ES512, 20);
+  }
+
+  @Test
+  public void testCurveMismatch() throws Exception {
+    Signer signer = new Signer(ecKeyPair("secp384r1").getPrivate());
+    try {
+      signer.sign(new JWSObject(new JWSHeader(JWSAlgorithm.ES256), PAYLOAD));
+      fail();
+    } catch (ACMEClientException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testProvider() throws Exception {
+    KeyPair keyPair = ecKeyPair("secp256r1");
+    Signer signer = new Signer(keyPair.getPrivate(), Security.getProvider("SunEC"));
+    assertSame(Security.getProvider("SunEC"), signer.getJCAContext().getProvider());
+    JWSObject jws = new JWSObject(new JWSHeader(JWSAlgorithm.ES256), PAYLOAD);
+    signer.sign(jws);
+    assertTrue(jws.verify(new ECDSAVerifier((ECPublicKey) keyPair.getPublic())));
+  }
+
+  @Test
+  public void testConcurrentSigning() throws Exception {
+    KeyPair keyPair = ecKeyPair("secp256r1");
+    Signer signer = new Signer(keyPair.getPrivate());
+    JWSVerifier verifier = new ECDSAVerifier((ECPublicKey) keyPair.getPublic());
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<JWSObject>> signed = new ArrayList<>();
+      for (int i = 0; i < 200; i++) {
+        Payload payload = new Payload("{\"n\":" + i + "}");
+        signed.add(executor.submit(() -> {
+          JWSObject jws = new JWSObject(new JWSHeader(JWSAlgorithm.ES256), payload);
+          signer.sign(jws);
+          return jws;
+        }));
+      }
+      for (int i = 0; i < signed.size(); i++) {
+        JWSObject jws = JWSObject.parse(signed.get(i).get().serialize());
+        assertEquals("{\"n\":" + i + "}", jws.getPayload().toString());
+        assertTrue(jws.verify(verifier));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void assertVerifies(KeyPair keyPair, JWSAlgorithm algorithm, int signatures) throws Exception {
+    Signer signer = new Signer(keyPair.getPrivate());
+    JWSVerifier verifier = keyPair.getPublic() instanceof RSAPublicKey
+      ? new RSASSAVerifier((RSAPublicKey) keyPair.getPublic())
+      : new ECDSAVerifier((ECPublicKey) keyPair.getPublic());
+    for (int i = 0; i < signatures; i++) {
+      JWSObject jws = new JWSObject(new JWSHeader(algorithm), PAYLOAD);
+      signer.sign(jws);
+      assertTrue(algorithm.getName(), JWSObject.parse(jws.serialize()).verify(verifier));
+    }
+  }
+
+  private static KeyPair rsaKeyPair() throws Exception {
+    KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+    kpg.initialize(2048);
+    return kpg.generateKeyPair();
+  }
+
+  private static KeyPair ecKeyPair(String curve) throws Exception {
+    KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC");
+    kpg.initialize(new ECGenParameterSpec(curve));
+    return kpg.generateKeyPair();
+  }
+}
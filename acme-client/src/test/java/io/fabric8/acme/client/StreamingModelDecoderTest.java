@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client;
+
+import io.fabric8.acme.client.internal.JSONParserUtils;
+import io.fabric8.acme.client.internal.StreamingModelDecoder;
+import io.fabric8.acme.client.model.Authorization;
+import io.fabric8.acme.client.model.Challenge;
+import io.fabric8.acme.client.model.ChallengeWithToken;
+import io.fabric8.acme.client.model.Registration;
+import io.fabric8.acme.client.model.Status;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class StreamingModelDecoderTest {
+
+  private static final String AUTHORIZATION = "{\"combinations\":[[0],[1,2]],\"unknown\":{\"nested\":[1,2,{\"a\":null}]}," +
+    "\"identifier\":{\"type\":\"dns\",\"value\":\"fabric8.io\"},\"status\":\"valid\",\"expires\":\"2017-03-23T21:06:45.899078471Z\"," +
+    "\"challenges\":[{\"type\":\"dns-01\",\"status\":\"pending\",\"uri\":\"https://example.com/acme/challenge/1\",\"token\":\"qwerty\"}," +
+    "{\"type\":\"tls-sni-01\",\"status\":\"valid\",\"uri\":\"https://example.com/acme/challenge/2\",\"token\":\"asdfg\",\"validated\":\"2017-03-16T21:06:45Z\"}," +
+    "{\"type\":\"http-01\",\"status\":\"invalid\",\"uri\":\"https://example.com/acme/challenge/3\",\"token\":\"mnbvc\",\"keyAuthorization\":\"mnbvc.thumb\"}]}";
+
+  private static final String REGISTRATION = "{\n" +
+    "  \"id\": 1,\n" +
+    "  \"key\": {\n" +
+    "    \"kty\": \"RSA\",\n" +
+    "    \"n\": \"asafada-kLP-2mT3vBaWJG_JLJKdV5xtdsEOkmAZzY91fRM4HoLmvLrpjB4siACOZulkyKgs8DM0v9BP4T9hIqUBzvKLGRCCXFypwLDVyLYmkTsFwi-wvxfS13rZXdrLjwdAztLUIsJGqCZY6Lw6XZ1E9GriWnQQCqYRLi3ECEi33-BcuYJ7FBz36eeRZeGcHOLE5susgO00YxTAha4dgjl_SnbvYMOTXv4PEk7ai_ecQk-XlVGcCJrw\",\n" +
+    "    \"e\": \"AQAB\"\n" +
+    "  },\n" +
+    "  \"contact\": [\n" +
+    "    \"mailto:noone@nowhere.com\",\n" +
+    "    \"tel:+12025551212\"\n" +
+    "  ],\n" +
+    "  \"agreement\": \"https://letsencrypt.org/documents/LE-SA-v1.0.1-July-27-2015.pdf\",\n" +
+    "  \"certificates\": \"https://example.com/acme/reg/1/cert\",\n" +
+    "}";
+
+  private static InputStream stream(String json) {
+    return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testAuthorizationMatchesJSONObjectBinding() throws Exception {
+    Authorization expected = Authorization.fromJSONObject(JSONParserUtils.parse(AUTHORIZATION));
+    Authorization actual = StreamingModelDecoder.decodeAuthorization(stream(AUTHORIZATION), "https://example.com/acme/authz/1");
+
+    assertEquals("https://example.com/acme/authz/1", actual.getLocation());
+    assertEquals(Status.VALID, actual.getStatus());
+    assertEquals(expected.getStatus(), actual.getStatus());
+    assertEquals(expected.getIdentifier().getType(), actual.getIdentifier().getType());
+    assertEquals(expected.getIdentifier().getValue(), actual.getIdentifier().getValue());
+    assertEquals(expected.getExpires(), actual.getExpires());
+
+    assertEquals(expected.getChallenges().size(), actual.getChallenges().size());
+    for (int i = 0; i < expected.getChallenges().size(); i++) {
+      Challenge e = expected.getChallenges().get(i);
+      Challenge a = actual.getChallenges().get(i);
+      assertEquals(e.getClass(), a.getClass());
+      assertEquals(e.getStatus(), a.getStatus());
+      assertEquals(e.getUri(), a.getUri());
+      assertEquals(((ChallengeWithToken) e).getToken(), ((ChallengeWithToken) a).getToken());
+      assertEquals(((ChallengeWithToken) e).getKeyAuthorization(), ((ChallengeWithToken) a).getKeyAuthorization());
+    }
+
+    // Combinations come before the challenges in the document but still resolve to them.
+    assertEquals(2, actual.getCombinations().size());
+    assertEquals(actual.getChallenges().get(0), actual.getCombinations().get(0).get(0));
+    assertEquals(actual.getChallenges().get(1), actual.getCombinations().get(1).get(0));
+    assertEquals(actual.getChallenges().get(2), actual.getCombinations().get(1).get(1));
+  }
+
+  @Test
+  public void testRegistrationMatchesJSONObjectBinding() throws Exception {
+    Registration expected = Registration.fromJSONObject(JSONParserUtils.parse(REGISTRATION));
+    Registration actual = StreamingModelDecoder.decodeRegistration(stream(REGISTRATION));
+
+    assertEquals(expected.getJwk().computeThumbprint(), actual.getJwk().computeThumbprint());
+    assertEquals(expected.getContact(), actual.getContact());
+    assertEquals(expected.getAgreementLocation(), actual.getAgreementLocation());
+    assertEquals(expected.getCertificatesLocation(), actual.getCertificatesLocation());
+    assertNull(actual.getAuthorizationsLocation());
+  }
+
+  @Test(expected = ACMEClientException.class)
+  public void testUnknownChallengeType() throws Exception {
+    StreamingModelDecoder.decodeChallenge(stream("{\"type\":\"carrier-pigeon-01\",\"status\":\"pending\"}"));
+  }
+
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.acme.client.internal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RateLimiterTest {
+
+  @Test
+  public void testRegisteredDomain() {
+    assertEquals("sap.de", RateLimiter.registeredDomain("www.sap.de"));
+    assertEquals("sap.de", RateLimiter.registeredDomain("shop.sap.de"));
+    assertEquals("xyz.io", RateLimiter.registeredDomain("a.xyz.io"));
+    assertEquals("dev.to", RateLimiter.registeredDomain("app.dev.to"));
+    assertEquals("fabric8.io", RateLimiter.registeredDomain("fabric8.io"));
+    assertEquals("fabric8.io", RateLimiter.registeredDomain("*.Www.Fabric8.IO."));
+    assertEquals("example.co.uk", RateLimiter.registeredDomain("example.co.uk"));
+    assertEquals("example.co.uk", RateLimiter.registeredDomain("www.example.co.uk"));
+    assertEquals("example.com.au", RateLimiter.registeredDomain("a.b.example.com.au"));
+    assertEquals("localhost", RateLimiter.registeredDomain("localhost"));
+  }
+}